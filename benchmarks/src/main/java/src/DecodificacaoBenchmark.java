@@ -0,0 +1,60 @@
+package src;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Decodificação de uma jogada: texto lido direto do buffer (DecodificadorTexto), o caminho
+// antigo (String + trim + parseInt) e o quadro binário.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodificacaoBenchmark {
+
+    private ByteBuffer texto;
+    private ByteBuffer binario;
+
+    @Setup
+    public void preparar() {
+        texto = ByteBuffer.wrap(" 42\n".getBytes(StandardCharsets.UTF_8));
+        binario = ByteBuffer.allocate(ProtocoloBinario.TAMANHO_CABECALHO + 4);
+        ProtocoloBinario.escreverCabecalho(binario, ProtocoloBinario.OP_JOGADA, 7, 3);
+        binario.putInt(42).flip();
+    }
+
+    @Benchmark
+    public int textoNoBuffer() {
+        return DecodificadorTexto.lerNumero(texto);
+    }
+
+    @Benchmark
+    public int textoComString() {
+        String mensagem = new String(texto.array(), 0, texto.limit()).trim();
+        try {
+            return Integer.parseInt(mensagem);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Benchmark
+    public int quadroBinario() {
+        if (!ProtocoloBinario.ehBinario(binario) || !ProtocoloBinario.cargaValida(binario)) {
+            return -1;
+        }
+        return ProtocoloBinario.argumento(binario, 0) + ProtocoloBinario.rodada(binario);
+    }
+}
@@ -0,0 +1,71 @@
+package src;
+
+import java.net.InetAddress;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Emparelhamento sob uma enxurrada de pedidos para jogar: cada operação é um jogador entrando
+// na fila (ratings em volta de 1000 com o desvio do parâmetro), num relógio simulado que anda
+// 1 µs por entrada, com a reavaliação periódica da fila a cada 250 ms simulados. Partidas por
+// segundo = 3 / tempo por operação.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormadorDePartidasBenchmark {
+
+    private static final int JOGADORES = 1 << 16;
+
+    @Param({"50", "400"})
+    public int desvio;
+
+    private FormadorDePartidas formador;
+    private Jogador[] jogadores;
+    private int[] ratings;
+    private int proximo;
+    private long agora;
+    private long formadas;
+
+    @Setup
+    public void preparar() throws Exception {
+        formador = new FormadorDePartidas(3, TabelaDeEstatisticas.RATING_MAXIMO, 50, TimeUnit.MILLISECONDS.toNanos(500),
+                                          TimeUnit.SECONDS.toNanos(5), elenco -> formadas++);
+        InetAddress ip = InetAddress.getLoopbackAddress();
+        Random aleatorio = new Random(42);
+        jogadores = new Jogador[JOGADORES];
+        ratings = new int[JOGADORES];
+        for (int i = 0; i < JOGADORES; i++) {
+            jogadores[i] = new Jogador("j" + i, ip, 1 + i % 65535, true);
+            ratings[i] = (int) Math.max(0, 1000 + aleatorio.nextGaussian() * desvio);
+        }
+    }
+
+    @Benchmark
+    public long entrar() {
+        int i = proximo;
+        proximo = (i + 1) & (JOGADORES - 1);
+        Jogador jogador = jogadores[i];
+        if (formador.contem(jogador)) { // Deu a volta e ele ainda espera: desiste e entra de novo
+            formador.sair(jogador);
+        }
+        agora += 1_000;
+        if (agora % 250_000_000 == 0) {
+            formador.verificar(agora);
+        }
+        formador.entrar(jogador, ratings[i], agora);
+        return formadas;
+    }
+}
@@ -0,0 +1,119 @@
+package src;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Ida e volta pelo loopback com o servidor de verdade (no mesmo processo, em modo de
+// produção): o cliente envia uma opção de menu inválida e espera a resposta (opção
+// inválida + menu, num datagrama). Mede recepção, decodificação, busca do jogador, laço de
+// eventos, montagem da resposta e envio, nos dois motores e nos dois protocolos.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdaEVoltaBenchmark {
+
+    private static final int PORTA_SERVIDOR = 3000;
+
+    @Param({"socket", "nio"})
+    public String motor;
+
+    @Param({"texto", "binario"})
+    public String protocolo;
+
+    private DatagramSocket cliente;
+    private DatagramPacket pedido;
+    private DatagramPacket resposta;
+
+    @Setup
+    public void preparar() throws Exception {
+        Thread servidor = new Thread(() -> JuizUDP.main(new String[] {"--producao", "--motor=" + motor}), "servidor");
+        servidor.setDaemon(true);
+        servidor.start();
+
+        InetAddress ip = InetAddress.getLoopbackAddress();
+        cliente = new DatagramSocket();
+        cliente.setSoTimeout(200);
+        resposta = new DatagramPacket(new byte[2048], 2048);
+        boolean binario = protocolo.equals("binario");
+
+        byte[] cadastro;
+        byte[] opcaoInvalida;
+        if (binario) {
+            ByteBuffer quadro = ByteBuffer.allocate(64);
+            ProtocoloBinario.escreverCabecalho(quadro, ProtocoloBinario.OP_CADASTRO, 0, 0);
+            quadro.put("benchmark".getBytes(StandardCharsets.UTF_8)).flip();
+            cadastro = new byte[quadro.remaining()];
+            quadro.get(cadastro);
+            quadro.clear();
+            ProtocoloBinario.escreverCabecalho(quadro, ProtocoloBinario.OP_OPCAO_MENU, 0, 0);
+            quadro.putInt(9).flip();
+            opcaoInvalida = new byte[quadro.remaining()];
+            quadro.get(opcaoInvalida);
+        } else {
+            cadastro = "benchmark".getBytes(StandardCharsets.UTF_8);
+            opcaoInvalida = "9".getBytes(StandardCharsets.UTF_8);
+        }
+
+        // Repete o cadastro até o servidor subir e responder
+        for (int tentativa = 0; ; tentativa++) {
+            cliente.send(new DatagramPacket(cadastro, cadastro.length, ip, PORTA_SERVIDOR));
+            try {
+                cliente.receive(resposta);
+                break;
+            } catch (SocketTimeoutException e) {
+                if (tentativa == 50) {
+                    throw new IllegalStateException("O servidor não respondeu ao cadastro", e);
+                }
+            }
+        }
+        esvaziar();
+        cliente.setSoTimeout(1000);
+        pedido = new DatagramPacket(opcaoInvalida, opcaoInvalida.length, ip, PORTA_SERVIDOR);
+    }
+
+    // Descarta o que ainda chegar do cadastro (menu e contagem de jogadores)
+    private void esvaziar() throws IOException {
+        try {
+            while (true) {
+                resposta.setLength(resposta.getData().length);
+                cliente.receive(resposta);
+            }
+        } catch (SocketTimeoutException e) {
+            // Nada mais a receber
+        }
+    }
+
+    @TearDown
+    public void encerrar() {
+        cliente.close();
+    }
+
+    @Benchmark
+    public int idaEVolta() throws IOException {
+        cliente.send(pedido);
+        resposta.setLength(resposta.getData().length);
+        cliente.receive(resposta);
+        return resposta.getLength();
+    }
+}
@@ -0,0 +1,71 @@
+package src;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Busca do remetente de um datagrama na recepção: o índice primitivo (IndiceEnderecos)
+// contra um ConcurrentHashMap por InetSocketAddress, que aloca a chave a cada consulta.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndiceEnderecosBenchmark {
+
+    @Param({"1000", "100000"})
+    public int jogadores;
+
+    private final IndiceEnderecos indice = new IndiceEnderecos();
+    private final Map<InetSocketAddress, Jogador> mapaPorEndereco = new ConcurrentHashMap<>();
+    private InetAddress[] ips;
+    private int[] portas;
+    private int proximo;
+
+    @Setup
+    public void preparar() throws UnknownHostException {
+        ips = new InetAddress[jogadores];
+        portas = new int[jogadores];
+        for (int i = 0; i < jogadores; i++) {
+            // Vários jogadores atrás do mesmo IP (NAT), em portas diferentes
+            ips[i] = InetAddress.getByAddress(new byte[] {10, (byte) (i >> 16), (byte) (i >> 8), (byte) (i & 0xF0)});
+            portas[i] = 20000 + (i & 0x0F) * 1000 + (i % 1000);
+            Jogador jogador = new Jogador("j" + i, ips[i], portas[i], false);
+            indice.registrar(jogador);
+            mapaPorEndereco.put(new InetSocketAddress(ips[i], portas[i]), jogador);
+        }
+    }
+
+    private int proximoIndice() {
+        int i = proximo;
+        proximo = i + 1 == jogadores ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public Jogador indicePrimitivo() {
+        int i = proximoIndice();
+        return indice.buscar(ips[i], portas[i]);
+    }
+
+    @Benchmark
+    public Jogador mapaDeObjetos() {
+        int i = proximoIndice();
+        return mapaPorEndereco.get(new InetSocketAddress(ips[i], portas[i]));
+    }
+}
@@ -0,0 +1,79 @@
+package src;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Montagem e envio de mensagens do servidor (com um motor que não envia nada): catálogo
+// pré-codificado no protocolo de texto, quadro binário, o lote de um evento e o caminho
+// antigo (concatenação de String + getBytes).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MensagensBenchmark {
+
+    private final MotorNulo motor = new MotorNulo();
+    private Jogador jogadorTexto;
+    private Jogador jogadorBinario;
+    private int placar;
+
+    @Setup
+    public void preparar() throws Exception {
+        Registro.configurar(Registro.ERRO, 0);
+        Mensageiro.usarMotor(motor);
+        InetAddress ip = InetAddress.getLoopbackAddress();
+        jogadorTexto = new Jogador("jogador", ip, 40000, false);
+        jogadorBinario = new Jogador("binario", ip, 40001, true);
+    }
+
+    @Benchmark
+    public long placarTexto() {
+        Mensageiro.enviar(jogadorTexto, ProtocoloBinario.OP_PLACAR_ATUAL, -(placar++ & 7));
+        return motor.bytesEnviados;
+    }
+
+    @Benchmark
+    public long menuTexto() {
+        Mensageiro.enviar(jogadorTexto, ProtocoloBinario.OP_MENU);
+        return motor.bytesEnviados;
+    }
+
+    @Benchmark
+    public long placarBinario() {
+        Mensageiro.enviar(jogadorBinario, ProtocoloBinario.OP_PLACAR_ATUAL, -(placar++ & 7));
+        return motor.bytesEnviados;
+    }
+
+    // Fim de rodada de um jogador: cinco mensagens juntadas num datagrama
+    @Benchmark
+    public long fimDeRodadaEmLote() {
+        boolean abriu = Mensageiro.abrirLote();
+        Mensageiro.enviar(jogadorTexto, ProtocoloBinario.OP_JOGADA_CONFIRMADA, 42);
+        Mensageiro.enviar(jogadorTexto, ProtocoloBinario.OP_PERDEU_PONTOS, 1);
+        Mensageiro.enviar(jogadorTexto, ProtocoloBinario.OP_PLACAR_ATUAL, -(placar++ & 7));
+        Mensageiro.enviar(jogadorTexto, ProtocoloBinario.OP_FIM_RODADA, 3360);
+        Mensageiro.enviar(jogadorTexto, ProtocoloBinario.OP_PEDIR_JOGADA);
+        if (abriu) {
+            Mensageiro.descarregarLote();
+        }
+        return motor.bytesEnviados;
+    }
+
+    @Benchmark
+    public int placarLegado() {
+        return ("Seu placar atual é: " + -(placar++ & 7)).getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,66 @@
+package src;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Motor de rede dos benchmarks: não envia nada, só consome os bytes (e os soma, para o JIT
+// não eliminar a montagem das mensagens)
+final class MotorNulo implements MotorDeRede {
+
+    long bytesEnviados;
+
+    @Override
+    public void executar(TratadorDeDatagrama tratador) {
+        throw new UnsupportedOperationException("O motor nulo não recebe datagramas");
+    }
+
+    @Override
+    public void enviar(ByteBuffer dados, InetSocketAddress destino) {
+        bytesEnviados += dados.remaining();
+        dados.position(dados.limit());
+    }
+
+    @Override
+    public void fechar() {
+    }
+
+    // Executor que roda as tarefas na própria thread: os laços de eventos das partidas
+    // processam os eventos na hora, sem threads portadoras
+    static ExecutorService executorDireto() {
+        return new AbstractExecutorService() {
+            @Override
+            public void execute(Runnable tarefa) {
+                tarefa.run();
+            }
+
+            @Override
+            public void shutdown() {
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return false;
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return false;
+            }
+
+            @Override
+            public boolean awaitTermination(long tempo, TimeUnit unidade) {
+                return false;
+            }
+        };
+    }
+}
@@ -0,0 +1,81 @@
+package src;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Uma rodada completa de uma partida: as jogadas de todos os jogadores e o processamento
+// da rodada disparado pela última (pontuação, mensagens de resultado e pedido da próxima
+// jogada), com 2, 3 e N jogadores. O placar é zerado antes de cada rodada para ninguém ser
+// eliminado e a partida nunca acabar. pontuacao() mede só as regras de pontuação, sem a rede.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RodadaBenchmark {
+
+    @Param({"2", "3", "16", "64"})
+    public int jogadores;
+
+    private final MotorNulo motor = new MotorNulo();
+    private Partida partida;
+    private Jogador[] elenco;
+    private int deslocamento;
+    private int[] escolhas;
+    private final int[] perdas = new int[256];
+
+    @Setup
+    public void preparar() {
+        Registro.configurar(Registro.ERRO, 0);
+        Mensageiro.usarMotor(motor);
+        InetAddress ip = InetAddress.getLoopbackAddress();
+        List<Jogador> lista = new ArrayList<>();
+        for (int i = 0; i < jogadores; i++) {
+            lista.add(new Jogador("j" + i, ip, 30000 + i, i % 2 == 1));
+        }
+        elenco = lista.toArray(new Jogador[0]);
+        escolhas = new int[jogadores];
+        // Executor direto: o laço da partida processa cada evento na hora, nesta thread
+        partida = new Partida(1, lista, MotorNulo.executorDireto(), null, 0, RegrasDePontuacao.PADRAO);
+        partida.comecar();
+    }
+
+    @Benchmark
+    public long rodada() {
+        boolean abriu = Mensageiro.abrirLote();
+        int d = deslocamento++;
+        for (Jogador j : elenco) {
+            j.pontuacao = 0;
+        }
+        for (int i = 0; i < elenco.length; i++) {
+            partida.registrarJogada(elenco[i], (i * 37 + d) % 101, -1);
+        }
+        if (abriu) {
+            Mensageiro.descarregarLote();
+        }
+        return motor.bytesEnviados;
+    }
+
+    @Benchmark
+    public int pontuacao() {
+        int d = deslocamento++;
+        for (int i = 0; i < escolhas.length; i++) {
+            escolhas[i] = (i * 37 + d) % 101;
+        }
+        return RegrasDePontuacao.PADRAO.pontuar(escolhas, escolhas.length, perdas) + perdas[escolhas.length - 1];
+    }
+}
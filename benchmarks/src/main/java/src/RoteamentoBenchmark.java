@@ -0,0 +1,86 @@
+package src;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Decisão do roteador para cada datagrama de jogador (ver RoteadorUDP): juiz fixado na
+// tabela de afinidade ou, para uma sessão nova, o dono no anel consistente; e a escrita do
+// cabeçalho de rota na frente do datagrama.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoteamentoBenchmark {
+
+    @Param({"2", "16"})
+    public int juizes;
+
+    @Param({"100000"})
+    public int jogadores;
+
+    private final AnelConsistente anel = new AnelConsistente();
+    private final TabelaDeAfinidade afinidade = new TabelaDeAfinidade(1 << 18, Long.MAX_VALUE);
+    private final ByteBuffer datagrama = ByteBuffer.allocateDirect(ProtocoloBinario.TAMANHO_ROTA_MAXIMO + 64);
+    private InetAddress[] ips;
+    private int[] portas;
+    private long[] chaves;
+    private int proximo;
+
+    @Setup
+    public void preparar() throws UnknownHostException {
+        long[] identidades = new long[juizes];
+        boolean[] vivos = new boolean[juizes];
+        for (int i = 0; i < juizes; i++) {
+            identidades[i] = IndiceEnderecos.chave(InetAddress.getLoopbackAddress(), 3100 + 10 * i);
+            vivos[i] = true;
+        }
+        anel.reconstruir(identidades, vivos);
+        ips = new InetAddress[jogadores];
+        portas = new int[jogadores];
+        chaves = new long[jogadores];
+        for (int i = 0; i < jogadores; i++) {
+            ips[i] = InetAddress.getByAddress(new byte[] {10, (byte) (i >> 16), (byte) (i >> 8), (byte) (i & 0xF0)});
+            portas[i] = 20000 + (i & 0x0F) * 1000 + (i % 1000);
+            chaves[i] = IndiceEnderecos.chave(ips[i], portas[i]);
+            afinidade.fixar(chaves[i], anel.dono(chaves[i]), System.nanoTime());
+        }
+    }
+
+    private int proximoIndice() {
+        int i = proximo;
+        proximo = i + 1 == jogadores ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public int sessaoFixada() {
+        return afinidade.buscar(chaves[proximoIndice()], System.nanoTime());
+    }
+
+    @Benchmark
+    public int donoNoAnel() {
+        return anel.dono(chaves[proximoIndice()]);
+    }
+
+    @Benchmark
+    public int cabecalhoDeRota() {
+        int i = proximoIndice();
+        ProtocoloBinario.escreverRota(datagrama, 0, ips[i], portas[i]);
+        return ProtocoloBinario.tamanhoRota(ips[i]);
+    }
+}
@@ -0,0 +1,114 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class LoteDeSaidaTest {
+
+    private final List<ByteBuffer> enviados = new ArrayList<>();
+    private final MotorDeRede motor = new MotorDeRede() {
+        @Override
+        public void executar(TratadorDeDatagrama tratador) {
+        }
+
+        @Override
+        public void enviar(ByteBuffer dados, InetSocketAddress destino) {
+            ByteBuffer copia = ByteBuffer.allocate(dados.remaining());
+            copia.put(dados).flip();
+            enviados.add(copia);
+        }
+
+        @Override
+        public void fechar() {
+        }
+    };
+
+    @Test
+    void textoLongoChegaEmLinhasAoJogadorDeTexto() throws CharacterCodingException {
+        byte[] regras = TextosDoJogo.regras(RegrasDePontuacao.PADRAO, 3).getBytes(StandardCharsets.UTF_8);
+        assertTrue(regras.length > LoteDeSaida.TAMANHO_MAXIMO, "as regras já não cabem num datagrama");
+
+        LoteDeSaida.entregar(motor, jogador(false), ByteBuffer.wrap(regras));
+
+        assertTrue(enviados.size() > 1);
+        List<String> linhas = new ArrayList<>();
+        for (ByteBuffer datagrama : enviados) {
+            assertTrue(datagrama.remaining() <= LoteDeSaida.TAMANHO_MAXIMO);
+            assertTrue(!ProtocoloBinario.ehBinario(datagrama), "jogador de texto recebeu um quadro binário");
+            linhas.add(decodificar(datagrama));
+        }
+        assertEquals(new String(regras, StandardCharsets.UTF_8), String.join("\n", linhas));
+    }
+
+    @Test
+    void linhaMaiorQueUmDatagramaECortadaEntreCaracteres() throws CharacterCodingException {
+        String linha = "ação".repeat(LoteDeSaida.TAMANHO_MAXIMO / 3);
+        byte[] texto = linha.getBytes(StandardCharsets.UTF_8);
+
+        LoteDeSaida.entregar(motor, jogador(false), ByteBuffer.wrap(texto));
+
+        StringBuilder remontado = new StringBuilder();
+        for (ByteBuffer datagrama : enviados) {
+            assertTrue(datagrama.remaining() <= LoteDeSaida.TAMANHO_MAXIMO);
+            remontado.append(decodificar(datagrama)); // Falha se um caractere foi partido ao meio
+        }
+        assertEquals(linha, remontado.toString());
+    }
+
+    @Test
+    void textoLongoNoLoteSaiDepoisDoQueJaEstavaNele() throws CharacterCodingException {
+        Jogador jogador = jogador(false);
+        byte[] regras = TextosDoJogo.regras(RegrasDePontuacao.PADRAO, 3).getBytes(StandardCharsets.UTF_8);
+        assertTrue(LoteDeSaida.abrir());
+        LoteDeSaida lote = LoteDeSaida.atual();
+        lote.adicionarTexto(motor, jogador, texto("Antes das regras"));
+        lote.adicionarTexto(motor, jogador, ByteBuffer.wrap(regras));
+        lote.adicionarTexto(motor, jogador, texto("Depois das regras"));
+        LoteDeSaida.descarregar(motor);
+
+        assertEquals("Antes das regras", decodificar(enviados.get(0)));
+        assertEquals("Depois das regras", decodificar(enviados.get(enviados.size() - 1)));
+        List<String> linhas = new ArrayList<>();
+        for (ByteBuffer datagrama : enviados.subList(1, enviados.size() - 1)) {
+            linhas.add(decodificar(datagrama));
+        }
+        assertEquals(new String(regras, StandardCharsets.UTF_8), String.join("\n", linhas));
+    }
+
+    @Test
+    void jogadorBinarioRecebeFragmentos() {
+        byte[] carga = new byte[3 * LoteDeSaida.TAMANHO_MAXIMO];
+        ByteBuffer quadro = ByteBuffer.allocate(ProtocoloBinario.TAMANHO_CABECALHO + carga.length);
+        ProtocoloBinario.escreverCabecalho(quadro, ProtocoloBinario.OP_RANKING, 0, 0);
+        quadro.put(carga).flip();
+
+        LoteDeSaida.entregar(motor, jogador(true), quadro);
+
+        assertTrue(enviados.size() > 1);
+        for (ByteBuffer datagrama : enviados) {
+            assertEquals(ProtocoloBinario.OP_FRAGMENTO, ProtocoloBinario.opcode(datagrama));
+        }
+    }
+
+    private static Jogador jogador(boolean binario) {
+        return new Jogador("ana", InetAddress.getLoopbackAddress(), 4000, binario);
+    }
+
+    private static ByteBuffer texto(String texto) {
+        return ByteBuffer.wrap(texto.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Decodifica o datagrama inteiro, recusando UTF-8 inválido
+    private static String decodificar(ByteBuffer datagrama) throws CharacterCodingException {
+        return StandardCharsets.UTF_8.newDecoder().decode(datagrama.duplicate()).toString();
+    }
+}
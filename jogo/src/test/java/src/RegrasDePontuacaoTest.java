@@ -0,0 +1,67 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class RegrasDePontuacaoTest {
+
+    @Test
+    void maisProximoIntermediarioEMaisDistante() {
+        assertPerdas(RegrasDePontuacao.PADRAO, new int[] {10, 20, 30}, new int[] {1, 0, 2}, 1600);
+    }
+
+    @Test
+    void empatadosComOMaisProximoNaoPerdem() {
+        assertPerdas(RegrasDePontuacao.PADRAO, new int[] {0, 0, 100}, new int[] {0, 0, 2}, 2667);
+        assertPerdas(RegrasDePontuacao.PADRAO, new int[] {2, 6, 7}, new int[] {0, 0, 2}, 400);
+    }
+
+    @Test
+    void empatadosNaMaiorDistanciaPerdemAIntermediaria() {
+        // Alvo 20: 0 e 40 empatam a 20 dele, os dois mais distantes
+        assertPerdas(RegrasDePontuacao.PADRAO, new int[] {35, 0, 40}, new int[] {0, 1, 1}, 2000);
+        assertPerdas(RegrasDePontuacao.PADRAO, new int[] {0, 0, 50, 50}, new int[] {0, 0, 1, 1}, 2000);
+        assertPerdas(new RegrasDePontuacao(1, 3, 5), new int[] {10, 0, 60, 60}, new int[] {1, 3, 3, 3}, 2600);
+        assertTrue(RegrasDePontuacao.PADRAO.explicar(3)
+                   .contains("se dois ou mais empatarem como os mais distantes, todos perdem 1 ponto"));
+    }
+
+    @Test
+    void todosEmpatadosNinguemPerde() {
+        assertPerdas(RegrasDePontuacao.PADRAO, new int[] {50, 50, 50}, new int[] {0, 0, 0}, 4000);
+        assertPerdas(RegrasDePontuacao.PADRAO, new int[] {30, 30}, new int[] {0, 0}, 2400);
+    }
+
+    @Test
+    void doisJogadoresSemMeio() {
+        assertPerdas(RegrasDePontuacao.PADRAO, new int[] {10, 90}, new int[] {0, 1}, 4000);
+    }
+
+    @Test
+    void empateExatoComMultiplicadorFracionario() {
+        // O multiplicador 2/3 não tem representação decimal exata; o alvo é 2/3 x 6 = 4 e 1 e 7 empatam a 3 dele
+        RegrasDePontuacao regras = RegrasDePontuacao.PADRAO.com(2, 3, -6);
+        assertPerdas(regras, new int[] {1, 7, 10}, new int[] {0, 0, 2}, 400);
+    }
+
+    @Test
+    void alvoArredondadoParaCimaNoMeio() {
+        // 1 / 8 = 0,125: 12,5 centésimos viram 13
+        RegrasDePontuacao regras = RegrasDePontuacao.PADRAO.com(1, 1, -6);
+        assertPerdas(regras, new int[] {1, 0, 0, 0, 0, 0, 0, 0}, new int[] {2, 0, 0, 0, 0, 0, 0, 0}, 13);
+    }
+
+    @Test
+    void penalidadesConfiguradas() {
+        assertPerdas(new RegrasDePontuacao(1, 3, 5), new int[] {0, 10, 10, 50}, new int[] {3, 1, 1, 5}, 1400);
+    }
+
+    private static void assertPerdas(RegrasDePontuacao regras, int[] escolhas, int[] perdasEsperadas, int alvoEsperado) {
+        int[] perdas = new int[escolhas.length];
+        assertEquals(alvoEsperado, regras.pontuar(escolhas, escolhas.length, perdas));
+        assertArrayEquals(perdasEsperadas, perdas);
+    }
+}
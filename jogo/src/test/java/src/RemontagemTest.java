@@ -0,0 +1,135 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class RemontagemTest {
+
+    private static final int TAMANHO_MAXIMO = 1000;
+    private static final long PRAZO_NANOS = 1_000_000_000L;
+
+    @Test
+    void remontaFragmentosForaDeOrdem() throws IOException {
+        Remontagem remontagem = new Remontagem(TAMANHO_MAXIMO, 8 * TAMANHO_MAXIMO, PRAZO_NANOS, 2);
+        ByteBuffer mensagem = mensagem(500, 1);
+        List<ByteBuffer> fragmentos = fragmentar(mensagem);
+        assertEquals(7, fragmentos.size());
+        Collections.shuffle(fragmentos, new Random(3));
+
+        ByteBuffer remontada = null;
+        for (int i = 0; i < fragmentos.size(); i++) {
+            remontada = remontagem.receber("servidor", fragmentos.get(i), 0);
+            if (i < fragmentos.size() - 1) {
+                assertNull(remontada);
+            }
+        }
+        assertNotNull(remontada);
+        assertEquals(mensagem, remontada);
+        remontagem.devolver(remontada);
+        assertEquals(1, remontagem.remontadas());
+        assertEquals(0, remontagem.pendentes());
+    }
+
+    @Test
+    void fragmentoRepetidoEIgnorado() throws IOException {
+        Remontagem remontagem = new Remontagem(TAMANHO_MAXIMO, 8 * TAMANHO_MAXIMO, PRAZO_NANOS, 2);
+        ByteBuffer mensagem = mensagem(200, 2);
+        List<ByteBuffer> fragmentos = fragmentar(mensagem);
+        assertEquals(3, fragmentos.size());
+
+        assertNull(remontagem.receber("servidor", fragmentos.get(0), 0));
+        assertNull(remontagem.receber("servidor", fragmentos.get(0), 0));
+        assertNull(remontagem.receber("servidor", fragmentos.get(1), 0));
+        assertEquals(mensagem, remontagem.receber("servidor", fragmentos.get(2), 0));
+        assertEquals(0, remontagem.descartadas());
+    }
+
+    @Test
+    void origensIguaisSaoAMesma() throws IOException {
+        Remontagem remontagem = new Remontagem(TAMANHO_MAXIMO, 8 * TAMANHO_MAXIMO, PRAZO_NANOS, 2);
+        ByteBuffer mensagem = mensagem(150, 3);
+        List<ByteBuffer> fragmentos = fragmentar(mensagem);
+        assertEquals(2, fragmentos.size());
+
+        assertNull(remontagem.receber(new InetSocketAddress("127.0.0.1", 4000), fragmentos.get(0), 0));
+        assertEquals(mensagem, remontagem.receber(new InetSocketAddress("127.0.0.1", 4000), fragmentos.get(1), 0));
+    }
+
+    @Test
+    void origemNoLimiteDescartaAsPropriasMensagens() {
+        Remontagem remontagem = new Remontagem(TAMANHO_MAXIMO, 8 * TAMANHO_MAXIMO, PRAZO_NANOS, 2);
+        assertNull(remontagem.receber("b", fragmento(1, 0, 2, 0, 10), 0));
+
+        // A origem "a" abre mensagens sem nunca terminá-las: fica sempre com as 2 mais novas
+        for (int id = 1; id <= 20; id++) {
+            assertNull(remontagem.receber("a", fragmento(id, 0, 2, 0, 10), id));
+        }
+        assertEquals(3, remontagem.pendentes());
+        assertEquals(18, remontagem.descartadas());
+
+        assertNotNull(remontagem.receber("b", fragmento(1, 1, 2, 10, 10), 30));
+        // A mais antiga de "a" (id 1) foi descartada: o fragmento seguinte abre uma mensagem nova
+        assertNull(remontagem.receber("a", fragmento(1, 1, 2, 10, 10), 31));
+        assertEquals(19, remontagem.descartadas());
+    }
+
+    @Test
+    void mensagemIncompletaVenceNoPrazo() {
+        Remontagem remontagem = new Remontagem(TAMANHO_MAXIMO, 8 * TAMANHO_MAXIMO, PRAZO_NANOS, 2);
+        assertNull(remontagem.receber("a", fragmento(1, 0, 2, 0, 10), 0));
+        assertNull(remontagem.receber("b", fragmento(1, 0, 2, 0, 10), PRAZO_NANOS));
+        assertEquals(2, remontagem.pendentes());
+
+        // A chegada seguinte depois do prazo libera a mensagem de "a", e o resto dela não a completa
+        assertNull(remontagem.receber("b", fragmento(2, 0, 2, 0, 10), PRAZO_NANOS + 1));
+        assertEquals(1, remontagem.descartadas());
+        assertNull(remontagem.receber("a", fragmento(1, 1, 2, 10, 10), PRAZO_NANOS + 2));
+    }
+
+    @Test
+    void fragmentoInvalidoEDescartado() {
+        Remontagem remontagem = new Remontagem(TAMANHO_MAXIMO, 8 * TAMANHO_MAXIMO, PRAZO_NANOS, 2);
+        assertNull(remontagem.receber("a", fragmento(1, 0, 1, 0, 10), 0));               // Um fragmento só
+        assertNull(remontagem.receber("a", fragmento(1, 2, 2, 0, 10), 0));               // Índice além do total
+        assertNull(remontagem.receber("a", fragmento(1, 0, 2, TAMANHO_MAXIMO - 5, 10), 0)); // Passa do tamanho máximo
+        assertEquals(3, remontagem.descartadas());
+        assertEquals(0, remontagem.pendentes());
+    }
+
+    // Mensagem binária qualquer, com o cabeçalho de um datagrama do protocolo
+    private static ByteBuffer mensagem(int tamanho, long semente) {
+        byte[] bytes = new byte[tamanho];
+        new Random(semente).nextBytes(bytes);
+        ByteBuffer mensagem = ByteBuffer.wrap(bytes);
+        ProtocoloBinario.escreverCabecalho(mensagem, ProtocoloBinario.OP_RANKING, 0, 0);
+        return mensagem.clear();
+    }
+
+    // Fragmentos de 100 bytes; o Fragmentos reutiliza o buffer, então cada um é copiado
+    private static List<ByteBuffer> fragmentar(ByteBuffer mensagem) throws IOException {
+        List<ByteBuffer> fragmentos = new ArrayList<>();
+        Fragmentos.fragmentar(mensagem, 100, datagrama -> {
+            ByteBuffer copia = ByteBuffer.allocate(datagrama.remaining());
+            copia.put(datagrama).flip();
+            fragmentos.add(copia);
+        });
+        return fragmentos;
+    }
+
+    private static ByteBuffer fragmento(int id, int indice, int total, int deslocamento, int tamanho) {
+        ByteBuffer fragmento = ByteBuffer.allocate(ProtocoloBinario.TAMANHO_CABECALHO_FRAGMENTO + tamanho);
+        ProtocoloBinario.escreverFragmento(fragmento, id, indice, total, deslocamento);
+        fragmento.put(new byte[tamanho]);
+        return fragmento.flip();
+    }
+}
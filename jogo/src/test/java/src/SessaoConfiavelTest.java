@@ -0,0 +1,301 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+// Testes da SessaoConfiavel sobre a roda de tempo manual: as retransmissões e os acks só
+// acontecem quando o teste avança o tempo, então nada depende de threads nem do relógio.
+class SessaoConfiavelTest {
+
+    private static final int ID = 77;
+    private static final long RTO_MILLIS = 100;
+    private static final long TIQUE_MILLIS = 10;
+
+    private final RodaDeTempo relogio = RodaDeTempo.manual(TIQUE_MILLIS, 64);
+    private final List<ByteBuffer> saidos = new ArrayList<>();
+    private final List<Long> saidosEm = new ArrayList<>();
+
+    @Test
+    void janelaLimitaOsQuadrosSemConfirmacao() throws IOException {
+        SessaoConfiavel sessao = novaSessao();
+        for (int i = 0; i < SessaoConfiavel.JANELA + 5; i++) {
+            sessao.enviar(quadro(i));
+        }
+        assertEquals(sequencias(1, SessaoConfiavel.JANELA), sequenciasEnviadas());
+        assertEquals(SessaoConfiavel.JANELA + 5, sessao.emTransito());
+
+        // Cada confirmação abre lugar na janela para um dos que esperavam
+        sessao.receberAck(5, 0);
+        assertEquals(sequencias(1, SessaoConfiavel.JANELA + 5), sequenciasEnviadas());
+        assertEquals(SessaoConfiavel.JANELA, sessao.emTransito());
+    }
+
+    @Test
+    void filaCheiaDescartaOsExcedentes() throws IOException {
+        SessaoConfiavel sessao = novaSessao();
+        long descartadosAntes = Metricas.CONFIAVEL_DESCARTADOS.sum();
+        for (int i = 0; i < SessaoConfiavel.JANELA + SessaoConfiavel.LIMITE_PENDENTES + 3; i++) {
+            sessao.enviar(quadro(i));
+        }
+        assertEquals(3, Metricas.CONFIAVEL_DESCARTADOS.sum() - descartadosAntes);
+        assertEquals(SessaoConfiavel.JANELA + SessaoConfiavel.LIMITE_PENDENTES, sessao.emTransito());
+    }
+
+    @Test
+    void ackSeletivoEvitaARetransmissao() throws IOException {
+        SessaoConfiavel sessao = novaSessao();
+        for (int i = 1; i <= 5; i++) {
+            sessao.enviar(quadro(i));
+        }
+        // Nada confirmado em ordem; a máscara confirma ack + 2 + i: as sequências 3 e 5
+        sessao.receberAck(0, 0b1010);
+        saidos.clear();
+        relogio.avancar(RTO_MILLIS + TIQUE_MILLIS);
+        assertEquals(List.of(1, 2, 4), sequenciasEnviadas());
+
+        // Cumulativo até 2: só a 4 continua sendo retransmitida
+        sessao.receberAck(2, 0);
+        saidos.clear();
+        relogio.avancar(2 * RTO_MILLIS + TIQUE_MILLIS);
+        assertEquals(List.of(4), sequenciasEnviadas());
+
+        sessao.receberAck(2, 0b1);
+        assertEquals(0, sessao.emTransito());
+    }
+
+    @Test
+    void mascaraInformaOsAdiantados() throws IOException {
+        SessaoConfiavel sessao = novaSessao();
+        assertEquals(SessaoConfiavel.ENTREGAR, sessao.receber(1, quadro(1)));
+        assertEquals(SessaoConfiavel.GUARDADO, sessao.receber(3, quadro(3)));
+        assertEquals(SessaoConfiavel.GUARDADO, sessao.receber(5, quadro(5)));
+
+        sessao.confirmar();
+        ByteBuffer ack = ultimoSaido();
+        assertEquals(ProtocoloBinario.OP_ACK, ProtocoloBinario.opcode(ack));
+        assertEquals(ID, ProtocoloBinario.idSessao(ack));
+        assertEquals(1, ProtocoloBinario.ack(ack));
+        assertEquals(0b101, ProtocoloBinario.mascara(ack)); // Bit i: esperada (2) + 1 + i
+
+        // O mesmo ack vai de carona no próximo envelope
+        sessao.enviar(quadro(9));
+        ByteBuffer envelope = ultimoSaido();
+        assertEquals(ProtocoloBinario.OP_CONFIAVEL, ProtocoloBinario.opcode(envelope));
+        assertEquals(1, ProtocoloBinario.ack(envelope));
+        assertEquals(0b101, ProtocoloBinario.mascara(envelope));
+    }
+
+    @Test
+    void adiantadosSaemEmOrdem() {
+        SessaoConfiavel sessao = novaSessao();
+        assertEquals(SessaoConfiavel.ENTREGAR, sessao.receber(1, quadro(1)));
+        assertEquals(SessaoConfiavel.GUARDADO, sessao.receber(4, quadro(4)));
+        assertEquals(SessaoConfiavel.GUARDADO, sessao.receber(3, quadro(3)));
+        assertNull(sessao.proximoAdiantado());
+
+        assertEquals(SessaoConfiavel.ENTREGAR, sessao.receber(2, quadro(2)));
+        for (int esperado = 3; esperado <= 4; esperado++) {
+            ByteBuffer adiantado = sessao.proximoAdiantado();
+            assertEquals(esperado, ProtocoloBinario.argumento(adiantado, 0));
+            SessaoConfiavel.devolver(adiantado);
+        }
+        assertNull(sessao.proximoAdiantado());
+    }
+
+    @Test
+    void repetidosSaoDescartados() {
+        SessaoConfiavel sessao = novaSessao();
+        long repetidosAntes = Metricas.CONFIAVEL_REPETIDOS.sum();
+        assertEquals(SessaoConfiavel.ENTREGAR, sessao.receber(1, quadro(1)));
+        assertEquals(SessaoConfiavel.REPETIDO, sessao.receber(1, quadro(1)));
+        assertEquals(SessaoConfiavel.GUARDADO, sessao.receber(3, quadro(3)));
+        assertEquals(SessaoConfiavel.REPETIDO, sessao.receber(3, quadro(3)));
+        assertEquals(2, Metricas.CONFIAVEL_REPETIDOS.sum() - repetidosAntes);
+        assertEquals(SessaoConfiavel.FORA_DA_JANELA, sessao.receber(2 + SessaoConfiavel.JANELA, quadro(0)));
+    }
+
+    @Test
+    void prazoDobraACadaRetransmissaoAteOMaximo() throws IOException {
+        SessaoConfiavel sessao = novaSessao();
+        sessao.enviar(quadro(1));
+        relogio.avancar(30_000);
+
+        // O prazo começa em RTO_MILLIS, dobra e para em RTO_MAXIMO_MILLIS; cada retransmissão
+        // sai no tique seguinte ao prazo
+        long prazo = RTO_MILLIS;
+        for (int i = 1; i < saidosEm.size(); i++) {
+            long intervalo = (saidosEm.get(i) - saidosEm.get(i - 1)) / 1_000_000;
+            assertTrue(intervalo >= prazo && intervalo <= prazo + TIQUE_MILLIS,
+                       "retransmissão " + i + " depois de " + intervalo + " ms, prazo " + prazo + " ms");
+            prazo = Math.min(prazo * 2, SessaoConfiavel.RTO_MAXIMO_MILLIS);
+        }
+        assertEquals(SessaoConfiavel.RTO_MAXIMO_MILLIS, prazo);
+        assertTrue(saidosEm.size() > 8);
+    }
+
+    @Test
+    void confirmacaoVoltaOPrazoAoInicial() throws IOException {
+        SessaoConfiavel sessao = novaSessao();
+        sessao.enviar(quadro(1));
+        relogio.avancar(1000); // Três retransmissões: o prazo já está em 800 ms
+        assertEquals(4, saidos.size());
+        sessao.receberAck(1, 0);
+        relogio.avancar(2000); // O temporizador vence sem nada em trânsito e não volta
+
+        saidos.clear();
+        saidosEm.clear();
+        long inicio = relogio.agora();
+        sessao.enviar(quadro(2));
+        relogio.avancar(RTO_MILLIS + TIQUE_MILLIS);
+        assertEquals(2, saidos.size());
+        assertTrue(saidosEm.get(1) - inicio <= (RTO_MILLIS + TIQUE_MILLIS) * 1_000_000);
+    }
+
+    @Test
+    void entregaEmOrdemEUmaVezComPerdaEReordenacao() throws IOException {
+        for (long semente = 1; semente <= 5; semente++) {
+            Rede rede = new Rede(semente, 0.2, 50);
+            Ponta a = new Ponta();
+            Ponta b = new Ponta();
+            a.sessao = new SessaoConfiavel(ID, datagrama -> rede.enviar(datagrama, b), relogio, RTO_MILLIS, 1);
+            b.sessao = new SessaoConfiavel(ID, datagrama -> rede.enviar(datagrama, a), relogio, RTO_MILLIS, 1);
+
+            int quadros = 300;
+            for (int passo = 0; passo < 100_000 && !(a.terminou(quadros) && b.terminou(quadros)); passo++) {
+                a.enviarAte(quadros);
+                b.enviarAte(quadros);
+                relogio.avancar(TIQUE_MILLIS);
+            }
+            assertEquals(sequencias(0, quadros - 1), b.entregues, "semente " + semente);
+            assertEquals(sequencias(0, quadros - 1), a.entregues, "semente " + semente);
+            assertEquals(0, a.sessao.emTransito());
+            assertEquals(0, b.sessao.emTransito());
+            assertTrue(rede.perdidos > 0);
+            a.sessao.fechar();
+            b.sessao.fechar();
+        }
+    }
+
+    // Um lado da conversa: manda os quadros 0..n-1 respeitando a janela e trata o que chega
+    // como o ClienteDoJogo (acks, envelope, adiantados)
+    private static final class Ponta {
+        SessaoConfiavel sessao;
+        final List<Integer> entregues = new ArrayList<>();
+        int enviados;
+
+        void enviarAte(int quadros) throws IOException {
+            while (enviados < quadros && sessao.emTransito() < SessaoConfiavel.JANELA) {
+                sessao.enviar(quadro(enviados++));
+            }
+        }
+
+        boolean terminou(int quadros) {
+            return enviados == quadros && entregues.size() == quadros && sessao.emTransito() == 0;
+        }
+
+        void receber(ByteBuffer recebido) throws IOException {
+            if (!ProtocoloBinario.ehBinario(recebido) || !ProtocoloBinario.cargaValida(recebido) || !sessao.pertence(recebido)) {
+                return;
+            }
+            byte opcode = ProtocoloBinario.opcode(recebido);
+            sessao.receberAck(ProtocoloBinario.ack(recebido), ProtocoloBinario.mascara(recebido));
+            if (opcode == ProtocoloBinario.OP_ACK) {
+                return;
+            }
+            int sequencia = ProtocoloBinario.sequencia(recebido);
+            recebido.position(recebido.position() + ProtocoloBinario.TAMANHO_ENVELOPE);
+            if (sessao.receber(sequencia, recebido) != SessaoConfiavel.ENTREGAR) {
+                return;
+            }
+            entregues.add(ProtocoloBinario.argumento(recebido, 0));
+            ByteBuffer adiantado;
+            while ((adiantado = sessao.proximoAdiantado()) != null) {
+                entregues.add(ProtocoloBinario.argumento(adiantado, 0));
+                SessaoConfiavel.devolver(adiantado);
+            }
+        }
+    }
+
+    // Rede entre as duas pontas na roda manual: perde uma fração dos datagramas e entrega os
+    // outros depois de um atraso sorteado (de 0 a atrasoMaximoMillis, então fora de ordem).
+    // A semente fixa repete sempre a mesma sequência de perdas e atrasos.
+    private final class Rede {
+        private final Random aleatorio;
+        private final double perda;
+        private final int atrasoMaximoMillis;
+        int perdidos;
+
+        Rede(long semente, double perda, int atrasoMaximoMillis) {
+            this.aleatorio = new Random(semente);
+            this.perda = perda;
+            this.atrasoMaximoMillis = atrasoMaximoMillis;
+        }
+
+        void enviar(ByteBuffer datagrama, Ponta destino) {
+            ByteBuffer copia = copiar(datagrama); // A sessão reutiliza o buffer
+            if (aleatorio.nextDouble() < perda) {
+                perdidos++;
+                return;
+            }
+            relogio.agendar(aleatorio.nextInt(atrasoMaximoMillis + 1), () -> {
+                try {
+                    destino.receber(copia);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private SessaoConfiavel novaSessao() {
+        return new SessaoConfiavel(ID, datagrama -> {
+            saidos.add(copiar(datagrama));
+            saidosEm.add(relogio.agora());
+        }, relogio, RTO_MILLIS, 1);
+    }
+
+    private ByteBuffer ultimoSaido() {
+        return saidos.get(saidos.size() - 1);
+    }
+
+    // Sequências dos envelopes enviados, na ordem de saída
+    private List<Integer> sequenciasEnviadas() {
+        List<Integer> sequencias = new ArrayList<>();
+        for (ByteBuffer datagrama : saidos) {
+            if (ProtocoloBinario.opcode(datagrama) == ProtocoloBinario.OP_CONFIAVEL) {
+                sequencias.add(ProtocoloBinario.sequencia(datagrama));
+            }
+        }
+        return sequencias;
+    }
+
+    private static List<Integer> sequencias(int primeira, int ultima) {
+        List<Integer> sequencias = new ArrayList<>();
+        for (int s = primeira; s <= ultima; s++) {
+            sequencias.add(s);
+        }
+        return sequencias;
+    }
+
+    // Quadro de jogada com o valor como argumento
+    private static ByteBuffer quadro(int valor) {
+        ByteBuffer quadro = ByteBuffer.allocate(ProtocoloBinario.TAMANHO_CABECALHO + 4);
+        ProtocoloBinario.escreverCabecalho(quadro, ProtocoloBinario.OP_JOGADA, 0, 0);
+        return quadro.putInt(valor).flip();
+    }
+
+    private static ByteBuffer copiar(ByteBuffer datagrama) {
+        ByteBuffer copia = ByteBuffer.allocate(datagrama.remaining());
+        copia.put(datagrama).flip();
+        return copia;
+    }
+}
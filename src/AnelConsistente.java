@@ -0,0 +1,60 @@
+package src;
+
+import java.util.Arrays;
+
+// Anel de hash consistente dos juízes (ver RoteadorUDP). Cada juiz vivo ocupa PONTOS_POR_NO
+// pontos do anel, espalhados pelo hash da sua identidade; uma chave pertence ao juiz do
+// primeiro ponto a partir do hash dela. Quando um juiz entra ou sai, só as chaves dos arcos
+// dele mudam de dono (em média 1/N delas).
+//
+// Cada ponto é um long: os bits altos são o hash e os 16 bits baixos, o índice do juiz, então
+// o anel é um único array ordenado e a busca é uma busca binária sem alocar. O anel só é
+// reconstruído quando a lista de juízes vivos muda.
+final class AnelConsistente {
+
+    private static final int PONTOS_POR_NO = 128;
+    private static final long MASCARA_NO = 0xFFFF;
+
+    private long[] pontos = new long[0];
+
+    // Refaz o anel com os juízes i em que ativos[i] é verdadeiro; identidades[i] espalha os pontos
+    void reconstruir(long[] identidades, boolean[] ativos) {
+        int quantidade = 0;
+        for (boolean ativo : ativos) {
+            quantidade += ativo ? 1 : 0;
+        }
+        long[] novos = new long[quantidade * PONTOS_POR_NO];
+        int n = 0;
+        for (int no = 0; no < ativos.length; no++) {
+            if (!ativos[no]) {
+                continue;
+            }
+            for (int r = 0; r < PONTOS_POR_NO; r++) {
+                novos[n++] = (espalhar(espalhar(identidades[no]) + r) & ~MASCARA_NO) | no;
+            }
+        }
+        Arrays.sort(novos);
+        pontos = novos;
+    }
+
+    // Índice do juiz dono da chave, ou -1 se o anel está vazio
+    int dono(long chave) {
+        long[] anel = pontos;
+        if (anel.length == 0) {
+            return -1;
+        }
+        int i = Arrays.binarySearch(anel, espalhar(chave) | MASCARA_NO);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return (int) (anel[i == anel.length ? 0 : i] & MASCARA_NO);
+    }
+
+    // Mistura de bits (finalizador do SplitMix64), como no MapaLongo
+    private static long espalhar(long chave) {
+        long z = chave;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
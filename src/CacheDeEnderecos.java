@@ -0,0 +1,41 @@
+package src;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+// Cache dos endereços de jogadores lidos dos cabeçalhos de rota, para que repassar um
+// datagrama não crie um InetAddress e um InetSocketAddress a cada pacote. Mapeamento direto:
+// cada chave (IPv4 + porta, como no IndiceEnderecos) tem uma única posição e um endereço novo
+// toma o lugar do antigo. IPv6 não passa pelo cache. Usado por uma única thread.
+final class CacheDeEnderecos {
+
+    private final long[] chaves;
+    private final InetSocketAddress[] enderecos;
+    private final int mascara;
+
+    // capacidade é arredondada para uma potência de 2
+    CacheDeEnderecos(int capacidade) {
+        int tamanho = Integer.highestOneBit(Math.max(1, capacidade - 1)) << 1;
+        chaves = new long[tamanho];
+        enderecos = new InetSocketAddress[tamanho];
+        mascara = tamanho - 1;
+    }
+
+    // Endereço do jogador no cabeçalho de rota do datagrama (ver ProtocoloBinario.escreverRota)
+    InetSocketAddress daRota(ByteBuffer dados) {
+        int porta = ProtocoloBinario.portaRota(dados);
+        if (ProtocoloBinario.tamanhoIpRota(dados) != 4) {
+            return new InetSocketAddress(ProtocoloBinario.ipRota(dados), porta);
+        }
+        long chave = ((ProtocoloBinario.ipv4Rota(dados) & 0xFFFFFFFFL) << 16) | porta;
+        long h = chave * 0x9E3779B97F4A7C15L;
+        int i = (int) (h ^ (h >>> 32)) & mascara;
+        InetSocketAddress endereco = enderecos[i];
+        if (endereco == null || chaves[i] != chave) {
+            endereco = new InetSocketAddress(ProtocoloBinario.ipRota(dados), porta);
+            chaves[i] = chave;
+            enderecos[i] = endereco;
+        }
+        return endereco;
+    }
+}
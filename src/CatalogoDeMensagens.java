@@ -0,0 +1,123 @@
+package src;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Catálogo das mensagens de texto do servidor, codificadas em UTF-8 uma única vez na carga
+// da classe. Cada modelo de TextosDoJogo vira uma sequência de fragmentos já codificados
+// intercalados com lacunas; escrever() copia os fragmentos para o buffer de destino e
+// preenche as lacunas com o nickname (também já codificado) e os dígitos dos argumentos,
+// sem criar String nem array a cada envio.
+final class CatalogoDeMensagens {
+
+    private static final byte LACUNA_NICKNAME = 0;
+    private static final byte LACUNA_A = 1;
+    private static final byte LACUNA_B = 2;
+    private static final byte LACUNA_C = 3;
+
+    private static final int DIGITOS_MAXIMOS = 11; // "-2147483648"
+
+    // Por opcode: fragmentos[i] é seguido da lacuna lacunas[i] (o último fragmento não tem lacuna)
+    private static final byte[][][] FRAGMENTOS = new byte[256][][];
+    private static final byte[][] LACUNAS = new byte[256][];
+
+    // Tamanho máximo de uma mensagem escrita, sem contar o nickname
+    static final int TAMANHO_MAXIMO;
+
+    static {
+        int maximo = 0;
+        for (int op = 0; op < 256; op++) {
+            maximo = Math.max(maximo, compilar((byte) op));
+        }
+        TAMANHO_MAXIMO = maximo;
+    }
+
+    private CatalogoDeMensagens() {}
+
+    // Separa o modelo nas lacunas e codifica os fragmentos. Devolve o tamanho máximo da mensagem.
+    private static int compilar(byte opcode) {
+        String modelo = TextosDoJogo.modelo(opcode);
+        int lacunas = 0;
+        for (int i = modelo.indexOf('{'); i >= 0; i = modelo.indexOf('{', i + 1)) {
+            if (tipoDaLacuna(modelo, i) >= 0) {
+                lacunas++;
+            }
+        }
+        byte[][] fragmentos = new byte[lacunas + 1][];
+        byte[] tipos = new byte[lacunas];
+        int tamanho = 0;
+        int inicio = 0;
+        int n = 0;
+        for (int i = modelo.indexOf('{'); i >= 0; i = modelo.indexOf('{', i + 1)) {
+            byte tipo = tipoDaLacuna(modelo, i);
+            if (tipo < 0) {
+                continue;
+            }
+            fragmentos[n] = modelo.substring(inicio, i).getBytes(StandardCharsets.UTF_8);
+            tipos[n] = tipo;
+            tamanho += fragmentos[n].length + (tipo == LACUNA_NICKNAME ? 0 : DIGITOS_MAXIMOS);
+            n++;
+            inicio = i + 3;
+        }
+        fragmentos[n] = modelo.substring(inicio).getBytes(StandardCharsets.UTF_8);
+        FRAGMENTOS[opcode & 0xFF] = fragmentos;
+        LACUNAS[opcode & 0xFF] = tipos;
+        return tamanho + fragmentos[n].length;
+    }
+
+    private static byte tipoDaLacuna(String modelo, int i) {
+        if (modelo.startsWith(TextosDoJogo.LACUNA_NICKNAME, i)) {
+            return LACUNA_NICKNAME;
+        } else if (modelo.startsWith(TextosDoJogo.LACUNA_A, i)) {
+            return LACUNA_A;
+        } else if (modelo.startsWith(TextosDoJogo.LACUNA_B, i)) {
+            return LACUNA_B;
+        } else if (modelo.startsWith(TextosDoJogo.LACUNA_C, i)) {
+            return LACUNA_C;
+        }
+        return -1;
+    }
+
+    // Escreve a mensagem do opcode a partir da posição do destino. O destino precisa ter
+    // TAMANHO_MAXIMO bytes livres mais o tamanho do nickname.
+    static void escrever(ByteBuffer destino, byte opcode, byte[] nickname, int a, int b, int c) {
+        byte[][] fragmentos = FRAGMENTOS[opcode & 0xFF];
+        byte[] lacunas = LACUNAS[opcode & 0xFF];
+        for (int i = 0; i < lacunas.length; i++) {
+            destino.put(fragmentos[i]);
+            switch (lacunas[i]) {
+                case LACUNA_NICKNAME:
+                    if (nickname != null) {
+                        destino.put(nickname);
+                    }
+                    break;
+                case LACUNA_A:
+                    escreverInteiro(destino, a);
+                    break;
+                case LACUNA_B:
+                    escreverInteiro(destino, b);
+                    break;
+                default:
+                    escreverInteiro(destino, c);
+                    break;
+            }
+        }
+        destino.put(fragmentos[lacunas.length]);
+    }
+
+    // Escreve os dígitos decimais do inteiro (com sinal), como Integer.toString, sem alocar
+    static void escreverInteiro(ByteBuffer destino, int valor) {
+        long v = valor;
+        if (v < 0) {
+            destino.put((byte) '-');
+            v = -v;
+        }
+        long divisor = 1;
+        while (divisor * 10 <= v) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            destino.put((byte) ('0' + (v / divisor) % 10));
+        }
+    }
+}
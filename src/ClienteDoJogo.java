@@ -0,0 +1,567 @@
+package src;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Runtime do cliente do jogo, sem console: o JogadorUDP é a interface de texto por cima dele,
+// e robôs e testes podem usá-lo direto. Uma thread de recepção só lê o socket, sempre no
+// mesmo buffer, trata o protocolo (sessão confiável, lotes, fragmentos, token da sessão) e
+// entrega cada mensagem do servidor como um EventoDoJogo: numa fila, lida com proximoEvento,
+// ou direto a um Ouvinte, chamado na própria thread de recepção (o caminho para robôs com
+// muitas mensagens por segundo, sem fila nem troca de thread).
+//
+// Embutido (só no protocolo binário), o cliente não tem socket, thread nem relógio próprios:
+// quem o criou manda os datagramas pelo transporte que passou, entrega os recebidos com
+// receberDatagrama e divide uma roda de tempo entre muitos clientes. É assim que o EnxameUDP
+// põe milhares de jogadores em poucas threads com um Selector.
+//
+// As respostas (responder) podem vir de qualquer thread e a qualquer momento. Uma resposta
+// que chega antes de o servidor pedir fica guardada e sai quando chega o pedido seguinte,
+// com o id da partida e a rodada dele: digitar adiantado não manda uma jogada para a rodada
+// errada, e uma mensagem do servidor no meio (o aviso de jogadores prontos, por exemplo) não
+// tira o pedido do lugar.
+public final class ClienteDoJogo implements AutoCloseable {
+
+    // Recebe os eventos na thread de recepção; não deve bloquear
+    public interface Ouvinte {
+        void evento(EventoDoJogo evento);
+    }
+
+    private static final long RTO_MILLIS = 300; // Prazo inicial de retransmissão da sessão confiável
+    private static final String SEPARADOR_MENSAGENS = String.valueOf((char) LoteDeSaida.SEPARADOR_TEXTO);
+
+    private final InetSocketAddress servidor;
+    private final boolean binario;
+    private final Path arquivoDaSessao; // null: o token não é guardado entre execuções
+    private final double perda;
+    private final double reordenacao;
+    private final Ouvinte ouvinte;
+    private final BlockingQueue<EventoDoJogo> fila; // Só sem ouvinte
+
+    private final DatagramSocket socket;         // null: embutido
+    private final Thread recepcao;               // null: embutido
+    private final SessaoConfiavel.Saida transporte; // Só embutido
+    private final boolean confiavel;             // Binário com sessão confiável (sempre, com socket próprio)
+    // Mensagens do servidor maiores que um datagrama chegam fragmentadas (ver Fragmentos); só a
+    // recepção usa. Criada no primeiro fragmento: o pool dela não pesa em quem nunca recebe um.
+    private Remontagem remontagem;
+    // Quadro em montagem para envio, protegido pelo monitor do cliente
+    private final ByteBuffer envio = ByteBuffer.allocate(ProtocoloBinario.TAMANHO_CABECALHO + Fragmentos.TAMANHO_MAXIMO_ENTRADA);
+    // Datagrama dentro do OP_SESSAO com o token; também usado pelas retransmissões, por isso com o monitor dele
+    private final ByteBuffer comToken = ByteBuffer.allocate(ProtocoloBinario.TAMANHO_SESSAO + SessaoConfiavel.TAMANHO_BUFFER);
+
+    // Protocolo binário: sessão confiável e token da sessão no servidor (0: ainda não tem)
+    private RodaDeTempo relogio;
+    private SessaoConfiavel.Saida saida;
+    private volatile SessaoConfiavel sessao;
+    private volatile long token;
+    private String nickname;
+
+    // Último pedido do servidor, se ainda não foi respondido, e as respostas dadas antes dos
+    // próximos pedidos, uma por pedido, na ordem
+    private EventoDoJogo pedido;
+    private boolean pedidoPendente;
+    private final ArrayDeque<String> adiantadas = new ArrayDeque<>();
+
+    private volatile boolean fechado;
+
+    // Eventos numa fila, lida com proximoEvento
+    public ClienteDoJogo(InetSocketAddress servidor, boolean binario, Path arquivoDaSessao) throws IOException {
+        this(servidor, binario, arquivoDaSessao, 0, 0, null);
+    }
+
+    // perda e reordenacao simulam a rede ruim nos dois sentidos (ver PerdaSimulada); com
+    // ouvinte, os eventos vão para ele em vez da fila
+    public ClienteDoJogo(InetSocketAddress servidor, boolean binario, Path arquivoDaSessao, double perda, double reordenacao,
+                         Ouvinte ouvinte) throws IOException {
+        this(servidor, binario, arquivoDaSessao, perda, reordenacao, ouvinte, new DatagramSocket(), null, null);
+    }
+
+    // Embutido, no protocolo binário e sem o token da sessão (nada vai dentro de OP_SESSAO).
+    // Com relogio, usa a sessão confiável e agenda nele as retransmissões; sem, os quadros vão
+    // soltos e quem perde um pedido manda de novo com reenviar.
+    ClienteDoJogo(InetSocketAddress servidor, SessaoConfiavel.Saida transporte, RodaDeTempo relogio, double perda,
+                  double reordenacao, Ouvinte ouvinte) {
+        this(servidor, true, null, perda, reordenacao, ouvinte, null, transporte, relogio);
+    }
+
+    private ClienteDoJogo(InetSocketAddress servidor, boolean binario, Path arquivoDaSessao, double perda, double reordenacao,
+                          Ouvinte ouvinte, DatagramSocket socket, SessaoConfiavel.Saida transporte, RodaDeTempo relogio) {
+        this.servidor = servidor;
+        this.binario = binario;
+        this.arquivoDaSessao = arquivoDaSessao;
+        this.perda = perda;
+        this.reordenacao = reordenacao;
+        this.ouvinte = ouvinte;
+        this.fila = ouvinte == null ? new LinkedBlockingQueue<>() : null;
+        this.socket = socket;
+        this.transporte = transporte;
+        this.relogio = relogio;
+        this.confiavel = socket != null || relogio != null;
+        if (socket != null) {
+            recepcao = new Thread(this::receber, "cliente-recepcao");
+            recepcao.setDaemon(true);
+        } else {
+            recepcao = null;
+        }
+    }
+
+    // Cadastra o nickname, ou retoma a sessão guardada no arquivo da sessão (só no protocolo
+    // binário), e começa a receber. Devolve true quando está retomando.
+    public synchronized boolean conectar(String nickname) throws IOException {
+        this.nickname = nickname;
+        boolean retomando = false;
+        if (binario) {
+            if (socket != null) {
+                relogio = new RodaDeTempo("relogio-cliente", 20, 256);
+                relogio.iniciar();
+            }
+            token = arquivoDaSessao != null ? lerToken(arquivoDaSessao) : 0;
+            SessaoConfiavel.Saida direta = datagrama -> {
+                long atual = token;
+                if (atual == 0) {
+                    enviarDatagrama(datagrama);
+                    return;
+                }
+                synchronized (comToken) { // Com token, todo datagrama vai dentro de um OP_SESSAO
+                    comToken.clear();
+                    ProtocoloBinario.escreverSessao(comToken, atual);
+                    enviarDatagrama(comToken.put(datagrama).flip());
+                }
+            };
+            saida = confiavel ? PerdaSimulada.aplicar(direta, perda, reordenacao, relogio) : direta;
+            sessao = confiavel ? novaSessao() : null;
+            retomando = token != 0;
+            if (retomando) {
+                envio.clear();
+                ProtocoloBinario.escreverCabecalho(envio, ProtocoloBinario.OP_RETOMAR, 0, 0);
+                enviarQuadro();
+            } else {
+                enviarCadastro();
+            }
+        } else {
+            enviarTexto(nickname);
+        }
+        if (recepcao != null) {
+            recepcao.start();
+        }
+        return retomando;
+    }
+
+    // Cadastra o mesmo nickname de novo, numa sessão nova (depois que a partida acabou, por
+    // exemplo). Pedidos pendentes e respostas adiantadas da sessão anterior são descartados.
+    public synchronized void recadastrar() throws IOException {
+        pedidoPendente = false;
+        adiantadas.clear();
+        if (!binario) {
+            enviarTexto(nickname);
+            return;
+        }
+        if (sessao != null) {
+            sessao.confirmar();
+        }
+        token = 0; // O cadastro novo traz outro token, que substitui o do arquivo
+        trocarSessao();
+        enviarCadastro();
+    }
+
+    // Sai do jogo já (opção 3 do menu), com ou sem pedido pendente. No protocolo de texto o
+    // servidor só entende a saída com o menu na tela.
+    public synchronized void sair() throws IOException {
+        pedidoPendente = false;
+        adiantadas.clear();
+        if (!binario) {
+            enviarTexto("3");
+            return;
+        }
+        envio.clear();
+        ProtocoloBinario.escreverCabecalho(envio, ProtocoloBinario.OP_OPCAO_MENU, 0, 0);
+        envio.putInt(3);
+        enviarQuadro();
+    }
+
+    // Sem a sessão confiável, manda de novo o último quadro enviado (com ela, a própria sessão retransmite)
+    public synchronized void reenviar() throws IOException {
+        if (binario && sessao == null) {
+            envio.position(0);
+            transmitirQuadro();
+        }
+    }
+
+    // Próximo evento da fila, esperando até chegar um (ou null depois do prazo)
+    public EventoDoJogo proximoEvento(long prazo, TimeUnit unidade) throws InterruptedException {
+        return fila.poll(prazo, unidade);
+    }
+
+    public EventoDoJogo proximoEvento() throws InterruptedException {
+        return fila.take();
+    }
+
+    // Responde ao pedido do servidor (menu ou jogada), ou guarda a resposta para o próximo pedido.
+    // No protocolo binário a entrada tem de ser um número; devolve false se não for.
+    public synchronized boolean responder(String entrada) throws IOException {
+        if (binario) {
+            try {
+                Integer.parseInt(entrada.trim());
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        if (pedidoPendente) {
+            enviarResposta(entrada);
+        } else {
+            adiantadas.add(entrada);
+        }
+        return true;
+    }
+
+    public synchronized boolean responder(int escolha) throws IOException {
+        if (!binario) {
+            return responder(Integer.toString(escolha));
+        }
+        if (pedidoPendente) {
+            enviarEscolha(escolha);
+        } else {
+            adiantadas.add(Integer.toString(escolha));
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (fechado) {
+            return;
+        }
+        fechado = true;
+        SessaoConfiavel atual = sessao;
+        if (atual != null) {
+            atual.confirmar(); // Confirma a última mensagem antes de sair
+            atual.fechar();
+        }
+        if (socket != null) { // Embutido, o relógio e o socket são de quem criou o cliente
+            if (relogio != null) {
+                relogio.parar();
+            }
+            socket.close(); // Tira a recepção do receive
+        }
+    }
+
+    // Embutido: trata um datagrama que chegou do servidor (da posição ao limite), sempre na mesma thread
+    void receberDatagrama(ByteBuffer recebido) throws IOException {
+        receberBinario(recebido);
+    }
+
+    // --- Recepção ---
+
+    private void receber() {
+        byte[] bufferRecebimento = new byte[SessaoConfiavel.TAMANHO_BUFFER];
+        ByteBuffer recebido = ByteBuffer.wrap(bufferRecebimento);
+        DatagramPacket pacoteRecebido = new DatagramPacket(bufferRecebimento, bufferRecebimento.length);
+        while (true) {
+            pacoteRecebido.setLength(bufferRecebimento.length);
+            try {
+                socket.receive(pacoteRecebido);
+                recebido.limit(pacoteRecebido.getLength()).position(0);
+                if (binario) {
+                    receberBinario(recebido);
+                } else {
+                    receberTexto(recebido);
+                }
+            } catch (IOException e) {
+                if (!fechado) {
+                    emitir(EventoDoJogo.conexaoPerdida(e.getMessage()));
+                }
+                return;
+            }
+        }
+    }
+
+    // Tudo vai e vem pela sessão confiável: o que o servidor manda é entregue uma vez e em
+    // ordem, e o que o cliente manda é retransmitido até o servidor confirmar
+    private void receberBinario(ByteBuffer recebido) throws IOException {
+        if (!ProtocoloBinario.ehBinario(recebido) || PerdaSimulada.descartar(perda)) {
+            return; // Datagrama desconhecido (ou perdido de propósito)
+        }
+        byte opcode = ProtocoloBinario.opcode(recebido);
+        if (opcode != ProtocoloBinario.OP_CONFIAVEL && opcode != ProtocoloBinario.OP_ACK && opcode != ProtocoloBinario.OP_SESSAO_INVALIDA) {
+            // Fora da sessão: o erro de cadastro (o servidor ainda não tem sessão para este
+            // cliente), ou tudo, sem a sessão confiável. tratarDatagrama confere a carga.
+            tratarDatagrama(recebido);
+            return;
+        }
+        if (!ProtocoloBinario.cargaValida(recebido)) {
+            return;
+        }
+        if (opcode == ProtocoloBinario.OP_SESSAO_INVALIDA) {
+            // O servidor não conhece mais a sessão retomada: cadastra de novo. Só a primeira
+            // resposta conta, as retransmissões da retomada também são recusadas.
+            synchronized (this) {
+                if (token == 0) {
+                    return;
+                }
+                esquecerToken();
+                trocarSessao();
+                enviarCadastro();
+            }
+            emitir(new EventoDoJogo(opcode, 0, 0, 0, 0, 0, nickname, null));
+            return;
+        }
+        SessaoConfiavel atual = sessao;
+        if (atual == null || !atual.pertence(recebido)) {
+            return;
+        }
+        atual.receberAck(ProtocoloBinario.ack(recebido), ProtocoloBinario.mascara(recebido));
+        if (opcode == ProtocoloBinario.OP_ACK) {
+            return;
+        }
+        int sequencia = ProtocoloBinario.sequencia(recebido);
+        recebido.position(recebido.position() + ProtocoloBinario.TAMANHO_ENVELOPE);
+        if (atual.receber(sequencia, recebido) != SessaoConfiavel.ENTREGAR) {
+            return;
+        }
+        tratarDatagrama(recebido);
+        // Um evento pode ter trocado a sessão (recadastrar): o que sobrou da anterior fica para trás
+        ByteBuffer adiantado;
+        while (sessao == atual && (adiantado = atual.proximoAdiantado()) != null) {
+            try {
+                tratarDatagrama(adiantado);
+            } finally {
+                SessaoConfiavel.devolver(adiantado);
+            }
+        }
+    }
+
+    // Trata um quadro sozinho, um lote de quadros (OP_LOTE) ou um fragmento, da posição ao limite do buffer
+    private void tratarDatagrama(ByteBuffer recebido) throws IOException {
+        if (!ProtocoloBinario.ehBinario(recebido) || !ProtocoloBinario.cargaValida(recebido)) {
+            return;
+        }
+        byte opcode = ProtocoloBinario.opcode(recebido);
+        if (opcode == ProtocoloBinario.OP_FRAGMENTO) {
+            ByteBuffer mensagem = remontagem().receber(servidor, recebido, System.nanoTime());
+            if (mensagem == null) {
+                return; // Faltam fragmentos
+            }
+            try {
+                if (!ProtocoloBinario.ehBinario(mensagem) || ProtocoloBinario.opcode(mensagem) != ProtocoloBinario.OP_FRAGMENTO) {
+                    tratarDatagrama(mensagem);
+                }
+            } finally {
+                remontagem.devolver(mensagem);
+            }
+            return;
+        }
+        if (opcode != ProtocoloBinario.OP_LOTE) {
+            tratarQuadro(recebido);
+            return;
+        }
+        // Lote: cada quadro vem prefixado pelo tamanho e é tratado numa janela do mesmo buffer
+        int tamanho = recebido.limit();
+        int inicio = recebido.position() + ProtocoloBinario.TAMANHO_CABECALHO;
+        while (inicio + 2 <= tamanho) {
+            int fim = inicio + 2 + (recebido.getShort(inicio) & 0xFFFF);
+            if (fim > tamanho) {
+                break; // Lote truncado
+            }
+            recebido.limit(fim).position(inicio + 2);
+            if (ProtocoloBinario.ehBinario(recebido) && ProtocoloBinario.cargaValida(recebido)) {
+                tratarQuadro(recebido);
+            }
+            recebido.limit(tamanho);
+            inicio = fim;
+        }
+    }
+
+    private void tratarQuadro(ByteBuffer recebido) throws IOException {
+        byte opcode = ProtocoloBinario.opcode(recebido);
+        if (opcode == ProtocoloBinario.OP_SESSAO_TOKEN) {
+            if (socket != null) { // Embutido, o canal não muda de porta e não há o que retomar
+                guardarToken(ProtocoloBinario.token(recebido));
+            }
+            return;
+        }
+        int argumentos = ProtocoloBinario.quantidadeArgumentos(opcode);
+        EventoDoJogo evento;
+        if (argumentos < 0) {
+            evento = EventoDoJogo.comCarga(opcode, ProtocoloBinario.idPartida(recebido), ProtocoloBinario.rodada(recebido), nickname,
+                                           ProtocoloBinario.cargaTexto(recebido));
+        } else {
+            int a = argumentos >= 1 ? ProtocoloBinario.argumento(recebido, 0) : 0;
+            int b = argumentos >= 2 ? ProtocoloBinario.argumento(recebido, 1) : 0;
+            int c = argumentos >= 3 ? ProtocoloBinario.argumento(recebido, 2) : 0;
+            evento = new EventoDoJogo(opcode, ProtocoloBinario.idPartida(recebido), ProtocoloBinario.rodada(recebido),
+                                      a, b, c, nickname, null);
+        }
+        if (evento.encerraJogo()) {
+            esquecerToken(); // O jogo acabou: não há o que retomar
+        }
+        processar(evento);
+    }
+
+    // O servidor junta as mensagens de um mesmo evento num datagrama, separadas por SEPARADOR_TEXTO;
+    // as maiores que um datagrama chegam em vários, quebradas no fim das linhas
+    private void receberTexto(ByteBuffer recebido) throws IOException {
+        String datagrama = new String(recebido.array(), 0, recebido.limit(), StandardCharsets.UTF_8);
+        for (String mensagem : datagrama.trim().split(SEPARADOR_MENSAGENS)) {
+            processar(EventoDoJogo.deTexto(mensagem.trim()));
+        }
+    }
+
+    // Guarda o pedido (e manda a primeira resposta adiantada, se houver) antes de entregar o evento,
+    // para uma resposta dada logo ao ver o evento já encontrar o pedido pendente
+    private void processar(EventoDoJogo evento) throws IOException {
+        if (evento.pedeEntrada()) {
+            synchronized (this) {
+                pedido = evento;
+                pedidoPendente = true;
+                if (!adiantadas.isEmpty()) {
+                    enviarResposta(adiantadas.poll());
+                }
+            }
+        }
+        emitir(evento);
+    }
+
+    private Remontagem remontagem() {
+        if (remontagem == null) {
+            remontagem = new Remontagem(Fragmentos.TAMANHO_MAXIMO_MENSAGEM, 256 * 1024, TimeUnit.SECONDS.toNanos(5), Integer.MAX_VALUE);
+        }
+        return remontagem;
+    }
+
+    private void emitir(EventoDoJogo evento) {
+        if (ouvinte != null) {
+            ouvinte.evento(evento);
+        } else {
+            fila.add(evento);
+        }
+    }
+
+    // --- Envio (sempre com o monitor do cliente) ---
+
+    private void enviarResposta(String entrada) throws IOException {
+        if (binario) {
+            enviarEscolha(Integer.parseInt(entrada.trim()));
+        } else {
+            pedidoPendente = false;
+            enviarTexto(entrada);
+        }
+    }
+
+    private void enviarEscolha(int escolha) throws IOException {
+        pedidoPendente = false;
+        boolean jogada = pedido.tipo == ProtocoloBinario.OP_PEDIR_JOGADA;
+        envio.clear();
+        // A jogada devolve o id da partida e a rodada do pedido, para o servidor descartar jogadas atrasadas
+        ProtocoloBinario.escreverCabecalho(envio, jogada ? ProtocoloBinario.OP_JOGADA : ProtocoloBinario.OP_OPCAO_MENU,
+                                           pedido.idPartida, pedido.rodada);
+        envio.putInt(escolha);
+        enviarQuadro();
+    }
+
+    private void enviarCadastro() throws IOException {
+        envio.clear();
+        ProtocoloBinario.escreverCabecalho(envio, ProtocoloBinario.OP_CADASTRO, 0, 0);
+        byte[] bytes = nickname.getBytes(StandardCharsets.UTF_8);
+        envio.put(bytes, 0, Math.min(bytes.length, envio.remaining()));
+        enviarQuadro();
+    }
+
+    // Envia pela sessão o quadro montado em envio (da posição 0 até a posição atual), em
+    // fragmentos se ele não cabe num datagrama para o servidor
+    private void enviarQuadro() throws IOException {
+        envio.flip();
+        transmitirQuadro();
+    }
+
+    // Sem a sessão confiável, o quadro vai direto pela saída
+    private void transmitirQuadro() throws IOException {
+        SessaoConfiavel atual = sessao;
+        if (envio.remaining() > Fragmentos.TAMANHO_PARA_O_SERVIDOR) {
+            Fragmentos.fragmentar(envio, Fragmentos.TAMANHO_PARA_O_SERVIDOR, atual != null ? atual::enviar : saida);
+        } else if (atual != null) {
+            atual.enviar(envio);
+        } else {
+            saida.enviar(envio);
+        }
+    }
+
+    private void enviarTexto(String mensagem) throws IOException {
+        ByteBuffer dados = ByteBuffer.wrap(mensagem.getBytes(StandardCharsets.UTF_8));
+        if (dados.remaining() > Fragmentos.TAMANHO_PARA_O_SERVIDOR) {
+            Fragmentos.fragmentar(dados, Fragmentos.TAMANHO_PARA_O_SERVIDOR, this::enviarDatagrama);
+        } else {
+            enviarDatagrama(dados);
+        }
+    }
+
+    private void enviarDatagrama(ByteBuffer datagrama) throws IOException {
+        if (socket == null) {
+            transporte.enviar(datagrama);
+            return;
+        }
+        socket.send(new DatagramPacket(datagrama.array(), datagrama.arrayOffset() + datagrama.position(), datagrama.remaining(),
+                                       servidor));
+        datagrama.position(datagrama.limit());
+    }
+
+    // Sessão nova no lugar da atual (o que ainda chegar da anterior é ignorado pelo id)
+    private void trocarSessao() {
+        if (sessao != null) {
+            sessao.fechar();
+            sessao = novaSessao();
+        }
+    }
+
+    private SessaoConfiavel novaSessao() {
+        int idSessao = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+        return new SessaoConfiavel(idSessao, saida, relogio, RTO_MILLIS, 1);
+    }
+
+    // --- Token da sessão ---
+
+    // Token guardado por uma execução anterior (0 se não há, ou se o arquivo não é legível)
+    private static long lerToken(Path arquivo) {
+        try {
+            return Long.parseUnsignedLong(new String(Files.readAllBytes(arquivo), StandardCharsets.UTF_8).trim(), 16);
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void guardarToken(long novo) {
+        token = novo;
+        if (arquivoDaSessao == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(arquivoDaSessao.toAbsolutePath().getParent());
+            Files.write(arquivoDaSessao, Long.toHexString(novo).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            emitir(EventoDoJogo.aviso("Não foi possível guardar a sessão em " + arquivoDaSessao + ": " + e.getMessage()));
+        }
+    }
+
+    private void esquecerToken() {
+        token = 0;
+        if (arquivoDaSessao == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(arquivoDaSessao);
+        } catch (IOException e) {
+            emitir(EventoDoJogo.aviso("Não foi possível apagar a sessão em " + arquivoDaSessao + ": " + e.getMessage()));
+        }
+    }
+}
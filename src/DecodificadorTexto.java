@@ -0,0 +1,100 @@
+package src;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Decodifica mensagens do protocolo de texto direto do buffer recebido, sem copiar para
+// um array nem criar String para descobrir se a entrada é um número. Os espaços das pontas
+// são ignorados, como fazia o String.trim() (em UTF-8 os bytes <= ' ' são os mesmos caracteres).
+final class DecodificadorTexto {
+
+    // Devolvido por lerNumero quando a entrada não é um número inteiro
+    static final int NAO_NUMERO = Integer.MIN_VALUE;
+
+    private DecodificadorTexto() {}
+
+    private static int inicio(ByteBuffer dados) {
+        int i = dados.position();
+        int fim = dados.limit();
+        while (i < fim && (dados.get(i) & 0xFF) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int fim(ByteBuffer dados, int inicio) {
+        int f = dados.limit();
+        while (f > inicio && (dados.get(f - 1) & 0xFF) <= ' ') {
+            f--;
+        }
+        return f;
+    }
+
+    static boolean vazio(ByteBuffer dados) {
+        int i = inicio(dados);
+        return fim(dados, i) == i;
+    }
+
+    // Filtro barato para entradas de quem ainda não é jogador: sem os espaços das pontas, a
+    // entrada não é vazia, tem no máximo `maximo` bytes e não tem caracteres de controle
+    static boolean plausivel(ByteBuffer dados, int maximo) {
+        int i = inicio(dados);
+        int f = fim(dados, i);
+        if (i == f || f - i > maximo) {
+            return false;
+        }
+        for (; i < f; i++) {
+            int b = dados.get(i) & 0xFF;
+            if (b < ' ' || b == 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Interpreta a entrada como inteiro (com sinal opcional), com as mesmas regras do Integer.parseInt
+    static int lerNumero(ByteBuffer dados) {
+        int i = inicio(dados);
+        int f = fim(dados, i);
+        if (i == f) {
+            return NAO_NUMERO;
+        }
+        boolean negativo = false;
+        byte primeiro = dados.get(i);
+        if (primeiro == '-' || primeiro == '+') {
+            negativo = primeiro == '-';
+            i++;
+            if (i == f) {
+                return NAO_NUMERO;
+            }
+        }
+        long valor = 0;
+        for (; i < f; i++) {
+            int digito = dados.get(i) - '0';
+            if (digito < 0 || digito > 9) {
+                return NAO_NUMERO;
+            }
+            valor = valor * 10 + digito;
+            if (valor > Integer.MAX_VALUE + 1L) {
+                return NAO_NUMERO; // Estouro: o Integer.parseInt também rejeitaria
+            }
+        }
+        if (negativo) {
+            valor = -valor;
+        }
+        if (valor > Integer.MAX_VALUE || valor == NAO_NUMERO) {
+            return NAO_NUMERO;
+        }
+        return (int) valor;
+    }
+
+    // Decodifica a entrada (sem os espaços das pontas) como texto UTF-8. Só é usado quando a
+    // entrada precisa mesmo virar String, como no cadastro do nickname.
+    static String lerTexto(ByteBuffer dados) {
+        int i = inicio(dados);
+        int f = fim(dados, i);
+        ByteBuffer trecho = dados.duplicate();
+        trecho.limit(f).position(i);
+        return StandardCharsets.UTF_8.decode(trecho).toString();
+    }
+}
@@ -0,0 +1,686 @@
+package src;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+// Diário (journal) das partidas: cadastros, entradas na fila, início de partida, jogadas,
+// resultados de rodada, eliminações, saídas e fim de partida, gravados em formato binário
+// compacto para o servidor reconstruir o estado depois de uma queda (ver EstadoDoDiario).
+//
+// Os registros são anexados a segmentos de tamanho fixo mapeados em memória (diario-N.seg).
+// Quem registra só reserva o espaço com um CAS na posição global e copia os bytes para o
+// mapeamento: nenhuma chamada ao sistema por registro. Uma thread de fundo faz o "group
+// commit": a cada intervalo, se algo foi escrito, força (msync) os segmentos tocados, de
+// modo que uma sincronização cobre todos os registros do intervalo.
+//
+// Formato de um registro: [int tamanho][byte tipo][carga][int CRC32C de tipo + carga], com
+// tamanho contando o registro inteiro. O tamanho é escrito por último: um registro pela
+// metade (queda no meio da escrita) tem tamanho 0, que a leitura trata como fim do diário.
+// Tamanho -1 marca o fim do segmento (o registro seguinte não cabia nele).
+//
+// Ponto de controle durante a execução: quando há mais de segmentosMaximos segmentos depois do
+// último ponto de controle, uma thread de fundo lê os segmentos já fechados, grava o estado que
+// eles descrevem (jogadores, fila e partidas em andamento, ver EstadoDoDiario) num arquivo com
+// o número do último deles e apaga os anteriores. Não para quem escreve: o estado vem do
+// próprio diário, e a troca do arquivo é um rename. Uma queda no meio deixa os segmentos
+// antigos seguidos do ponto de controle, que descarta o que veio antes dele na leitura.
+final class Diario {
+
+    // Tipos de registro
+    static final byte PONTO_DE_CONTROLE = 1; // int maior id de partida: o estado anterior é descartado
+    static final byte CADASTRO = 2;          // texto nickname, endereço (ip, porta), byte binário
+    static final byte SAIDA = 3;             // texto nickname: saiu, foi eliminado ou a partida acabou
+    static final byte ENTRADA_NA_FILA = 4;   // texto nickname
+    static final byte INICIO_PARTIDA = 5;    // int id, short n, n x texto nickname (o índice no elenco é a ordem)
+    static final byte JOGADA = 6;            // int id, int rodada, short índice, byte escolha
+    static final byte FIM_RODADA = 7;        // int id, int próxima rodada, int alvo (centésimos), short m, m x (short índice, int placar)
+    static final byte ELIMINACAO = 8;        // int id, short índice
+    static final byte FIM_PARTIDA = 9;       // int id
+    static final byte SESSAO = 10;           // texto nickname, long token, endereço (ip, porta): cadastro ou novo endereço
+
+    private static final int CABECALHO = 5; // tamanho + tipo
+    private static final int FIM_DE_SEGMENTO = -1;
+    private static final String PREFIXO = "diario-";
+    private static final String SUFIXO = ".seg";
+
+    // Recebe os registros lidos de um diário, em ordem
+    interface Leitor {
+        void registro(byte tipo, ByteBuffer carga);
+    }
+
+    // Estado de escrita (só existe depois de abrir())
+    private static volatile boolean ativo;
+    private static Path diretorio;
+    private static int tamanhoSegmento;
+    private static int primeiroSegmento;                  // Número do arquivo do segmento 0 desta execução
+    private static final AtomicLong posicao = new AtomicLong(); // Próximo byte livre, contando todos os segmentos
+    private static final List<MappedByteBuffer> segmentos = new ArrayList<>(); // Índice = segmento - primeiroSegmento
+    private static volatile MappedByteBuffer[] mapeados = new MappedByteBuffer[0]; // Cópia para leitura sem lock
+    private static final List<Path> anteriores = new ArrayList<>(); // Segmentos de execuções anteriores
+    private static Thread sincronizador;
+    private static Thread compactador;
+    private static int ultimoPontoDeControle;              // Segmento (relativo) que começa com o último ponto de controle
+
+    // Rascunho de cada thread: o registro é montado nele e depois copiado para o segmento
+    private static final class Escritor {
+        ByteBuffer rascunho = ByteBuffer.allocate(4096);
+        final CRC32C crc = new CRC32C();
+        ByteBuffer vista;   // Duplicata do segmento vistaDe (posição própria desta thread)
+        int vistaDe = -1;
+    }
+
+    private static final ThreadLocal<Escritor> ESCRITOR = ThreadLocal.withInitial(Escritor::new);
+
+    private Diario() {}
+
+    static boolean ativo() {
+        return ativo;
+    }
+
+    // Abre um diário novo no diretório, depois dos segmentos que já existem (que continuam lá
+    // até descartarAnteriores()), começa a sincronizar a cada intervaloMillis e grava um ponto
+    // de controle sempre que passar de segmentosMaximos segmentos depois do último
+    static synchronized void abrir(Path dir, int tamanhoSegmentoBytes, long intervaloMillis, int segmentosMaximos,
+                                   int maiorIdPartida) throws IOException {
+        Files.createDirectories(dir);
+        diretorio = dir;
+        tamanhoSegmento = tamanhoSegmentoBytes;
+        anteriores.addAll(listarSegmentos(dir));
+        primeiroSegmento = anteriores.isEmpty() ? 1 : numeroDoSegmento(anteriores.get(anteriores.size() - 1)) + 1;
+        posicao.set(0);
+        ultimoPontoDeControle = 0;
+        mapear(0);
+        ativo = true;
+        escrever(novoRegistro(PONTO_DE_CONTROLE).putInt(maiorIdPartida));
+
+        sincronizador = new Thread(() -> {
+            long sincronizado = 0;
+            while (ativo) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(intervaloMillis);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                sincronizado = sincronizar(sincronizado);
+            }
+        }, "diario");
+        sincronizador.setDaemon(true);
+        sincronizador.start();
+
+        compactador = new Thread(() -> {
+            while (ativo) {
+                try {
+                    TimeUnit.SECONDS.sleep(1);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                int atual = (int) (posicao.get() / tamanhoSegmento);
+                if (atual - ultimoPontoDeControle > segmentosMaximos) {
+                    try {
+                        compactar(atual);
+                    } catch (IOException e) {
+                        Registro.erro("Erro ao gravar o ponto de controle do diário: {T}", e.getMessage(), null);
+                    }
+                }
+            }
+        }, "diario-compactacao");
+        compactador.setDaemon(true);
+        compactador.start();
+        Registro.info("Diário aberto em {T} (segmento {A}).", dir.toString(), primeiroSegmento);
+    }
+
+    // Força no disco tudo o que foi escrito e para a sincronização
+    static void fechar() {
+        if (!ativo) {
+            return;
+        }
+        ativo = false;
+        sincronizador.interrupt();
+        compactador.interrupt();
+        sincronizar(-1);
+    }
+
+    // Apaga os segmentos das execuções anteriores (chamado depois que o estado reconstruído
+    // foi gravado e sincronizado no diário novo)
+    static synchronized void descartarAnteriores() throws IOException {
+        sincronizar(-1);
+        for (Path segmento : anteriores) {
+            Files.deleteIfExists(segmento);
+        }
+        anteriores.clear();
+    }
+
+    // Troca os segmentos do último ponto de controle até o anterior ao atual (relativos) por um
+    // ponto de controle novo com o estado descrito por eles. Desiste, para tentar na próxima
+    // vez, enquanto o estado da execução anterior não foi regravado ou um escritor atrasado
+    // ainda está copiando um registro num desses segmentos.
+    private static void compactar(int atual) throws IOException {
+        synchronized (Diario.class) {
+            if (!anteriores.isEmpty()) {
+                return;
+            }
+        }
+        List<Path> arquivos = new ArrayList<>();
+        for (int s = ultimoPontoDeControle; s < atual; s++) {
+            Path arquivo = arquivoDoSegmento(s);
+            if (!fechado(arquivo)) {
+                return;
+            }
+            arquivos.add(arquivo);
+        }
+        long inicio = System.nanoTime();
+        EstadoDoDiario estado = new EstadoDoDiario();
+        lerArquivos(arquivos, estado);
+
+        Path temporario = diretorio.resolve(PREFIXO + "ponto-de-controle.tmp");
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                  StandardOpenOption.TRUNCATE_EXISTING)) {
+            gravarEstado(canal, estado);
+            canal.force(true);
+        }
+        Files.move(temporario, arquivoDoSegmento(atual - 1), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        for (int s = ultimoPontoDeControle; s < atual - 1; s++) {
+            Files.deleteIfExists(arquivoDoSegmento(s));
+        }
+        ultimoPontoDeControle = atual - 1;
+        Metricas.DIARIO_PONTOS_DE_CONTROLE.increment();
+        Registro.info("Diário: ponto de controle no segmento {A} em {B} ms.", primeiroSegmento + atual - 1,
+                      TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+    }
+
+    // Grava o estado como uma sequência de registros que, lida por um EstadoDoDiario, o
+    // reconstrói: ponto de controle, jogadores, partidas em andamento e a fila, e o fim do segmento
+    private static void gravarEstado(FileChannel canal, EstadoDoDiario estado) throws IOException {
+        gravar(canal, novoRegistro(PONTO_DE_CONTROLE).putInt(estado.maiorIdPartida));
+
+        // O início de uma partida põe nela todos os jogadores do elenco com esse nickname. Quem
+        // saiu e se cadastrou de novo com ele é regravado depois das partidas, sem partida.
+        Map<String, Integer> ultimaPartida = new HashMap<>();
+        for (EstadoDoDiario.PartidaRestaurada partida : estado.partidas.values()) {
+            for (String nickname : partida.elenco) {
+                if (estado.jogadores.containsKey(nickname)) {
+                    ultimaPartida.put(nickname, partida.id);
+                }
+            }
+        }
+        for (EstadoDoDiario.JogadorRestaurado jogador : estado.jogadores.values()) {
+            gravarJogador(canal, jogador);
+        }
+
+        for (EstadoDoDiario.PartidaRestaurada partida : estado.partidas.values()) {
+            ByteBuffer r = novoRegistro(INICIO_PARTIDA);
+            r.putInt(partida.id).putShort((short) partida.elenco.length);
+            for (String nickname : partida.elenco) {
+                r = escreverTexto(r, nickname.getBytes(StandardCharsets.UTF_8));
+            }
+            gravar(canal, r);
+
+            int n = partida.elenco.length;
+            r = garantir(novoRegistro(FIM_RODADA), 14 + n * 6);
+            r.putInt(partida.id).putInt(partida.rodada).putInt(-1).putShort((short) n);
+            for (int i = 0; i < n; i++) {
+                r.putShort((short) i).putInt(partida.pontuacoes[i]);
+            }
+            gravar(canal, r);
+            for (int i = 0; i < n; i++) {
+                if (!partida.ativos[i]) {
+                    gravar(canal, novoRegistro(ELIMINACAO).putInt(partida.id).putShort((short) i));
+                } else if (partida.escolhas[i] >= 0) {
+                    gravar(canal, novoRegistro(JOGADA).putInt(partida.id).putInt(partida.rodada).putShort((short) i)
+                                                      .put((byte) partida.escolhas[i]));
+                }
+            }
+        }
+
+        for (EstadoDoDiario.JogadorRestaurado jogador : estado.jogadores.values()) {
+            Integer partida = ultimaPartida.get(jogador.nickname);
+            if (partida != null && partida != jogador.idPartida) {
+                gravarJogador(canal, jogador);
+            }
+            if (jogador.naFila) {
+                gravar(canal, escreverTexto(novoRegistro(ENTRADA_NA_FILA), jogador.nickname.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        ByteBuffer fim = ByteBuffer.allocate(4).putInt(0, FIM_DE_SEGMENTO);
+        while (fim.hasRemaining()) {
+            canal.write(fim);
+        }
+    }
+
+    // Cadastro e, se houver, sessão (com o último endereço) de um jogador restaurado
+    private static void gravarJogador(FileChannel canal, EstadoDoDiario.JogadorRestaurado jogador) throws IOException {
+        byte[] nickname = jogador.nickname.getBytes(StandardCharsets.UTF_8);
+        byte[] ip = jogador.ip.getAddress();
+        ByteBuffer r = garantir(escreverTexto(novoRegistro(CADASTRO), nickname), 20);
+        gravar(canal, r.put((byte) ip.length).put(ip).putShort((short) jogador.porta).put((byte) (jogador.binario ? 1 : 0)));
+        if (jogador.token != 0) {
+            r = garantir(escreverTexto(novoRegistro(SESSAO), nickname), 27);
+            gravar(canal, r.putLong(jogador.token).put((byte) ip.length).put(ip).putShort((short) jogador.porta));
+        }
+    }
+
+    private static void gravar(FileChannel canal, ByteBuffer r) throws IOException {
+        selar(r);
+        r.flip();
+        while (r.hasRemaining()) {
+            canal.write(r);
+        }
+    }
+
+    // Sincroniza os segmentos escritos desde a posição sincronizado (-1: todos os mapeados).
+    // Devolve a nova posição sincronizada.
+    static long sincronizar(long sincronizado) {
+        long ate = posicao.get();
+        if (ate == sincronizado) {
+            return sincronizado;
+        }
+        long inicio = System.nanoTime();
+        MappedByteBuffer[] atuais = mapeados;
+        int de = sincronizado < 0 ? 0 : (int) (sincronizado / tamanhoSegmento);
+        int ateSegmento = (int) Math.min(ate / tamanhoSegmento, atuais.length - 1);
+        for (int s = de; s <= ateSegmento; s++) {
+            if (atuais[s] != null) {
+                atuais[s].force();
+            }
+        }
+        Metricas.DIARIO_SINCRONIZACOES.increment();
+        Metricas.DURACAO_SINCRONIZACAO_DIARIO.registrarDesde(inicio);
+        liberarAntigos(ateSegmento);
+        return ate;
+    }
+
+    // Registros (ignorados se o diário não foi aberto)
+
+    static void cadastro(Jogador jogador) {
+        if (!ativo) {
+            return;
+        }
+        ByteBuffer r = novoRegistro(CADASTRO);
+        r = garantir(escreverTexto(r, jogador.nicknameUtf8), 20);
+        InetSocketAddress endereco = jogador.endereco;
+        byte[] ip = endereco.getAddress().getAddress();
+        r.put((byte) ip.length).put(ip).putShort((short) endereco.getPort()).put((byte) (jogador.binario ? 1 : 0));
+        escrever(r);
+    }
+
+    static void sessao(Jogador jogador) {
+        if (!ativo) {
+            return;
+        }
+        ByteBuffer r = novoRegistro(SESSAO);
+        r = garantir(escreverTexto(r, jogador.nicknameUtf8), 27);
+        InetSocketAddress endereco = jogador.endereco;
+        byte[] ip = endereco.getAddress().getAddress();
+        r.putLong(jogador.token).put((byte) ip.length).put(ip).putShort((short) endereco.getPort());
+        escrever(r);
+    }
+
+    static void saida(Jogador jogador) {
+        if (!ativo) {
+            return;
+        }
+        escrever(escreverTexto(novoRegistro(SAIDA), jogador.nicknameUtf8));
+    }
+
+    static void entradaNaFila(Jogador jogador) {
+        if (!ativo) {
+            return;
+        }
+        escrever(escreverTexto(novoRegistro(ENTRADA_NA_FILA), jogador.nicknameUtf8));
+    }
+
+    static void inicioPartida(int idPartida, Jogador[] elenco, int n) {
+        if (!ativo) {
+            return;
+        }
+        ByteBuffer r = novoRegistro(INICIO_PARTIDA);
+        r.putInt(idPartida).putShort((short) n);
+        for (int i = 0; i < n; i++) {
+            r = escreverTexto(r, elenco[i].nicknameUtf8);
+        }
+        escrever(r);
+    }
+
+    static void jogada(int idPartida, int rodada, int indice, int escolha) {
+        if (!ativo) {
+            return;
+        }
+        escrever(novoRegistro(JOGADA).putInt(idPartida).putInt(rodada).putShort((short) indice).put((byte) escolha));
+    }
+
+    // Placar dos jogadores ativos ao fim de uma rodada (alvo -1: placar restaurado, sem rodada)
+    static void fimRodada(int idPartida, int proximaRodada, int alvoCentesimos, Jogador[] ativos, int n) {
+        if (!ativo) {
+            return;
+        }
+        ByteBuffer r = garantir(novoRegistro(FIM_RODADA), 14 + n * 6);
+        r.putInt(idPartida).putInt(proximaRodada).putInt(alvoCentesimos).putShort((short) n);
+        for (int i = 0; i < n; i++) {
+            r.putShort((short) ativos[i].indiceNoElenco).putInt(ativos[i].pontuacao);
+        }
+        escrever(r);
+    }
+
+    static void eliminacao(int idPartida, int indice) {
+        if (!ativo) {
+            return;
+        }
+        escrever(novoRegistro(ELIMINACAO).putInt(idPartida).putShort((short) indice));
+    }
+
+    static void fimPartida(int idPartida) {
+        if (!ativo) {
+            return;
+        }
+        escrever(novoRegistro(FIM_PARTIDA).putInt(idPartida));
+    }
+
+    // Começa um registro no rascunho da thread (o tamanho é preenchido em escrever())
+    private static ByteBuffer novoRegistro(byte tipo) {
+        ByteBuffer r = ESCRITOR.get().rascunho;
+        r.clear();
+        r.putInt(0).put(tipo);
+        return r;
+    }
+
+    // Garante espaço no rascunho (só cresce para elencos grandes)
+    private static ByteBuffer garantir(ByteBuffer r, int bytes) {
+        if (r.remaining() >= bytes + 4) {
+            return r;
+        }
+        Escritor escritor = ESCRITOR.get();
+        ByteBuffer maior = ByteBuffer.allocate(Math.max(r.capacity() * 2, r.position() + bytes + 4));
+        r.flip();
+        maior.put(r);
+        escritor.rascunho = maior;
+        return maior;
+    }
+
+    private static ByteBuffer escreverTexto(ByteBuffer r, byte[] texto) {
+        r = garantir(r, 2 + texto.length);
+        return r.putShort((short) texto.length).put(texto);
+    }
+
+    // Fecha o registro no rascunho: CRC no fim e tamanho no começo. Devolve o tamanho.
+    private static int selar(ByteBuffer r) {
+        Escritor escritor = ESCRITOR.get();
+        escritor.crc.reset();
+        ByteBuffer corpo = r.duplicate();
+        corpo.flip().position(4);
+        escritor.crc.update(corpo);
+        r.putInt((int) escritor.crc.getValue());
+        r.putInt(0, r.position());
+        return r.position();
+    }
+
+    // Fecha o registro, reserva o espaço e copia para o segmento (o tamanho vai por último)
+    private static void escrever(ByteBuffer r) {
+        Escritor escritor = ESCRITOR.get();
+        int tamanho = selar(r);
+        if (tamanho > tamanhoSegmento - 4) {
+            Registro.erro("Registro do diário maior que o segmento: {T}", Integer.toString(tamanho), null);
+            return;
+        }
+
+        // Reserva: se o registro não cabe no resto do segmento, quem ganhar o CAS marca o fim do
+        // segmento e todos tentam de novo no próximo
+        long inicio;
+        while (true) {
+            inicio = posicao.get();
+            int noSegmento = (int) (inicio % tamanhoSegmento);
+            if (noSegmento + tamanho + 4 > tamanhoSegmento) {
+                long proximo = inicio - noSegmento + tamanhoSegmento;
+                if (posicao.compareAndSet(inicio, proximo)) {
+                    segmento((int) (inicio / tamanhoSegmento)).putInt(noSegmento, FIM_DE_SEGMENTO);
+                }
+                continue;
+            }
+            if (posicao.compareAndSet(inicio, inicio + tamanho)) {
+                break;
+            }
+        }
+
+        int numero = (int) (inicio / tamanhoSegmento);
+        int noSegmento = (int) (inicio % tamanhoSegmento);
+        if (escritor.vistaDe != numero) {
+            escritor.vista = segmento(numero).duplicate();
+            escritor.vistaDe = numero;
+        }
+        r.flip().position(4);
+        escritor.vista.position(noSegmento + 4);
+        escritor.vista.put(r);
+        escritor.vista.putInt(noSegmento, tamanho); // Por último: o registro está completo
+        Metricas.DIARIO_REGISTROS.increment();
+    }
+
+    // Segmento mapeado de número (relativo) s; mapeia na hora se ainda não foi
+    private static MappedByteBuffer segmento(int s) {
+        MappedByteBuffer[] atuais = mapeados;
+        if (s < atuais.length && atuais[s] != null) {
+            return atuais[s];
+        }
+        return mapear(s);
+    }
+
+    private static synchronized MappedByteBuffer mapear(int s) {
+        while (segmentos.size() <= s) {
+            segmentos.add(abrirSegmento(segmentos.size()));
+            mapeados = segmentos.toArray(new MappedByteBuffer[0]);
+        }
+        if (segmentos.get(s) == null) {
+            // Já liberado, mas um escritor atrasado ainda vai escrever nele
+            segmentos.set(s, abrirSegmento(s));
+            mapeados = segmentos.toArray(new MappedByteBuffer[0]);
+        }
+        return segmentos.get(s);
+    }
+
+    private static MappedByteBuffer abrirSegmento(int s) {
+        Path arquivo = arquivoDoSegmento(s);
+        try (RandomAccessFile raf = new RandomAccessFile(arquivo.toFile(), "rw")) {
+            if (raf.length() != tamanhoSegmento) {
+                raf.setLength(tamanhoSegmento);
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, tamanhoSegmento);
+        } catch (IOException e) {
+            throw new IllegalStateException("Não foi possível abrir o segmento do diário " + arquivo, e);
+        }
+    }
+
+    private static Path arquivoDoSegmento(int s) {
+        return diretorio.resolve(String.format("%s%06d%s", PREFIXO, primeiroSegmento + s, SUFIXO));
+    }
+
+    // Solta os mapeamentos dos segmentos já sincronizados e que ninguém mais vai escrever
+    private static synchronized void liberarAntigos(int atual) {
+        boolean mudou = false;
+        for (int s = 0; s < atual && s < segmentos.size(); s++) {
+            if (segmentos.get(s) != null) {
+                segmentos.set(s, null);
+                mudou = true;
+            }
+        }
+        if (mudou) {
+            mapeados = segmentos.toArray(new MappedByteBuffer[0]);
+        }
+    }
+
+    // Leitura
+
+    // Lê todos os segmentos do diretório em ordem e entrega cada registro ao leitor. Para no
+    // primeiro registro incompleto ou corrompido (o que vem depois dele não é confiável).
+    // Devolve o número de registros lidos.
+    static long ler(Path dir, Leitor leitor) throws IOException {
+        return lerArquivos(listarSegmentos(dir), leitor);
+    }
+
+    private static long lerArquivos(List<Path> arquivos, Leitor leitor) throws IOException {
+        long lidos = 0;
+        CRC32C crc = new CRC32C();
+        for (Path arquivo : arquivos) {
+            ByteBuffer segmento;
+            try (FileChannel canal = FileChannel.open(arquivo)) {
+                segmento = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            }
+            int p = 0;
+            while (true) {
+                if (p + 4 > segmento.limit()) {
+                    break;
+                }
+                int tamanho = segmento.getInt(p);
+                if (tamanho == FIM_DE_SEGMENTO) {
+                    break;
+                }
+                if (tamanho == 0) {
+                    return lidos; // Fim do diário (ou registro pela metade)
+                }
+                if (tamanho < CABECALHO + 4 || p + tamanho > segmento.limit()) {
+                    Registro.erro("Diário: registro inválido em {T}, posição {U}", arquivo.toString(), Integer.toString(p));
+                    return lidos;
+                }
+                ByteBuffer corpo = segmento.duplicate();
+                corpo.limit(p + tamanho - 4).position(p + 4);
+                crc.reset();
+                crc.update(corpo.duplicate());
+                if ((int) crc.getValue() != segmento.getInt(p + tamanho - 4)) {
+                    Registro.erro("Diário: CRC não confere em {T}, posição {U}", arquivo.toString(), Integer.toString(p));
+                    return lidos;
+                }
+                byte tipo = corpo.get();
+                leitor.registro(tipo, corpo.slice());
+                lidos++;
+                p += tamanho;
+            }
+        }
+        return lidos;
+    }
+
+    // Todos os registros do segmento estão completos até a marca de fim (ninguém mais escreve nele)
+    private static boolean fechado(Path arquivo) throws IOException {
+        ByteBuffer segmento;
+        try (FileChannel canal = FileChannel.open(arquivo)) {
+            segmento = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        int p = 0;
+        while (p + 4 <= segmento.limit()) {
+            int tamanho = segmento.getInt(p);
+            if (tamanho == FIM_DE_SEGMENTO) {
+                return true;
+            }
+            if (tamanho < CABECALHO + 4) {
+                return false;
+            }
+            p += tamanho;
+        }
+        return false;
+    }
+
+    static String lerTexto(ByteBuffer carga) {
+        int n = carga.getShort() & 0xFFFF;
+        byte[] bytes = new byte[n];
+        carga.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static InetAddress lerEndereco(ByteBuffer carga) {
+        byte[] ip = new byte[carga.get()];
+        carga.get(ip);
+        try {
+            return InetAddress.getByAddress(ip);
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e); // Só acontece com um tamanho de IP inválido
+        }
+    }
+
+    // Descrição legível de um registro (ferramenta de reprodução)
+    static String descrever(byte tipo, ByteBuffer carga) {
+        ByteBuffer c = carga.duplicate();
+        switch (tipo) {
+            case PONTO_DE_CONTROLE:
+                return "PONTO_DE_CONTROLE" + (c.remaining() >= 4 ? " maior partida #" + c.getInt() : "");
+            case CADASTRO: {
+                String nickname = lerTexto(c);
+                InetAddress ip = lerEndereco(c);
+                int porta = c.getShort() & 0xFFFF;
+                return "CADASTRO " + nickname + " " + ip.getHostAddress() + ":" + porta + (c.get() != 0 ? " binário" : " texto");
+            }
+            case SAIDA:
+                return "SAIDA " + lerTexto(c);
+            case ENTRADA_NA_FILA:
+                return "ENTRADA_NA_FILA " + lerTexto(c);
+            case INICIO_PARTIDA: {
+                StringBuilder texto = new StringBuilder("INICIO_PARTIDA #").append(c.getInt());
+                int n = c.getShort();
+                for (int i = 0; i < n; i++) {
+                    texto.append(' ').append(i).append('=').append(lerTexto(c));
+                }
+                return texto.toString();
+            }
+            case JOGADA:
+                return "JOGADA #" + c.getInt() + " rodada " + c.getInt() + " jogador " + c.getShort() + " escolheu " + c.get();
+            case FIM_RODADA: {
+                StringBuilder texto = new StringBuilder("FIM_RODADA #").append(c.getInt()).append(" próxima rodada ").append(c.getInt());
+                int alvo = c.getInt();
+                if (alvo >= 0) {
+                    texto.append(" alvo ").append(alvo / 100).append('.').append(String.format("%02d", alvo % 100));
+                }
+                int n = c.getShort();
+                texto.append(" placar");
+                for (int i = 0; i < n; i++) {
+                    texto.append(' ').append(c.getShort()).append('=').append(c.getInt());
+                }
+                return texto.toString();
+            }
+            case ELIMINACAO:
+                return "ELIMINACAO #" + c.getInt() + " jogador " + c.getShort();
+            case FIM_PARTIDA:
+                return "FIM_PARTIDA #" + c.getInt();
+            case SESSAO: {
+                String nickname = lerTexto(c);
+                long token = c.getLong();
+                InetAddress ip = lerEndereco(c);
+                return "SESSAO " + nickname + " token " + Long.toHexString(token) + " " + ip.getHostAddress() + ":" + (c.getShort() & 0xFFFF);
+            }
+            default:
+                return "DESCONHECIDO " + tipo;
+        }
+    }
+
+    private static List<Path> listarSegmentos(Path dir) throws IOException {
+        List<Path> arquivos = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return arquivos;
+        }
+        try (DirectoryStream<Path> lista = Files.newDirectoryStream(dir, PREFIXO + "*" + SUFIXO)) {
+            for (Path arquivo : lista) {
+                arquivos.add(arquivo);
+            }
+        }
+        arquivos.sort((a, b) -> Integer.compare(numeroDoSegmento(a), numeroDoSegmento(b)));
+        return arquivos;
+    }
+
+    private static int numeroDoSegmento(Path arquivo) {
+        String nome = arquivo.getFileName().toString();
+        return Integer.parseInt(nome.substring(PREFIXO.length(), nome.length() - SUFIXO.length()));
+    }
+}
@@ -0,0 +1,326 @@
+package src;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Gerador de carga: simula milhares de clientes JogadorUDP (protocolo binário) sem console.
+// Cada jogador simulado segue o mesmo caminho de um jogador de verdade: cadastro, opção 2 do
+// menu e uma jogada a cada pedido do servidor; quando a partida acaba ele se cadastra de novo.
+//
+// O servidor identifica o jogador pelo endereço de origem, então cada jogador simulado tem o
+// seu próprio DatagramChannel (a sua porta). Os canais não são bloqueantes e são divididos
+// entre poucas threads, cada uma com um Selector. O protocolo fica com um ClienteDoJogo
+// embutido por jogador (sem socket nem thread próprios), o mesmo runtime do JogadorUDP: a
+// thread do Selector entrega a ele os datagramas e reage aos eventos que ele decodifica.
+//
+// Uso: java src.EnxameUDP [--jogadores=2000] [--threads=2] [--segundos=30]
+//                         [--estrategia=aleatoria|fixa:N|iterada] [--servidor=localhost] [--porta=3000]
+//                         [--confiavel] [--perda=F] [--reordenacao=F]
+//
+// Com --confiavel cada jogador simulado usa a entrega confiável (ver SessaoConfiavel), como o
+// JogadorUDP: quem retransmite é a sessão do cliente, não o enxame. --perda e --reordenacao
+// (frações, como 0.1) perdem e atrasam de propósito os datagramas das sessões, nos dois
+// sentidos do lado do enxame, para conferir que as rodadas terminam mesmo com perda.
+//
+// No fim são informados cadastros/s, rodadas/s, os percentis da latência da rodada (do envio
+// da jogada até o fim da rodada chegar) e a perda (pedidos que ficaram sem resposta).
+public class EnxameUDP {
+
+    private static final int PORTA_ESTATISTICAS = 3001;
+    private static final long ESPERA_RESPOSTA_NANOS = TimeUnit.SECONDS.toNanos(2); // Depois disso o pedido conta como perdido
+
+    // O que o jogador simulado espera do servidor
+    private static final byte ESPERA_NADA = 0;
+    private static final byte ESPERA_MENU = 1;       // Cadastro enviado
+    private static final byte ESPERA_QUALQUER = 2;   // Opção 2 enviada (aguardando, contagem ou início de partida)
+    private static final byte ESPERA_CONFIRMACAO = 3; // Jogada enviada
+
+    private static final LongAdder cadastros = new LongAdder();
+    private static final LongAdder cadastrosRecusados = new LongAdder();
+    private static final LongAdder resultadosDeRodada = new LongAdder();
+    private static final LongAdder partidasTerminadas = new LongAdder();
+    private static final LongAdder pedidos = new LongAdder();
+    private static final LongAdder pedidosPerdidos = new LongAdder();
+    private static final Histograma latenciaRodada = new Histograma();
+
+    private static volatile boolean executando = true;
+
+    // Entrega confiável (--confiavel): uma roda de tempo para as retransmissões de todas as sessões
+    private static boolean confiavel;
+    private static double perda;
+    private static double reordenacao;
+    private static RodaDeTempo relogio;
+
+    // Estado de um jogador simulado (só a thread dona dele mexe), que recebe os eventos do cliente dele
+    private static final class Simulado implements ClienteDoJogo.Ouvinte {
+        final DatagramChannel canal;
+        final ClienteDoJogo cliente;
+        final EstrategiaDeJogada estrategia;
+        final SplittableRandom aleatorio; // O da thread dona
+        byte espera = ESPERA_NADA;
+        long esperaDesde;
+        long jogadaEnviadaEm;
+        int ultimoAlvo = -1;
+
+        Simulado(DatagramChannel canal, InetSocketAddress destino, EstrategiaDeJogada estrategia, SplittableRandom aleatorio) {
+            this.canal = canal;
+            this.estrategia = estrategia;
+            this.aleatorio = aleatorio;
+            // A perda simulada só vale para as sessões confiáveis
+            this.cliente = new ClienteDoJogo(destino, canal::write, confiavel ? relogio : null, confiavel ? perda : 0,
+                                             confiavel ? reordenacao : 0, this);
+        }
+
+        @Override
+        public void evento(EventoDoJogo evento) {
+            try {
+                tratarEvento(this, evento);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int jogadores = 2000;
+        int threads = 2;
+        int segundos = 30;
+        String estrategia = "aleatoria";
+        String servidor = "localhost";
+        int porta = 3000;
+        for (String arg : args) {
+            String valor = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--jogadores=")) {
+                jogadores = Integer.parseInt(valor);
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(valor);
+            } else if (arg.startsWith("--segundos=")) {
+                segundos = Integer.parseInt(valor);
+            } else if (arg.startsWith("--estrategia=")) {
+                estrategia = valor;
+            } else if (arg.startsWith("--servidor=")) {
+                servidor = valor;
+            } else if (arg.startsWith("--porta=")) {
+                porta = Integer.parseInt(valor);
+            } else if (arg.equals("--confiavel")) {
+                confiavel = true;
+            } else if (arg.startsWith("--perda=")) {
+                perda = Double.parseDouble(valor);
+            } else if (arg.startsWith("--reordenacao=")) {
+                reordenacao = Double.parseDouble(valor);
+            }
+        }
+        if (confiavel) {
+            relogio = new RodaDeTempo("relogio-enxame", 20, 1024);
+            relogio.iniciar();
+        }
+        EstrategiaDeJogada escolha = EstrategiaDeJogada.criar(estrategia);
+        InetSocketAddress destino = new InetSocketAddress(InetAddress.getByName(servidor), porta);
+        String prefixo = "enx" + Long.toString(System.nanoTime() % 1_000_000, 36) + "-";
+
+        System.out.println("Enxame: " + jogadores + " jogadores, " + threads + " thread(s), estratégia " + estrategia
+                           + ", " + segundos + " s contra " + destino
+                           + (confiavel ? String.format(" (confiável, perda %.0f%%, reordenação %.0f%%)", perda * 100, reordenacao * 100) : ""));
+        long rodadasServidorAntes = rodadasProcessadasNoServidor(destino.getAddress());
+
+        List<Thread> trabalhadores = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            List<Simulado> meus = new ArrayList<>();
+            List<String> nicknames = new ArrayList<>();
+            SplittableRandom aleatorio = new SplittableRandom();
+            for (int i = t; i < jogadores; i += threads) {
+                DatagramChannel canal = DatagramChannel.open();
+                canal.configureBlocking(false);
+                canal.connect(destino);
+                meus.add(new Simulado(canal, destino, escolha, aleatorio));
+                nicknames.add(prefixo + i);
+            }
+            Thread trabalhador = new Thread(() -> executar(meus, nicknames), "enxame-" + t);
+            trabalhadores.add(trabalhador);
+        }
+
+        long inicio = System.nanoTime();
+        for (Thread trabalhador : trabalhadores) {
+            trabalhador.start();
+        }
+        for (int s = 1; s <= segundos; s++) {
+            Thread.sleep(1000);
+            if (s % 5 == 0 && s < segundos) {
+                System.out.println("  " + s + " s: " + cadastros.sum() + " cadastros, " + resultadosDeRodada.sum() + " resultados de rodada, "
+                                   + pedidosPerdidos.sum() + " pedidos perdidos");
+            }
+        }
+        executando = false;
+        for (Thread trabalhador : trabalhadores) {
+            trabalhador.join();
+        }
+        double duracao = (System.nanoTime() - inicio) / 1e9;
+        long rodadasServidorDepois = rodadasProcessadasNoServidor(destino.getAddress());
+
+        System.out.println("==== Resultado ====");
+        System.out.printf("Cadastros:           %d (%.1f/s), %d recusados%n", cadastros.sum(), cadastros.sum() / duracao, cadastrosRecusados.sum());
+        System.out.printf("Resultados de rodada: %d (%.1f/s, somando todos os jogadores)%n", resultadosDeRodada.sum(), resultadosDeRodada.sum() / duracao);
+        if (rodadasServidorAntes >= 0 && rodadasServidorDepois >= 0) {
+            long rodadas = rodadasServidorDepois - rodadasServidorAntes;
+            System.out.printf("Rodadas no servidor: %d (%.1f/s)%n", rodadas, rodadas / duracao);
+        }
+        System.out.printf("Partidas terminadas: %d (do ponto de vista dos jogadores)%n", partidasTerminadas.sum());
+        System.out.printf("Latência da rodada:  p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, máx %.2f ms%n",
+                          latenciaRodada.percentil(50) / 1e6, latenciaRodada.percentil(90) / 1e6,
+                          latenciaRodada.percentil(99) / 1e6, latenciaRodada.maximo() / 1e6);
+        long enviados = pedidos.sum();
+        System.out.printf("Perda:               %d de %d pedidos sem resposta em %d s (%.2f%%)%n", pedidosPerdidos.sum(), enviados,
+                          TimeUnit.NANOSECONDS.toSeconds(ESPERA_RESPOSTA_NANOS), enviados == 0 ? 0.0 : 100.0 * pedidosPerdidos.sum() / enviados);
+        if (confiavel) {
+            System.out.printf("Retransmissões:      %d (do enxame)%n", Metricas.RETRANSMISSOES.sum());
+            relogio.parar();
+        }
+    }
+
+    // Laço de uma thread do enxame: recebe de todos os canais dela pelo Selector e, a cada
+    // 100 ms, reenvia os pedidos que ficaram sem resposta
+    private static void executar(List<Simulado> simulados, List<String> nicknames) {
+        ByteBuffer recebido = ByteBuffer.allocateDirect(LoteDeSaida.TAMANHO_MAXIMO + 64);
+        try (Selector seletor = Selector.open()) {
+            for (int i = 0; i < simulados.size(); i++) {
+                Simulado s = simulados.get(i);
+                s.canal.register(seletor, SelectionKey.OP_READ, s);
+                s.cliente.conectar(nicknames.get(i));
+                enviado(s, ESPERA_MENU);
+            }
+            long proximaVerificacao = System.nanoTime();
+            while (executando) {
+                seletor.select(100);
+                for (SelectionKey chave : seletor.selectedKeys()) {
+                    Simulado s = (Simulado) chave.attachment();
+                    while (true) {
+                        recebido.clear();
+                        if (s.canal.receive(recebido) == null) {
+                            break;
+                        }
+                        recebido.flip();
+                        s.cliente.receberDatagrama(recebido);
+                    }
+                }
+                seletor.selectedKeys().clear();
+
+                long agora = System.nanoTime();
+                if (agora >= proximaVerificacao) {
+                    proximaVerificacao = agora + TimeUnit.MILLISECONDS.toNanos(100);
+                    for (Simulado s : simulados) {
+                        if (s.espera != ESPERA_NADA && agora - s.esperaDesde > ESPERA_RESPOSTA_NANOS) {
+                            pedidosPerdidos.increment();
+                            if (confiavel) {
+                                s.esperaDesde = agora; // A sessão é que retransmite: só conta o atraso
+                            } else {
+                                s.cliente.reenviar(); // O último enviado é o pedido sem resposta
+                                enviado(s, s.espera);
+                            }
+                        }
+                    }
+                }
+            }
+            // Sai do jogo, para o servidor liberar os nicknames
+            for (Simulado s : simulados) {
+                s.cliente.sair();
+                s.cliente.close();
+                s.canal.close();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Erro na thread do enxame: " + e.getMessage());
+        }
+    }
+
+    // Reação do jogador simulado a uma mensagem do servidor, já decodificada pelo cliente dele
+    private static void tratarEvento(Simulado s, EventoDoJogo evento) throws IOException {
+        if (s.espera == ESPERA_QUALQUER) {
+            s.espera = ESPERA_NADA;
+        }
+        switch (evento.tipo) {
+            case ProtocoloBinario.OP_MENU:
+                if (s.espera == ESPERA_MENU) {
+                    cadastros.increment();
+                }
+                s.cliente.responder(2);
+                enviado(s, ESPERA_QUALQUER);
+                break;
+            case ProtocoloBinario.OP_ERRO_CADASTRO:
+                cadastrosRecusados.increment();
+                s.espera = ESPERA_NADA;
+                break;
+            case ProtocoloBinario.OP_PEDIR_JOGADA:
+                s.cliente.responder(s.estrategia.escolher(s.ultimoAlvo, s.aleatorio));
+                enviado(s, ESPERA_CONFIRMACAO);
+                s.jogadaEnviadaEm = s.esperaDesde;
+                break;
+            case ProtocoloBinario.OP_JOGADA_CONFIRMADA:
+                if (s.espera == ESPERA_CONFIRMACAO) {
+                    s.espera = ESPERA_NADA;
+                }
+                break;
+            case ProtocoloBinario.OP_FIM_RODADA:
+                if (s.jogadaEnviadaEm != 0) {
+                    latenciaRodada.registrarDesde(s.jogadaEnviadaEm);
+                    s.jogadaEnviadaEm = 0;
+                }
+                resultadosDeRodada.increment();
+                s.ultimoAlvo = evento.a;
+                break;
+            case ProtocoloBinario.OP_ELIMINADO:
+            case ProtocoloBinario.OP_VENCEDOR:
+            case ProtocoloBinario.OP_FALTA_JOGADORES:
+                // A partida acabou para este jogador e o servidor o descadastrou: volta ao começo
+                partidasTerminadas.increment();
+                s.ultimoAlvo = -1;
+                s.jogadaEnviadaEm = 0;
+                s.cliente.recadastrar();
+                enviado(s, ESPERA_MENU);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Conta um pedido enviado ao servidor, que fica esperando a resposta
+    private static void enviado(Simulado s, byte espera) {
+        pedidos.increment();
+        s.espera = espera;
+        s.esperaDesde = System.nanoTime();
+    }
+
+    // Rodadas processadas segundo a porta de estatísticas do servidor (-1 se ela não responder)
+    private static long rodadasProcessadasNoServidor(InetAddress servidor) {
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(500);
+            socket.send(new DatagramPacket(new byte[1], 1, servidor, PORTA_ESTATISTICAS));
+            byte[] resposta = new byte[8192];
+            DatagramPacket pacote = new DatagramPacket(resposta, resposta.length);
+            socket.receive(pacote);
+            for (String linha : new String(resposta, 0, pacote.getLength(), StandardCharsets.UTF_8).split("\n")) {
+                if (linha.startsWith("rodadas_processadas=")) {
+                    return Long.parseLong(linha.substring("rodadas_processadas=".length()));
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            // Servidor sem a porta de estatísticas (ou em outra máquina)
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Não foi possível ler as estatísticas do servidor: " + e.getMessage());
+        }
+        return -1;
+    }
+}
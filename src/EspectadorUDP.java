@@ -0,0 +1,215 @@
+package src;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.TimeUnit;
+
+// Espectador: assiste às partidas sem jogar (ver Plateia). Mostra o resultado de cada rodada
+// (alvo, a escolha e o placar de cada jogador, eliminações) e, no fim, o vencedor; depois
+// passa à partida mais recente. Cada resultado é confirmado ao servidor, o que mantém a
+// inscrição viva. O primeiro pedido só traz de volta o biscoito do endereço, que vai em todos
+// os pedidos seguintes (ver Plateia).
+//
+// Uso: java src.EspectadorUDP [--servidor=localhost:3000] [--partida=N]
+//      java src.EspectadorUDP --espectadores=2000   (teste de carga: só as contagens)
+//      java src.EspectadorUDP --grupo=239.255.0.77:4460   (modo multicast do juiz, sem inscrição)
+public class EspectadorUDP {
+
+    private static final long RENOVACAO_NANOS = TimeUnit.SECONDS.toNanos(3);
+    // Resultados de partidas grandes chegam fragmentados (ver Fragmentos)
+    private static final int MEMORIA_REMONTAGEM = 1 << 20;
+    private static final long PRAZO_REMONTAGEM_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    public static void main(String[] args) throws IOException {
+        String servidor = "localhost:3000";
+        String grupo = null;
+        int partida = 0;
+        int espectadores = 1;
+        for (String arg : args) {
+            if (arg.startsWith("--servidor=")) {
+                servidor = arg.substring("--servidor=".length());
+            } else if (arg.startsWith("--partida=")) {
+                partida = Integer.parseInt(arg.substring("--partida=".length()));
+            } else if (arg.startsWith("--espectadores=")) {
+                espectadores = Integer.parseInt(arg.substring("--espectadores=".length()));
+            } else if (arg.startsWith("--grupo=")) {
+                grupo = arg.substring("--grupo=".length());
+            }
+        }
+        if (grupo != null) {
+            assistirNoGrupo(RoteadorUDP.lerEndereco(grupo), partida);
+        } else {
+            assistir(RoteadorUDP.lerEndereco(servidor), partida, espectadores);
+        }
+    }
+
+    // Um ou vários espectadores inscritos no servidor, cada um com o seu canal, num único Selector
+    private static void assistir(InetSocketAddress servidor, int partidaPedida, int n) throws IOException {
+        boolean detalhado = n == 1;
+        Selector seletor = Selector.open();
+        DatagramChannel[] canais = new DatagramChannel[n];
+        int[] partidas = new int[n];
+        int[] vistas = new int[n];
+        long[] biscoitos = new long[n];
+        ByteBuffer envio = ByteBuffer.allocate(ProtocoloBinario.TAMANHO_CABECALHO + 12);
+        ByteBuffer recebido = ByteBuffer.allocate(64 * 1024);
+        Remontagem remontagem = new Remontagem(Fragmentos.TAMANHO_MAXIMO_MENSAGEM, MEMORIA_REMONTAGEM, PRAZO_REMONTAGEM_NANOS,
+                                               Integer.MAX_VALUE);
+        for (int i = 0; i < n; i++) {
+            canais[i] = DatagramChannel.open();
+            canais[i].configureBlocking(false);
+            canais[i].connect(servidor);
+            canais[i].register(seletor, SelectionKey.OP_READ, i);
+            partidas[i] = partidaPedida;
+            pedir(canais[i], envio, partidaPedida, 0, 0);
+        }
+
+        long resultados = 0;
+        long resultadosAntes = 0;
+        long proximaRenovacao = System.nanoTime() + RENOVACAO_NANOS;
+        long proximoResumo = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (true) {
+            seletor.select(200);
+            for (SelectionKey chave : seletor.selectedKeys()) {
+                int i = (Integer) chave.attachment();
+                while (true) {
+                    recebido.clear();
+                    try {
+                        if (canais[i].receive(recebido) == null) {
+                            break;
+                        }
+                    } catch (IOException e) {
+                        break; // Porta fechada do outro lado (servidor ainda não subiu): a renovação tenta de novo
+                    }
+                    recebido.flip();
+                    if (!ProtocoloBinario.ehBinario(recebido) || !ProtocoloBinario.cargaValida(recebido)) {
+                        continue;
+                    }
+                    if (ProtocoloBinario.opcode(recebido) == ProtocoloBinario.OP_FRAGMENTO) {
+                        ByteBuffer mensagem = remontagem.receber(canais[i], recebido, System.nanoTime()); // A origem é o canal
+                        if (mensagem == null) {
+                            continue;
+                        }
+                        recebido.clear();
+                        recebido.put(mensagem).flip();
+                        remontagem.devolver(mensagem);
+                        if (!ProtocoloBinario.ehBinario(recebido) || !ProtocoloBinario.cargaValida(recebido)) {
+                            continue;
+                        }
+                    }
+                    int id = ProtocoloBinario.idPartida(recebido);
+                    switch (ProtocoloBinario.opcode(recebido)) {
+                        case ProtocoloBinario.OP_ASSISTINDO:
+                            partidas[i] = id;
+                            biscoitos[i] = ProtocoloBinario.argumentoLongo(recebido, 1);
+                            if (ProtocoloBinario.argumento(recebido, 0) < 0) {
+                                pedir(canais[i], envio, id, vistas[i], biscoitos[i]); // Agora com o biscoito
+                                break;
+                            }
+                            if (detalhado) {
+                                System.out.println(id == 0 ? "Nenhuma partida em andamento. Tentando de novo..."
+                                        : "Assistindo à partida #" + id + " (" + ProtocoloBinario.argumento(recebido, 0) + " espectadores).");
+                            }
+                            break;
+                        case ProtocoloBinario.OP_PLATEIA_RODADA:
+                            resultados++;
+                            vistas[i] = ProtocoloBinario.rodada(recebido);
+                            if (detalhado) {
+                                System.out.println(Plateia.descreverRodada(recebido));
+                            }
+                            pedir(canais[i], envio, id, vistas[i], biscoitos[i]); // Confirma e renova
+                            break;
+                        case ProtocoloBinario.OP_PLATEIA_FIM:
+                            if (detalhado) {
+                                String vencedor = DecodificadorTexto.lerTexto(ProtocoloBinario.cargaTexto(recebido));
+                                System.out.println("Fim da partida #" + id + (vencedor.isEmpty() ? ", sem vencedor." : ". Vencedor(a): " + vencedor));
+                            }
+                            partidas[i] = 0;
+                            vistas[i] = 0;
+                            pedir(canais[i], envio, 0, 0, biscoitos[i]); // Próxima partida
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            }
+            seletor.selectedKeys().clear();
+
+            long agora = System.nanoTime();
+            if (agora - proximaRenovacao >= 0) { // Renova a inscrição (ou tenta de novo quem ainda não tem partida)
+                for (int i = 0; i < n; i++) {
+                    pedir(canais[i], envio, partidas[i], vistas[i], biscoitos[i]);
+                }
+                proximaRenovacao = agora + RENOVACAO_NANOS;
+            }
+            if (!detalhado && agora - proximoResumo >= 0) {
+                int inscritos = 0;
+                for (int partida : partidas) {
+                    if (partida != 0) {
+                        inscritos++;
+                    }
+                }
+                System.out.println(inscritos + " de " + n + " espectadores inscritos, " + (resultados - resultadosAntes) + " resultados/s");
+                resultadosAntes = resultados;
+                proximoResumo = agora + TimeUnit.SECONDS.toNanos(1);
+            }
+        }
+    }
+
+    private static void pedir(DatagramChannel canal, ByteBuffer envio, int idPartida, int rodadaVista, long biscoito) {
+        envio.clear();
+        ProtocoloBinario.escreverCabecalho(envio, ProtocoloBinario.OP_ASSISTIR, idPartida, 0);
+        envio.putInt(rodadaVista).putLong(biscoito).flip();
+        try {
+            canal.write(envio);
+        } catch (IOException e) {
+            // Servidor fora do ar: a próxima renovação tenta de novo
+        }
+    }
+
+    // Modo multicast: só entra no grupo do juiz (no loopback) e mostra o que chega
+    private static void assistirNoGrupo(InetSocketAddress grupo, int partida) throws IOException {
+        DatagramChannel canal = DatagramChannel.open(StandardProtocolFamily.INET);
+        canal.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        canal.bind(new InetSocketAddress(grupo.getPort()));
+        canal.join(grupo.getAddress(), NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress()));
+        System.out.println("Assistindo no grupo " + grupo.getAddress().getHostAddress() + ":" + grupo.getPort()
+                           + (partida != 0 ? " (partida #" + partida + ")" : "") + ".");
+        ByteBuffer recebido = ByteBuffer.allocate(64 * 1024);
+        Remontagem remontagem = new Remontagem(Fragmentos.TAMANHO_MAXIMO_MENSAGEM, MEMORIA_REMONTAGEM, PRAZO_REMONTAGEM_NANOS,
+                                               Integer.MAX_VALUE);
+        while (true) {
+            recebido.clear();
+            InetSocketAddress origem = (InetSocketAddress) canal.receive(recebido);
+            recebido.flip();
+            if (ProtocoloBinario.ehBinario(recebido) && ProtocoloBinario.opcode(recebido) == ProtocoloBinario.OP_FRAGMENTO
+                    && ProtocoloBinario.cargaValida(recebido)) {
+                ByteBuffer mensagem = remontagem.receber(origem, recebido, System.nanoTime());
+                if (mensagem == null) {
+                    continue;
+                }
+                recebido.clear();
+                recebido.put(mensagem).flip();
+                remontagem.devolver(mensagem);
+            }
+            if (!ProtocoloBinario.ehBinario(recebido) || !ProtocoloBinario.cargaValida(recebido)
+                    || (partida != 0 && ProtocoloBinario.idPartida(recebido) != partida)) {
+                continue;
+            }
+            if (ProtocoloBinario.opcode(recebido) == ProtocoloBinario.OP_PLATEIA_RODADA) {
+                System.out.println(Plateia.descreverRodada(recebido));
+            } else if (ProtocoloBinario.opcode(recebido) == ProtocoloBinario.OP_PLATEIA_FIM) {
+                String vencedor = DecodificadorTexto.lerTexto(ProtocoloBinario.cargaTexto(recebido));
+                System.out.println("Fim da partida #" + ProtocoloBinario.idPartida(recebido) + (vencedor.isEmpty() ? ", sem vencedor." : ". Vencedor(a): " + vencedor));
+            }
+        }
+    }
+}
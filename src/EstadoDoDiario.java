@@ -0,0 +1,174 @@
+package src;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Estado do servidor reconstruído a partir do diário (ver Diario): jogadores cadastrados,
+// quem estava na fila e as partidas em andamento com rodada, placar e jogadas da rodada
+// aberta. É só o estado em dados simples; o JuizUDP recria os jogadores e as partidas a
+// partir dele, e a ferramenta ReproduzirDiario o usa para o resumo.
+final class EstadoDoDiario implements Diario.Leitor {
+
+    static final class JogadorRestaurado {
+        final String nickname;
+        InetAddress ip;   // Último endereço: o do cadastro ou o de uma reassociação da sessão
+        int porta;
+        final boolean binario;
+        long token;       // Token da sessão (0: sem sessão)
+        boolean naFila;
+        int idPartida = -1;
+
+        JogadorRestaurado(String nickname, InetAddress ip, int porta, boolean binario) {
+            this.nickname = nickname;
+            this.ip = ip;
+            this.porta = porta;
+            this.binario = binario;
+        }
+    }
+
+    static final class PartidaRestaurada {
+        final int id;
+        final String[] elenco;   // Índice = posição no elenco quando a partida começou
+        final int[] pontuacoes;
+        final int[] escolhas;    // Jogadas da rodada aberta (-1: ainda não jogou)
+        final boolean[] ativos;  // false: eliminado ou saiu
+        int rodada = 1;
+
+        PartidaRestaurada(int id, String[] elenco) {
+            this.id = id;
+            this.elenco = elenco;
+            this.pontuacoes = new int[elenco.length];
+            this.escolhas = new int[elenco.length];
+            this.ativos = new boolean[elenco.length];
+            Arrays.fill(escolhas, -1);
+            Arrays.fill(ativos, true);
+        }
+
+        int contarAtivos() {
+            int n = 0;
+            for (boolean ativo : ativos) {
+                if (ativo) {
+                    n++;
+                }
+            }
+            return n;
+        }
+    }
+
+    // Em ordem de cadastro
+    final Map<String, JogadorRestaurado> jogadores = new LinkedHashMap<>();
+    final Map<Integer, PartidaRestaurada> partidas = new LinkedHashMap<>();
+    int maiorIdPartida;
+    long registros;
+
+    @Override
+    public void registro(byte tipo, ByteBuffer carga) {
+        registros++;
+        switch (tipo) {
+            case Diario.PONTO_DE_CONTROLE:
+                jogadores.clear();
+                partidas.clear();
+                if (carga.remaining() >= 4) {
+                    maiorIdPartida = Math.max(maiorIdPartida, carga.getInt());
+                }
+                break;
+            case Diario.CADASTRO: {
+                String nickname = Diario.lerTexto(carga);
+                InetAddress ip = Diario.lerEndereco(carga);
+                int porta = carga.getShort() & 0xFFFF;
+                jogadores.put(nickname, new JogadorRestaurado(nickname, ip, porta, carga.get() != 0));
+                break;
+            }
+            case Diario.SESSAO: {
+                JogadorRestaurado jogador = jogadores.get(Diario.lerTexto(carga));
+                long token = carga.getLong();
+                InetAddress ip = Diario.lerEndereco(carga);
+                int porta = carga.getShort() & 0xFFFF;
+                if (jogador != null) {
+                    jogador.token = token;
+                    jogador.ip = ip;
+                    jogador.porta = porta;
+                }
+                break;
+            }
+            case Diario.SAIDA: {
+                JogadorRestaurado jogador = jogadores.remove(Diario.lerTexto(carga));
+                PartidaRestaurada partida = jogador == null ? null : partidas.get(jogador.idPartida);
+                if (partida != null) {
+                    int indice = Arrays.asList(partida.elenco).indexOf(jogador.nickname);
+                    if (indice >= 0) {
+                        partida.ativos[indice] = false;
+                    }
+                }
+                break;
+            }
+            case Diario.ENTRADA_NA_FILA: {
+                JogadorRestaurado jogador = jogadores.get(Diario.lerTexto(carga));
+                if (jogador != null) {
+                    jogador.naFila = true;
+                }
+                break;
+            }
+            case Diario.INICIO_PARTIDA: {
+                int id = carga.getInt();
+                String[] elenco = new String[carga.getShort()];
+                for (int i = 0; i < elenco.length; i++) {
+                    elenco[i] = Diario.lerTexto(carga);
+                    JogadorRestaurado jogador = jogadores.get(elenco[i]);
+                    if (jogador != null) {
+                        jogador.naFila = false;
+                        jogador.idPartida = id;
+                    }
+                }
+                partidas.put(id, new PartidaRestaurada(id, elenco));
+                maiorIdPartida = Math.max(maiorIdPartida, id);
+                break;
+            }
+            case Diario.JOGADA: {
+                PartidaRestaurada partida = partidas.get(carga.getInt());
+                int rodada = carga.getInt();
+                int indice = carga.getShort();
+                int escolha = carga.get();
+                if (partida != null && rodada == partida.rodada && indice < partida.escolhas.length) {
+                    partida.escolhas[indice] = escolha;
+                }
+                break;
+            }
+            case Diario.FIM_RODADA: {
+                PartidaRestaurada partida = partidas.get(carga.getInt());
+                int proximaRodada = carga.getInt();
+                carga.getInt(); // Alvo: só interessa à ferramenta de reprodução
+                int n = carga.getShort();
+                if (partida == null) {
+                    break;
+                }
+                for (int i = 0; i < n; i++) {
+                    int indice = carga.getShort();
+                    int pontuacao = carga.getInt();
+                    if (indice < partida.pontuacoes.length) {
+                        partida.pontuacoes[indice] = pontuacao;
+                    }
+                }
+                partida.rodada = proximaRodada;
+                Arrays.fill(partida.escolhas, -1);
+                break;
+            }
+            case Diario.ELIMINACAO: {
+                PartidaRestaurada partida = partidas.get(carga.getInt());
+                int indice = carga.getShort();
+                if (partida != null && indice < partida.ativos.length) {
+                    partida.ativos[indice] = false;
+                }
+                break;
+            }
+            case Diario.FIM_PARTIDA:
+                partidas.remove(carga.getInt());
+                break;
+            default:
+                break;
+        }
+    }
+}
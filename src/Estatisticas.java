@@ -0,0 +1,137 @@
+package src;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.function.IntConsumer;
+
+// Estatísticas dos jogadores entre partidas (vitórias, partidas, eliminações, rodadas e
+// distância média ao alvo) e o ranking, atualizados quando cada jogador sai de uma partida.
+// A tabela (ver TabelaDeEstatisticas) pertence a um laço de eventos próprio: as partidas
+// só enviam o resultado para ele, e os pedidos de ranking (opção 4 do menu) são respondidos
+// por ele, então nada disso segura o laço de uma partida.
+final class Estatisticas {
+
+    // O ranking passa de um datagrama (sai fragmentado) só até a maior mensagem: as linhas que
+    // passariam disso são omitidas
+    private static final int LIMITE_TEXTO = Fragmentos.TAMANHO_MAXIMO_ENVIO - ProtocoloBinario.TAMANHO_CABECALHO;
+    private static final long INTERVALO_SINCRONIZACAO_MILLIS = 10_000;
+
+    private static TabelaDeEstatisticas tabela;
+    private static LacoDeEventos laco;
+
+    private Estatisticas() {}
+
+    // Abre a tabela: no arquivo (persistente, criado se não existir) ou só em memória (arquivo null)
+    static void abrir(Path arquivo, int capacidadeInicial, int tamanhoRanking, ExecutorService portadoras, RodaDeTempo relogio) throws IOException {
+        tabela = new TabelaDeEstatisticas(arquivo, capacidadeInicial, tamanhoRanking);
+        laco = new LacoDeEventos("estatisticas", portadoras);
+        Metricas.medidor("estatisticas_jogadores", tabela::tamanho);
+        if (arquivo != null) {
+            agendarSincronizacao(relogio);
+            Registro.info("Estatísticas de {A} jogadores em {T}.", arquivo.toString(), tabela.tamanho());
+        }
+    }
+
+    private static void agendarSincronizacao(RodaDeTempo relogio) {
+        relogio.agendar(INTERVALO_SINCRONIZACAO_MILLIS, () -> laco.enviar(() -> {
+            tabela.sincronizar();
+            agendarSincronizacao(relogio);
+        }));
+    }
+
+    static void fechar() {
+        if (tabela != null) {
+            tabela.sincronizar();
+        }
+    }
+
+    // O jogador saiu da partida (venceu, foi eliminado, desistiu ou a partida acabou). Chamado
+    // no laço da partida, com os acumuladores do jogador nela.
+    static void fimDePartida(Jogador jogador, boolean venceu, boolean eliminado) {
+        if (laco == null) {
+            return;
+        }
+        byte[] nickname = jogador.nicknameUtf8;
+        int rodadas = jogador.rodadasNaPartida;
+        long distancias = jogador.distanciasNaPartida;
+        int jogadas = jogador.jogadasNaPartida;
+        laco.enviar(() -> {
+            try {
+                tabela.registrarPartida(nickname, venceu, eliminado, rodadas, distancias, jogadas);
+            } catch (IOException e) {
+                Registro.erro("Erro ao gravar as estatísticas de {T}: {U}", jogador.nickname, e.getMessage());
+            }
+        });
+    }
+
+    // Rating do jogador para o emparelhamento, entregue a quem pediu no laço de Estatisticas
+    // (sem estatísticas ou sem partidas terminadas: o rating inicial)
+    static void consultarRating(Jogador jogador, IntConsumer resposta) {
+        if (laco == null) {
+            resposta.accept(TabelaDeEstatisticas.RATING_INICIAL);
+            return;
+        }
+        laco.enviar(() -> {
+            int p = tabela.posicao(jogador.nicknameUtf8, false);
+            resposta.accept(p >= 0 ? tabela.rating(p) : TabelaDeEstatisticas.RATING_INICIAL);
+        });
+    }
+
+    // Responde ao jogador com o ranking e as estatísticas dele, seguidos do menu
+    static void enviarRanking(Jogador jogador) {
+        if (laco == null) {
+            Mensageiro.enviar(jogador, ProtocoloBinario.OP_MENU);
+            return;
+        }
+        laco.enviar(() -> {
+            Mensageiro.enviarTexto(jogador, ProtocoloBinario.OP_RANKING, montarRanking(jogador.nicknameUtf8));
+            Mensageiro.enviar(jogador, ProtocoloBinario.OP_MENU);
+        });
+    }
+
+    private static byte[] montarRanking(byte[] nickname) {
+        StringBuilder texto = new StringBuilder("==\nRanking (mais vitórias; empate: mais rodadas):\n");
+        int bytes = tamanhoUtf8(texto);
+        StringBuilder linha = new StringBuilder();
+        for (int i = 0; i < tabela.tamanhoRanking(); i++) {
+            linha.setLength(0);
+            int p = tabela.colocado(i);
+            linha.append(String.format("%2d. ", i + 1)).append(new String(tabela.nickname(p), StandardCharsets.UTF_8))
+                 .append(" - ").append(tabela.vitorias(p)).append(" vitória(s) em ").append(tabela.partidas(p))
+                 .append(" partida(s), ").append(tabela.rodadas(p)).append(" rodada(s)\n");
+            bytes += tamanhoUtf8(linha);
+            if (bytes > LIMITE_TEXTO - 200) { // Deixa espaço para a linha do próprio jogador
+                break;
+            }
+            texto.append(linha);
+        }
+        if (tabela.tamanhoRanking() == 0) {
+            texto.append("Nenhuma partida terminada ainda.\n");
+        }
+        int proprio = tabela.posicao(nickname, false);
+        if (proprio >= 0) {
+            descrever(texto.append("Você: "), proprio).append('\n');
+        } else {
+            texto.append("Você ainda não terminou nenhuma partida.\n");
+        }
+        return texto.append("==").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int tamanhoUtf8(CharSequence texto) {
+        return texto.toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static StringBuilder descrever(StringBuilder texto, int p) {
+        texto.append(tabela.vitorias(p)).append(" vitória(s), ")
+             .append(tabela.partidas(p)).append(" partida(s), ")
+             .append(tabela.eliminacoes(p)).append(" eliminação(ões), ")
+             .append(tabela.rodadas(p)).append(" rodada(s), rating ").append(tabela.rating(p));
+        long distancia = tabela.distanciaMedia(p);
+        if (distancia >= 0) {
+            texto.append(", distância média ").append(distancia / 100).append(',').append(String.format("%02d", distancia % 100));
+        }
+        return texto;
+    }
+}
@@ -0,0 +1,32 @@
+package src;
+
+import java.util.SplittableRandom;
+
+// Estratégia de escolha de número dos jogadores simulados (EnxameUDP e SimuladorDePartidas). Recebe o último
+// valor alvo anunciado pelo servidor (em centésimos; -1 antes da primeira rodada).
+interface EstrategiaDeJogada {
+
+    int escolher(int ultimoAlvoCentesimos, SplittableRandom aleatorio);
+
+    // "aleatoria", "fixa:N" ou "iterada", com as regras padrão do servidor
+    static EstrategiaDeJogada criar(String nome) {
+        return criar(nome, RegrasDePontuacao.PADRAO);
+    }
+
+    // A "iterada" usa o multiplicador das regras
+    static EstrategiaDeJogada criar(String nome, RegrasDePontuacao regras) {
+        if (nome.equals("aleatoria")) {
+            return (alvo, aleatorio) -> aleatorio.nextInt(101);
+        }
+        if (nome.startsWith("fixa")) {
+            int numero = nome.startsWith("fixa:") ? Integer.parseInt(nome.substring("fixa:".length())) : 50;
+            return (alvo, aleatorio) -> numero;
+        }
+        if (nome.equals("iterada")) {
+            // Supõe que os outros vão repetir a última rodada: joga o multiplicador x o último
+            // alvo (que já é o multiplicador x a média), começando pelo meio do intervalo
+            return (alvo, aleatorio) -> alvo < 0 ? 50 : Math.min(100, regras.multiplicar(alvo));
+        }
+        throw new IllegalArgumentException("Estratégia desconhecida: " + nome + " (use aleatoria, fixa:N ou iterada)");
+    }
+}
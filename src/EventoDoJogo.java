@@ -0,0 +1,109 @@
+package src;
+
+import java.nio.ByteBuffer;
+
+// Uma mensagem do servidor já decodificada, entregue pelo ClienteDoJogo. No protocolo binário
+// o tipo é o opcode do quadro e os argumentos vêm dele; o texto para mostrar só é montado
+// (TextosDoJogo), ou decodificado da carga dos quadros de texto, se alguém o pedir, então um
+// robô que olha só o tipo e os argumentos não cria String nenhuma. No protocolo de texto, o tipo é deduzido das frases conhecidas (TEXTO
+// quando nenhuma confere) e o texto é o recebido.
+public final class EventoDoJogo {
+
+    public static final byte TEXTO = 0;             // Mensagem de texto sem tipo conhecido
+    public static final byte CONEXAO_PERDIDA = -1;  // O socket falhou; nenhum evento vem depois
+    public static final byte AVISO = -2;            // Falha do próprio cliente que não interrompe o jogo
+
+    public final byte tipo;
+    public final int idPartida;
+    public final int rodada;
+    public final int a;
+    public final int b;
+    public final int c;
+    private final String nickname;
+    private String texto;
+    private byte[] carga; // Texto do quadro, ainda em UTF-8
+
+    EventoDoJogo(byte tipo, int idPartida, int rodada, int a, int b, int c, String nickname, String texto) {
+        this.tipo = tipo;
+        this.idPartida = idPartida;
+        this.rodada = rodada;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.nickname = nickname;
+        this.texto = texto;
+    }
+
+    // Mensagem do protocolo de texto, com o tipo deduzido das frases que o servidor usa
+    static EventoDoJogo deTexto(String texto) {
+        return new EventoDoJogo(classificar(texto), 0, 0, 0, 0, 0, null, texto);
+    }
+
+    static EventoDoJogo conexaoPerdida(String motivo) {
+        return new EventoDoJogo(CONEXAO_PERDIDA, 0, 0, 0, 0, 0, null, "Conexão com o servidor perdida: " + motivo);
+    }
+
+    // Quadro com texto (regras, ranking): copia a carga, da posição ao limite, para decodificar só em texto()
+    static EventoDoJogo comCarga(byte tipo, int idPartida, int rodada, String nickname, ByteBuffer carga) {
+        EventoDoJogo evento = new EventoDoJogo(tipo, idPartida, rodada, 0, 0, 0, nickname, null);
+        evento.carga = new byte[carga.remaining()];
+        carga.get(evento.carga);
+        return evento;
+    }
+
+    static EventoDoJogo aviso(String texto) {
+        return new EventoDoJogo(AVISO, 0, 0, 0, 0, 0, null, texto);
+    }
+
+    public String texto() {
+        if (texto == null) {
+            texto = carga != null ? DecodificadorTexto.lerTexto(ByteBuffer.wrap(carga)) : TextosDoJogo.texto(tipo, nickname, a, b, c);
+            carga = null;
+        }
+        return texto;
+    }
+
+    // O servidor espera uma resposta: opção do menu ou jogada
+    public boolean pedeEntrada() {
+        return tipo == ProtocoloBinario.OP_MENU || tipo == ProtocoloBinario.OP_PEDIR_JOGADA;
+    }
+
+    // Depois deste evento o jogo acabou para o jogador (saiu, foi eliminado, venceu, cadastro recusado)
+    public boolean encerraJogo() {
+        return tipo == ProtocoloBinario.OP_SAIDA || tipo == ProtocoloBinario.OP_ELIMINADO || tipo == ProtocoloBinario.OP_VENCEDOR
+               || tipo == ProtocoloBinario.OP_ERRO_CADASTRO || tipo == CONEXAO_PERDIDA;
+    }
+
+    // Fim de uma rodada (com ou sem jogadas)
+    public boolean fechaRodada() {
+        return tipo == ProtocoloBinario.OP_PLACAR || tipo == ProtocoloBinario.OP_FIM_RODADA;
+    }
+
+    private static byte classificar(String texto) {
+        if (texto.contains("O que deseja:")) {
+            return ProtocoloBinario.OP_MENU;
+        }
+        if (texto.contains("Escolha um número entre 0 e 100:")) {
+            return ProtocoloBinario.OP_PEDIR_JOGADA;
+        }
+        if (texto.contains("Você escolheu sair do jogo. Até mais!")) {
+            return ProtocoloBinario.OP_SAIDA;
+        }
+        if (texto.contains("Você foi eliminado(a)!")) {
+            return ProtocoloBinario.OP_ELIMINADO;
+        }
+        if (texto.contains("Parabéns! Você foi o(a) vencedor(a)!")) {
+            return ProtocoloBinario.OP_VENCEDOR;
+        }
+        if (texto.contains("Desculpe, a entrada para cadastro é inválida") || texto.contains("Desculpe, este nickname já está em uso.")) {
+            return ProtocoloBinario.OP_ERRO_CADASTRO;
+        }
+        if (texto.contains("Seu placar é:")) {
+            return ProtocoloBinario.OP_PLACAR;
+        }
+        if (texto.contains("Fim da Rodada.")) {
+            return ProtocoloBinario.OP_FIM_RODADA;
+        }
+        return TEXTO;
+    }
+}
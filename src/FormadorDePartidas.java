@@ -0,0 +1,195 @@
+package src;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Fila de espera por partida com faixas de rating: quem pede para jogar entra na faixa do seu
+// rating (larguraFaixa pontos por faixa, em ordem de chegada) e a partida sai assim que houver
+// tamanhoPartida jogadores compatíveis. Compatível = na mesma faixa ou numa vizinha dentro
+// da janela de quem espera há mais tempo; a janela cresce uma faixa a cada passoNanos de
+// espera e, depois de esperaMaximaNanos, aceita qualquer faixa, o que limita a espera.
+//
+// Os jogadores escolhidos são os mais antigos das faixas mais próximas. Não é thread-safe:
+// pertence ao laço de admissão do JuizUDP.
+final class FormadorDePartidas {
+
+    private static final class Espera {
+        final Jogador jogador;
+        final int faixa;
+        final long desde; // System.nanoTime() da entrada na fila
+
+        Espera(Jogador jogador, int faixa, long desde) {
+            this.jogador = jogador;
+            this.faixa = faixa;
+            this.desde = desde;
+        }
+    }
+
+    private final int tamanhoPartida;
+    private final int larguraFaixa;
+    private final long passoNanos;
+    private final long esperaMaximaNanos;
+    private final Consumer<List<Jogador>> aoFormar;
+
+    private final ArrayDeque<Espera>[] faixas;
+    private final Map<Jogador, Espera> esperas = new IdentityHashMap<>();
+    private final int[] retirar; // Por faixa: quantos entram na partida que está sendo montada
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    FormadorDePartidas(int tamanhoPartida, int ratingMaximo, int larguraFaixa, long passoNanos, long esperaMaximaNanos,
+                       Consumer<List<Jogador>> aoFormar) {
+        this.tamanhoPartida = tamanhoPartida;
+        this.larguraFaixa = larguraFaixa;
+        this.passoNanos = passoNanos;
+        this.esperaMaximaNanos = esperaMaximaNanos;
+        this.aoFormar = aoFormar;
+        this.faixas = new ArrayDeque[ratingMaximo / larguraFaixa + 1];
+        for (int i = 0; i < faixas.length; i++) {
+            faixas[i] = new ArrayDeque<>();
+        }
+        this.retirar = new int[faixas.length];
+    }
+
+    int esperando() {
+        return esperas.size();
+    }
+
+    boolean contem(Jogador jogador) {
+        return esperas.containsKey(jogador);
+    }
+
+    // Quantos jogadores na fila a partida do jogador já juntaria: os da faixa dele e das
+    // vizinhas dentro da janela dele, contando ele mesmo, no máximo tamanhoPartida. É o
+    // "prontos" das mensagens de espera; esperando() soma todas as faixas e passaria da
+    // capacidade. Fora da fila, conta só ele.
+    int prontos(Jogador jogador, long agora) {
+        Espera espera = esperas.get(jogador);
+        if (espera == null) {
+            return 1;
+        }
+        int janela = janela(espera, agora);
+        int n = 0;
+        for (int f = Math.max(0, espera.faixa - janela); f <= Math.min(faixas.length - 1, espera.faixa + janela); f++) {
+            n += faixas[f].size();
+        }
+        return Math.min(n, tamanhoPartida);
+    }
+
+    // Quantos jogadores esperam na faixa do rating, para quem ainda não está na fila (no
+    // máximo tamanhoPartida - 1: com mais, a faixa já teria formado uma partida)
+    int prontosNaFaixa(int rating) {
+        return Math.min(faixas[faixa(rating)].size(), tamanhoPartida - 1);
+    }
+
+    // Coloca o jogador na fila e forma uma partida se já houver jogadores compatíveis: primeiro
+    // em volta dele, depois em volta de quem espera nas faixas vizinhas com janela larga o bastante
+    void entrar(Jogador jogador, int rating, long agora) {
+        int faixa = faixa(rating);
+        Espera espera = new Espera(jogador, faixa, agora);
+        faixas[faixa].addLast(espera);
+        esperas.put(jogador, espera);
+        if (tentarFormar(espera, agora)) {
+            return;
+        }
+        for (int d = 1; d < faixas.length; d++) {
+            if (tentarVizinha(faixa - d, d, agora) || tentarVizinha(faixa + d, d, agora)) {
+                return;
+            }
+        }
+    }
+
+    // Tenta formar em volta do mais antigo da faixa f, se a janela dele alcança d faixas
+    private boolean tentarVizinha(int f, int d, long agora) {
+        if (f < 0 || f >= faixas.length || faixas[f].isEmpty()) {
+            return false;
+        }
+        Espera antiga = faixas[f].peekFirst();
+        return janela(antiga, agora) >= d && tentarFormar(antiga, agora);
+    }
+
+    // Retira da fila um jogador que desistiu
+    boolean sair(Jogador jogador) {
+        Espera espera = esperas.remove(jogador);
+        if (espera == null) {
+            return false;
+        }
+        faixas[espera.faixa].remove(espera);
+        return true;
+    }
+
+    // Chamado periodicamente: as janelas cresceram, então tenta de novo em volta do mais
+    // antigo de cada faixa
+    void verificar(long agora) {
+        for (int f = 0; f < faixas.length; f++) {
+            while (!faixas[f].isEmpty() && tentarFormar(faixas[f].peekFirst(), agora)) {
+                // Formou: tenta outra partida em volta do novo mais antigo da faixa
+            }
+        }
+    }
+
+    private int faixa(int rating) {
+        return Math.max(0, Math.min(rating / larguraFaixa, faixas.length - 1));
+    }
+
+    private int janela(Espera espera, long agora) {
+        long esperou = agora - espera.desde;
+        return esperou >= esperaMaximaNanos ? faixas.length : (int) (esperou / passoNanos);
+    }
+
+    // Monta uma partida com a âncora e os mais antigos das faixas dentro da janela dela,
+    // da faixa dela para fora. Devolve false (sem mexer na fila) se não houver gente suficiente.
+    private boolean tentarFormar(Espera ancora, long agora) {
+        int janela = janela(ancora, agora);
+        int faltam = tamanhoPartida - 1;
+        for (int d = 0; d <= janela && faltam > 0; d++) {
+            faltam = reservar(ancora, ancora.faixa - d, faltam);
+            if (d > 0) {
+                faltam = reservar(ancora, ancora.faixa + d, faltam);
+            }
+            if (ancora.faixa - d < 0 && ancora.faixa + d >= faixas.length) {
+                break;
+            }
+        }
+        if (faltam > 0) {
+            Arrays.fill(retirar, 0);
+            return false;
+        }
+
+        List<Jogador> elenco = new ArrayList<>(tamanhoPartida);
+        faixas[ancora.faixa].remove(ancora);
+        retirarDaFila(ancora, agora, elenco);
+        for (int f = 0; f < faixas.length; f++) {
+            Iterator<Espera> it = faixas[f].iterator();
+            while (retirar[f] > 0) {
+                Espera espera = it.next();
+                it.remove();
+                retirar[f]--;
+                retirarDaFila(espera, agora, elenco);
+            }
+        }
+        aoFormar.accept(elenco);
+        return true;
+    }
+
+    // Marca quantos jogadores da faixa entram na partida (sem contar a âncora)
+    private int reservar(Espera ancora, int faixa, int faltam) {
+        if (faixa < 0 || faixa >= faixas.length) {
+            return faltam;
+        }
+        int disponiveis = faixas[faixa].size() - (faixa == ancora.faixa ? 1 : 0);
+        retirar[faixa] = Math.min(disponiveis, faltam);
+        return faltam - retirar[faixa];
+    }
+
+    private void retirarDaFila(Espera espera, long agora, List<Jogador> elenco) {
+        esperas.remove(espera.jogador);
+        Metricas.ESPERA_NA_FILA.registrar(agora - espera.desde);
+        elenco.add(espera.jogador);
+    }
+}
@@ -0,0 +1,99 @@
+package src;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Fragmentação das mensagens maiores que um datagrama seguro (ranking longo, resultado da
+// plateia de uma partida grande). Em vez de deixar o IP fragmentar o datagrama (um pedaço
+// perdido perde tudo, e há redes que descartam fragmentos IP) ou de o receptor truncá-lo,
+// a mensagem sai em OP_FRAGMENTO de até TAMANHO_DATAGRAMA bytes e é remontada do outro lado
+// (ver Remontagem). Com sessão confiável, cada fragmento vai como um quadro da sessão, com
+// retransmissão e ordem próprias.
+//
+// Os jogadores do protocolo de texto (netcat, o JogadorUDP sem --binario) não remontam
+// OP_FRAGMENTO: para eles a mensagem sai em vários datagramas de texto puro, quebrada no fim
+// das linhas (ver dividirEmLinhas).
+//
+// O tamanho seguro vem do MTU do caminho (-Djuiz.mtu, padrão 1280, o mínimo do IPv6), menos
+// os cabeçalhos IP e UDP e o que a sessão confiável e o token acrescentam.
+final class Fragmentos {
+
+    static final int MTU = Math.max(576, Math.min(Integer.getInteger("juiz.mtu", 1280), SessaoConfiavel.TAMANHO_BUFFER));
+    // IPv6 (40) + UDP (8) + envelope da sessão (22) + folga: 1200 bytes com o MTU padrão
+    static final int TAMANHO_DATAGRAMA = MTU - 80;
+    // Datagramas dos clientes para o servidor: cabem no buffer de recepção do juiz junto com o
+    // token e o envelope da sessão
+    static final int TAMANHO_PARA_O_SERVIDOR = JuizUDP.TAMANHO_BUFFER - ProtocoloBinario.TAMANHO_SESSAO - ProtocoloBinario.TAMANHO_ENVELOPE;
+    static final int MAXIMO_FRAGMENTOS = 64; // Um bit por fragmento na máscara da remontagem
+    // Maior mensagem remontada: do servidor para os clientes e dos clientes para o servidor
+    static final int TAMANHO_MAXIMO_MENSAGEM = 32 * 1024;
+    static final int TAMANHO_MAXIMO_ENTRADA = 4 * 1024;
+    // Maior mensagem que o servidor envia: com um MTU pequeno, 64 fragmentos não chegam a
+    // TAMANHO_MAXIMO_MENSAGEM
+    static final int TAMANHO_MAXIMO_ENVIO = Math.min(TAMANHO_MAXIMO_MENSAGEM,
+                                                     MAXIMO_FRAGMENTOS * (TAMANHO_DATAGRAMA - ProtocoloBinario.TAMANHO_CABECALHO_FRAGMENTO));
+
+    private static final AtomicInteger proximoId = new AtomicInteger();
+    private static final ThreadLocal<ByteBuffer> RASCUNHO = ThreadLocal.withInitial(() -> ByteBuffer.allocate(SessaoConfiavel.TAMANHO_BUFFER));
+
+    private Fragmentos() {}
+
+    // Envia a mensagem (da posição ao limite, sem alterar o buffer) em fragmentos de até
+    // tamanhoDatagrama bytes, cada um pela saída. Devolve quantos fragmentos foram enviados.
+    static int fragmentar(ByteBuffer mensagem, int tamanhoDatagrama, SessaoConfiavel.Saida saida) throws IOException {
+        int pedaco = tamanhoDatagrama - ProtocoloBinario.TAMANHO_CABECALHO_FRAGMENTO;
+        int tamanho = mensagem.remaining();
+        int total = (tamanho + pedaco - 1) / pedaco;
+        if (total > MAXIMO_FRAGMENTOS) {
+            throw new IllegalArgumentException("Mensagem de " + tamanho + " bytes passa de " + MAXIMO_FRAGMENTOS + " fragmentos");
+        }
+        int id = proximoId.incrementAndGet();
+        ByteBuffer rascunho = RASCUNHO.get();
+        ByteBuffer origem = mensagem.duplicate();
+        for (int i = 0; i < total; i++) {
+            int deslocamento = i * pedaco;
+            origem.limit(mensagem.position() + Math.min(deslocamento + pedaco, tamanho)).position(mensagem.position() + deslocamento);
+            rascunho.clear();
+            ProtocoloBinario.escreverFragmento(rascunho, id, i, total, deslocamento);
+            rascunho.put(origem).flip();
+            saida.enviar(rascunho);
+        }
+        return total;
+    }
+
+    // Envia o texto UTF-8 (da posição ao limite, sem alterar o buffer) em datagramas de texto
+    // puro de até tamanhoDatagrama bytes, cada um pela saída. O corte é na última quebra de
+    // linha que cabe, e essa quebra não é enviada (cada datagrama já é mostrado numa linha);
+    // uma linha sozinha maior que um datagrama é cortada entre dois caracteres. Devolve
+    // quantos datagramas foram enviados.
+    static int dividirEmLinhas(ByteBuffer texto, int tamanhoDatagrama, SessaoConfiavel.Saida saida) throws IOException {
+        ByteBuffer pedaco = texto.duplicate();
+        int fim = texto.limit();
+        int enviados = 0;
+        for (int inicio = texto.position(); inicio < fim; ) {
+            int corte = Math.min(inicio + tamanhoDatagrama, fim);
+            int proximo = corte;
+            if (corte < fim) {
+                int quebra = corte;
+                while (quebra > inicio && texto.get(quebra) != '\n') {
+                    quebra--;
+                }
+                if (quebra > inicio) {
+                    corte = quebra;
+                    proximo = quebra + 1;
+                } else {
+                    while (corte > inicio + 1 && (texto.get(corte) & 0xC0) == 0x80) {
+                        corte--; // Byte de continuação: o caractere começa antes
+                    }
+                    proximo = corte;
+                }
+            }
+            pedaco.limit(corte).position(inicio);
+            saida.enviar(pedaco);
+            enviados++;
+            inicio = proximo;
+        }
+        return enviados;
+    }
+}
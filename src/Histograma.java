@@ -0,0 +1,90 @@
+package src;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Histograma de latências com faixas log-lineares fixas: cada potência de 2 é dividida em
+// SUBFAIXAS faixas iguais, então o erro relativo de um percentil fica abaixo de 1/SUBFAIXAS
+// em qualquer escala. Registrar um valor é só calcular o índice da faixa (alguns shifts) e
+// um incremento atômico: sem lock e sem alocar. Os valores são em nanossegundos.
+final class Histograma {
+
+    private static final int BITS_SUBFAIXA = 3;
+    private static final int SUBFAIXAS = 1 << BITS_SUBFAIXA;
+    private static final int MAIOR_EXPOENTE = 42; // ~73 minutos em nanossegundos
+    private static final int FAIXAS = (MAIOR_EXPOENTE - BITS_SUBFAIXA + 2) * SUBFAIXAS;
+
+    private final AtomicLongArray contagens = new AtomicLongArray(FAIXAS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder soma = new LongAdder();
+    private final AtomicLong maximo = new AtomicLong();
+
+    void registrar(long valor) {
+        if (valor < 0) {
+            valor = 0;
+        }
+        contagens.incrementAndGet(faixa(valor));
+        total.increment();
+        soma.add(valor);
+        long atual = maximo.get();
+        while (valor > atual && !maximo.compareAndSet(atual, valor)) {
+            atual = maximo.get();
+        }
+    }
+
+    // Registra o tempo decorrido desde inicio (System.nanoTime)
+    void registrarDesde(long inicio) {
+        registrar(System.nanoTime() - inicio);
+    }
+
+    // Valores menores que SUBFAIXAS têm faixa própria; os demais caem na subfaixa da sua potência de 2
+    private static int faixa(long valor) {
+        if (valor < SUBFAIXAS) {
+            return (int) valor;
+        }
+        int expoente = Math.min(63 - Long.numberOfLeadingZeros(valor), MAIOR_EXPOENTE);
+        int subfaixa = (int) (valor >>> (expoente - BITS_SUBFAIXA)) & (SUBFAIXAS - 1);
+        return Math.min((expoente - BITS_SUBFAIXA + 1) * SUBFAIXAS + subfaixa, FAIXAS - 1);
+    }
+
+    // Maior valor que cai na faixa
+    private static long limiteSuperior(int faixa) {
+        if (faixa < SUBFAIXAS) {
+            return faixa;
+        }
+        int expoente = faixa / SUBFAIXAS + BITS_SUBFAIXA - 1;
+        long subfaixa = faixa % SUBFAIXAS;
+        return ((SUBFAIXAS + subfaixa + 1) << (expoente - BITS_SUBFAIXA)) - 1;
+    }
+
+    long total() {
+        return total.sum();
+    }
+
+    long maximo() {
+        return maximo.get();
+    }
+
+    long media() {
+        long n = total.sum();
+        return n == 0 ? 0 : soma.sum() / n;
+    }
+
+    // Percentil aproximado (0 < p <= 100): limite superior da faixa onde ele cai
+    long percentil(double p) {
+        long n = total.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long alvo = Math.max(1, (long) Math.ceil(n * p / 100.0));
+        long acumulado = 0;
+        for (int i = 0; i < FAIXAS; i++) {
+            acumulado += contagens.get(i);
+            if (acumulado >= alvo) {
+                return Math.min(limiteSuperior(i), maximo.get());
+            }
+        }
+        return maximo.get();
+    }
+}
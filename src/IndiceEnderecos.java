@@ -0,0 +1,73 @@
+package src;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Índice dos jogadores pelo endereço de origem (IP + porta), para encontrar em O(1)
+// quem enviou cada datagrama. Endereços IPv4 usam a chave primitiva (IPv4 e porta
+// empacotados num long) e não alocam na consulta; os demais (IPv6) caem no mapa de objetos.
+class IndiceEnderecos {
+
+    private final MapaLongo<Jogador> porChaveIPv4 = new MapaLongo<>();
+    private final Map<InetSocketAddress, Jogador> porEndereco = new ConcurrentHashMap<>();
+
+    // Empacota IPv4 (32 bits) e porta (16 bits) num long.
+    // Inet4Address.hashCode() devolve o próprio endereço como int, sem copiar o array de bytes.
+    static long chave(Inet4Address ip, int porta) {
+        return ((ip.hashCode() & 0xFFFFFFFFL) << 16) | (porta & 0xFFFF);
+    }
+
+    // Chave de qualquer endereço: IPv4 como acima; IPv6 pelo hash do endereço, com o bit mais
+    // alto ligado (endereços IPv6 com o mesmo hash dividem a chave). Para tabelas em que uma
+    // colisão só junta dois endereços no mesmo balde ou no mesmo juiz, nunca para achar o jogador.
+    static long chave(InetAddress ip, int porta) {
+        if (ip instanceof Inet4Address) {
+            return chave((Inet4Address) ip, porta);
+        }
+        return Long.MIN_VALUE | ((ip.hashCode() & 0xFFFFFFFFL) << 16) | (porta & 0xFFFF);
+    }
+
+    Jogador buscar(InetAddress ip, int porta) {
+        if (ip instanceof Inet4Address) {
+            return porChaveIPv4.get(chave((Inet4Address) ip, porta));
+        }
+        return porEndereco.get(new InetSocketAddress(ip, porta));
+    }
+
+    // Registra o jogador no seu endereço. Retorna false se o endereço já pertence a outro jogador.
+    boolean registrar(Jogador jogador) {
+        return registrar(jogador, jogador.endereco);
+    }
+
+    boolean registrar(Jogador jogador, InetSocketAddress endereco) {
+        if (endereco.getAddress() instanceof Inet4Address) {
+            return porChaveIPv4.putIfAbsent(chave((Inet4Address) endereco.getAddress(), endereco.getPort()), jogador) == null;
+        }
+        return porEndereco.putIfAbsent(endereco, jogador) == null;
+    }
+
+    void remover(Jogador jogador) {
+        remover(jogador, jogador.endereco);
+    }
+
+    // Remove a entrada do endereço só se ela ainda é deste jogador
+    void remover(Jogador jogador, InetSocketAddress endereco) {
+        if (endereco.getAddress() instanceof Inet4Address) {
+            porChaveIPv4.remove(chave((Inet4Address) endereco.getAddress(), endereco.getPort()), jogador);
+        } else {
+            porEndereco.remove(endereco, jogador);
+        }
+    }
+
+    int tamanho() {
+        return porChaveIPv4.size() + porEndereco.size();
+    }
+
+    void limpar() {
+        porChaveIPv4.clear();
+        porEndereco.clear();
+    }
+}
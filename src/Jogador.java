@@ -0,0 +1,44 @@
+package src;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+// Classe que representa um Jogador no SERVIDOR (Juiz)
+class Jogador {
+    String nickname;
+    final byte[] nicknameUtf8; // Nickname já codificado, usado nas mensagens que o citam
+    // Endereço de origem (e destino dos envios). Só muda quando um datagrama com o token da
+    // sessão chega de outro endereço (ver JuizUDP.reassociar).
+    volatile InetSocketAddress endereco;
+    final boolean binario; // Protocolo usado no cadastro: binário ou texto
+    int pontuacao = 0;
+    int valorEscolhido = -1; // -1 significa que ainda não escolheu um número nesta rodada
+    boolean emJogo = false; // Indica se o jogador optou por iniciar a partida
+    volatile Partida partida; // Partida da qual o jogador participa (null se ainda não entrou em nenhuma)
+    volatile LacoDeEventos laco; // Laço de eventos dono do jogador, que processa as entradas dele
+    int indiceNoElenco; // Posição no elenco da partida quando ela começou (identifica o jogador no diário)
+    // Acumulados na partida atual, somados às estatísticas do jogador quando ele sai dela
+    int rodadasNaPartida;
+    long distanciasNaPartida; // Soma das distâncias ao alvo, em centésimos
+    int jogadasNaPartida;
+    volatile long ultimoContato = System.nanoTime(); // Último datagrama recebido do jogador (System.nanoTime)
+    // Entrega confiável, se o cliente pediu no cadastro (null: sem confirmações). Trocada por
+    // uma nova quando o cliente reinicia e retoma a sessão.
+    volatile SessaoConfiavel sessao;
+    long token; // Token da sessão (ver TabelaDeSessoes; 0: jogador do protocolo de texto)
+
+    public Jogador(String nickname, InetAddress ip, int porta, boolean binario) {
+        this(nickname, ip, porta, binario, null);
+    }
+
+    Jogador(String nickname, InetAddress ip, int porta, boolean binario, SessaoConfiavel sessao) {
+        this.nickname = nickname;
+        this.nicknameUtf8 = nickname.getBytes(StandardCharsets.UTF_8);
+        this.binario = binario;
+        this.endereco = new InetSocketAddress(ip, porta);
+        this.pontuacao = 0;
+        this.sessao = sessao;
+    }
+
+}
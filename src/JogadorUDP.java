@@ -1,11 +1,11 @@
 package src;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Scanner;
 
 public class JogadorUDP {
@@ -13,95 +13,101 @@ public class JogadorUDP {
     private static final int PORTA_SERVIDOR = 3000;
     private static final String ENDERECO_SERVIDOR = "localhost";
 
+    // Interface de texto do jogador sobre o ClienteDoJogo: a thread principal mostra os eventos
+    // na ordem em que chegam e a do console só lê linhas e as entrega ao cliente, que as manda
+    // quando o servidor pede. Uma mensagem do servidor no meio de um pedido não faz o prompt
+    // se perder, e a entrada digitada antes do pedido não é descartada.
     public static void main(String[] args) {
-        DatagramSocket clientSocket = null;
         Scanner scanner = new Scanner(System.in);
 
-        try {
-            clientSocket = new DatagramSocket();
-            // O cliente agora vai esperar bloqueando por mensagens do servidor.
-
-            InetAddress IPAddress = InetAddress.getByName(ENDERECO_SERVIDOR);
-
-            System.out.println("Jogo da Sobrevivência Numérica");
-            System.out.print("Digite seu nickname: ");
-            String nickname = scanner.nextLine();
-
-            enviarMensagem(clientSocket, IPAddress, PORTA_SERVIDOR, nickname);
-            System.out.println("Enviando seu cadastro para o servidor do jogo...");
-
-            boolean jogoAtivo = true;
-            String ultimaMensagemServidor = "";
-
-            while (jogoAtivo) {
-                String mensagemRecebida = null;
-                try {
-                    mensagemRecebida = receberMensagem(clientSocket);
-                    System.out.println(mensagemRecebida);
-                    ultimaMensagemServidor = mensagemRecebida;
+        // --binario: usa o protocolo binário em vez do protocolo de texto, com entrega confiável
+        // (ver SessaoConfiavel). Para testar a entrega, --perda=F e --reordenacao=F perdem e
+        // atrasam de propósito essa fração dos datagramas enviados e recebidos. O token da
+        // sessão fica em ~/.jogo-sobrevivencia/<nickname>.sessao, ou no arquivo de --sessao=.
+        boolean binario = false;
+        double perda = 0;
+        double reordenacao = 0;
+        String sessaoInformada = null;
+        for (String arg : args) {
+            if (arg.startsWith("--sessao=")) {
+                sessaoInformada = arg.substring("--sessao=".length());
+            } else if (arg.equals("--binario")) {
+                binario = true;
+            } else if (arg.startsWith("--perda=")) {
+                perda = Double.parseDouble(arg.substring("--perda=".length()));
+            } else if (arg.startsWith("--reordenacao=")) {
+                reordenacao = Double.parseDouble(arg.substring("--reordenacao=".length()));
+            }
+        }
 
-                    if (ultimaMensagemServidor.contains("Você escolheu sair do jogo. Até mais!") ||
-                        ultimaMensagemServidor.contains("Você foi eliminado(a)!") ||
-                        ultimaMensagemServidor.contains("Parabéns! Você foi o(a) vencedor(a)!")) {
-                        jogoAtivo = false;
-                        break;
-                    }
-                    if (ultimaMensagemServidor.contains("Desculpe, a entrada para cadastro é inválida") ||
-                        ultimaMensagemServidor.contains("Desculpe, este nickname já está em uso.")) {
-                        System.out.println("Erro no cadastro. Por favor, reinicie o cliente e tente outro nickname ou verifique a entrada.");
-                        jogoAtivo = false;
-                        break;
-                    }
+        System.out.println("Jogo da Sobrevivência Numérica");
+        System.out.print("Digite seu nickname: ");
+        String nickname = scanner.nextLine();
+        Path arquivoDaSessao = null;
+        if (binario) {
+            arquivoDaSessao = sessaoInformada != null ? Paths.get(sessaoInformada)
+                    : Paths.get(System.getProperty("user.home"), ".jogo-sobrevivencia",
+                                nickname.replaceAll("[^\\p{L}\\p{N}_-]", "_") + ".sessao");
+        }
 
-                } catch (SocketException e) {
-                    System.err.println("Conexão com o servidor perdida: " + e.getMessage());
-                    jogoAtivo = false;
+        try (ClienteDoJogo cliente = new ClienteDoJogo(new InetSocketAddress(InetAddress.getByName(ENDERECO_SERVIDOR), PORTA_SERVIDOR),
+                                                       binario, arquivoDaSessao, perda, reordenacao, null)) {
+            if (cliente.conectar(nickname)) {
+                System.out.println("Retomando a sessão anterior...");
+            } else {
+                System.out.println("Enviando seu cadastro para o servidor do jogo...");
+            }
+            Thread console = new Thread(() -> lerConsole(scanner, cliente), "console");
+            console.setDaemon(true); // Não segura a saída do programa esperando uma linha
+            console.start();
+
+            while (true) {
+                EventoDoJogo evento = cliente.proximoEvento();
+                if (evento.tipo == EventoDoJogo.CONEXAO_PERDIDA) {
+                    System.err.println(evento.texto());
                     break;
-                } catch (IOException e) {
-                    System.err.println("Erro ao receber mensagem do servidor: " + e.getMessage());
                 }
-
-                if (jogoAtivo && mensagemRecebida != null) {
-                    if (ultimaMensagemServidor.contains("O que deseja:") || 
-                        ultimaMensagemServidor.contains("Escolha um número entre 0 e 100:")) { 
-                        
-                        System.out.print("Sua escolha: ");
-                        String escolhaUsuario = scanner.nextLine();
-                        enviarMensagem(clientSocket, IPAddress, PORTA_SERVIDOR, escolhaUsuario);
-                    }
-                    if (ultimaMensagemServidor.contains("Seu placar é:") || ultimaMensagemServidor.contains("Fim da Rodada.")) {
-                         System.out.println("\n------------------------------------\n");
-                    }
+                if (evento.tipo == EventoDoJogo.AVISO) {
+                    System.err.println(evento.texto());
+                    continue;
+                }
+                System.out.println(evento.texto());
+                if (evento.tipo == ProtocoloBinario.OP_SESSAO_INVALIDA) {
+                    System.out.println("Enviando seu cadastro para o servidor do jogo...");
+                } else if (evento.tipo == ProtocoloBinario.OP_ERRO_CADASTRO) {
+                    System.out.println("Erro no cadastro. Por favor, reinicie o cliente e tente outro nickname ou verifique a entrada.");
+                }
+                if (evento.encerraJogo()) {
+                    break;
+                }
+                if (evento.pedeEntrada()) {
+                    System.out.print("Sua escolha: ");
+                }
+                if (evento.fechaRodada()) {
+                    System.out.println("\n------------------------------------\n");
                 }
             }
-
-        } catch (SocketException e) {
-            System.err.println("Erro ao criar o socket do cliente: " + e.getMessage());
         } catch (UnknownHostException e) {
             System.err.println("Endereço do servidor desconhecido: " + e.getMessage());
         } catch (IOException e) {
             System.err.println("Erro de I/O geral no cliente: " + e.getMessage());
-        } finally {
-            if (clientSocket != null && !clientSocket.isClosed()) {
-                clientSocket.close();
-                System.out.println("Cliente encerrado.");
-            }
-            if (scanner != null) {
-                scanner.close();
-            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        System.out.println("Cliente encerrado.");
     }
 
-    private static void enviarMensagem(DatagramSocket socket, InetAddress enderecoDestino, int portaDestino, String mensagem) throws IOException {
-        byte[] dados = mensagem.getBytes();
-        DatagramPacket pacote = new DatagramPacket(dados, dados.length, enderecoDestino, portaDestino);
-        socket.send(pacote);
-    }
-
-    private static String receberMensagem(DatagramSocket socket) throws IOException {
-        byte[] bufferRecebimento = new byte[1024];
-        DatagramPacket pacoteRecebido = new DatagramPacket(bufferRecebimento, bufferRecebimento.length);
-        socket.receive(pacoteRecebido);
-        return new String(pacoteRecebido.getData(), 0, pacoteRecebido.getLength()).trim();
+    // Thread do console: cada linha vai para o cliente, que a manda no pedido pendente ou no próximo
+    private static void lerConsole(Scanner scanner, ClienteDoJogo cliente) {
+        try {
+            while (scanner.hasNextLine()) {
+                if (!cliente.responder(scanner.nextLine())) {
+                    System.out.println("Entrada inválida. Digite um número.");
+                    System.out.print("Sua escolha: ");
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao enviar a resposta: " + e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
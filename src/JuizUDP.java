@@ -1,509 +1,913 @@
 package src;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-// Classe que representa um Jogador no SERVIDOR (Juiz)
-class Jogador {
-    String nickname;
-    InetAddress ip;
-    int porta;
-    int pontuacao = 0;
-    int valorEscolhido = -1; // -1 significa que ainda não escolheu um número nesta rodada
-    boolean emJogo = false; // Indica se o jogador optou por iniciar a partida
-
-    public Jogador(String nickname, InetAddress ip, int porta) {
-        this.nickname = nickname;
-        this.ip = ip;
-        this.porta = porta;
-        this.pontuacao = 0;
-    }
-
-    public void enviarMensagem(DatagramSocket serverSocket, String mensagem) throws IOException {
-        byte[] dados = mensagem.getBytes();
-        DatagramPacket pacoteResposta = new DatagramPacket(dados, dados.length, this.ip, this.porta);
-        serverSocket.send(pacoteResposta);
-    }
-}
-
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 public class JuizUDP {
 
-    private static Map<String, Jogador> jogadoresConectados = new HashMap<>();
-    private static final int PORTA_SERVIDOR = 3000;
-    public static int N_JOGADORES_INICIAIS = 3; // Número de jogadores para iniciar o jogo
-    private static DatagramSocket servidorSocketGlobal; // Socket global para enviar mensagens
-    private static ExecutorService poolDeThreads = Executors.newFixedThreadPool(10); // Pool de threads para lidar com clientes
-
-    // Um enum simples para representar o estado geral do jogo no servidor
-    enum EstadoGlobalJogo { AGUARDANDO_JOGADORES, EM_ANDAMENTO, FIM_DE_PARTIDA }
-    private static EstadoGlobalJogo estadoAtualJogo = EstadoGlobalJogo.AGUARDANDO_JOGADORES; // Estado inicial
+    // Todos os jogadores cadastrados no servidor, de todas as partidas
+    private static Map<String, Jogador> jogadoresConectados = new ConcurrentHashMap<>();
+    // Os mesmos jogadores indexados pelo endereço de origem (mantido junto com jogadoresConectados)
+    private static final IndiceEnderecos jogadoresPorEndereco = new IndiceEnderecos();
+    // Jogadores do protocolo binário indexados pelo token da sessão (ver TabelaDeSessoes)
+    private static final TabelaDeSessoes sessoes = new TabelaDeSessoes(1024);
+    // Partidas em andamento (ou aguardando jogadores), indexadas pelo id
+    private static Map<Integer, Partida> partidas = new ConcurrentHashMap<>();
+    private static final int PORTA_PADRAO = 3000;
+    public static int N_JOGADORES_INICIAIS = Math.max(2, Integer.getInteger("juiz.jogadores", 3)); // Número de jogadores para iniciar o jogo
+    static final int TAMANHO_BUFFER = 1024;
+    private static MotorDeRede motor; // Motor de rede global para receber e enviar mensagens
+    // Threads portadoras dos laços de eventos, uma por núcleo
+    private static final ExecutorService portadoras = LacoDeEventos.criarPortadoras();
+
+    // Cada jogador pertence a exatamente um laço de eventos, que processa as suas entradas em ordem:
+    // - um laço do saguão, enquanto ele está cadastrado mas ainda não pediu para jogar;
+    // - o laço de admissão, enquanto ele espera na fila pela próxima partida;
+    // - o laço da sua partida, do início ao fim dela.
+    private static final LacoDeEventos[] saguoes = criarSaguoes();
+    private static final LacoDeEventos admissao = new LacoDeEventos("admissao", portadoras);
+    // Estado do laço de admissão (só acessado em eventos desse laço): a fila por rating forma
+    // cada partida assim que houver N_JOGADORES_INICIAIS jogadores compatíveis (ver
+    // FormadorDePartidas). Largura de cada faixa de rating, tempo de espera para a busca
+    // alcançar mais uma faixa e espera a partir da qual qualquer rating serve.
+    private static final FormadorDePartidas formador = new FormadorDePartidas(
+            N_JOGADORES_INICIAIS, TabelaDeEstatisticas.RATING_MAXIMO, Integer.getInteger("juiz.faixaRating", 50),
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("juiz.passoEmparelhamento", 500)),
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("juiz.esperaMaxima", 5000)), JuizUDP::partidaFormada);
+    private static final long INTERVALO_EMPARELHAMENTO_MILLIS = 250; // Reavalia a fila com as janelas maiores
+    private static int proximoIdPartida = 1;
+
+    // Uma única roda de tempo para os prazos de rodada de todas as partidas e para a inatividade
+    // de todos os jogadores (tique de 100 ms, 512 posições: uma volta a cada ~51 s)
+    private static final RodaDeTempo relogio = new RodaDeTempo("relogio", 100, 512);
+    // Prazo de uma rodada e tempo sem receber nada de um jogador até ele ser desligado (0 desliga)
+    private static final long PRAZO_RODADA_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("juiz.prazoRodada", 60));
+    private static final long INATIVIDADE_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("juiz.inatividade", 600));
+    // Penalidades do mais próximo, dos intermediários e do mais distante (-Djuiz.penalidades=0,1,2)
+    private static final RegrasDePontuacao REGRAS = RegrasDePontuacao.ler(System.getProperty("juiz.penalidades", RegrasDePontuacao.PADRAO.toString()));
+    // Texto da opção 1 do menu, de acordo com as regras e o tamanho das partidas configurados
+    private static final byte[] TEXTO_DAS_REGRAS = TextosDoJogo.regras(REGRAS, N_JOGADORES_INICIAIS).getBytes(StandardCharsets.UTF_8);
+    // Diário das partidas (ver Diario): tamanho de cada segmento, intervalo entre sincronizações
+    // e quantos segmentos podem se acumular depois do último ponto de controle
+    private static final int SEGMENTO_DIARIO_BYTES = Integer.getInteger("juiz.diarioSegmento", 64) << 20;
+    private static final long INTERVALO_DIARIO_MILLIS = Long.getLong("juiz.diarioIntervalo", 10);
+    private static final int SEGMENTOS_DIARIO_MAXIMOS = Math.max(1, Integer.getInteger("juiz.diarioSegmentos", 4));
+    // Entrega confiável: prazo inicial de retransmissão e, para testes no loopback, as frações
+    // de datagramas das sessões confiáveis perdidos e atrasados de propósito (ver PerdaSimulada)
+    private static final long RTO_MILLIS = Long.getLong("juiz.rto", 300);
+    private static final double PERDA_SIMULADA = Double.parseDouble(System.getProperty("juiz.perdaSimulada", "0"));
+    private static final double REORDENACAO_SIMULADA = Double.parseDouble(System.getProperty("juiz.reordenacaoSimulada", "0"));
+    // Proteção da entrada: datagramas por segundo e rajada por endereço de origem (taxa 0
+    // desliga; ver LimitadorDeTaxa) e quantos endereços o limitador acompanha. Entradas de
+    // jogadores são descartadas quando a caixa do laço dono tem LIMITE_CAIXA eventos
+    // esperando; novos cadastros são adiados antes, a partir da metade.
+    private static final double TAXA_POR_ENDERECO = Double.parseDouble(System.getProperty("juiz.taxaPorEndereco", "200"));
+    private static final int RAJADA_POR_ENDERECO = Integer.getInteger("juiz.rajadaPorEndereco", 400);
+    private static final LimitadorDeTaxa limitador = TAXA_POR_ENDERECO > 0
+            ? new LimitadorDeTaxa(Integer.getInteger("juiz.enderecosLimitados", 1 << 16), TAXA_POR_ENDERECO, RAJADA_POR_ENDERECO)
+            : null;
+    private static final int LIMITE_CAIXA = Integer.getInteger("juiz.limiteCaixa", 10_000);
+    private static final int TAMANHO_MAXIMO_NICK = 64; // Bytes UTF-8
+    // Remontagem das entradas fragmentadas (ver Fragmentos), na thread de recepção: memória
+    // total das mensagens em andamento, prazo para uma mensagem ficar completa e quantas
+    // mensagens em andamento cada jogador pode ter
+    private static final Remontagem remontagem = new Remontagem(Fragmentos.TAMANHO_MAXIMO_ENTRADA,
+                                                                Integer.getInteger("juiz.remontagemMemoria", 1 << 20),
+                                                                TimeUnit.SECONDS.toNanos(Long.getLong("juiz.remontagemPrazo", 5)),
+                                                                Integer.getInteger("juiz.remontagemPorJogador", 4));
 
     public static void main(String[] args) {
-        try {
-            servidorSocketGlobal = new DatagramSocket(PORTA_SERVIDOR); 
-
-            System.out.println("Servidor do Jogo da Sobrevivência Numérica iniciado na porta " + PORTA_SERVIDOR);
-            System.out.println("Aguardando jogadores...");
-
-            byte[] bufferRecebimento = new byte[1024];
+        // Motor de rede: "socket" (padrão) ou "nio", por argumento (--motor=nio) ou -Djuiz.motor=nio
+        String nomeMotor = System.getProperty("juiz.motor", "socket");
+        // Modo de produção (--producao ou -Djuiz.producao=true): registro a partir de INFO e sem o
+        // registro de cada pacote recebido, a não ser que -Djuiz.amostraPacotes=N peça 1 a cada N
+        boolean producao = Boolean.getBoolean("juiz.producao");
+        // Diário das partidas (--diario=<diretório> ou -Djuiz.diario=<diretório>): se existir, o
+        // estado gravado nele é restaurado antes de o servidor começar a receber
+        String diretorioDiario = System.getProperty("juiz.diario");
+        // Estatísticas e ranking dos jogadores: persistentes com --estatisticas=<arquivo> (ou
+        // -Djuiz.estatisticas=<arquivo>), senão só em memória
+        String arquivoEstatisticas = System.getProperty("juiz.estatisticas");
+        // Porta do servidor (--porta=N ou -Djuiz.porta=N) e, atrás de um RoteadorUDP, o endereço
+        // da porta de juízes dele (--roteador=host:porta ou -Djuiz.roteador=host:porta)
+        int porta = Integer.getInteger("juiz.porta", PORTA_PADRAO);
+        String roteador = System.getProperty("juiz.roteador");
+        // Plateia: grupo multicast no loopback que também recebe os resultados de todas as
+        // partidas (--plateiaGrupo=239.255.0.77:4460 ou -Djuiz.plateiaGrupo=...)
+        String grupoPlateia = System.getProperty("juiz.plateiaGrupo");
+        for (String arg : args) {
+            if (arg.startsWith("--motor=")) {
+                nomeMotor = arg.substring("--motor=".length());
+            } else if (arg.equals("--producao")) {
+                producao = true;
+            } else if (arg.startsWith("--diario=")) {
+                diretorioDiario = arg.substring("--diario=".length());
+            } else if (arg.startsWith("--estatisticas=")) {
+                arquivoEstatisticas = arg.substring("--estatisticas=".length());
+            } else if (arg.startsWith("--porta=")) {
+                porta = Integer.parseInt(arg.substring("--porta=".length()));
+            } else if (arg.startsWith("--roteador=")) {
+                roteador = arg.substring("--roteador=".length());
+            } else if (arg.startsWith("--plateiaGrupo=")) {
+                grupoPlateia = arg.substring("--plateiaGrupo=".length());
+            }
+        }
+        if (producao) {
+            Registro.configurar(Registro.INFO, Integer.getInteger("juiz.amostraPacotes", 0));
+        }
 
-            while (true) {
-                // Limpa o buffer a cada iteração para evitar lixo de mensagens anteriores
-                for (int i = 0; i < bufferRecebimento.length; i++) {
-                    bufferRecebimento[i] = 0;
-                }
-                
-                DatagramPacket pacoteRecebido = new DatagramPacket(bufferRecebimento, bufferRecebimento.length);
-                servidorSocketGlobal.receive(pacoteRecebido); 
-
-                // Cria uma cópia dos dados do pacote para ser processada pela thread
-                byte[] dadosCopiados = new byte[pacoteRecebido.getLength()];
-                System.arraycopy(pacoteRecebido.getData(), pacoteRecebido.getOffset(), dadosCopiados, 0, pacoteRecebido.getLength());
-                final DatagramPacket pacoteParaProcessar = new DatagramPacket(dadosCopiados, dadosCopiados.length, pacoteRecebido.getAddress(), pacoteRecebido.getPort());
-
-                // Submete a tarefa de processamento do pacote para o pool de threads
-                poolDeThreads.submit(() -> {
-                    InetAddress enderecoCliente = pacoteParaProcessar.getAddress();
-                    int portaCliente = pacoteParaProcessar.getPort();
-                    String mensagemRecebida = new String(pacoteParaProcessar.getData(), 0, pacoteParaProcessar.getLength()).trim();
-
-                    System.out.println("Mensagem recebida de " + enderecoCliente.getHostAddress() + ":" + portaCliente + " -> " + mensagemRecebida);
-
-                    Jogador jogadorAtual = null;
-                    // Procura o jogador existente com base no IP e Porta
-                    synchronized (jogadoresConectados) {
-                        for (Jogador j : jogadoresConectados.values()) {
-                            if (j.ip.equals(enderecoCliente) && j.porta == portaCliente) {
-                                jogadorAtual = j;
-                                break;
-                            }
-                        }
-                    }
+        try {
+            relogio.iniciar();
+            if (roteador != null) {
+                // Os datagramas chegam com o cabeçalho de rota na frente (ver MotorRoteado)
+                MotorRoteado roteado = new MotorRoteado(MotorDeRede.criar(nomeMotor, porta, TAMANHO_BUFFER + ProtocoloBinario.TAMANHO_ROTA_MAXIMO),
+                                                        RoteadorUDP.lerEndereco(roteador), jogadoresConectados::size);
+                motor = roteado;
+                agendarAnuncio(roteado);
+            } else {
+                motor = MotorDeRede.criar(nomeMotor, porta, TAMANHO_BUFFER);
+            }
+            Mensageiro.usarMotor(motor);
+            Plateia.iniciar(motor, grupoPlateia, portadoras, relogio);
+            Estatisticas.abrir(arquivoEstatisticas != null ? Paths.get(arquivoEstatisticas) : null, 1 << 16,
+                               Integer.getInteger("juiz.ranking", 10), portadoras, relogio);
+            if (diretorioDiario != null) {
+                restaurarDoDiario(Paths.get(diretorioDiario));
+            }
+            Metricas.medidor("partidas_ativas", partidas::size);
+            Metricas.medidor("jogadores_cadastrados", jogadoresConectados::size);
+            Metricas.medidor("sessoes_ativas", sessoes::tamanho);
+            Metricas.medidor("remontagens_pendentes", remontagem::pendentes); // Lidos fora da thread de recepção: aproximados
+            Metricas.medidor("mensagens_remontadas", remontagem::remontadas);
+            Metricas.medidor("remontagens_descartadas", remontagem::descartadas);
+            Metricas.medidor("jogadores_na_fila", formador::esperando); // Lido fora do laço de admissão: aproximado
+            Metricas.medidor("caixa_admissao", admissao::pendentes);
+            if (limitador != null) { // Lidos fora da thread de recepção: aproximados
+                Metricas.medidor("limitador_enderecos", limitador::ocupadas);
+                Metricas.medidor("limitador_despejos", limitador::despejos);
+            }
+            agendarEmparelhamento();
+            if (portadoras instanceof ForkJoinPool) {
+                ForkJoinPool pool = (ForkJoinPool) portadoras;
+                Metricas.medidor("fila_portadoras", () -> pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount());
+            }
+            Metricas.registrarJmx();
+            // Porta UDP (só no loopback) que responde com o relatório de métricas
+            Metricas.iniciarPortaDeEstatisticas(Integer.getInteger("juiz.portaEstatisticas", porta + 1));
 
-                    if (jogadorAtual == null) { // Se não encontrou, é um novo cadastro
-                        boolean ehNumero = false;
-                        try {
-                            Integer.parseInt(mensagemRecebida);
-                            ehNumero = true;
-                        } catch (NumberFormatException e) { /* Não é um número, pode ser nickname */ }
-
-                        // Valida o nickname para cadastro
-                        if (!mensagemRecebida.isEmpty() && !ehNumero && !jogadoresConectados.containsKey(mensagemRecebida)) {
-                            synchronized (jogadoresConectados) {
-                                Jogador novoJogador = new Jogador(mensagemRecebida, enderecoCliente, portaCliente);
-                                jogadoresConectados.put(novoJogador.nickname, novoJogador);
-                                System.out.println("Jogador(a): " + novoJogador.nickname + " se cadastrou. IP:" + novoJogador.ip.getHostAddress() + " Porta: " + novoJogador.porta);
-
-                                String boasVindas = "Bem-vindo(a), " + novoJogador.nickname + ".\n" +
-                                                    "Digite 1 - para ver as regras do jogo.\n" +
-                                                    "Digite 2 - para iniciar o jogo.\n" +
-                                                    "Digite 3 - para sair do jogo.\n" +
-                                                    "O que deseja:";
-                                enviarMensagemAoJogador(novoJogador, boasVindas);
-                                
-                                enviarFeedbackContagemJogadores(); // Envia feedback de contagem após cadastro
-                            }
-                        } else {
-                            String msgErroCadastro = "Desculpe, a entrada para cadastro é inválida (vazia, nickname já usado ou é um número).";
-                            try { // Envia erro de cadastro
-                                byte[] dadosMsg = msgErroCadastro.getBytes();
-                                DatagramPacket pacoteErro = new DatagramPacket(dadosMsg, dadosMsg.length, enderecoCliente, portaCliente);
-                                servidorSocketGlobal.send(pacoteErro); 
-                            } catch (IOException e) {
-                                System.err.println("Erro ao enviar msg de erro de cadastro: " + e.getMessage());
-                            }
-                        }
-                    } else { // Jogador já cadastrado (processar escolha de menu ou jogada)
-                        try {
-                            int escolha = Integer.parseInt(mensagemRecebida);
-                            
-                            // Se o jogo está em andamento, o jogador está em jogo, e a escolha é um número válido (0-100),
-                            // então trata como JOGADA
-                            if (estadoAtualJogo == EstadoGlobalJogo.EM_ANDAMENTO && jogadorAtual.emJogo && escolha >= 0 && escolha <= 100) {
-                                jogadorAtual.valorEscolhido = escolha;
-                                System.out.println("Jogador(a) " + jogadorAtual.nickname + " escolheu o número: " + jogadorAtual.valorEscolhido);
-                                enviarMensagemAoJogador(jogadorAtual, "Você escolheu o número: " + escolha + ".\nEnviando o número escolhido para o servidor do jogo...\nAguardando os outros jogadores...");
-
-                                // Verifica se todos os jogadores ativos já jogaram para processar a rodada
-                                synchronized (jogadoresConectados) {
-                                    long jogadoresQueJaJogaramNestaRodada = jogadoresConectados.values().stream()
-                                                                            .filter(j -> j.emJogo && j.valorEscolhido != -1)
-                                                                            .count();
-                                    long jogadoresAtivos = jogadoresConectados.values().stream()
-                                                                            .filter(j -> j.emJogo)
-                                                                            .count();
-
-                                    if (jogadoresQueJaJogaramNestaRodada == jogadoresAtivos && jogadoresAtivos >= 2) {
-                                        processarRodada();
-                                    }
-                                }
-                            } else {
-                                // Caso contrário, processa a opção de menu
-                                processarOpcaoMenu(escolha, jogadorAtual);
-                            }
-                        } catch (NumberFormatException e) {
-                            // Se a entrada não for um número, é uma entrada inválida
-                            enviarMensagemAoJogador(jogadorAtual, "Entrada inválida. Digite um número para a opção do menu ou para sua jogada.");
-                            String menuMessage = "Bem-vindo(a)," + jogadorAtual.nickname + ".\n" +
-                                                 "Digite 1 - para ver as regras do jogo.\n" +
-                                                 "Digite 2 - para iniciar o jogo.\n" +
-                                                 "Digite 3 - para sair do jogo.\n" +
-                                                 "O que deseja:";
-                            enviarMensagemAoJogador(jogadorAtual, menuMessage);
-                        }
-                    }
-                }); 
+            Registro.info("Servidor do Jogo da Sobrevivência Numérica iniciado na porta {A} (motor {T})", nomeMotor, porta);
+            if (roteador != null) {
+                Registro.info("Atendendo os jogadores pelo roteador {T}", roteador);
             }
+            Registro.info("Aguardando jogadores...");
+
+            motor.executar(JuizUDP::tratarDatagramaEmLote);
 
         } catch (SocketException e) {
-            System.err.println("Erro ao criar/usar o socket do servidor: " + e.getMessage());
+            Registro.erro("Erro ao criar/usar o socket do servidor: {T}", e.getMessage(), null);
         } catch (IOException e) {
-            System.err.println("Erro de I/O no servidor: " + e.getMessage());
+            Registro.erro("Erro de I/O no servidor: {T}", e.getMessage(), null);
         } finally {
-            if (servidorSocketGlobal != null && !servidorSocketGlobal.isClosed()) {
-                servidorSocketGlobal.close();
+            if (motor != null) {
+                motor.fechar();
             }
-            poolDeThreads.shutdown();
-            System.out.println("Servidor encerrado. Pool de threads desligado.");
+            relogio.parar();
+            portadoras.shutdown();
+            Diario.fechar();
+            Estatisticas.fechar();
+            Registro.info("Servidor encerrado. Pool de threads desligado.");
+            Registro.esvaziar(1000);
         }
     }
 
-    // Método auxiliar para enviar mensagens a um jogador, tratando exceções
-    private static void enviarMensagemAoJogador(Jogador jogador, String mensagem) {
+    // As respostas enviadas direto da thread de recepção (cadastro) também saem em lote.
+    // Antes de tudo, o datagrama gasta uma ficha do balde do seu endereço de origem. Uma
+    // exceção no tratamento perde só este datagrama: a thread de recepção é uma só para todas
+    // as partidas e não pode parar.
+    private static void tratarDatagramaEmLote(InetAddress enderecoCliente, int portaCliente, ByteBuffer dados) {
+        Metricas.DATAGRAMAS_RECEBIDOS.increment();
+        if (limitador != null && !limitador.permitir(enderecoCliente, portaCliente, System.nanoTime())) {
+            Metricas.DESCARTADOS_TAXA.increment();
+            return;
+        }
+        boolean abriuLote = Mensageiro.abrirLote();
         try {
-            jogador.enviarMensagem(servidorSocketGlobal, mensagem);
-        } catch (IOException e) {
-            System.err.println("Erro ao enviar mensagem para " + jogador.nickname + ": " + e.getMessage());
+            try {
+                tratarDatagrama(enderecoCliente, portaCliente, dados);
+            } finally {
+                if (abriuLote) {
+                    Mensageiro.descarregarLote();
+                }
+            }
+        } catch (RuntimeException e) {
+            Metricas.ERROS_DE_TRATAMENTO.increment();
+            Registro.erro("Erro ao tratar datagrama de {T}: {U}", enderecoCliente.getHostAddress() + ":" + portaCliente, e.toString());
         }
     }
 
-    // Centraliza a lógica de processar opções de menu
-    private static void processarOpcaoMenu(int escolha, Jogador jogadorAtual) {
-        switch (escolha) {
-            case 1: // Ver regras
-                String regras = "==\nRegras do Jogo da Sobrevivência Numérica:\n" +
-                                "==\n" +
-                                "No início três jogadores jogam, escolhendo um número entre 0 e 100.\n" +
-                                "O Servidor do jogo receberá os três números escolhidos e calculará a média dos valores recebidos.\n" +
-                                "O resultado das médias é então multiplicado por 0,8.\n" +
-                                "Este novo valor resultante será o valor alvo.\n" +
-                                "O valor alvo é comparado com os valores que cada jogador escolheu.\n" +
-                                "O jogador que mais se distanciou do valor alvo, perde dois pontos.\n" +
-                                "O jogador que mais se aproximou do valor alvo, não perde pontos.\n" +
-                                "O outro jogador perde apenas um ponto.\n" +
-                                "O jogador que chegar a menos seis pontos, primeiro, será eliminado definitivamente do jogo.\n" +
-                                "Quando restarem apenas dois jogadores, as regras do jogo mudam.\n" +
-                                "O jogador que mais se distanciar do valor alvo, perde um ponto.\n" +
-                                "O outro jogador, não perde pontos.\n" +
-                                "O jogador que primeiro chegar a menos seis pontos, será eliminado do jogo.\n" +
-                                "O último jogador é declarado vencedor do Jogo da Sobrevivência Numérica.\n" +
-                                "================================================================================";
-                enviarMensagemAoJogador(jogadorAtual, regras);
-                
-                String menuMessageRegras = "Bem-vindo(a)," + jogadorAtual.nickname + ".\n" +
-                                     "Digite 1 - para ver as regras do jogo.\n" +
-                                     "Digite 2 - para iniciar o jogo.\n" +
-                                     "Digite 3 - para sair do jogo.\n" +
-                                     "O que deseja:";
-                enviarMensagemAoJogador(jogadorAtual, menuMessageRegras);
-                break;
+    // Trata um datagrama recebido (executado na thread de recepção). A entrada é decodificada
+    // direto do buffer; só vira String quando é um nickname para cadastro. O processamento
+    // em si é entregue ao laço de eventos que é dono do jogador.
+    // Datagramas que começam com ProtocoloBinario.MAGICO seguem o protocolo binário; os demais, o de texto.
+    private static void tratarDatagrama(InetAddress enderecoCliente, int portaCliente, ByteBuffer dados) {
+        tratarDatagrama(enderecoCliente, portaCliente, dados, 0, 0);
+    }
 
-            case 2: // INICIAR O JOGO
-                if (!jogadorAtual.emJogo) {
-                    synchronized (jogadoresConectados) {
-                        long jogadoresAtivosNaPartida = jogadoresConectados.values().stream().filter(j -> j.emJogo).count();
-                        if (jogadoresAtivosNaPartida < N_JOGADORES_INICIAIS) {
-                            jogadorAtual.emJogo = true;
-                            System.out.println("Jogador(a): " + jogadorAtual.nickname + " iniciou o jogo.");
-                            jogadoresAtivosNaPartida++; // Atualiza a contagem após o jogador entrar
-
-                            if (jogadoresAtivosNaPartida == N_JOGADORES_INICIAIS) {
-                                estadoAtualJogo = EstadoGlobalJogo.EM_ANDAMENTO;
-                                System.out.println(N_JOGADORES_INICIAIS + " jogadores prontos. Iniciando a partida...");
-                                for (Jogador j : jogadoresConectados.values()) {
-                                    if (j.emJogo) {
-                                        enviarMensagemAoJogador(j, "Jogadores oponentes encontrados. Que comecem os jogos...");
-                                        enviarMensagemAoJogador(j, "Escolha um número entre 0 e 100:");
-                                    }
-                                }
-                            } else {
-                                enviarMensagemAoJogador(jogadorAtual, "Aguardando mais jogadores para iniciar o jogo... (" + jogadoresAtivosNaPartida + "/" + N_JOGADORES_INICIAIS + " prontos)");
-                            }
-                        } else {
-                            enviarMensagemAoJogador(jogadorAtual, "O jogo já está cheio. Por favor, tente novamente mais tarde.");
-                        }
-                    }
-                } else {
-                    enviarMensagemAoJogador(jogadorAtual, "Você já está no jogo! Por favor, escolha um número.");
-                }
-                enviarFeedbackContagemJogadores(); // Envia feedback de jogadores prontos para TODOS os jogadores cadastrados
-                break;
+    // idSessaoNova e primeiraEsperada: sessão confiável de um cadastro que veio num envelope (0 nos demais)
+    private static void tratarDatagrama(InetAddress enderecoCliente, int portaCliente, ByteBuffer dados, int idSessaoNova,
+                                        int primeiraEsperada) {
+        boolean binario = ProtocoloBinario.ehBinario(dados);
+        if (binario && ProtocoloBinario.opcode(dados) == ProtocoloBinario.OP_FRAGMENTO) {
+            tratarFragmento(enderecoCliente, portaCliente, dados, idSessaoNova, primeiraEsperada);
+            return;
+        }
+        if (binario && ProtocoloBinario.opcode(dados) == ProtocoloBinario.OP_SESSAO) {
+            tratarComToken(enderecoCliente, portaCliente, dados);
+            return;
+        }
+        if (binario && ProtocoloBinario.opcode(dados) == ProtocoloBinario.OP_ASSISTIR) {
+            tratarEspectador(enderecoCliente, portaCliente, dados);
+            return;
+        }
+        if (binario && (ProtocoloBinario.opcode(dados) == ProtocoloBinario.OP_CONFIAVEL || ProtocoloBinario.opcode(dados) == ProtocoloBinario.OP_ACK)) {
+            tratarConfiavel(enderecoCliente, portaCliente, dados);
+            return;
+        }
+        // Procura o jogador existente com base no IP e Porta
+        Jogador jogadorAtual = jogadoresPorEndereco.buscar(enderecoCliente, portaCliente);
+        if (jogadorAtual == null && !bemFormado(dados, binario)) {
+            Metricas.DESCARTADOS_MALFORMADOS.increment(); // Lixo de quem não é jogador: nem resposta de erro
+            return;
+        }
 
-            case 3: // Sair do jogo
-                synchronized (jogadoresConectados) {
-                    if (jogadorAtual.emJogo) {
-                        jogadorAtual.emJogo = false; // Define como não em jogo
-                    }
-                    jogadoresConectados.remove(jogadorAtual.nickname);
-                }
-                System.out.println("Jogador(a): " + jogadorAtual.nickname + " saiu do jogo.");
-                enviarMensagemAoJogador(jogadorAtual, "Você escolheu sair do jogo. Até mais!");
-                
-                long jogadoresRestantesEmJogo = jogadoresConectados.values().stream().filter(j -> j.emJogo).count();
-                if (jogadoresRestantesEmJogo == 0) {
-                    estadoAtualJogo = EstadoGlobalJogo.AGUARDANDO_JOGADORES;
-                    System.out.println("Todos os jogadores saíram. Servidor pronto para nova partida.");
-                } else {
-                    enviarFeedbackContagemJogadores(); // Envia feedback atualizado após saída
-                }
-                // Se o jogo estava em andamento e um jogador sai, pode ser necessário reavaliar
-                // e, se sobrar apenas um, declará-lo vencedor ou encerrar a partida
-                if (estadoAtualJogo == EstadoGlobalJogo.EM_ANDAMENTO && jogadoresRestantesEmJogo == 1) {
-                    Jogador vencedor = null;
-                    synchronized (jogadoresConectados) {
-                        for (Jogador j : jogadoresConectados.values()) {
-                            if (j.emJogo) {
-                                vencedor = j;
-                                break;
-                            }
-                        }
-                    }
-                    if (vencedor != null) {
-                        enviarMensagemAoJogador(vencedor, "Parabéns! Você foi o(a) vencedor(a)!");
-                        System.out.println("Jogador(a) " + vencedor.nickname + " venceu o jogo!");
-                    }
-                    // Reinicia o estado do jogo
-                    synchronized (jogadoresConectados) {
-                        jogadoresConectados.clear();
-                    }
-                    estadoAtualJogo = EstadoGlobalJogo.FIM_DE_PARTIDA;
-                    System.out.println("Fim de jogo. Servidor pronto para nova partida.");
-
-                } else if (estadoAtualJogo == EstadoGlobalJogo.EM_ANDAMENTO && jogadoresRestantesEmJogo < 2) {
-                    System.out.println("Número insuficiente de jogadores para continuar o jogo. Jogo encerrado.");
-                    // Informa os jogadores remanescentes que o jogo acabou
-                    synchronized (jogadoresConectados) {
-                        for(Jogador j : jogadoresConectados.values()){
-                            if(j.emJogo) {
-                                enviarMensagemAoJogador(j, "Jogo encerrado devido a falta de jogadores.");
-                            }
-                            j.emJogo = false; // Garante que saiam do estado "emJogo"
-                            j.pontuacao = 0; // Reinicia a pontuação
-                        }
-                        // Limpa jogadores conectados ou apenas define-os como não em jogo
-                        // jogadoresConectados.clear(); // Depende se quer que eles possam iniciar um novo jogo sem reconectar
+        if (Registro.amostrarPacote()) { // Registro por pacote: todos em desenvolvimento, amostrado ou nenhum em produção
+            if (binario) {
+                Registro.registrar(Registro.INFO, "Mensagem binária recebida de {T}:{A} -> opcode {B}", enderecoCliente.getHostAddress(), null,
+                                   portaCliente, ProtocoloBinario.opcode(dados), 0, 0, 0);
+            } else {
+                Registro.info("Mensagem recebida de {T}:{A} -> {U}", enderecoCliente.getHostAddress(), DecodificadorTexto.lerTexto(dados), portaCliente);
+            }
+        }
+
+        // Tipo da entrada, valor e rodada (a rodada só vem no protocolo binário)
+        byte tipo = ENTRADA_TEXTO;
+        int escolha = DecodificadorTexto.NAO_NUMERO;
+        int rodada = -1;
+        if (binario) {
+            byte opcode = ProtocoloBinario.opcode(dados);
+            if (!ProtocoloBinario.cargaValida(dados) || (opcode != ProtocoloBinario.OP_CADASTRO && opcode != ProtocoloBinario.OP_OPCAO_MENU && opcode != ProtocoloBinario.OP_JOGADA)) {
+                tipo = ENTRADA_INVALIDA;
+            } else if (opcode != ProtocoloBinario.OP_CADASTRO) {
+                tipo = opcode == ProtocoloBinario.OP_JOGADA ? ENTRADA_JOGADA : ENTRADA_MENU;
+                escolha = ProtocoloBinario.argumento(dados, 0);
+                rodada = ProtocoloBinario.rodada(dados);
+            }
+        } else {
+            escolha = DecodificadorTexto.lerNumero(dados);
+        }
+
+        if (jogadorAtual == null) { // Se não encontrou, é um novo cadastro
+            if (adiarCadastro()) {
+                return;
+            }
+            // Valida o nickname para cadastro (não pode ser vazio nem um número)
+            Jogador novoJogador = null;
+            if (binario && tipo == ENTRADA_TEXTO) {
+                ByteBuffer nickname = ProtocoloBinario.cargaTexto(dados);
+                if (!DecodificadorTexto.vazio(nickname) && DecodificadorTexto.lerNumero(nickname) == DecodificadorTexto.NAO_NUMERO) {
+                    Jogador jogador = new Jogador(DecodificadorTexto.lerTexto(nickname), enderecoCliente, portaCliente, true);
+                    if (idSessaoNova != 0) {
+                        jogador.sessao = novaSessao(jogador, idSessaoNova, primeiraEsperada);
                     }
-                    estadoAtualJogo = EstadoGlobalJogo.FIM_DE_PARTIDA;
-                    System.out.println("Fim de jogo. Servidor pronto para nova partida.");
+                    novoJogador = cadastrarJogador(jogador);
                 }
+            } else if (!binario && escolha == DecodificadorTexto.NAO_NUMERO && !DecodificadorTexto.vazio(dados)) {
+                novoJogador = cadastrarJogador(new Jogador(DecodificadorTexto.lerTexto(dados), enderecoCliente, portaCliente, false));
+            }
 
-                break;
-
-            default: // Opção de menu inválida
-                enviarMensagemAoJogador(jogadorAtual, "Opção de menu inválida. Digite 1, 2 ou 3.");
-                String menuMessageDefault = "Bem-vindo(a)," + jogadorAtual.nickname + ".\n" +
-                                     "Digite 1 - para ver as regras do jogo.\n" +
-                                     "Digite 2 - para iniciar o jogo.\n" +
-                                     "Digite 3 - para sair do jogo.\n" +
-                                     "O que deseja:";
-                enviarMensagemAoJogador(jogadorAtual, menuMessageDefault);
-                break;
+            if (novoJogador != null) {
+                Registro.info("Jogador(a): {T} se cadastrou. IP:{U} Porta: {A}", novoJogador.nickname, enderecoCliente.getHostAddress(), portaCliente);
+                agendarVerificacaoInatividade(novoJogador, INATIVIDADE_MILLIS);
+                if (binario) {
+                    // O token vai antes do menu: o cliente o guarda antes de a primeira escolha sair
+                    long token = sessoes.emitir(novoJogador);
+                    Diario.sessao(novoJogador);
+                    Mensageiro.enviar(novoJogador, ProtocoloBinario.OP_SESSAO_TOKEN, (int) (token >>> 32), (int) token);
+                }
+                Mensageiro.enviar(novoJogador, ProtocoloBinario.OP_MENU);
+                Jogador cadastrado = novoJogador;
+                // Envia feedback de contagem após cadastro: quantos esperam na faixa do rating dele
+                Estatisticas.consultarRating(cadastrado, rating -> admissao.enviar(
+                        () -> enviarFeedbackContagemJogadores(cadastrado, formador.prontosNaFaixa(rating))));
+            } else {
+                Metricas.CADASTROS_RECUSADOS.increment();
+                Mensageiro.enviarErroCadastro(new InetSocketAddress(enderecoCliente, portaCliente), binario);
+            }
+        } else { // Jogador já cadastrado: o laço dono dele processa a escolha de menu ou jogada
+            long agora = System.nanoTime();
+            jogadorAtual.ultimoContato = agora;
+            LacoDeEventos dono = jogadorAtual.laco;
+            if (dono != null && !dono.oferecer(new EventoEntrada(jogadorAtual, tipo, escolha, rodada, dono, agora), LIMITE_CAIXA)) {
+                Metricas.DESCARTADOS_CAIXA_CHEIA.increment();
+            }
         }
     }
 
+    // Fragmento de uma entrada maior que um datagrama: com o último que faltava, a mensagem
+    // remontada é tratada como se tivesse chegado inteira (no mesmo nível em que o fragmento veio)
+    private static void tratarFragmento(InetAddress enderecoCliente, int portaCliente, ByteBuffer dados, int idSessaoNova,
+                                        int primeiraEsperada) {
+        // Só jogadores cadastrados mandam mensagens grandes (o cadastro cabe num datagrama): os
+        // fragmentos de outras origens são lixo e não chegam a ocupar a remontagem
+        Jogador jogador = jogadoresPorEndereco.buscar(enderecoCliente, portaCliente);
+        if (jogador == null || !ProtocoloBinario.cargaValida(dados)) {
+            Metricas.DESCARTADOS_MALFORMADOS.increment();
+            return;
+        }
+        ByteBuffer mensagem = remontagem.receber(jogador, dados, System.nanoTime());
+        if (mensagem == null) {
+            return;
+        }
+        try {
+            if (ProtocoloBinario.ehBinario(mensagem) && ProtocoloBinario.opcode(mensagem) == ProtocoloBinario.OP_FRAGMENTO) {
+                Metricas.DESCARTADOS_MALFORMADOS.increment(); // Fragmento dentro de fragmento
+            } else {
+                tratarDatagrama(enderecoCliente, portaCliente, mensagem, idSessaoNova, primeiraEsperada);
+            }
+        } finally {
+            remontagem.devolver(mensagem);
+        }
+    }
 
-    // Envia o feedback de contagem de jogadores para todos os clientes cadastrados
-    private static void enviarFeedbackContagemJogadores() {
-        synchronized (jogadoresConectados) {
-            long jogadoresCadastrados = jogadoresConectados.size();
-            long jogadoresProntos = jogadoresConectados.values().stream().filter(j -> j.emJogo).count();
-            String feedback = "Total de jogadores cadastrados: " + jogadoresCadastrados + ". " +
-                              jogadoresProntos + "/" + N_JOGADORES_INICIAIS + " prontos para a partida.";
-            
-            for (Jogador j : jogadoresConectados.values()) {
-                enviarMensagemAoJogador(j, feedback); 
+    // Inscrição ou confirmação de um espectador (ver Plateia). Id 0 escolhe a partida mais recente.
+    // Sem o biscoito do endereço, a resposta é só o biscoito.
+    private static void tratarEspectador(InetAddress enderecoCliente, int portaCliente, ByteBuffer dados) {
+        if (!ProtocoloBinario.cargaValida(dados)) {
+            Metricas.DESCARTADOS_MALFORMADOS.increment();
+            return;
+        }
+        int idPartida = ProtocoloBinario.idPartida(dados);
+        long biscoito = Plateia.biscoito(enderecoCliente, portaCliente);
+        if (ProtocoloBinario.argumentoLongo(dados, 1) != biscoito) {
+            Plateia.desafiar(idPartida, new InetSocketAddress(enderecoCliente, portaCliente), biscoito);
+            return;
+        }
+        if (idPartida == 0) {
+            for (Integer id : partidas.keySet()) {
+                idPartida = Math.max(idPartida, id);
             }
         }
+        InetSocketAddress endereco = new InetSocketAddress(enderecoCliente, portaCliente);
+        if (idPartida == 0 || !partidas.containsKey(idPartida)) {
+            Plateia.recusar(endereco, biscoito);
+        } else {
+            Plateia.assistir(idPartida, endereco, ProtocoloBinario.argumento(dados, 0), biscoito);
+        }
     }
 
+    // Pré-filtro das entradas de quem ainda não é jogador, antes de criar qualquer String: um
+    // quadro binário íntegro ou um texto curto sem caracteres de controle. O resto é descartado
+    // em silêncio, para que lixo vindo de endereços falsos não vire respostas de erro.
+    private static boolean bemFormado(ByteBuffer dados, boolean binario) {
+        if (!binario) {
+            return DecodificadorTexto.plausivel(dados, TAMANHO_MAXIMO_NICK);
+        }
+        if (!ProtocoloBinario.cargaValida(dados)) {
+            return false;
+        }
+        byte opcode = ProtocoloBinario.opcode(dados);
+        if (opcode == ProtocoloBinario.OP_CADASTRO) {
+            return DecodificadorTexto.plausivel(ProtocoloBinario.cargaTexto(dados), TAMANHO_MAXIMO_NICK);
+        }
+        return opcode == ProtocoloBinario.OP_OPCAO_MENU || opcode == ProtocoloBinario.OP_JOGADA;
+    }
 
-    // Processa uma rodada do jogo
-    public static synchronized void processarRodada() {
-        System.out.println("Iniciando processamento da rodada.");
+    // Com o saguão ou a admissão atrasados, novos cadastros ficam sem resposta (o cliente tenta
+    // de novo) antes que as entradas de quem já joga comecem a ser descartadas
+    private static boolean adiarCadastro() {
+        int limite = LIMITE_CAIXA / 2;
+        boolean sobrecarregado = admissao.pendentes() >= limite;
+        for (int i = 0; i < saguoes.length && !sobrecarregado; i++) {
+            sobrecarregado = saguoes[i].pendentes() >= limite;
+        }
+        if (sobrecarregado) {
+            Metricas.CADASTROS_ADIADOS.increment();
+        }
+        return sobrecarregado;
+    }
 
-        List<Jogador> jogadoresAtivosNaRodada = new ArrayList<>();
-        synchronized (jogadoresConectados) {
-            for (Jogador j : jogadoresConectados.values()) {
-                if (j.emJogo) {
-                    jogadoresAtivosNaRodada.add(j);
-                }
+    // Envelope ou ack da entrega confiável (executado na thread de recepção): registra o que o
+    // cliente confirmou e trata o quadro de dentro na ordem da sequência, uma única vez. Um
+    // cadastro num envelope cria a sessão do novo jogador.
+    private static void tratarConfiavel(InetAddress enderecoCliente, int portaCliente, ByteBuffer dados) {
+        if (!ProtocoloBinario.cargaValida(dados) || PerdaSimulada.descartar(PERDA_SIMULADA)) {
+            return;
+        }
+        Jogador jogador = jogadoresPorEndereco.buscar(enderecoCliente, portaCliente);
+        SessaoConfiavel sessao = jogador != null ? jogador.sessao : null;
+        if (sessao != null) {
+            if (!sessao.pertence(dados)) {
+                return; // Retransmissão atrasada de uma sessão anterior neste endereço
+            }
+            jogador.ultimoContato = System.nanoTime();
+            try {
+                sessao.receberAck(ProtocoloBinario.ack(dados), ProtocoloBinario.mascara(dados));
+            } catch (IOException e) {
+                Registro.erro("Erro ao enviar mensagem para {T}: {U}", jogador.nickname, e.getMessage());
             }
         }
-
-        // Se menos de 2 jogadores estão ativos, encerra a partida ou aguarda mais
-        if (jogadoresAtivosNaRodada.size() < 2) {
-             System.out.println("Número insuficiente de jogadores para continuar o jogo. Jogo encerrado.");
-             for(Jogador j : jogadoresAtivosNaRodada){
-                 enviarMensagemAoJogador(j, "Jogo encerrado devido a falta de jogadores.");
-             }
-             synchronized (jogadoresConectados) {
-                 jogadoresConectados.clear(); // Limpa todos os jogadores
-             }
-             estadoAtualJogo = EstadoGlobalJogo.FIM_DE_PARTIDA;
-             System.out.println("Fim de jogo. Servidor pronto para nova partida.");
-             return;
+        if (ProtocoloBinario.opcode(dados) == ProtocoloBinario.OP_ACK) {
+            return;
         }
-
-        double soma = 0;
-        int numJogadoresComNumero = 0;
-        List<Jogador> jogadoresQueJogaram = new ArrayList<>();
-        
-        // Coleta os valores escolhidos pelos jogadores
-        for (Jogador jogador : jogadoresAtivosNaRodada) {
-            if (jogador.valorEscolhido != -1) { // Verifica se o jogador realmente escolheu um número nesta rodada
-                soma += jogador.valorEscolhido;
-                numJogadoresComNumero++;
-                jogadoresQueJogaram.add(jogador);
+        int sequencia = ProtocoloBinario.sequencia(dados);
+        int idSessao = ProtocoloBinario.idSessao(dados);
+        ByteBuffer quadro = dados.position(dados.position() + ProtocoloBinario.TAMANHO_ENVELOPE);
+        if (!ProtocoloBinario.ehBinario(quadro) || ProtocoloBinario.opcode(quadro) == ProtocoloBinario.OP_CONFIAVEL
+                || ProtocoloBinario.opcode(quadro) == ProtocoloBinario.OP_ACK) {
+            return;
+        }
+        if (sessao == null) {
+            // Cadastro confiável; ou um jogador cadastrado sem sessão, cujo quadro vale como se viesse solto
+            boolean cadastro = jogador == null && ProtocoloBinario.opcode(quadro) == ProtocoloBinario.OP_CADASTRO;
+            tratarDatagrama(enderecoCliente, portaCliente, quadro, cadastro ? idSessao : 0, sequencia + 1);
+            return;
+        }
+        if (jogador.laco != null && jogador.laco.pendentes() >= LIMITE_CAIXA) {
+            // Sem confirmar: o cliente retransmite quando o laço dono tiver folga
+            Metricas.DESCARTADOS_CAIXA_CHEIA.increment();
+            return;
+        }
+        if (sessao.receber(sequencia, quadro) == SessaoConfiavel.ENTREGAR) {
+            tratarDatagrama(enderecoCliente, portaCliente, quadro);
+            ByteBuffer adiantado;
+            while ((adiantado = sessao.proximoAdiantado()) != null) {
+                tratarDatagrama(enderecoCliente, portaCliente, adiantado);
+                SessaoConfiavel.devolver(adiantado);
             }
         }
+    }
 
-        // Se ninguém escolheu um número, avisa e pede para jogar novamente
-        if (numJogadoresComNumero == 0) {
-            System.out.println("Nenhum jogador escolheu um número válido nesta rodada. Pulando cálculo.");
-             for (Jogador jogador : jogadoresAtivosNaRodada) {
-                enviarMensagemAoJogador(jogador, "Nenhum número válido escolhido na rodada. Placar permanece o mesmo.");
-                enviarMensagemAoJogador(jogador, "Seu placar é: " + jogador.pontuacao);
-                jogador.valorEscolhido = -1; // Reseta a escolha para a próxima rodada
-                enviarMensagemAoJogador(jogador, "Escolha um número entre 0 e 100:");
+    // Datagrama com o token da sessão na frente (executado na thread de recepção): o jogador é
+    // achado pelo token, não pelo endereço. Se o endereço mudou (NAT, cliente reiniciado), ele
+    // é reassociado antes de o datagrama de dentro ser tratado como se viesse do endereço novo.
+    // Um token desconhecido (sessão que já acabou, servidor reiniciado sem diário) vale pelo
+    // endereço, e um pedido de retomada com ele recebe OP_SESSAO_INVALIDA.
+    private static void tratarComToken(InetAddress enderecoCliente, int portaCliente, ByteBuffer dados) {
+        if (!ProtocoloBinario.cargaValida(dados)) {
+            Metricas.DESCARTADOS_MALFORMADOS.increment();
+            return;
+        }
+        long token = ProtocoloBinario.token(dados);
+        ByteBuffer interno = dados.position(dados.position() + ProtocoloBinario.TAMANHO_SESSAO);
+        if (!ProtocoloBinario.ehBinario(interno) || ProtocoloBinario.opcode(interno) == ProtocoloBinario.OP_SESSAO) {
+            Metricas.DESCARTADOS_MALFORMADOS.increment();
+            return;
+        }
+        int idRetomada = idDaRetomada(interno);
+        Jogador jogador = sessoes.buscar(token);
+        if (jogador == null) {
+            if (idRetomada != 0) {
+                Metricas.SESSOES_INVALIDAS.increment();
+                Mensageiro.enviarSessaoInvalida(new InetSocketAddress(enderecoCliente, portaCliente));
+            } else {
+                tratarDatagrama(enderecoCliente, portaCliente, interno);
             }
             return;
         }
+        InetSocketAddress endereco = jogador.endereco;
+        if (endereco.getPort() != portaCliente || !endereco.getAddress().equals(enderecoCliente)) {
+            reassociar(jogador, new InetSocketAddress(enderecoCliente, portaCliente));
+        }
+        SessaoConfiavel sessao = jogador.sessao;
+        if (idRetomada != 0 && (sessao == null || sessao.id != idRetomada)) {
+            retomarSessao(jogador, interno, idRetomada);
+        } else {
+            tratarDatagrama(enderecoCliente, portaCliente, interno); // Retransmissões da retomada também
+        }
+    }
 
-        double media = soma / numJogadoresComNumero;
-        double valorAlvo = media * 0.8;
+    // Id da sessão confiável de um pedido de retomada (OP_RETOMAR num envelope), -1 para um
+    // pedido solto e 0 se não é uma retomada
+    private static int idDaRetomada(ByteBuffer interno) {
+        byte opcode = ProtocoloBinario.opcode(interno);
+        if (opcode == ProtocoloBinario.OP_RETOMAR) {
+            return -1;
+        }
+        if (opcode != ProtocoloBinario.OP_CONFIAVEL || !ProtocoloBinario.cargaValida(interno)) {
+            return 0;
+        }
+        int quadro = interno.position() + ProtocoloBinario.TAMANHO_ENVELOPE;
+        ByteBuffer dentro = interno.duplicate().position(quadro);
+        boolean retomada = ProtocoloBinario.ehBinario(dentro) && ProtocoloBinario.opcode(dentro) == ProtocoloBinario.OP_RETOMAR;
+        return retomada ? ProtocoloBinario.idSessao(interno) : 0;
+    }
 
-        System.out.println("Média: " + media + ", Valor Alvo: " + valorAlvo);
+    // Passa o jogador para o endereço novo (executado na thread de recepção, a única que
+    // reassocia). Se o endereço novo era de outro jogador, esse outro perde o endereço e é
+    // desligado: quem tem o token é o dono legítimo da origem.
+    private static void reassociar(Jogador jogador, InetSocketAddress novo) {
+        Jogador anterior = jogadoresPorEndereco.buscar(novo.getAddress(), novo.getPort());
+        if (anterior != null && anterior != jogador) {
+            jogadoresPorEndereco.remover(anterior, novo);
+            LacoDeEventos dono = anterior.laco;
+            if (dono != null) {
+                dono.enviar(() -> desligarJogador(anterior));
+            }
+        }
+        InetSocketAddress antigo = jogador.endereco;
+        jogadoresPorEndereco.remover(jogador, antigo);
+        jogador.endereco = novo;
+        jogadoresPorEndereco.registrar(jogador, novo);
+        if (jogadoresConectados.get(jogador.nickname) != jogador) {
+            jogadoresPorEndereco.remover(jogador, novo); // Saiu enquanto era reassociado
+            return;
+        }
+        Metricas.SESSOES_REASSOCIADAS.increment();
+        Diario.sessao(jogador);
+        Registro.info("Jogador(a): {T} mudou de endereço para {U}:{A}.", jogador.nickname, novo.getAddress().getHostAddress(), novo.getPort());
+    }
 
-        // Armazena as pontuações antigas para calcular a diferença
-        Map<String, Integer> pontuacaoAntiga = new HashMap<>();
-        for(Jogador j : jogadoresQueJogaram) {
-            pontuacaoAntiga.put(j.nickname, j.pontuacao);
+    // O cliente reiniciou e pediu para retomar a sessão: uma sessão confiável nova substitui a
+    // antiga (o cliente perdeu as sequências dela) e o laço dono reenvia o estado do jogador
+    private static void retomarSessao(Jogador jogador, ByteBuffer interno, int idRetomada) {
+        jogador.ultimoContato = System.nanoTime();
+        if (idRetomada > 0) {
+            SessaoConfiavel antiga = jogador.sessao;
+            jogador.sessao = novaSessao(jogador, idRetomada, ProtocoloBinario.sequencia(interno) + 1);
+            if (antiga != null) {
+                antiga.fechar();
+            }
+        }
+        Metricas.SESSOES_RETOMADAS.increment();
+        Registro.info("Jogador(a): {T} retomou a sessão.", jogador.nickname);
+        LacoDeEventos dono = jogador.laco;
+        if (dono != null && !dono.oferecer(new EventoEntrada(jogador, ENTRADA_RETOMADA, 0, -1, dono, jogador.ultimoContato), LIMITE_CAIXA)) {
+            Metricas.DESCARTADOS_CAIXA_CHEIA.increment();
         }
+    }
 
-        // Ordena os jogadores pela proximidade do valor alvo
-        jogadoresQueJogaram.sort(Comparator.comparingDouble(j -> Math.abs(j.valorEscolhido - valorAlvo)));
+    // A sessão confiável envia para o endereço atual do jogador, que muda se ele for reassociado
+    private static SessaoConfiavel novaSessao(Jogador jogador, int id, int primeiraEsperada) {
+        SessaoConfiavel.Saida saida = datagrama -> motor.enviar(datagrama, jogador.endereco);
+        return new SessaoConfiavel(id, PerdaSimulada.aplicar(saida, PERDA_SIMULADA, REORDENACAO_SIMULADA, relogio), relogio,
+                                   RTO_MILLIS, primeiraEsperada);
+    }
 
-        // Aplica as regras de pontuação com base no número de jogadores que jogaram
-        if (jogadoresQueJogaram.size() == 3) {
-            // O mais próximo não perde pontos
-            // O do meio perde 1 ponto
-            jogadoresQueJogaram.get(1).pontuacao--; 
-            // O mais distante perde 2 pontos
-            jogadoresQueJogaram.get(2).pontuacao -= 2;
-        } else if (jogadoresQueJogaram.size() == 2) {
-            // O mais próximo não perde pontos
-            // O mais distante perde 1 ponto
-            jogadoresQueJogaram.get(1).pontuacao--;
+    // Tipos de entrada de um jogador cadastrado
+    private static final byte ENTRADA_TEXTO = 0;    // Protocolo de texto: menu ou jogada, conforme o estado
+    private static final byte ENTRADA_MENU = 1;     // Protocolo binário: opção de menu
+    private static final byte ENTRADA_JOGADA = 2;   // Protocolo binário: jogada
+    private static final byte ENTRADA_INVALIDA = 3; // Protocolo binário: datagrama mal formado
+    private static final byte ENTRADA_INATIVO = 4;  // Gerada pela roda de tempo: o jogador ficou calado demais
+    private static final byte ENTRADA_RETOMADA = 5; // O cliente retomou a sessão e precisa do estado de novo
+
+    // Entrada de um jogador cadastrado, já decodificada. Se o jogador mudou de dono entre o
+    // envio e a execução do evento (por exemplo, entrou numa partida), o evento é repassado.
+    private static final class EventoEntrada implements Runnable {
+        private final Jogador jogador;
+        private final byte tipo;
+        private final int escolha;
+        private final int rodada;
+        private LacoDeEventos destino;
+        private final long recebidoEm; // System.nanoTime() do recebimento, para a métrica de espera na caixa
+
+        EventoEntrada(Jogador jogador, byte tipo, int escolha, int rodada, LacoDeEventos destino, long recebidoEm) {
+            this.jogador = jogador;
+            this.tipo = tipo;
+            this.escolha = escolha;
+            this.rodada = rodada;
+            this.destino = destino;
+            this.recebidoEm = recebidoEm;
         }
-        
-        // Informa os jogadores sobre a pontuação perdida e o placar atual
-        List<String> nicknamesEliminados = new ArrayList<>();
-        for (Jogador jogador : jogadoresAtivosNaRodada) { // Itera sobre todos os ativos na rodada (não apenas os que jogaram)
-            int perdidos = pontuacaoAntiga.getOrDefault(jogador.nickname, jogador.pontuacao) - jogador.pontuacao; // Calcula a perda
-            
-            if (perdidos > 0) {
-                enviarMensagemAoJogador(jogador, "Você perdeu " + perdidos + " ponto(s) nesta rodada.");
-            } else if (numJogadoresComNumero > 0) { // Se houve jogada válida na rodada
-                enviarMensagemAoJogador(jogador, "Você não perdeu pontos nesta rodada.");
-            } else { // Caso não tenha jogado e ninguém jogou
-                enviarMensagemAoJogador(jogador, "Nenhum número válido escolhido na rodada. Placar permanece o mesmo.");
+
+        @Override
+        public void run() {
+            LacoDeEventos dono = jogador.laco;
+            if (dono == null) {
+                return; // O jogador saiu ou foi eliminado
             }
+            if (dono != destino) {
+                destino = dono;
+                dono.enviar(this);
+                return;
+            }
+            long inicio = System.nanoTime();
+            if (tipo != ENTRADA_INATIVO) {
+                Metricas.RECEPCAO_ATE_TRATADOR.registrar(inicio - recebidoEm);
+            }
+            tratarEntrada(jogador, tipo, escolha, rodada);
+            Metricas.DURACAO_TRATADOR.registrarDesde(inicio);
+        }
+    }
+
+    // Processa a entrada de um jogador cadastrado (executado no laço dono do jogador)
+    private static void tratarEntrada(Jogador jogadorAtual, byte tipo, int escolha, int rodada) {
+        Partida partida = jogadorAtual.partida;
+        switch (tipo) {
+            case ENTRADA_INATIVO:
+                // Um datagrama pode ter chegado depois de a roda decidir: confere de novo no laço dono
+                long restante = restanteAteInatividade(jogadorAtual);
+                if (restante > 0) {
+                    agendarVerificacaoInatividade(jogadorAtual, restante);
+                } else {
+                    Registro.info("Jogador(a): {T} foi desligado(a) por inatividade.", jogadorAtual.nickname);
+                    desligarJogador(jogadorAtual);
+                }
+                return;
+            case ENTRADA_RETOMADA:
+                Mensageiro.enviar(jogadorAtual, ProtocoloBinario.OP_SESSAO_RETOMADA);
+                if (partida != null) {
+                    partida.reenviarEstado(jogadorAtual);
+                } else if (jogadorAtual.emJogo) { // Na fila: estamos no laço de admissão
+                    Mensageiro.enviar(jogadorAtual, ProtocoloBinario.OP_AGUARDANDO, formador.prontos(jogadorAtual, System.nanoTime()),
+                                      N_JOGADORES_INICIAIS);
+                } else {
+                    Mensageiro.enviar(jogadorAtual, ProtocoloBinario.OP_MENU);
+                }
+                return;
+            case ENTRADA_MENU:
+                processarOpcaoMenu(escolha, jogadorAtual);
+                return;
+            case ENTRADA_JOGADA:
+                if (partida == null || !partida.registrarJogada(jogadorAtual, escolha, rodada)) {
+                    Metricas.ENTRADAS_INVALIDAS.increment();
+                    Mensageiro.enviar(jogadorAtual, ProtocoloBinario.OP_ENTRADA_INVALIDA);
+                    Mensageiro.enviar(jogadorAtual, partida != null ? ProtocoloBinario.OP_PEDIR_JOGADA : ProtocoloBinario.OP_MENU);
+                }
+                return;
+            default:
+                break;
+        }
+        if (tipo == ENTRADA_INVALIDA || escolha == DecodificadorTexto.NAO_NUMERO) {
+            // Se a entrada não for um número, é uma entrada inválida
+            Metricas.ENTRADAS_INVALIDAS.increment();
+            Mensageiro.enviar(jogadorAtual, ProtocoloBinario.OP_ENTRADA_INVALIDA);
+            Mensageiro.enviar(jogadorAtual, ProtocoloBinario.OP_MENU);
+            return;
+        }
+        // Se o jogador está numa partida em andamento e a escolha é um número válido (0-100),
+        // a própria partida trata como JOGADA; caso contrário, processa a opção de menu
+        if (partida == null || !partida.registrarJogada(jogadorAtual, escolha, -1)) {
+            processarOpcaoMenu(escolha, jogadorAtual);
+        }
+    }
 
-            enviarMensagemAoJogador(jogador, "Seu placar atual é: " + jogador.pontuacao);
-            System.out.println("Placar de " + jogador.nickname + ": " + jogador.pontuacao);
+    private static LacoDeEventos[] criarSaguoes() {
+        LacoDeEventos[] lacos = new LacoDeEventos[Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < lacos.length; i++) {
+            lacos[i] = new LacoDeEventos("saguao-" + i, portadoras);
+        }
+        return lacos;
+    }
 
-            // Verifica se o jogador foi eliminado
-            if (jogador.pontuacao <= -6) {
-                enviarMensagemAoJogador(jogador, "Você foi eliminado(a)!");
-                nicknamesEliminados.add(jogador.nickname);
-                System.out.println("Jogador(a) " + jogador.nickname + " foi eliminado(a).");
+    // Verificação de inatividade: em vez de reagendar a cada datagrama, a roda confere o último
+    // contato quando o prazo vence e reagenda pelo tempo que falta. Só quando o jogador está
+    // mesmo calado o laço dono dele recebe o evento para desligá-lo.
+    private static void agendarVerificacaoInatividade(Jogador jogador, long atrasoMillis) {
+        if (INATIVIDADE_MILLIS <= 0) {
+            return;
+        }
+        relogio.agendar(atrasoMillis, () -> {
+            LacoDeEventos dono = jogador.laco;
+            if (dono == null) {
+                return; // Já saiu, foi eliminado ou a partida acabou
             }
-            jogador.valorEscolhido = -1; // Reseta o valor escolhido para a próxima rodada
+            long restante = restanteAteInatividade(jogador);
+            if (restante > 0) {
+                agendarVerificacaoInatividade(jogador, restante);
+            } else {
+                dono.enviar(new EventoEntrada(jogador, ENTRADA_INATIVO, 0, -1, dono, 0));
+            }
+        });
+    }
+
+    private static long restanteAteInatividade(Jogador jogador) {
+        long calado = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - jogador.ultimoContato);
+        return INATIVIDADE_MILLIS - calado;
+    }
+
+    static int totalJogadoresCadastrados() {
+        return jogadoresConectados.size();
+    }
+
+    // Cadastra o jogador pelo nickname e pelo endereço. Retorna null se o nickname já está
+    // em uso ou se o endereço já foi cadastrado por outro datagrama concorrente.
+    private static Jogador cadastrarJogador(Jogador jogador) {
+        jogador.laco = saguoes[(jogador.nickname.hashCode() & 0x7FFFFFFF) % saguoes.length];
+        if (jogadoresConectados.putIfAbsent(jogador.nickname, jogador) != null) {
+            return null;
         }
-        
-        // Mensagem de fim de rodada para todos os jogadores ativos
-        for (Jogador jogador : jogadoresAtivosNaRodada) {
-             enviarMensagemAoJogador(jogador, "------------------------------------\nFim da Rodada. Aguardando próxima jogada...");
+        if (!jogadoresPorEndereco.registrar(jogador)) {
+            jogadoresConectados.remove(jogador.nickname, jogador);
+            return null;
         }
+        Diario.cadastro(jogador);
+        return jogador;
+    }
 
-        // Remove jogadores eliminados
-        synchronized (jogadoresConectados) {
-            for (String nickname : nicknamesEliminados) {
-                jogadoresConectados.remove(nickname);
-            }
+    // Remove o jogador do cadastro do servidor (saída, eliminação ou fim de partida)
+    static void removerJogador(Jogador jogador) {
+        jogadoresPorEndereco.remover(jogador);
+        sessoes.liberar(jogador);
+        if (jogadoresConectados.remove(jogador.nickname, jogador)) {
+            Diario.saida(jogador);
+        }
+        SessaoConfiavel sessao = jogador.sessao;
+        if (sessao != null) {
+            // As últimas mensagens (eliminação, vitória, saída) ainda podem precisar de retransmissão
+            relogio.agendar(2 * SessaoConfiavel.RTO_MAXIMO_MILLIS, sessao::fechar);
         }
+    }
 
-        long jogadoresAtualmenteEmJogo = jogadoresConectados.values().stream().filter(j -> j.emJogo).count();
+    // Lê o diário, abre um diário novo e recria nele e na memória os jogadores, a fila e as
+    // partidas em andamento. Os segmentos antigos só são apagados depois que o laço de admissão
+    // regravou a fila (o último evento enfileirado nele aqui).
+    private static void restaurarDoDiario(Path diretorio) throws IOException {
+        EstadoDoDiario estado = new EstadoDoDiario();
+        long lidos = Diario.ler(diretorio, estado);
+        Diario.abrir(diretorio, SEGMENTO_DIARIO_BYTES, INTERVALO_DIARIO_MILLIS, SEGMENTOS_DIARIO_MAXIMOS, estado.maiorIdPartida);
+        proximoIdPartida = estado.maiorIdPartida + 1;
+
+        for (EstadoDoDiario.JogadorRestaurado restaurado : estado.jogadores.values()) {
+            Jogador jogador = cadastrarJogador(new Jogador(restaurado.nickname, restaurado.ip, restaurado.porta, restaurado.binario));
+            if (jogador == null) {
+                continue;
+            }
+            // O token continua valendo: o cliente retoma a sessão sem se cadastrar de novo
+            if (restaurado.token != 0 && sessoes.restaurar(jogador, restaurado.token)) {
+                Diario.sessao(jogador);
+            }
+            agendarVerificacaoInatividade(jogador, INATIVIDADE_MILLIS);
+            if (restaurado.naFila) {
+                pedirParaJogar(jogador); // Regrava a entrada na fila no diário novo antes de voltar
+            } else if (restaurado.idPartida < 0 || !estado.partidas.containsKey(restaurado.idPartida)) {
+                Mensageiro.enviar(jogador, ProtocoloBinario.OP_MENU);
+            }
+        }
 
-        // Verifica as condições de vitória ou fim de jogo
-        if (jogadoresAtualmenteEmJogo == 1) {
-            Jogador vencedor = null;
-            synchronized (jogadoresConectados) {
-                for (Jogador j : jogadoresConectados.values()) {
-                    if (j.emJogo) {
-                        vencedor = j;
-                        break;
-                    }
+        for (EstadoDoDiario.PartidaRestaurada restaurada : estado.partidas.values()) {
+            List<Jogador> elenco = new ArrayList<>();
+            int[] pontuacoes = new int[restaurada.elenco.length];
+            int[] escolhas = new int[restaurada.elenco.length];
+            for (int i = 0; i < restaurada.elenco.length; i++) {
+                Jogador jogador = jogadoresConectados.get(restaurada.elenco[i]);
+                if (restaurada.ativos[i] && jogador != null) {
+                    pontuacoes[elenco.size()] = restaurada.pontuacoes[i];
+                    escolhas[elenco.size()] = restaurada.escolhas[i];
+                    elenco.add(jogador);
                 }
             }
-            if (vencedor != null) {
-                enviarMensagemAoJogador(vencedor, "Parabéns! Você foi o(a) vencedor(a)!");
-                System.out.println("Jogador(a) " + vencedor.nickname + " venceu o jogo!");
-            }
-
-            // Limpa jogadores para uma nova partida
-            synchronized (jogadoresConectados) {
-                jogadoresConectados.clear();
-            }
-            estadoAtualJogo = EstadoGlobalJogo.FIM_DE_PARTIDA;
-            System.out.println("Fim de jogo. Servidor pronto para nova partida.");
-        } else if (jogadoresAtualmenteEmJogo == 0 && !jogadoresConectados.isEmpty()) { // Ninguém mais em jogo, mas ainda há cadastrados
-            System.out.println("Todos os jogadores que estavam em jogo foram eliminados. Fim da partida.");
-            estadoAtualJogo = EstadoGlobalJogo.FIM_DE_PARTIDA;
-            synchronized (jogadoresConectados) {
-                for (Jogador j : jogadoresConectados.values()) {
-                    j.emJogo = false; // Define como não em jogo
-                    j.pontuacao = 0; // Reinicia a pontuação
-                    enviarMensagemAoJogador(j, "A partida atual foi encerrada. Digite 2 para iniciar uma nova partida.");
-                }
+            if (elenco.isEmpty()) {
+                continue;
+            }
+            Partida partida = new Partida(restaurada.id, elenco, portadoras, relogio, PRAZO_RODADA_MILLIS, REGRAS);
+            partidas.put(partida.id, partida);
+            partida.retomar(restaurada.rodada, pontuacoes, escolhas);
+        }
+
+        // Os segmentos antigos só são apagados depois que tudo foi regravado no diário novo
+        admissao.enviar(() -> {
+            try {
+                Diario.descartarAnteriores();
+            } catch (IOException e) {
+                Registro.erro("Erro ao apagar os segmentos antigos do diário: {T}", e.getMessage(), null);
             }
-            System.out.println("Servidor pronto para nova partida com jogadores existentes.");
-        } else if (jogadoresConectados.isEmpty()) { // Todos os jogadores foram eliminados ou saíram
-            System.out.println("Todos os jogadores foram eliminados ou saíram. Fim de jogo.");
-            estadoAtualJogo = EstadoGlobalJogo.FIM_DE_PARTIDA;
-            System.out.println("Fim de jogo. Servidor pronto para nova partida.");
-        }
-         else {
-            // Se o jogo continua, pede a próxima jogada
-            estadoAtualJogo = EstadoGlobalJogo.EM_ANDAMENTO;
-            synchronized (jogadoresConectados) {
-                for (Jogador jogador : jogadoresConectados.values()) {
-                    if (jogador.emJogo) {
-                        enviarMensagemAoJogador(jogador, "Escolha um número entre 0 e 100:");
+        });
+        Registro.registrar(Registro.INFO, "Diário: {A} registros lidos; {B} jogadores e {C} partidas restaurados.", null, null,
+                           lidos, jogadoresConectados.size(), partidas.size(), 0, 0);
+    }
+
+    // Chamado pela partida quando ela termina
+    static void partidaEncerrada(Partida partida) {
+        partidas.remove(partida.id, partida);
+    }
+
+    // O jogador pediu para jogar (executado no laço dono dele): ele passa a pertencer ao laço
+    // de admissão e entra na fila com o rating dele, que vem do laço das estatísticas
+    private static void pedirParaJogar(Jogador jogador) {
+        jogador.emJogo = true;
+        jogador.laco = admissao;
+        Diario.entradaNaFila(jogador);
+        Estatisticas.consultarRating(jogador, rating -> admissao.enviar(() -> entrarNaFila(jogador, rating)));
+    }
+
+    // Coloca o jogador na fila (executado no laço de admissão). Se já houver jogadores
+    // compatíveis, a partida sai aqui mesmo (ver partidaFormada).
+    private static void entrarNaFila(Jogador jogador, int rating) {
+        if (jogador.laco != admissao) {
+            return; // Desistiu enquanto o rating era consultado
+        }
+        Registro.info("Jogador(a): {T} iniciou o jogo.", jogador.nickname);
+        Mensageiro.enviar(jogador, ProtocoloBinario.OP_AGUARDANDO, formador.prontosNaFaixa(rating) + 1, N_JOGADORES_INICIAIS);
+        formador.entrar(jogador, rating, System.nanoTime());
+        if (formador.contem(jogador)) {
+            enviarFeedbackContagemJogadores(jogador);
+        }
+    }
+
+    // Entrega os jogadores emparelhados a uma nova partida (executado no laço de admissão)
+    private static void partidaFormada(List<Jogador> elenco) {
+        Metricas.PARTIDAS_FORMADAS.increment();
+        Partida partida = new Partida(proximoIdPartida++, elenco, portadoras, relogio, PRAZO_RODADA_MILLIS, REGRAS);
+        partidas.put(partida.id, partida);
+        partida.comecar();
+    }
+
+    // A cada segundo o juiz se anuncia ao roteador se ele não tem mandado pings
+    private static void agendarAnuncio(MotorRoteado roteado) {
+        roteado.anunciarSeEsquecido();
+        relogio.agendar(1000, () -> agendarAnuncio(roteado));
+    }
+
+    // A cada intervalo, o laço de admissão tenta de novo com as janelas de busca maiores
+    private static void agendarEmparelhamento() {
+        relogio.agendar(INTERVALO_EMPARELHAMENTO_MILLIS, () -> admissao.enviar(() -> {
+            formador.verificar(System.nanoTime());
+            agendarEmparelhamento();
+        }));
+    }
+
+    // Retira da fila um jogador que desistiu antes de a partida começar (executado no laço de admissão)
+    private static void sairDaFila(Jogador jogador) {
+        formador.sair(jogador);
+        jogador.emJogo = false;
+    }
+
+    // Centraliza a lógica de processar opções de menu
+    private static void processarOpcaoMenu(int escolha, Jogador jogadorAtual) {
+        switch (escolha) {
+            case 1: // Ver regras
+                Mensageiro.enviarTexto(jogadorAtual, ProtocoloBinario.OP_REGRAS, TEXTO_DAS_REGRAS);
+                Mensageiro.enviar(jogadorAtual, ProtocoloBinario.OP_MENU);
+                break;
+
+            case 2: // INICIAR O JOGO
+                if (!jogadorAtual.emJogo) {
+                    // O jogador passa a pertencer ao laço de admissão até a partida dele começar
+                    pedirParaJogar(jogadorAtual);
+                } else {
+                    Mensageiro.enviar(jogadorAtual, ProtocoloBinario.OP_JA_EM_JOGO);
+                    Partida partidaAtual = jogadorAtual.partida;
+                    if (partidaAtual != null) {
+                        partidaAtual.enviarFeedbackContagemJogadores(jogadoresConectados.size());
+                    } else {
+                        enviarFeedbackContagemJogadores(jogadorAtual); // Está na fila: estamos no laço de admissão
                     }
                 }
-            }
+                break;
+
+            case 3: // Sair do jogo
+                Registro.info("Jogador(a): {T} saiu do jogo.", jogadorAtual.nickname);
+                Mensageiro.enviar(jogadorAtual, ProtocoloBinario.OP_SAIDA);
+                desligarJogador(jogadorAtual);
+                break;
+
+            case 4: // Ver o ranking (respondido pelo laço das estatísticas)
+                Estatisticas.enviarRanking(jogadorAtual);
+                break;
+
+            default: // Opção de menu inválida
+                Metricas.ENTRADAS_INVALIDAS.increment();
+                Mensageiro.enviar(jogadorAtual, ProtocoloBinario.OP_OPCAO_INVALIDA);
+                Mensageiro.enviar(jogadorAtual, ProtocoloBinario.OP_MENU);
+                break;
         }
     }
-}
\ No newline at end of file
+
+
+    // Tira o jogador do servidor e da partida ou da fila em que ele está (executado no laço dono do jogador)
+    private static void desligarJogador(Jogador jogadorAtual) {
+        removerJogador(jogadorAtual);
+        Partida partida = jogadorAtual.partida;
+        if (partida != null) {
+            partida.removerJogador(jogadorAtual); // A partida reavalia o próprio estado (vencedor, fim de jogo)
+        } else if (jogadorAtual.emJogo) {
+            sairDaFila(jogadorAtual); // Está na fila: estamos no laço de admissão
+        }
+        jogadorAtual.laco = null;
+    }
+
+    // Envia ao jogador na fila a contagem de cadastrados e de jogadores prontos para a partida
+    // dele (executado no laço de admissão). Só para ele: avisar a fila inteira a cada entrada
+    // custaria O(fila) por jogador.
+    private static void enviarFeedbackContagemJogadores(Jogador jogador) {
+        enviarFeedbackContagemJogadores(jogador, formador.prontos(jogador, System.nanoTime()));
+    }
+
+    private static void enviarFeedbackContagemJogadores(Jogador jogador, int prontos) {
+        Mensageiro.enviar(jogador, ProtocoloBinario.OP_CONTAGEM, jogadoresConectados.size(), prontos, N_JOGADORES_INICIAIS);
+    }
+}
@@ -0,0 +1,89 @@
+package src;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Laço de eventos (caixa de mensagens) de um dono de estado, como uma partida. Os eventos
+// enviados a um laço são executados um de cada vez e na ordem de chegada, então o estado
+// do dono não precisa de locks. Os laços não têm thread própria: são multiplexados sobre
+// um pool de threads portadoras do tamanho do número de núcleos. (Threads virtuais fariam
+// esse papel a partir do Java 21, mas o projeto compila para Java 11.)
+class LacoDeEventos implements Runnable {
+
+    // Eventos executados por vez antes de devolver a thread portadora, para um laço
+    // muito ocupado não monopolizar um núcleo
+    private static final int LOTE_MAXIMO = 256;
+
+    private final Queue<Runnable> caixa = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean agendado = new AtomicBoolean(false);
+    // Eventos na caixa (a ConcurrentLinkedQueue não sabe o próprio tamanho em O(1))
+    private final AtomicInteger pendentes = new AtomicInteger();
+    private final ExecutorService portadoras;
+    final String nome;
+
+    LacoDeEventos(String nome, ExecutorService portadoras) {
+        this.nome = nome;
+        this.portadoras = portadoras;
+    }
+
+    // Pool de threads portadoras compartilhado pelos laços (modo assíncrono: FIFO por thread)
+    static ExecutorService criarPortadoras() {
+        return new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    // Coloca o evento na caixa e agenda o laço se ele ainda não estiver agendado
+    void enviar(Runnable evento) {
+        pendentes.incrementAndGet();
+        caixa.offer(evento);
+        if (agendado.compareAndSet(false, true)) {
+            portadoras.execute(this);
+        }
+    }
+
+    // Como enviar, mas recusa o evento (devolve false) se a caixa já tem `limite` eventos
+    // esperando. Usado para as entradas vindas da rede, para que uma enxurrada de datagramas
+    // não faça a caixa crescer sem limite; os eventos internos usam enviar.
+    boolean oferecer(Runnable evento, int limite) {
+        if (pendentes.get() >= limite) {
+            return false;
+        }
+        enviar(evento);
+        return true;
+    }
+
+    int pendentes() {
+        return pendentes.get();
+    }
+
+    @Override
+    public void run() {
+        Runnable evento;
+        int executados = 0;
+        while (executados < LOTE_MAXIMO && (evento = caixa.poll()) != null) {
+            pendentes.decrementAndGet();
+            // Tudo o que o evento enviar sai em um datagrama por jogador quando ele termina
+            boolean abriuLote = Mensageiro.abrirLote();
+            try {
+                evento.run();
+            } catch (RuntimeException e) {
+                Metricas.ERROS_DE_TRATAMENTO.increment();
+                Registro.erro("Erro ao processar evento no laço {T}: {U}", nome, e.toString());
+            } finally {
+                if (abriuLote) {
+                    Mensageiro.descarregarLote();
+                }
+            }
+            executados++;
+        }
+        agendado.set(false);
+        // Um evento pode ter chegado entre o último poll e a liberação do agendamento
+        if (!caixa.isEmpty() && agendado.compareAndSet(false, true)) {
+            portadoras.execute(this);
+        }
+    }
+}
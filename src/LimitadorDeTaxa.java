@@ -0,0 +1,93 @@
+package src;
+
+import java.net.InetAddress;
+
+// Limite de datagramas por endereço de origem (IP + porta): um balde de fichas por endereço,
+// que enche `taxa` fichas por segundo até `rajada` fichas, e cada datagrama gasta uma. O balde
+// é guardado na forma de GCRA: em vez de fichas e do instante do último abastecimento, só o
+// instante teórico em que ele estaria cheio de novo (um long por endereço). Um endereço cujo
+// balde já está cheio equivale a um endereço ausente da tabela.
+//
+// A tabela é de tamanho fixo, em arrays primitivos, e associativa por conjuntos: cada chave só
+// pode ficar em VIAS posições seguidas. Quando o conjunto está cheio, é despejada a entrada que
+// estaria cheia há mais tempo, que na maioria das vezes é um endereço que já não envia nada.
+// Uma enxurrada de endereços novos nunca faz a tabela crescer. Usada só pela thread de recepção.
+final class LimitadorDeTaxa {
+
+    private static final int VIAS = 4;
+    private static final long VAZIA = 0; // Nenhum endereço real tem a chave 0 (IP 0.0.0.0, porta 0)
+
+    private final long[] chaves;
+    private final long[] cheioEm; // Instante (System.nanoTime) em que o balde estaria cheio
+    private final int mascaraConjunto;
+    private final long nanosPorFicha;
+    private final long tolerancia; // (rajada - 1) fichas em nanos: o quanto cheioEm pode ir além de agora
+    private int ocupadas;
+    private long despejos;
+
+    // taxa em datagramas por segundo; capacidade é arredondada para uma potência de 2
+    LimitadorDeTaxa(int capacidade, double taxa, int rajada) {
+        if (taxa <= 0 || rajada < 1) {
+            throw new IllegalArgumentException("Taxa e rajada precisam ser positivas");
+        }
+        int tamanho = Integer.highestOneBit(Math.max(VIAS, capacidade - 1) << 1);
+        chaves = new long[tamanho];
+        cheioEm = new long[tamanho];
+        mascaraConjunto = (tamanho / VIAS) - 1;
+        nanosPorFicha = Math.max(1, (long) (1_000_000_000L / taxa));
+        tolerancia = nanosPorFicha * (rajada - 1);
+    }
+
+    boolean permitir(InetAddress ip, int porta, long agora) {
+        return permitir(IndiceEnderecos.chave(ip, porta), agora);
+    }
+
+    // Gasta uma ficha do balde do endereço; false se o balde está vazio
+    boolean permitir(long chave, long agora) {
+        int base = conjunto(chave) * VIAS;
+        int livre = -1;
+        int maisAntiga = base;
+        for (int i = base; i < base + VIAS; i++) {
+            long c = chaves[i];
+            if (c == chave) {
+                long cheio = Math.max(cheioEm[i], agora);
+                if (cheio - agora > tolerancia) {
+                    return false;
+                }
+                cheioEm[i] = cheio + nanosPorFicha;
+                return true;
+            }
+            if (c == VAZIA) {
+                if (livre < 0) {
+                    livre = i;
+                }
+            } else if (cheioEm[i] - cheioEm[maisAntiga] < 0 || chaves[maisAntiga] == VAZIA) {
+                maisAntiga = i;
+            }
+        }
+        int posicao = livre;
+        if (posicao < 0) {
+            posicao = maisAntiga;
+            despejos++;
+        } else {
+            ocupadas++;
+        }
+        chaves[posicao] = chave;
+        cheioEm[posicao] = agora + nanosPorFicha; // Balde novo (cheio) menos a ficha deste datagrama
+        return true;
+    }
+
+    private int conjunto(long chave) {
+        long h = chave * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mascaraConjunto;
+    }
+
+    // Endereços na tabela (inclusive os de balde já cheio, que ficam até serem despejados)
+    int ocupadas() {
+        return ocupadas;
+    }
+
+    long despejos() {
+        return despejos;
+    }
+}
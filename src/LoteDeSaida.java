@@ -0,0 +1,197 @@
+package src;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Lote de saída de uma thread: junta tudo o que um evento envia para cada jogador e, no fim
+// do evento, manda um único datagrama por jogador. No protocolo de texto as mensagens são
+// separadas por SEPARADOR_TEXTO; no binário, várias mensagens viram um quadro OP_LOTE com
+// os quadros originais prefixados pelo tamanho (um quadro sozinho segue sem o envelope).
+// Se o lote de um jogador passaria de TAMANHO_MAXIMO, o que já está nele é enviado antes; uma
+// mensagem sozinha maior que isso sai fragmentada (ver Fragmentos): em OP_FRAGMENTO para os
+// jogadores binários e em vários datagramas de texto, quebrados nas linhas, para os de texto.
+final class LoteDeSaida {
+
+    static final byte SEPARADOR_TEXTO = 0x1E; // "Record separator" do ASCII
+    static final int TAMANHO_MAXIMO = Fragmentos.TAMANHO_DATAGRAMA; // Cabe num datagrama sem fragmentação IP
+
+    private static final ThreadLocal<LoteDeSaida> DA_THREAD = ThreadLocal.withInitial(LoteDeSaida::new);
+
+    private Jogador[] destinos = new Jogador[16];
+    private ByteBuffer[] buffers = new ByteBuffer[16];
+    private int[] mensagens = new int[16]; // Quantidade de mensagens no lote de cada destino
+    private int quantidade;
+    // Posição de cada destino em destinos, por endereçamento aberto pela identidade do jogador.
+    // É deste lote só: o mesmo jogador pode estar ao mesmo tempo no lote de outra thread.
+    private Jogador[] chaves = new Jogador[32];
+    private int[] indices = new int[32];
+    private boolean aberto;
+
+    private LoteDeSaida() {}
+
+    // Lote da thread atual, se um evento o abriu; null caso contrário (envio imediato)
+    static LoteDeSaida atual() {
+        LoteDeSaida lote = DA_THREAD.get();
+        return lote.aberto ? lote : null;
+    }
+
+    // Abre o lote da thread no início de um evento. Devolve false se ele já estava aberto
+    // (evento aninhado): nesse caso quem abriu é quem descarrega.
+    static boolean abrir() {
+        LoteDeSaida lote = DA_THREAD.get();
+        if (lote.aberto) {
+            return false;
+        }
+        lote.aberto = true;
+        return true;
+    }
+
+    // Envia um datagrama por destino e fecha o lote da thread
+    static void descarregar(MotorDeRede motor) {
+        LoteDeSaida lote = DA_THREAD.get();
+        for (int i = 0; i < lote.quantidade; i++) {
+            lote.enviarDestino(motor, i);
+            lote.destinos[i] = null;
+        }
+        if (lote.quantidade > 0) {
+            Arrays.fill(lote.chaves, null);
+        }
+        lote.quantidade = 0;
+        lote.aberto = false;
+    }
+
+    // Acrescenta uma mensagem de texto (da posição ao limite de texto)
+    void adicionarTexto(MotorDeRede motor, Jogador jogador, ByteBuffer texto) {
+        int i = posicao(jogador);
+        ByteBuffer buffer = buffers[i];
+        int tamanho = texto.remaining();
+        int necessario = tamanho + (mensagens[i] > 0 ? 1 : 0);
+        if (buffer.remaining() < necessario && mensagens[i] > 0) {
+            enviarDestino(motor, i);
+            necessario = tamanho;
+        }
+        if (buffer.remaining() < necessario) {
+            entregar(motor, jogador, texto); // Maior que um lote inteiro
+            return;
+        }
+        if (mensagens[i] > 0) {
+            buffer.put(SEPARADOR_TEXTO);
+        }
+        buffer.put(texto);
+        mensagens[i]++;
+    }
+
+    // Acrescenta um quadro binário (da posição ao limite de quadro)
+    void adicionarQuadro(MotorDeRede motor, Jogador jogador, ByteBuffer quadro) {
+        int i = posicao(jogador);
+        ByteBuffer buffer = buffers[i];
+        int necessario = 2 + quadro.remaining();
+        if (buffer.remaining() < necessario && mensagens[i] > 0) {
+            enviarDestino(motor, i);
+        }
+        if (buffer.remaining() < necessario) {
+            entregar(motor, jogador, quadro);
+            return;
+        }
+        buffer.putShort((short) quadro.remaining());
+        buffer.put(quadro);
+        mensagens[i]++;
+    }
+
+    // Posição do jogador no lote, criando uma entrada se ele ainda não recebeu nada neste evento
+    private int posicao(Jogador jogador) {
+        int h = procurar(jogador);
+        if (chaves[h] == jogador) {
+            return indices[h];
+        }
+        if (quantidade == destinos.length) {
+            int novoTamanho = destinos.length * 2;
+            destinos = Arrays.copyOf(destinos, novoTamanho);
+            buffers = Arrays.copyOf(buffers, novoTamanho);
+            mensagens = Arrays.copyOf(mensagens, novoTamanho);
+        }
+        int i = quantidade++;
+        if (buffers[i] == null) {
+            buffers[i] = ByteBuffer.allocate(TAMANHO_MAXIMO);
+        }
+        destinos[i] = jogador;
+        mensagens[i] = 0;
+        buffers[i].clear();
+        if (jogador.binario) {
+            buffers[i].position(ProtocoloBinario.TAMANHO_CABECALHO); // Espaço para o cabeçalho do OP_LOTE
+        }
+        if (2 * quantidade > chaves.length) {
+            redimensionar(); // Mantém a tabela no máximo meio cheia
+            h = procurar(jogador);
+        }
+        chaves[h] = jogador;
+        indices[h] = i;
+        return i;
+    }
+
+    // Posição do jogador na tabela, ou a posição vazia em que ele entraria
+    private int procurar(Jogador jogador) {
+        int mascara = chaves.length - 1;
+        int h = System.identityHashCode(jogador) * 0x9E3779B9;
+        h = (h ^ (h >>> 16)) & mascara;
+        while (chaves[h] != null && chaves[h] != jogador) {
+            h = (h + 1) & mascara;
+        }
+        return h;
+    }
+
+    private void redimensionar() {
+        chaves = new Jogador[chaves.length * 2];
+        indices = new int[chaves.length];
+        for (int i = 0; i < quantidade - 1; i++) { // A nova entrada (a última) é inserida por quem chamou
+            int h = procurar(destinos[i]);
+            chaves[h] = destinos[i];
+            indices[h] = i;
+        }
+    }
+
+    private void enviarDestino(MotorDeRede motor, int i) {
+        ByteBuffer buffer = buffers[i];
+        Jogador jogador = destinos[i];
+        if (mensagens[i] > 0) {
+            buffer.flip();
+            if (jogador.binario) {
+                if (mensagens[i] == 1) {
+                    buffer.position(ProtocoloBinario.TAMANHO_CABECALHO + 2); // Quadro único: vai sem o envelope
+                } else {
+                    Partida partida = jogador.partida;
+                    ProtocoloBinario.escreverCabecalho(buffer, 0, ProtocoloBinario.OP_LOTE,
+                                                       partida != null ? partida.id : 0, partida != null ? partida.rodadaAtual() : 0);
+                }
+            }
+            entregar(motor, jogador, buffer);
+        }
+        mensagens[i] = 0;
+        buffer.clear();
+        if (jogador.binario) {
+            buffer.position(ProtocoloBinario.TAMANHO_CABECALHO);
+        }
+    }
+
+    // Envia um datagrama ao jogador: direto ou, se ele tem sessão confiável, num envelope com
+    // sequência. Acima de TAMANHO_MAXIMO, cada fragmento (ou pedaço de texto) vai do mesmo jeito.
+    static void entregar(MotorDeRede motor, Jogador jogador, ByteBuffer dados) {
+        try {
+            SessaoConfiavel sessao = jogador.sessao;
+            if (dados.remaining() > TAMANHO_MAXIMO) {
+                InetSocketAddress endereco = jogador.endereco;
+                SessaoConfiavel.Saida saida = sessao != null ? sessao::enviar : fragmento -> motor.enviar(fragmento, endereco);
+                Metricas.FRAGMENTOS_ENVIADOS.add(jogador.binario ? Fragmentos.fragmentar(dados, TAMANHO_MAXIMO, saida)
+                                                                 : Fragmentos.dividirEmLinhas(dados, TAMANHO_MAXIMO, saida));
+            } else if (sessao != null) {
+                sessao.enviar(dados);
+            } else {
+                motor.enviar(dados, jogador.endereco);
+            }
+        } catch (IOException e) {
+            Registro.erro("Erro ao enviar mensagem para {T}: {U}", jogador.nickname, e.getMessage());
+        }
+    }
+}
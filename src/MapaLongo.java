@@ -0,0 +1,245 @@
+package src;
+
+import java.util.concurrent.locks.StampedLock;
+
+// Mapa concorrente com chave long primitiva (endereçamento aberto, sondagem linear).
+// A chave não é encaixotada, então consultas não alocam nada. O mapa é dividido em
+// segmentos, cada um com o seu StampedLock: a leitura é otimista (sem travar) e só
+// cai para o lock de leitura se houve uma escrita concorrente no mesmo segmento.
+class MapaLongo<V> {
+
+    private static final int N_SEGMENTOS = 64; // Potência de 2
+    private static final long VAZIO = 0L; // Chave reservada; usamos a chave 0 em um campo separado
+
+    private final Segmento<V>[] segmentos;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    MapaLongo() {
+        segmentos = new Segmento[N_SEGMENTOS];
+        for (int i = 0; i < N_SEGMENTOS; i++) {
+            segmentos[i] = new Segmento<>();
+        }
+    }
+
+    V get(long chave) {
+        long h = espalhar(chave);
+        return segmentos[(int) (h >>> 58) & (N_SEGMENTOS - 1)].get(chave, h);
+    }
+
+    V put(long chave, V valor) {
+        long h = espalhar(chave);
+        return segmentos[(int) (h >>> 58) & (N_SEGMENTOS - 1)].put(chave, h, valor, false);
+    }
+
+    // Associa o valor apenas se a chave estiver livre; devolve o valor atual caso contrário
+    V putIfAbsent(long chave, V valor) {
+        long h = espalhar(chave);
+        return segmentos[(int) (h >>> 58) & (N_SEGMENTOS - 1)].put(chave, h, valor, true);
+    }
+
+    V remove(long chave) {
+        long h = espalhar(chave);
+        return segmentos[(int) (h >>> 58) & (N_SEGMENTOS - 1)].remove(chave, h, null);
+    }
+
+    // Remove apenas se a chave ainda estiver associada a este valor
+    boolean remove(long chave, V valor) {
+        long h = espalhar(chave);
+        return segmentos[(int) (h >>> 58) & (N_SEGMENTOS - 1)].remove(chave, h, valor) != null;
+    }
+
+    int size() {
+        int total = 0;
+        for (Segmento<V> s : segmentos) {
+            total += s.tamanho;
+        }
+        return total;
+    }
+
+    void clear() {
+        for (Segmento<V> s : segmentos) {
+            s.clear();
+        }
+    }
+
+    // Mistura de bits (finalizador do SplitMix64) para espalhar chaves parecidas
+    private static long espalhar(long chave) {
+        long z = chave;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static final class Segmento<V> {
+        private final StampedLock lock = new StampedLock();
+        private long[] chaves = new long[16];
+        private Object[] valores = new Object[16];
+        private Object valorChaveZero; // Valor associado à chave 0, que marca posição vazia nas tabelas
+        private volatile int tamanho;
+
+        V get(long chave, long h) {
+            long stamp = lock.tryOptimisticRead();
+            V valor = procurar(chave, h);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    valor = procurar(chave, h);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return valor;
+        }
+
+        @SuppressWarnings("unchecked")
+        private V procurar(long chave, long h) {
+            if (chave == VAZIO) {
+                return (V) valorChaveZero;
+            }
+            long[] ch = chaves;
+            Object[] vs = valores;
+            if (ch.length != vs.length) { // Leitura otimista viu uma troca de tabela pela metade
+                return null;
+            }
+            int mascara = ch.length - 1;
+            for (int i = (int) h & mascara, n = 0; n < ch.length; i = (i + 1) & mascara, n++) {
+                long k = ch[i];
+                if (k == chave) {
+                    return (V) vs[i];
+                }
+                if (k == VAZIO) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V put(long chave, long h, V valor, boolean somenteSeAusente) {
+            long stamp = lock.writeLock();
+            try {
+                if (chave == VAZIO) {
+                    V anterior = (V) valorChaveZero;
+                    if (anterior != null && somenteSeAusente) {
+                        return anterior;
+                    }
+                    valorChaveZero = valor;
+                    if (anterior == null) {
+                        tamanho++;
+                    }
+                    return anterior;
+                }
+                if ((tamanho + 1) * 4 > chaves.length * 3) { // Fator de carga máximo de 0,75
+                    redimensionar();
+                }
+                int mascara = chaves.length - 1;
+                int i = (int) h & mascara;
+                while (chaves[i] != VAZIO) {
+                    if (chaves[i] == chave) {
+                        V anterior = (V) valores[i];
+                        if (!somenteSeAusente) {
+                            valores[i] = valor;
+                        }
+                        return anterior;
+                    }
+                    i = (i + 1) & mascara;
+                }
+                chaves[i] = chave;
+                valores[i] = valor;
+                tamanho++;
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        V remove(long chave, long h, V esperado) {
+            long stamp = lock.writeLock();
+            try {
+                if (chave == VAZIO) {
+                    V anterior = (V) valorChaveZero;
+                    if (anterior == null || (esperado != null && anterior != esperado)) {
+                        return null;
+                    }
+                    valorChaveZero = null;
+                    tamanho--;
+                    return anterior;
+                }
+                int mascara = chaves.length - 1;
+                int i = (int) h & mascara;
+                while (chaves[i] != VAZIO) {
+                    if (chaves[i] == chave) {
+                        V anterior = (V) valores[i];
+                        if (esperado != null && anterior != esperado) {
+                            return null;
+                        }
+                        apagarPosicao(i);
+                        tamanho--;
+                        return anterior;
+                    }
+                    i = (i + 1) & mascara;
+                }
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        // Remoção com deslocamento para trás, mantendo as sequências de sondagem sem lápides
+        private void apagarPosicao(int i) {
+            int mascara = chaves.length - 1;
+            int livre = i;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mascara;
+                long k = chaves[j];
+                if (k == VAZIO) {
+                    break;
+                }
+                int ideal = (int) espalhar(k) & mascara;
+                // Move a entrada j para a posição livre se a posição ideal dela não estiver entre livre e j
+                if (((j - ideal) & mascara) >= ((j - livre) & mascara)) {
+                    chaves[livre] = k;
+                    valores[livre] = valores[j];
+                    livre = j;
+                }
+            }
+            chaves[livre] = VAZIO;
+            valores[livre] = null;
+        }
+
+        private void redimensionar() {
+            long[] chavesAntigas = chaves;
+            Object[] valoresAntigos = valores;
+            long[] novasChaves = new long[chavesAntigas.length * 2];
+            Object[] novosValores = new Object[valoresAntigos.length * 2];
+            int mascara = novasChaves.length - 1;
+            for (int i = 0; i < chavesAntigas.length; i++) {
+                long k = chavesAntigas[i];
+                if (k != VAZIO) {
+                    int j = (int) espalhar(k) & mascara;
+                    while (novasChaves[j] != VAZIO) {
+                        j = (j + 1) & mascara;
+                    }
+                    novasChaves[j] = k;
+                    novosValores[j] = valoresAntigos[i];
+                }
+            }
+            chaves = novasChaves;
+            valores = novosValores;
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                chaves = new long[16];
+                valores = new Object[16];
+                valorChaveZero = null;
+                tamanho = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package src;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+// Envia as mensagens do servidor a um jogador no protocolo que ele usou no cadastro:
+// texto UTF-8 para os clientes humanos, ou um quadro binário (cabeçalho + argumentos) para
+// os clientes binários. Textos e quadros são montados num buffer por thread a partir do
+// CatalogoDeMensagens, sem alocar. Para quem tem sessão confiável, cada datagrama sai pela
+// sessão (ver LoteDeSaida.entregar).
+final class Mensageiro {
+
+    // O nickname cabe numa entrada remontada, então nunca passa de TAMANHO_MAXIMO_ENTRADA bytes;
+    // os textos montados na hora (enviarTexto) vão até a maior mensagem fragmentada
+    private static final int TAMANHO_MAXIMO_MENSAGEM = Math.max(CatalogoDeMensagens.TAMANHO_MAXIMO + Fragmentos.TAMANHO_MAXIMO_ENTRADA,
+                                                                Fragmentos.TAMANHO_MAXIMO_ENVIO);
+    private static final ThreadLocal<ByteBuffer> BUFFER_MENSAGEM = ThreadLocal.withInitial(() -> ByteBuffer.allocate(TAMANHO_MAXIMO_MENSAGEM));
+
+    private static MotorDeRede motor;
+
+    private Mensageiro() {}
+
+    static void usarMotor(MotorDeRede motorDeRede) {
+        motor = motorDeRede;
+    }
+
+    static void enviar(Jogador jogador, byte opcode) {
+        enviar(jogador, opcode, 0, 0, 0);
+    }
+
+    static void enviar(Jogador jogador, byte opcode, int a) {
+        enviar(jogador, opcode, a, 0, 0);
+    }
+
+    static void enviar(Jogador jogador, byte opcode, int a, int b) {
+        enviar(jogador, opcode, a, b, 0);
+    }
+
+    // Envia a mensagem ao jogador. Dentro de um evento (lote aberto) a mensagem é acumulada
+    // e sai junto com as demais do mesmo jogador quando o evento termina.
+    static void enviar(Jogador jogador, byte opcode, int a, int b, int c) {
+        LoteDeSaida lote = LoteDeSaida.atual();
+        if (jogador.binario) {
+            Partida partida = jogador.partida;
+            ByteBuffer quadro = montarQuadro(opcode, partida != null ? partida.id : 0, partida != null ? partida.rodadaAtual() : 0, a, b, c);
+            if (lote != null) {
+                lote.adicionarQuadro(motor, jogador, quadro);
+            } else {
+                LoteDeSaida.entregar(motor, jogador, quadro);
+            }
+        } else {
+            ByteBuffer texto = montarTexto(opcode, jogador.nicknameUtf8, a, b, c);
+            if (lote != null) {
+                lote.adicionarTexto(motor, jogador, texto);
+            } else {
+                LoteDeSaida.entregar(motor, jogador, texto);
+            }
+        }
+    }
+
+    // Envia um texto montado fora do catálogo (opcode de carga de texto), como o ranking e as regras
+    static void enviarTexto(Jogador jogador, byte opcode, byte[] textoUtf8) {
+        ByteBuffer mensagem = BUFFER_MENSAGEM.get();
+        mensagem.clear();
+        if (jogador.binario) {
+            Partida partida = jogador.partida;
+            ProtocoloBinario.escreverCabecalho(mensagem, opcode, partida != null ? partida.id : 0, partida != null ? partida.rodadaAtual() : 0);
+        }
+        mensagem.put(textoUtf8, 0, Math.min(textoUtf8.length, Fragmentos.TAMANHO_MAXIMO_ENVIO - mensagem.position()));
+        mensagem.flip();
+        LoteDeSaida lote = LoteDeSaida.atual();
+        if (lote == null) {
+            LoteDeSaida.entregar(motor, jogador, mensagem);
+        } else if (jogador.binario) {
+            lote.adicionarQuadro(motor, jogador, mensagem);
+        } else {
+            lote.adicionarTexto(motor, jogador, mensagem);
+        }
+    }
+
+    // Início e fim de um evento: o que for enviado entre as duas chamadas sai em um datagrama por jogador.
+    // abrirLote devolve false se já havia um lote aberto nesta thread (só quem abriu descarrega).
+    static boolean abrirLote() {
+        return LoteDeSaida.abrir();
+    }
+
+    static void descarregarLote() {
+        LoteDeSaida.descarregar(motor);
+    }
+
+    // Erro de cadastro: o remetente ainda não é um jogador, então o protocolo vem do datagrama recebido
+    static void enviarErroCadastro(InetSocketAddress destino, boolean binario) {
+        try {
+            if (binario) {
+                motor.enviar(montarQuadro(ProtocoloBinario.OP_ERRO_CADASTRO, 0, 0, 0, 0, 0), destino);
+            } else {
+                motor.enviar(montarTexto(ProtocoloBinario.OP_ERRO_CADASTRO, null, 0, 0, 0), destino);
+            }
+        } catch (IOException e) {
+            Registro.erro("Erro ao enviar msg de erro de cadastro: {T}", e.getMessage(), null);
+        }
+    }
+
+    // Resposta a um pedido de retomada com token desconhecido: como no erro de cadastro, não
+    // há jogador nem sessão, só o endereço de origem
+    static void enviarSessaoInvalida(InetSocketAddress destino) {
+        try {
+            motor.enviar(montarQuadro(ProtocoloBinario.OP_SESSAO_INVALIDA, 0, 0, 0, 0, 0), destino);
+        } catch (IOException e) {
+            Registro.erro("Erro ao enviar msg de sessão inválida: {T}", e.getMessage(), null);
+        }
+    }
+
+    private static ByteBuffer montarQuadro(byte opcode, int idPartida, int rodada, int a, int b, int c) {
+        ByteBuffer quadro = BUFFER_MENSAGEM.get();
+        quadro.clear();
+        ProtocoloBinario.escreverCabecalho(quadro, opcode, idPartida, rodada);
+        int argumentos = ProtocoloBinario.quantidadeArgumentos(opcode); // Textos (-1) vão por enviarTexto
+        if (argumentos >= 1) {
+            quadro.putInt(a);
+        }
+        if (argumentos >= 2) {
+            quadro.putInt(b);
+        }
+        if (argumentos >= 3) {
+            quadro.putInt(c);
+        }
+        quadro.flip();
+        return quadro;
+    }
+
+    private static ByteBuffer montarTexto(byte opcode, byte[] nickname, int a, int b, int c) {
+        ByteBuffer texto = BUFFER_MENSAGEM.get();
+        texto.clear();
+        CatalogoDeMensagens.escrever(texto, opcode, nickname, a, b, c);
+        texto.flip();
+        return texto;
+    }
+}
@@ -0,0 +1,271 @@
+package src;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+
+// Métricas do servidor: contadores, medidores e histogramas de latência. Os contadores são
+// LongAdder (células por thread, sem disputa entre as threads que contam) e os histogramas
+// têm faixas fixas (ver Histograma), então registrar uma métrica não usa lock nem aloca.
+//
+// As métricas podem ser lidas localmente por JMX (objeto src:type=Metricas) ou pedindo um
+// relatório à porta de estatísticas, que só escuta no loopback: qualquer datagrama enviado
+// para ela recebe de volta o relatório em texto, uma métrica "nome=valor" por linha.
+final class Metricas {
+
+    // Contadores
+    static final LongAdder DATAGRAMAS_RECEBIDOS = new LongAdder();
+    static final LongAdder DATAGRAMAS_ENVIADOS = new LongAdder();
+    static final LongAdder CADASTROS_RECUSADOS = new LongAdder();
+    static final LongAdder ENTRADAS_INVALIDAS = new LongAdder();
+    static final LongAdder RODADAS_PROCESSADAS = new LongAdder();
+    static final LongAdder ELIMINACOES = new LongAdder();
+    static final LongAdder DIARIO_REGISTROS = new LongAdder();
+    static final LongAdder DIARIO_SINCRONIZACOES = new LongAdder();
+    static final LongAdder DIARIO_PONTOS_DE_CONTROLE = new LongAdder();
+    static final LongAdder PARTIDAS_FORMADAS = new LongAdder();
+    // Entrega confiável (ver SessaoConfiavel)
+    static final LongAdder RETRANSMISSOES = new LongAdder();
+    static final LongAdder CONFIAVEL_REPETIDOS = new LongAdder();  // Recebidos de novo e descartados
+    static final LongAdder CONFIAVEL_DESCARTADOS = new LongAdder(); // Janela e fila de envio cheias
+    // Proteção da entrada: datagramas descartados sem resposta (acima da taxa do endereço, mal
+    // formados vindos de quem não é jogador, caixa do laço dono cheia) e cadastros recusados
+    // porque o servidor está sobrecarregado (o cliente tenta de novo)
+    static final LongAdder DESCARTADOS_TAXA = new LongAdder();
+    static final LongAdder DESCARTADOS_MALFORMADOS = new LongAdder();
+    static final LongAdder DESCARTADOS_CAIXA_CHEIA = new LongAdder();
+    static final LongAdder CADASTROS_ADIADOS = new LongAdder();
+    // Tokens de sessão: jogadores achados pelo token num endereço novo, sessões retomadas
+    // depois de o cliente reiniciar e pedidos de retomada com token desconhecido
+    static final LongAdder SESSOES_REASSOCIADAS = new LongAdder();
+    static final LongAdder SESSOES_RETOMADAS = new LongAdder();
+    static final LongAdder SESSOES_INVALIDAS = new LongAdder();
+    // Plateia (ver Plateia): datagramas aos espectadores e eventos que não couberam na fila
+    static final LongAdder PLATEIA_ENVIADOS = new LongAdder();
+    static final LongAdder PLATEIA_DESCARTADOS = new LongAdder();
+    // Fragmentos das mensagens maiores que um datagrama seguro (ver Fragmentos; para os
+    // jogadores de texto, os pedaços do texto)
+    static final LongAdder FRAGMENTOS_ENVIADOS = new LongAdder();
+    // Exceções inesperadas no tratamento de um datagrama ou de um evento (o servidor segue)
+    static final LongAdder ERROS_DE_TRATAMENTO = new LongAdder();
+
+    // Latências (ns): do recebimento do datagrama até o laço dono começar a tratá-lo; duração
+    // do tratamento; duração de processarRodada; e da última jogada até o resultado da rodada
+    static final Histograma RECEPCAO_ATE_TRATADOR = new Histograma();
+    static final Histograma DURACAO_TRATADOR = new Histograma();
+    static final Histograma DURACAO_RODADA = new Histograma();
+    static final Histograma ULTIMA_JOGADA_ATE_RESULTADO = new Histograma();
+    static final Histograma DURACAO_SINCRONIZACAO_DIARIO = new Histograma(); // Cada msync do diário (group commit)
+    static final Histograma ESPERA_NA_FILA = new Histograma(); // De pedir para jogar até a partida ser formada
+
+    private static final List<String> nomesContadores = new ArrayList<>();
+    private static final List<LongAdder> contadores = new ArrayList<>();
+    private static final List<String> nomesMedidores = new ArrayList<>();
+    private static final List<LongSupplier> medidores = new ArrayList<>();
+    private static final List<String> nomesHistogramas = new ArrayList<>();
+    private static final List<Histograma> histogramas = new ArrayList<>();
+
+    static {
+        contador("datagramas_recebidos", DATAGRAMAS_RECEBIDOS);
+        contador("datagramas_enviados", DATAGRAMAS_ENVIADOS);
+        contador("cadastros_recusados", CADASTROS_RECUSADOS);
+        contador("entradas_invalidas", ENTRADAS_INVALIDAS);
+        contador("rodadas_processadas", RODADAS_PROCESSADAS);
+        contador("eliminacoes", ELIMINACOES);
+        contador("diario_registros", DIARIO_REGISTROS);
+        contador("diario_sincronizacoes", DIARIO_SINCRONIZACOES);
+        contador("diario_pontos_de_controle", DIARIO_PONTOS_DE_CONTROLE);
+        contador("partidas_formadas", PARTIDAS_FORMADAS);
+        contador("retransmissoes", RETRANSMISSOES);
+        contador("confiavel_repetidos", CONFIAVEL_REPETIDOS);
+        contador("confiavel_descartados", CONFIAVEL_DESCARTADOS);
+        contador("descartados_taxa", DESCARTADOS_TAXA);
+        contador("descartados_malformados", DESCARTADOS_MALFORMADOS);
+        contador("descartados_caixa_cheia", DESCARTADOS_CAIXA_CHEIA);
+        contador("cadastros_adiados", CADASTROS_ADIADOS);
+        contador("sessoes_reassociadas", SESSOES_REASSOCIADAS);
+        contador("sessoes_retomadas", SESSOES_RETOMADAS);
+        contador("sessoes_invalidas", SESSOES_INVALIDAS);
+        contador("plateia_enviados", PLATEIA_ENVIADOS);
+        contador("plateia_descartados", PLATEIA_DESCARTADOS);
+        contador("fragmentos_enviados", FRAGMENTOS_ENVIADOS);
+        contador("erros_de_tratamento", ERROS_DE_TRATAMENTO);
+        histograma("recepcao_ate_tratador_ns", RECEPCAO_ATE_TRATADOR);
+        histograma("duracao_tratador_ns", DURACAO_TRATADOR);
+        histograma("duracao_rodada_ns", DURACAO_RODADA);
+        histograma("ultima_jogada_ate_resultado_ns", ULTIMA_JOGADA_ATE_RESULTADO);
+        histograma("diario_sincronizacao_ns", DURACAO_SINCRONIZACAO_DIARIO);
+        histograma("espera_na_fila_ns", ESPERA_NA_FILA);
+        medidor("registro_descartados", Registro::descartados);
+    }
+
+    private Metricas() {}
+
+    private static void contador(String nome, LongAdder contador) {
+        nomesContadores.add(nome);
+        contadores.add(contador);
+    }
+
+    private static void histograma(String nome, Histograma histograma) {
+        nomesHistogramas.add(nome);
+        histogramas.add(histograma);
+    }
+
+    // Registra um medidor (valor lido na hora do relatório). Chamado na inicialização do servidor.
+    static synchronized void medidor(String nome, LongSupplier leitura) {
+        nomesMedidores.add(nome);
+        medidores.add(leitura);
+    }
+
+    // Nomes e valores de todas as métricas, na ordem do relatório. Cada histograma vira
+    // as métricas _total, _media, _p50, _p90, _p99 e _max.
+    static synchronized void coletar(List<String> nomes, List<Long> valores) {
+        for (int i = 0; i < contadores.size(); i++) {
+            nomes.add(nomesContadores.get(i));
+            valores.add(contadores.get(i).sum());
+        }
+        for (int i = 0; i < medidores.size(); i++) {
+            nomes.add(nomesMedidores.get(i));
+            valores.add(medidores.get(i).getAsLong());
+        }
+        for (int i = 0; i < histogramas.size(); i++) {
+            String nome = nomesHistogramas.get(i);
+            Histograma h = histogramas.get(i);
+            nomes.add(nome + "_total");
+            valores.add(h.total());
+            nomes.add(nome + "_media");
+            valores.add(h.media());
+            nomes.add(nome + "_p50");
+            valores.add(h.percentil(50));
+            nomes.add(nome + "_p90");
+            valores.add(h.percentil(90));
+            nomes.add(nome + "_p99");
+            valores.add(h.percentil(99));
+            nomes.add(nome + "_max");
+            valores.add(h.maximo());
+        }
+    }
+
+    static String relatorio() {
+        List<String> nomes = new ArrayList<>();
+        List<Long> valores = new ArrayList<>();
+        coletar(nomes, valores);
+        StringBuilder texto = new StringBuilder();
+        for (int i = 0; i < nomes.size(); i++) {
+            texto.append(nomes.get(i)).append('=').append(valores.get(i)).append('\n');
+        }
+        return texto.toString();
+    }
+
+    // Publica as métricas no servidor de MBeans da plataforma
+    static void registrarJmx() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricasJmx(), new ObjectName("src:type=Metricas"));
+        } catch (JMException e) {
+            Registro.erro("Erro ao registrar as métricas no JMX: {T}", e.toString(), null);
+        }
+    }
+
+    // Atende pedidos de relatório na porta de estatísticas (só no loopback), numa thread própria
+    static void iniciarPortaDeEstatisticas(int porta) {
+        DatagramSocket socket;
+        try {
+            socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta));
+        } catch (IOException e) {
+            Registro.erro("Erro ao abrir a porta de estatísticas: {T}", e.getMessage(), null);
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            byte[] pedido = new byte[64];
+            DatagramPacket pacote = new DatagramPacket(pedido, pedido.length);
+            while (!socket.isClosed()) {
+                try {
+                    pacote.setLength(pedido.length);
+                    socket.receive(pacote);
+                    byte[] resposta = relatorio().getBytes(StandardCharsets.UTF_8);
+                    socket.send(new DatagramPacket(resposta, resposta.length, pacote.getSocketAddress()));
+                } catch (IOException e) {
+                    Registro.erro("Erro na porta de estatísticas: {T}", e.getMessage(), null);
+                }
+            }
+        }, "estatisticas");
+        thread.setDaemon(true);
+        thread.start();
+        Registro.info("Estatísticas disponíveis em 127.0.0.1:{A} (UDP) e no JMX como src:type=Metricas", porta);
+    }
+
+    // Visão JMX das métricas: um atributo somente leitura por métrica, com os mesmos nomes do relatório
+    private static final class MetricasJmx implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String atributo) throws AttributeNotFoundException {
+            List<String> nomes = new ArrayList<>();
+            List<Long> valores = new ArrayList<>();
+            coletar(nomes, valores);
+            int i = nomes.indexOf(atributo);
+            if (i < 0) {
+                throw new AttributeNotFoundException(atributo);
+            }
+            return valores.get(i);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] atributos) {
+            List<String> nomes = new ArrayList<>();
+            List<Long> valores = new ArrayList<>();
+            coletar(nomes, valores);
+            AttributeList lista = new AttributeList();
+            for (String atributo : atributos) {
+                int i = nomes.indexOf(atributo);
+                if (i >= 0) {
+                    lista.add(new Attribute(atributo, valores.get(i)));
+                }
+            }
+            return lista;
+        }
+
+        @Override
+        public void setAttribute(Attribute atributo) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("As métricas são somente leitura: " + atributo.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList atributos) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String operacao, Object[] parametros, String[] assinatura) {
+            throw new UnsupportedOperationException(operacao);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<String> nomes = new ArrayList<>();
+            coletar(nomes, new ArrayList<>());
+            MBeanAttributeInfo[] atributos = new MBeanAttributeInfo[nomes.size()];
+            for (int i = 0; i < atributos.length; i++) {
+                atributos[i] = new MBeanAttributeInfo(nomes.get(i), "long", nomes.get(i), true, false, false);
+            }
+            return new MBeanInfo(MetricasJmx.class.getName(), "Métricas do servidor do jogo", atributos,
+                                 null, new MBeanOperationInfo[0], null);
+        }
+    }
+}
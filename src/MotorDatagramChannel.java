@@ -0,0 +1,77 @@
+package src;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+
+// Motor NIO: DatagramChannel não bloqueante com Selector e um ByteBuffer direto. Só a
+// thread do executar recebe, então um buffer basta: o datagrama é recebido direto nele e
+// entregue ao tratador sem cópia, e o tratador não o guarda depois de voltar.
+class MotorDatagramChannel implements MotorDeRede {
+
+    private final DatagramChannel canal;
+    private final Selector seletor;
+    private final ByteBuffer buffer;
+
+    MotorDatagramChannel(int porta, int tamanhoBuffer) throws IOException {
+        this.canal = DatagramChannel.open();
+        this.canal.bind(new InetSocketAddress(porta));
+        this.canal.configureBlocking(false);
+        this.seletor = Selector.open();
+        this.canal.register(seletor, SelectionKey.OP_READ);
+        this.buffer = ByteBuffer.allocateDirect(tamanhoBuffer);
+    }
+
+    @Override
+    public void executar(TratadorDeDatagrama tratador) throws IOException {
+        while (canal.isOpen()) {
+            seletor.select();
+            Iterator<SelectionKey> chaves = seletor.selectedKeys().iterator();
+            while (chaves.hasNext()) {
+                SelectionKey chave = chaves.next();
+                chaves.remove();
+                if (chave.isValid() && chave.isReadable()) {
+                    receberPendentes(tratador);
+                }
+            }
+        }
+    }
+
+    // Esvazia a fila do socket: recebe até não haver mais datagramas disponíveis
+    private void receberPendentes(TratadorDeDatagrama tratador) throws IOException {
+        while (true) {
+            buffer.clear();
+            SocketAddress origem = canal.receive(buffer);
+            if (origem == null) {
+                return;
+            }
+            buffer.flip();
+            InetSocketAddress remetente = (InetSocketAddress) origem;
+            tratador.tratar(remetente.getAddress(), remetente.getPort(), buffer);
+        }
+    }
+
+    @Override
+    public void enviar(ByteBuffer dados, InetSocketAddress destino) throws IOException {
+        // Canal não bloqueante: se o buffer de envio do sistema estiver cheio o datagrama é descartado,
+        // o mesmo que aconteceria com ele na rede
+        if (canal.send(dados, destino) > 0) {
+            Metricas.DATAGRAMAS_ENVIADOS.increment();
+        }
+    }
+
+    @Override
+    public void fechar() {
+        try {
+            seletor.close();
+            canal.close();
+        } catch (IOException e) {
+            Registro.erro("Erro ao fechar o canal do servidor: {T}", e.getMessage(), null);
+        }
+    }
+}
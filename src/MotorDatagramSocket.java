@@ -0,0 +1,81 @@
+package src;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+// Motor original: DatagramSocket bloqueante, recebendo sempre no mesmo array.
+class MotorDatagramSocket implements MotorDeRede {
+
+    private final DatagramSocket socket;
+    private final int tamanhoBuffer;
+
+    MotorDatagramSocket(int porta, int tamanhoBuffer) throws IOException {
+        this.socket = new DatagramSocket(porta);
+        this.tamanhoBuffer = tamanhoBuffer;
+    }
+
+    @Override
+    public void executar(TratadorDeDatagrama tratador) throws IOException {
+        byte[] bufferRecebimento = new byte[tamanhoBuffer];
+        ByteBuffer dados = ByteBuffer.wrap(bufferRecebimento);
+        DatagramPacket pacoteRecebido = new DatagramPacket(bufferRecebimento, bufferRecebimento.length);
+
+        while (!socket.isClosed()) {
+            pacoteRecebido.setLength(bufferRecebimento.length);
+            socket.receive(pacoteRecebido);
+
+            // O tratador lê só os bytes recebidos, então o buffer não precisa ser limpo nem copiado
+            dados.limit(pacoteRecebido.getLength()).position(0);
+            tratador.tratar(pacoteRecebido.getAddress(), pacoteRecebido.getPort(), dados);
+        }
+    }
+
+    @Override
+    public void enviar(ByteBuffer dados, InetSocketAddress destino) throws IOException {
+        byte[] bytes;
+        int inicio;
+        if (dados.hasArray()) {
+            bytes = dados.array();
+            inicio = dados.arrayOffset() + dados.position();
+        } else {
+            bytes = new byte[dados.remaining()];
+            dados.duplicate().get(bytes);
+            inicio = 0;
+        }
+        DatagramPacket pacote = new DatagramPacket(bytes, inicio, dados.remaining(), destino.getAddress(), destino.getPort());
+        socket.send(pacote);
+        dados.position(dados.limit());
+        Metricas.DATAGRAMAS_ENVIADOS.increment();
+    }
+
+    // Um único DatagramPacket para todos os destinos: só o endereço muda entre um envio e outro
+    @Override
+    public int enviarParaVarios(ByteBuffer dados, InetSocketAddress[] destinos, int n) {
+        if (!dados.hasArray() || n == 0) {
+            return MotorDeRede.super.enviarParaVarios(dados, destinos, n);
+        }
+        DatagramPacket pacote = new DatagramPacket(dados.array(), dados.arrayOffset() + dados.position(), dados.remaining());
+        int aceitos = 0;
+        for (int i = 0; i < n; i++) {
+            try {
+                pacote.setSocketAddress(destinos[i]);
+                socket.send(pacote);
+                aceitos++;
+            } catch (IOException e) {
+                // Segue para o próximo destino
+            }
+        }
+        Metricas.DATAGRAMAS_ENVIADOS.add(aceitos);
+        return aceitos;
+    }
+
+    @Override
+    public void fechar() {
+        if (!socket.isClosed()) {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package src;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+// Motor de entrada e saída do servidor. O Juiz escolhe a implementação na inicialização:
+// "socket" (DatagramSocket bloqueante, o motor original) ou "nio" (DatagramChannel com Selector).
+interface MotorDeRede {
+
+    // Recebe datagramas até o motor ser fechado, entregando cada um ao tratador na própria
+    // thread de recepção (o tratador só decodifica e repassa ao laço de eventos do jogador)
+    void executar(TratadorDeDatagrama tratador) throws IOException;
+
+    // Envia os bytes restantes do buffer (da posição até o limite) para o destino
+    void enviar(ByteBuffer dados, InetSocketAddress destino) throws IOException;
+
+    // Envia o mesmo datagrama (da posição ao limite) aos n primeiros destinos, sem alterar o
+    // buffer. Um destino que falha não interrompe os outros; devolve quantos envios foram aceitos.
+    default int enviarParaVarios(ByteBuffer dados, InetSocketAddress[] destinos, int n) {
+        int aceitos = 0;
+        ByteBuffer envio = dados.duplicate();
+        for (int i = 0; i < n; i++) {
+            envio.limit(dados.limit()).position(dados.position());
+            try {
+                enviar(envio, destinos[i]);
+                aceitos++;
+            } catch (IOException e) {
+                // Segue para o próximo destino
+            }
+        }
+        return aceitos;
+    }
+
+    void fechar();
+
+    // Recebe o conteúdo de um datagrama. O buffer só é válido durante a chamada
+    // (o motor reutiliza o buffer no datagrama seguinte).
+    interface TratadorDeDatagrama {
+        void tratar(InetAddress ip, int porta, ByteBuffer dados);
+    }
+
+    static MotorDeRede criar(String nome, int porta, int tamanhoBuffer) throws IOException {
+        if ("nio".equalsIgnoreCase(nome)) {
+            return new MotorDatagramChannel(porta, tamanhoBuffer);
+        }
+        return new MotorDatagramSocket(porta, tamanhoBuffer);
+    }
+}
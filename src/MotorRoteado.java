@@ -0,0 +1,97 @@
+package src;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+// Motor de um juiz atrás do roteador (ver RoteadorUDP): envolve o motor de verdade e troca o
+// endereço do roteador pelo do jogador nos dois sentidos. Os datagramas dos jogadores chegam
+// num OP_ROTA e são entregues ao tratador como se viessem direto do jogador; as respostas
+// ganham o cabeçalho de rota e vão para o roteador, que as repassa. Os OP_PING do roteador
+// são respondidos aqui mesmo, na thread de recepção.
+//
+// Atrás do roteador o juiz só fala com os jogadores por ele: datagramas de outras origens
+// são ignorados, para que ninguém forje um cabeçalho de rota.
+final class MotorRoteado implements MotorDeRede {
+
+    // Sem ping do roteador por esse tempo, o juiz se anuncia de novo (roteador reiniciado ou
+    // que ainda não conhece o juiz)
+    private static final long ESQUECIDO_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final ThreadLocal<ByteBuffer> BUFFER_ENVIO =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(ProtocoloBinario.TAMANHO_ROTA_MAXIMO + 2 * LoteDeSaida.TAMANHO_MAXIMO));
+
+    private final MotorDeRede motor;
+    private final InetSocketAddress roteador;
+    private final IntSupplier jogadores; // Informado no OP_PONG, para o roteador acompanhar a carga
+    private final CacheDeEnderecos enderecos = new CacheDeEnderecos(1 << 12); // Só da thread de recepção
+    private final ByteBuffer pong = ByteBuffer.allocate(ProtocoloBinario.TAMANHO_CABECALHO + 8); // Idem
+    private volatile long ultimoPing;
+
+    MotorRoteado(MotorDeRede motor, InetSocketAddress roteador, IntSupplier jogadores) {
+        this.motor = motor;
+        this.roteador = roteador;
+        this.jogadores = jogadores;
+        this.ultimoPing = System.nanoTime() - ESQUECIDO_NANOS - 1;
+    }
+
+    @Override
+    public void executar(TratadorDeDatagrama tratador) throws IOException {
+        motor.executar((ip, porta, dados) -> {
+            if (porta != roteador.getPort() || !ip.equals(roteador.getAddress()) || !ProtocoloBinario.ehBinario(dados)
+                    || !ProtocoloBinario.cargaValida(dados)) {
+                return;
+            }
+            byte opcode = ProtocoloBinario.opcode(dados);
+            if (opcode == ProtocoloBinario.OP_ROTA) {
+                InetSocketAddress jogador = enderecos.daRota(dados);
+                dados.position(dados.position() + ProtocoloBinario.tamanhoRota(dados));
+                tratador.tratar(jogador.getAddress(), jogador.getPort(), dados);
+            } else if (opcode == ProtocoloBinario.OP_PING) {
+                ultimoPing = System.nanoTime();
+                responder(pong, ProtocoloBinario.argumento(dados, 0));
+            }
+        });
+    }
+
+    // Anuncia o juiz ao roteador (um OP_PONG com carimbo 0) se ele não manda ping há algum tempo.
+    // Chamado periodicamente pela roda de tempo do juiz.
+    void anunciarSeEsquecido() {
+        if (System.nanoTime() - ultimoPing > ESQUECIDO_NANOS) {
+            responder(ByteBuffer.allocate(ProtocoloBinario.TAMANHO_CABECALHO + 8), 0);
+        }
+    }
+
+    private void responder(ByteBuffer buffer, int carimbo) {
+        buffer.clear();
+        ProtocoloBinario.escreverCabecalho(buffer, ProtocoloBinario.OP_PONG, 0, 0);
+        buffer.putInt(carimbo).putInt(jogadores.getAsInt()).flip();
+        try {
+            motor.enviar(buffer, roteador);
+        } catch (IOException e) {
+            Registro.erro("Erro ao responder ao roteador: {T}", e.getMessage(), null);
+        }
+    }
+
+    // Envia ao roteador o datagrama com o endereço do jogador na frente (uma cópia num buffer da thread)
+    @Override
+    public void enviar(ByteBuffer dados, InetSocketAddress destino) throws IOException {
+        int tamanhoRota = ProtocoloBinario.tamanhoRota(destino.getAddress());
+        ByteBuffer envio = BUFFER_ENVIO.get();
+        if (envio.capacity() < tamanhoRota + dados.remaining()) {
+            envio = ByteBuffer.allocate(tamanhoRota + dados.remaining());
+            BUFFER_ENVIO.set(envio);
+        }
+        envio.clear();
+        ProtocoloBinario.escreverRota(envio, 0, destino.getAddress(), destino.getPort());
+        envio.position(tamanhoRota);
+        envio.put(dados).flip();
+        motor.enviar(envio, roteador);
+    }
+
+    @Override
+    public void fechar() {
+        motor.fechar();
+    }
+}
@@ -0,0 +1,446 @@
+package src;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+// Representa uma partida no SERVIDOR. Cada partida tem o seu próprio elenco,
+// a sua própria máquina de estados e processa as suas próprias rodadas, de
+// modo que um único processo do Juiz pode conduzir várias partidas ao mesmo tempo.
+// Todo o estado da partida pertence ao seu laço de eventos: os métodos abaixo só
+// são chamados a partir de eventos desse laço, por isso não há locks.
+class Partida {
+
+    // Estado de uma partida (antes era um único estado global no servidor)
+    enum EstadoPartida { AGUARDANDO_JOGADORES, EM_ANDAMENTO, FIM_DE_PARTIDA }
+
+    final int id;
+    final LacoDeEventos laco;
+    private final int capacidade; // Número de jogadores com que a partida começou
+    private final Map<String, Jogador> jogadores = new LinkedHashMap<>(); // Elenco da partida, em ordem de entrada
+    private EstadoPartida estado = EstadoPartida.AGUARDANDO_JOGADORES;
+    private int rodada = 1; // Número da rodada em andamento (vai no cabeçalho do protocolo binário)
+
+    // Prazo da rodada: quando vence, a rodada é processada com as jogadas que chegaram, de modo
+    // que um cliente calado ou que caiu não trava a partida. Cada prazo armado recebe um número
+    // de geração; um aviso de prazo de uma geração antiga (que já estava a caminho quando a
+    // rodada fechou) é ignorado.
+    private final RodaDeTempo relogio;
+    private final long prazoRodadaMillis; // <= 0 desliga o prazo
+    private RodaDeTempo.Temporizador prazoDaRodada;
+    private int geracaoDoPrazo;
+    private long instanteUltimaJogada; // Recebimento da última jogada (System.nanoTime), para as métricas
+
+    // Pontuação: as regras são compartilhadas; os arrays de trabalho da rodada são da partida e
+    // têm o tamanho do elenco inicial (o elenco só diminui), então processar uma rodada não aloca
+    private final RegrasDePontuacao regras;
+    private final Jogador[] ativosNaRodada;
+    private final Jogador[] jogaramNaRodada;
+    private final int[] escolhas;
+    private final int[] perdas;
+    private final int[] escolhasDosAtivos; // Escolha de cada ativo na rodada fechada, para a plateia
+    private Jogador vencedor;
+
+    // Cria a partida com o elenco completo. Chamado pelo laço que era dono dos jogadores até agora.
+    Partida(int id, List<Jogador> elenco, ExecutorService portadoras, RodaDeTempo relogio, long prazoRodadaMillis,
+            RegrasDePontuacao regras) {
+        this.id = id;
+        this.capacidade = elenco.size();
+        this.laco = new LacoDeEventos("partida-" + id, portadoras);
+        this.relogio = relogio;
+        this.prazoRodadaMillis = prazoRodadaMillis;
+        this.regras = regras;
+        this.ativosNaRodada = new Jogador[capacidade];
+        this.jogaramNaRodada = new Jogador[capacidade];
+        this.escolhas = new int[capacidade];
+        this.perdas = new int[capacidade];
+        this.escolhasDosAtivos = new int[capacidade];
+        for (Jogador jogador : elenco) {
+            jogador.emJogo = true;
+            jogador.pontuacao = 0;
+            jogador.valorEscolhido = -1;
+            jogador.rodadasNaPartida = 0;
+            jogador.distanciasNaPartida = 0;
+            jogador.jogadasNaPartida = 0;
+            jogador.partida = this;
+            jogador.indiceNoElenco = jogadores.size();
+            ativosNaRodada[jogador.indiceNoElenco] = jogador;
+            jogadores.put(jogador.nickname, jogador);
+        }
+        Diario.inicioPartida(id, ativosNaRodada, capacidade);
+        Arrays.fill(ativosNaRodada, null);
+    }
+
+    // Agenda o início da partida e só depois transfere os jogadores para o laço dela,
+    // de modo que nenhuma entrada dos jogadores seja processada antes de iniciar()
+    void comecar() {
+        laco.enviar(this::iniciar);
+        for (Jogador jogador : jogadores.values()) {
+            jogador.laco = laco;
+        }
+    }
+
+    // Partida reconstruída a partir do diário: recoloca placar, rodada e as jogadas que já
+    // tinham chegado (índices do elenco passado ao construtor) e retoma a rodada aberta
+    void retomar(int rodadaRestaurada, int[] pontuacoes, int[] escolhas) {
+        rodada = rodadaRestaurada;
+        int n = 0;
+        for (Jogador jogador : jogadores.values()) {
+            jogador.pontuacao = pontuacoes[jogador.indiceNoElenco];
+            jogador.valorEscolhido = escolhas[jogador.indiceNoElenco];
+            ativosNaRodada[n++] = jogador;
+        }
+        Diario.fimRodada(id, rodada, -1, ativosNaRodada, n);
+        for (int i = 0; i < n; i++) {
+            if (ativosNaRodada[i].valorEscolhido != -1) {
+                Diario.jogada(id, rodada, ativosNaRodada[i].indiceNoElenco, ativosNaRodada[i].valorEscolhido);
+            }
+        }
+        limparReferencias(n);
+
+        laco.enviar(this::continuar);
+        for (Jogador jogador : jogadores.values()) {
+            jogador.laco = laco;
+        }
+    }
+
+    private void continuar() {
+        estado = EstadoPartida.EM_ANDAMENTO;
+        Registro.info("Partida #{A}: retomada na rodada {B}.", id, rodada);
+        int faltam = 0;
+        for (Jogador j : jogadores.values()) {
+            if (j.valorEscolhido == -1) {
+                Mensageiro.enviar(j, ProtocoloBinario.OP_PEDIR_JOGADA);
+                faltam++;
+            }
+        }
+        if (faltam == 0 || jogadores.size() < 2) {
+            fecharRodada(); // Todos já tinham jogado, ou sobrou menos de 2: a rodada fecha agora
+        } else {
+            armarPrazoDaRodada();
+        }
+    }
+
+    private void iniciar() {
+        estado = EstadoPartida.EM_ANDAMENTO;
+        Registro.info("Partida #{A}: {B} jogadores prontos. Iniciando a partida...", id, capacidade);
+        for (Jogador j : jogadores.values()) {
+            Mensageiro.enviar(j, ProtocoloBinario.OP_INICIO_PARTIDA);
+            Mensageiro.enviar(j, ProtocoloBinario.OP_PEDIR_JOGADA);
+        }
+        armarPrazoDaRodada();
+    }
+
+    // Arma o prazo da rodada que está começando, substituindo o da rodada anterior
+    private void armarPrazoDaRodada() {
+        desarmarPrazoDaRodada();
+        if (prazoRodadaMillis <= 0) {
+            return;
+        }
+        int geracao = ++geracaoDoPrazo;
+        prazoDaRodada = relogio.agendar(prazoRodadaMillis, () -> laco.enviar(() -> prazoEsgotado(geracao)));
+    }
+
+    private void desarmarPrazoDaRodada() {
+        if (prazoDaRodada != null) {
+            prazoDaRodada.cancelar();
+            prazoDaRodada = null;
+        }
+    }
+
+    // O prazo da rodada venceu: processa a rodada com quem jogou (quem não jogou fica com valorEscolhido == -1)
+    private void prazoEsgotado(int geracao) {
+        if (estado != EstadoPartida.EM_ANDAMENTO || geracao != geracaoDoPrazo) {
+            return;
+        }
+        prazoDaRodada = null;
+        Registro.info("Partida #{A}: prazo da rodada {B} esgotado.", id, rodada);
+        fecharRodada();
+    }
+
+    // Envia o feedback de contagem de jogadores para o elenco da partida
+    void enviarFeedbackContagemJogadores(int jogadoresCadastrados) {
+        int prontos = contarEmJogo();
+        for (Jogador j : jogadores.values()) {
+            Mensageiro.enviar(j, ProtocoloBinario.OP_CONTAGEM, jogadoresCadastrados, prontos, capacidade);
+        }
+    }
+
+    // Reenvia a quem retomou a sessão o que ele precisa para seguir na rodada aberta: o placar
+    // e o pedido de jogada, ou a confirmação da jogada que ele já fez. Antes de a partida
+    // começar, o início dela ainda vai chegar.
+    void reenviarEstado(Jogador jogador) {
+        if (estado != EstadoPartida.EM_ANDAMENTO || !jogador.emJogo) {
+            return;
+        }
+        Mensageiro.enviar(jogador, ProtocoloBinario.OP_PLACAR_ATUAL, jogador.pontuacao);
+        if (jogador.valorEscolhido == -1) {
+            Mensageiro.enviar(jogador, ProtocoloBinario.OP_PEDIR_JOGADA);
+        } else {
+            Mensageiro.enviar(jogador, ProtocoloBinario.OP_JOGADA_CONFIRMADA, jogador.valorEscolhido);
+        }
+    }
+
+    int rodadaAtual() {
+        return rodada;
+    }
+
+    // Registra a jogada de um jogador. Retorna false se a entrada não é uma jogada válida
+    // neste momento (no protocolo de texto ela deve então ser tratada como opção de menu).
+    // rodadaInformada vem do cabeçalho binário (-1 no protocolo de texto): uma jogada de uma
+    // rodada que já terminou (datagrama atrasado ou reordenado) é descartada.
+    boolean registrarJogada(Jogador jogador, int escolha, int rodadaInformada) {
+        if (estado != EstadoPartida.EM_ANDAMENTO || !jogador.emJogo || escolha < 0 || escolha > 100) {
+            return false;
+        }
+        if (rodadaInformada >= 0 && rodadaInformada != (rodada & 0xFFFF)) {
+            return true;
+        }
+        jogador.valorEscolhido = escolha;
+        instanteUltimaJogada = jogador.ultimoContato; // Carimbado quando o datagrama da jogada chegou
+        Diario.jogada(id, rodada, jogador.indiceNoElenco, escolha);
+        Registro.info("Jogador(a) {T} escolheu o número: {A}", jogador.nickname, jogador.valorEscolhido);
+        Mensageiro.enviar(jogador, ProtocoloBinario.OP_JOGADA_CONFIRMADA, escolha);
+
+        // Verifica se todos os jogadores ativos já jogaram para processar a rodada
+        int jogadoresQueJaJogaramNestaRodada = 0;
+        int jogadoresAtivos = 0;
+        for (Jogador j : jogadores.values()) {
+            if (j.emJogo) {
+                jogadoresAtivos++;
+                if (j.valorEscolhido != -1) {
+                    jogadoresQueJaJogaramNestaRodada++;
+                }
+            }
+        }
+        if (jogadoresQueJaJogaramNestaRodada == jogadoresAtivos && jogadoresAtivos >= 2) {
+            fecharRodada();
+        }
+        return true;
+    }
+
+    // Retira da partida um jogador que escolheu sair do jogo
+    void removerJogador(Jogador jogador) {
+        if (jogador.emJogo) {
+            Estatisticas.fimDePartida(jogador, false, false);
+        }
+        jogador.emJogo = false;
+        jogador.partida = null;
+        jogador.laco = null;
+        jogadores.remove(jogador.nickname);
+
+        int jogadoresRestantesEmJogo = contarEmJogo();
+        if (jogadoresRestantesEmJogo == 0) {
+            if (estado == EstadoPartida.EM_ANDAMENTO) {
+                encerrar();
+            }
+            Registro.info("Partida #{A}: todos os jogadores saíram.", id);
+            return;
+        }
+        enviarFeedbackContagemJogadores(JuizUDP.totalJogadoresCadastrados()); // Envia feedback atualizado após saída
+
+        // Se o jogo estava em andamento e sobrou apenas um jogador, ele é declarado vencedor
+        if (estado == EstadoPartida.EM_ANDAMENTO && jogadoresRestantesEmJogo == 1) {
+            declararVencedor();
+            encerrar();
+        }
+    }
+
+    private int contarEmJogo() {
+        int emJogo = 0;
+        for (Jogador j : jogadores.values()) {
+            if (j.emJogo) {
+                emJogo++;
+            }
+        }
+        return emJogo;
+    }
+
+    private void declararVencedor() {
+        for (Jogador j : jogadores.values()) {
+            if (j.emJogo) {
+                vencedor = j;
+                Mensageiro.enviar(j, ProtocoloBinario.OP_VENCEDOR);
+                Registro.info("Jogador(a) {T} venceu a partida #{A}!", j.nickname, id);
+                return;
+            }
+        }
+    }
+
+    // Encerra a partida: libera o elenco e devolve os nicknames ao servidor
+    private void encerrar() {
+        estado = EstadoPartida.FIM_DE_PARTIDA;
+        desarmarPrazoDaRodada();
+        Diario.fimPartida(id);
+        for (Jogador j : jogadores.values()) {
+            if (j.emJogo) {
+                Estatisticas.fimDePartida(j, j == vencedor, false);
+            }
+            j.emJogo = false;
+            j.partida = null;
+            j.laco = null;
+            JuizUDP.removerJogador(j);
+        }
+        jogadores.clear();
+        if (Plateia.assistida(id)) {
+            Plateia.fim(id, rodada, vencedor);
+        }
+        JuizUDP.partidaEncerrada(this);
+        Registro.info("Fim da partida #{A}.", id);
+    }
+
+    // Fecha a rodada (todos jogaram ou o prazo venceu) medindo o processamento
+    private void fecharRodada() {
+        long inicio = System.nanoTime();
+        processarRodada();
+        Metricas.RODADAS_PROCESSADAS.increment();
+        Metricas.DURACAO_RODADA.registrarDesde(inicio);
+        if (instanteUltimaJogada != 0) {
+            Metricas.ULTIMA_JOGADA_ATE_RESULTADO.registrarDesde(instanteUltimaJogada);
+            instanteUltimaJogada = 0;
+        }
+    }
+
+    // Processa uma rodada da partida
+    private void processarRodada() {
+        Registro.info("Partida #{A}: iniciando processamento da rodada.", id);
+
+        // Coleta os ativos e, entre eles, os que escolheram um número nesta rodada (na ordem do elenco)
+        int numAtivos = 0;
+        int numJogadoresComNumero = 0;
+        long soma = 0;
+        for (Jogador j : jogadores.values()) {
+            if (j.emJogo) {
+                ativosNaRodada[numAtivos++] = j;
+                if (j.valorEscolhido != -1) { // Verifica se o jogador realmente escolheu um número nesta rodada
+                    jogaramNaRodada[numJogadoresComNumero] = j;
+                    escolhas[numJogadoresComNumero++] = j.valorEscolhido;
+                    soma += j.valorEscolhido;
+                }
+            }
+        }
+
+        // Se menos de 2 jogadores estão ativos, encerra a partida
+        if (numAtivos < 2) {
+            Registro.info("Número insuficiente de jogadores para continuar o jogo. Jogo encerrado.");
+            for (int i = 0; i < numAtivos; i++) {
+                Mensageiro.enviar(ativosNaRodada[i], ProtocoloBinario.OP_FALTA_JOGADORES);
+            }
+            limparReferencias(numAtivos);
+            encerrar();
+            return;
+        }
+
+        // Se ninguém escolheu um número, avisa e pede para jogar novamente
+        if (numJogadoresComNumero == 0) {
+            Registro.info("Nenhum jogador escolheu um número válido nesta rodada. Pulando cálculo.");
+            for (int i = 0; i < numAtivos; i++) {
+                Jogador jogador = ativosNaRodada[i];
+                Mensageiro.enviar(jogador, ProtocoloBinario.OP_RODADA_SEM_JOGADAS);
+                Mensageiro.enviar(jogador, ProtocoloBinario.OP_PLACAR, jogador.pontuacao);
+                jogador.valorEscolhido = -1; // Reseta a escolha para a próxima rodada
+                Mensageiro.enviar(jogador, ProtocoloBinario.OP_PEDIR_JOGADA);
+            }
+            if (Plateia.assistida(id)) {
+                Arrays.fill(escolhasDosAtivos, 0, numAtivos, -1);
+                Plateia.rodada(id, rodada, -1, ativosNaRodada, escolhasDosAtivos, numAtivos, regras);
+            }
+            limparReferencias(numAtivos);
+            armarPrazoDaRodada();
+            return;
+        }
+
+        // Aplica as regras de pontuação a quem jogou (quem não jogou não perde pontos)
+        int valorAlvoCentesimos = regras.pontuar(escolhas, numJogadoresComNumero, perdas);
+        double media = (double) soma / numJogadoresComNumero;
+        Registro.registrar(Registro.INFO, "Partida #{A}: Média: {X}, Valor Alvo: {Y}", null, null, id, 0, 0, media,
+                           valorAlvoCentesimos / 100.0);
+
+        // Informa os jogadores sobre a pontuação perdida e o placar atual. jogaramNaRodada é uma
+        // subsequência de ativosNaRodada, então um único índice acompanha as perdas.
+        int numEliminados = 0;
+        int k = 0;
+        for (int i = 0; i < numAtivos; i++) { // Itera sobre todos os ativos na rodada (não apenas os que jogaram)
+            Jogador jogador = ativosNaRodada[i];
+            int perdidos = 0;
+            if (k < numJogadoresComNumero && jogaramNaRodada[k] == jogador) {
+                perdidos = perdas[k++];
+                jogador.pontuacao -= perdidos;
+                jogador.distanciasNaPartida += Math.abs(jogador.valorEscolhido * 100 - valorAlvoCentesimos);
+                jogador.jogadasNaPartida++;
+            }
+            jogador.rodadasNaPartida++;
+
+            if (perdidos > 0) {
+                Mensageiro.enviar(jogador, ProtocoloBinario.OP_PERDEU_PONTOS, perdidos);
+            } else {
+                Mensageiro.enviar(jogador, ProtocoloBinario.OP_NAO_PERDEU);
+            }
+
+            Mensageiro.enviar(jogador, ProtocoloBinario.OP_PLACAR_ATUAL, jogador.pontuacao);
+            Registro.info("Placar de {T}: {A}", jogador.nickname, jogador.pontuacao);
+
+            // Verifica se o jogador foi eliminado
+            if (regras.eliminado(jogador.pontuacao)) {
+                Mensageiro.enviar(jogador, ProtocoloBinario.OP_ELIMINADO);
+                numEliminados++;
+                Metricas.ELIMINACOES.increment();
+                Registro.info("Jogador(a) {T} foi eliminado(a).", jogador.nickname);
+            }
+            escolhasDosAtivos[i] = jogador.valorEscolhido;
+            jogador.valorEscolhido = -1; // Reseta o valor escolhido para a próxima rodada
+        }
+        if (Plateia.assistida(id)) {
+            Plateia.rodada(id, rodada, valorAlvoCentesimos, ativosNaRodada, escolhasDosAtivos, numAtivos, regras);
+        }
+
+        // Mensagem de fim de rodada para todos os jogadores ativos (o cliente binário recebe o valor alvo)
+        rodada++;
+        Diario.fimRodada(id, rodada, valorAlvoCentesimos, ativosNaRodada, numAtivos);
+        for (int i = 0; i < numAtivos; i++) {
+            Mensageiro.enviar(ativosNaRodada[i], ProtocoloBinario.OP_FIM_RODADA, valorAlvoCentesimos);
+        }
+
+        // Remove jogadores eliminados da partida e do servidor
+        for (int i = 0; i < numAtivos && numEliminados > 0; i++) {
+            Jogador eliminado = ativosNaRodada[i];
+            if (regras.eliminado(eliminado.pontuacao)) {
+                Diario.eliminacao(id, eliminado.indiceNoElenco);
+                Estatisticas.fimDePartida(eliminado, false, true);
+                eliminado.emJogo = false;
+                eliminado.partida = null;
+                eliminado.laco = null;
+                jogadores.remove(eliminado.nickname);
+                JuizUDP.removerJogador(eliminado);
+                numEliminados--;
+            }
+        }
+        limparReferencias(numAtivos);
+
+        // Verifica as condições de vitória ou fim de jogo
+        int jogadoresAtualmenteEmJogo = contarEmJogo();
+        if (jogadoresAtualmenteEmJogo == 1) {
+            declararVencedor();
+            encerrar();
+        } else if (jogadoresAtualmenteEmJogo == 0) { // Todos os jogadores foram eliminados
+            Registro.info("Partida #{A}: todos os jogadores foram eliminados. Fim da partida.", id);
+            encerrar();
+        } else {
+            // Se o jogo continua, pede a próxima jogada
+            for (Jogador jogador : jogadores.values()) {
+                if (jogador.emJogo) {
+                    Mensageiro.enviar(jogador, ProtocoloBinario.OP_PEDIR_JOGADA);
+                }
+            }
+            armarPrazoDaRodada();
+        }
+    }
+
+    // Solta as referências da rodada, para não segurar jogadores que já saíram
+    private void limparReferencias(int numAtivos) {
+        Arrays.fill(ativosNaRodada, 0, numAtivos, null);
+        Arrays.fill(jogaramNaRodada, 0, numAtivos, null);
+    }
+}
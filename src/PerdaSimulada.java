@@ -0,0 +1,52 @@
+package src;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Modo de teste da entrega confiável: descarta uma fração dos datagramas e atrasa outra
+// fração (que chega depois dos seguintes, fora de ordem), para provar no loopback que as
+// partidas terminam mesmo com perda. Só vale para as sessões confiáveis.
+final class PerdaSimulada {
+
+    private static final long ATRASO_MINIMO_MILLIS = 50;
+    private static final long ATRASO_MAXIMO_MILLIS = 300;
+
+    private PerdaSimulada() {}
+
+    // Saída que perde e reordena os datagramas (a própria saída, se as duas frações forem zero)
+    static SessaoConfiavel.Saida aplicar(SessaoConfiavel.Saida saida, double perda, double reordenacao, RodaDeTempo relogio) {
+        if (perda <= 0 && reordenacao <= 0) {
+            return saida;
+        }
+        return datagrama -> {
+            ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+            if (aleatorio.nextDouble() < perda) {
+                datagrama.position(datagrama.limit());
+                return;
+            }
+            if (aleatorio.nextDouble() < reordenacao) {
+                // O buffer é reutilizado por quem enviou: o atrasado vai numa cópia
+                ByteBuffer copia = ByteBuffer.allocate(datagrama.remaining());
+                copia.put(datagrama).flip();
+                relogio.agendar(aleatorio.nextLong(ATRASO_MINIMO_MILLIS, ATRASO_MAXIMO_MILLIS), () -> {
+                    try {
+                        saida.enviar(copia);
+                    } catch (ClosedChannelException e) {
+                        // Quem enviou já encerrou
+                    } catch (IOException e) {
+                        Registro.erro("Erro ao enviar datagrama atrasado: {T}", e.getMessage(), null);
+                    }
+                });
+                return;
+            }
+            saida.enviar(datagrama);
+        };
+    }
+
+    // Sorteia se um datagrama recebido deve ser descartado
+    static boolean descartar(double perda) {
+        return perda > 0 && ThreadLocalRandom.current().nextDouble() < perda;
+    }
+}
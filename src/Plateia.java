@@ -0,0 +1,340 @@
+package src;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// Espectadores que assistem às partidas ao vivo (OP_ASSISTIR). A partida serializa o
+// resultado de cada rodada uma única vez, num buffer que não muda mais, e o entrega a esta
+// etapa, que tem laço de eventos próprio (como Estatisticas) e manda o mesmo buffer a todos
+// os espectadores da partida de uma vez (MotorDeRede.enviarParaVarios). A partida nunca
+// espera pela plateia: com a caixa do laço cheia, o resultado não chega aos espectadores
+// (plateia_descartados). O resultado de uma partida grande, maior que um datagrama seguro, sai
+// fragmentado (ver Fragmentos).
+//
+// O espectador confirma cada resultado com um novo OP_ASSISTIR, que leva a última rodada
+// recebida e renova a inscrição. Quem fica VALIDADE sem confirmar nada, ou mais de
+// ATRASO_MAXIMO rodadas atrás da partida, é retirado: um espectador lento não segura os
+// outros nem a partida, e se quiser volta a se inscrever.
+//
+// Antes da inscrição, o espectador prova que recebe no endereço de origem: um OP_ASSISTIR sem
+// o biscoito certo só ganha um OP_ASSISTINDO com o biscoito (HMAC do endereço com um segredo
+// sorteado ao subir o juiz), do mesmo tamanho do pedido, e a inscrição só vale quando ele
+// volta no pedido seguinte. Um pedido com a origem forjada não põe a vítima na plateia nem
+// tira dela mais bytes do que o atacante mandou. O biscoito segue em todas as confirmações.
+//
+// Com um grupo multicast (-Djuiz.plateiaGrupo=239.255.0.77:4460), cada resultado de todas as
+// partidas também vai uma única vez ao grupo pela interface de loopback: os espectadores da
+// mesma máquina entram no grupo e não precisam se inscrever nem confirmar.
+final class Plateia {
+
+    private static final int CAPACIDADE_CAIXA = Integer.getInteger("juiz.plateiaCaixa", 4096);
+    private static final long VALIDADE_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("juiz.plateiaValidade", 10));
+    private static final int ATRASO_MAXIMO = Integer.getInteger("juiz.plateiaAtraso", 5);
+    private static final int MAXIMO_POR_PARTIDA = Integer.getInteger("juiz.plateiaMaximo", 10_000);
+    // Chave dos biscoitos; cada thread de recepção tem o seu Mac
+    private static final SecretKeySpec SEGREDO = new SecretKeySpec(aleatorios(32), "HmacSHA256");
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(SEGREDO);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e); // HmacSHA256 faz parte de toda JVM
+        }
+    });
+
+    // Espectadores de uma partida, em arrays paralelos (remoção trocando com o último)
+    private static final class Espectadores {
+        InetSocketAddress[] enderecos = new InetSocketAddress[8];
+        long[] validade = new long[8];
+        int[] vista = new int[8]; // Última rodada confirmada (16 bits, como no cabeçalho)
+        int n;
+        int rodada; // Última rodada difundida
+        final Map<InetSocketAddress, Integer> posicoes = new HashMap<>();
+
+        int adicionar(InetSocketAddress endereco) {
+            if (n == enderecos.length) {
+                enderecos = Arrays.copyOf(enderecos, n * 2);
+                validade = Arrays.copyOf(validade, n * 2);
+                vista = Arrays.copyOf(vista, n * 2);
+            }
+            enderecos[n] = endereco;
+            posicoes.put(endereco, n);
+            return n++;
+        }
+
+        void remover(int i) {
+            posicoes.remove(enderecos[i]);
+            n--;
+            if (i != n) {
+                enderecos[i] = enderecos[n];
+                validade[i] = validade[n];
+                vista[i] = vista[n];
+                posicoes.put(enderecos[i], i);
+            }
+            enderecos[n] = null;
+        }
+
+        // Retira quem venceu a validade ou ficou atrás demais da rodada dada; devolve quantos saíram
+        int retirarLentos(int rodadaAtual, long agora) {
+            int retirados = 0;
+            for (int i = n - 1; i >= 0; i--) {
+                if (agora - validade[i] > 0 || ((rodadaAtual - vista[i]) & 0xFFFF) > ATRASO_MAXIMO) {
+                    remover(i);
+                    retirados++;
+                }
+            }
+            return retirados;
+        }
+    }
+
+    private static MotorDeRede motor;
+    private static DatagramChannel canalGrupo;
+    private static InetSocketAddress grupo;
+    private static LacoDeEventos laco;
+    // Estado do laço da plateia
+    private static final Map<Integer, Espectadores> porPartida = new HashMap<>();
+    // Partidas com espectadores: as partidas consultam para só serializar o que alguém assiste
+    private static final Set<Integer> assistidas = ConcurrentHashMap.newKeySet();
+    private static volatile int total;
+
+    private Plateia() {}
+
+    // Cria o laço da plateia; grupoConfigurado (host:porta) liga o modo multicast (null: só unicast)
+    static void iniciar(MotorDeRede motorDoJuiz, String grupoConfigurado, ExecutorService portadoras, RodaDeTempo relogio)
+            throws IOException {
+        motor = motorDoJuiz;
+        if (grupoConfigurado != null) {
+            grupo = RoteadorUDP.lerEndereco(grupoConfigurado);
+            canalGrupo = DatagramChannel.open(StandardProtocolFamily.INET);
+            canalGrupo.setOption(StandardSocketOptions.IP_MULTICAST_IF, NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress()));
+            canalGrupo.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            canalGrupo.setOption(StandardSocketOptions.IP_MULTICAST_TTL, 0); // Não sai da máquina
+            canalGrupo.configureBlocking(false);
+            Registro.info("Plateia: resultados também no grupo {T}.", grupoConfigurado);
+        }
+        laco = new LacoDeEventos("plateia", portadoras);
+        Metricas.medidor("plateia_espectadores", () -> total);
+        Metricas.medidor("plateia_caixa", laco::pendentes);
+        agendarLimpeza(relogio);
+    }
+
+    private static void agendarLimpeza(RodaDeTempo relogio) {
+        relogio.agendar(TimeUnit.NANOSECONDS.toMillis(VALIDADE_NANOS), () -> laco.enviar(() -> {
+            limparVencidos(System.nanoTime());
+            agendarLimpeza(relogio);
+        }));
+    }
+
+    // Indica se vale a pena serializar o resultado da partida (chamado no laço dela)
+    static boolean assistida(int idPartida) {
+        return laco != null && (grupo != null || assistidas.contains(idPartida));
+    }
+
+    private static byte[] aleatorios(int n) {
+        byte[] bytes = new byte[n];
+        new SecureRandom().nextBytes(bytes);
+        return bytes;
+    }
+
+    // Biscoito do endereço (nunca 0): os primeiros 64 bits do HMAC do IP e da porta
+    static long biscoito(InetAddress ip, int porta) {
+        Mac mac = MAC.get();
+        mac.update(ip.getAddress());
+        mac.update((byte) (porta >>> 8));
+        mac.update((byte) porta);
+        long biscoito = ByteBuffer.wrap(mac.doFinal()).getLong();
+        return biscoito != 0 ? biscoito : 1;
+    }
+
+    // Inscrição ou confirmação de um espectador que já devolveu o biscoito (thread de recepção)
+    static void assistir(int idPartida, InetSocketAddress endereco, int rodadaVista, long biscoito) {
+        oferecer(() -> inscrever(idPartida, endereco, rodadaVista & 0xFFFF, biscoito, System.nanoTime()));
+    }
+
+    // Pedido sem o biscoito certo: só o biscoito volta, sem inscrição (thread de recepção)
+    static void desafiar(int idPartida, InetSocketAddress endereco, long biscoito) {
+        responder(idPartida, -1, biscoito, endereco);
+    }
+
+    // Resposta a quem pediu para assistir a uma partida que não existe (thread de recepção)
+    static void recusar(InetSocketAddress endereco, long biscoito) {
+        responder(0, 0, biscoito, endereco);
+    }
+
+    // Resultado de uma rodada fechada, com os ativos na rodada e a escolha de cada um (-1: não
+    // jogou) na mesma ordem. Serializado aqui, no laço da partida, uma única vez para todos.
+    static void rodada(int idPartida, int rodada, int alvoCentesimos, Jogador[] ativos, int[] escolhas, int n,
+                       RegrasDePontuacao regras) {
+        int tamanho = ProtocoloBinario.TAMANHO_CABECALHO + 6;
+        for (int i = 0; i < n; i++) {
+            tamanho += 7 + Math.min(ativos[i].nicknameUtf8.length, 255);
+        }
+        ByteBuffer quadro = ByteBuffer.allocate(tamanho);
+        ProtocoloBinario.escreverCabecalho(quadro, ProtocoloBinario.OP_PLATEIA_RODADA, idPartida, rodada);
+        quadro.putInt(alvoCentesimos).putShort((short) n);
+        for (int i = 0; i < n; i++) {
+            Jogador jogador = ativos[i];
+            int tamanhoNick = Math.min(jogador.nicknameUtf8.length, 255);
+            quadro.put((byte) escolhas[i]).putInt(jogador.pontuacao).put((byte) (regras.eliminado(jogador.pontuacao) ? 1 : 0))
+                  .put((byte) tamanhoNick).put(jogador.nicknameUtf8, 0, tamanhoNick);
+        }
+        publicar(idPartida, rodada, quadro.flip(), false);
+    }
+
+    // Fim da partida: o vencedor (null se não houve) e a inscrição dos espectadores acaba
+    static void fim(int idPartida, int rodada, Jogador vencedor) {
+        byte[] nickname = vencedor != null ? vencedor.nicknameUtf8 : new byte[0];
+        ByteBuffer quadro = ByteBuffer.allocate(ProtocoloBinario.TAMANHO_CABECALHO + nickname.length);
+        ProtocoloBinario.escreverCabecalho(quadro, ProtocoloBinario.OP_PLATEIA_FIM, idPartida, rodada);
+        quadro.put(nickname);
+        publicar(idPartida, rodada, quadro.flip(), true);
+    }
+
+    // Leitura em ordem dos campos de um OP_PLATEIA_RODADA, para os clientes espectadores
+    static String descreverRodada(ByteBuffer dados) {
+        ByteBuffer c = dados.duplicate();
+        int rodada = ProtocoloBinario.rodada(dados);
+        c.position(c.position() + ProtocoloBinario.TAMANHO_CABECALHO);
+        int alvo = c.getInt();
+        int n = c.getShort();
+        StringBuilder texto = new StringBuilder("Partida #").append(ProtocoloBinario.idPartida(dados)).append(", rodada ").append(rodada);
+        if (alvo < 0) {
+            texto.append(": ninguém jogou.");
+        } else {
+            texto.append(": alvo ").append(alvo / 100).append('.').append(String.format("%02d", alvo % 100));
+        }
+        for (int i = 0; i < n && c.remaining() >= 7; i++) {
+            int escolha = c.get();
+            int placar = c.getInt();
+            boolean eliminado = c.get() != 0;
+            byte[] nickname = new byte[Math.min(c.get() & 0xFF, c.remaining())];
+            c.get(nickname);
+            texto.append("\n  ").append(new String(nickname, StandardCharsets.UTF_8))
+                 .append(escolha >= 0 ? " escolheu " + escolha : " não jogou").append(", placar ").append(placar)
+                 .append(eliminado ? " (eliminado)" : "");
+        }
+        return texto.toString();
+    }
+
+    private static void publicar(int idPartida, int rodada, ByteBuffer quadro, boolean fim) {
+        oferecer(() -> difundir(idPartida, rodada & 0xFFFF, quadro, fim));
+    }
+
+    private static void oferecer(Runnable evento) {
+        if (laco != null && !laco.oferecer(evento, CAPACIDADE_CAIXA)) {
+            Metricas.PLATEIA_DESCARTADOS.increment();
+        }
+    }
+
+    private static void inscrever(int idPartida, InetSocketAddress endereco, int rodadaVista, long biscoito, long agora) {
+        Espectadores espectadores = porPartida.get(idPartida);
+        if (espectadores == null) {
+            espectadores = new Espectadores();
+            porPartida.put(idPartida, espectadores);
+            assistidas.add(idPartida);
+        }
+        Integer posicao = espectadores.posicoes.get(endereco);
+        int i;
+        if (posicao != null) {
+            i = posicao;
+        } else {
+            if (espectadores.n >= MAXIMO_POR_PARTIDA) {
+                Metricas.PLATEIA_DESCARTADOS.increment();
+                return;
+            }
+            i = espectadores.adicionar(endereco);
+            espectadores.vista[i] = espectadores.rodada; // Começa em dia com a partida
+            total++;
+            responder(idPartida, espectadores.n, biscoito, endereco);
+        }
+        espectadores.validade[i] = agora + VALIDADE_NANOS;
+        if (((rodadaVista - espectadores.vista[i]) & 0xFFFF) < 0x8000) {
+            espectadores.vista[i] = rodadaVista;
+        }
+    }
+
+    private static void difundir(int idPartida, int rodada, ByteBuffer quadro, boolean fim) {
+        Espectadores espectadores = porPartida.get(idPartida);
+        if (espectadores != null) {
+            total -= espectadores.retirarLentos(rodada, System.nanoTime());
+            espectadores.rodada = rodada;
+        }
+        if (quadro.remaining() <= LoteDeSaida.TAMANHO_MAXIMO) {
+            enviarATodos(quadro, espectadores);
+        } else {
+            try { // Partida com muitos jogadores: cada fragmento vai a todos (ver Fragmentos)
+                Metricas.FRAGMENTOS_ENVIADOS.add(Fragmentos.fragmentar(quadro, LoteDeSaida.TAMANHO_MAXIMO,
+                                                                       fragmento -> enviarATodos(fragmento, espectadores)));
+            } catch (IOException e) {
+                // Não acontece: enviarATodos trata os próprios erros
+            }
+        }
+        if (espectadores == null) {
+            return;
+        }
+        if (fim || espectadores.n == 0) {
+            total -= espectadores.n;
+            porPartida.remove(idPartida);
+            assistidas.remove(idPartida);
+        }
+    }
+
+    // Um datagrama ao grupo (se houver) e aos espectadores inscritos
+    private static void enviarATodos(ByteBuffer datagrama, Espectadores espectadores) {
+        if (canalGrupo != null) {
+            try {
+                canalGrupo.send(datagrama.duplicate(), grupo);
+            } catch (IOException e) {
+                Registro.erro("Erro ao enviar ao grupo da plateia: {T}", e.getMessage(), null);
+            }
+        }
+        if (espectadores != null) {
+            Metricas.PLATEIA_ENVIADOS.add(motor.enviarParaVarios(datagrama, espectadores.enderecos, espectadores.n));
+        }
+    }
+
+    // Retira os espectadores que pararam de confirmar em partidas sem rodadas recentes
+    private static void limparVencidos(long agora) {
+        Iterator<Map.Entry<Integer, Espectadores>> it = porPartida.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Espectadores> entrada = it.next();
+            Espectadores espectadores = entrada.getValue();
+            total -= espectadores.retirarLentos(espectadores.rodada, agora);
+            if (espectadores.n == 0) {
+                assistidas.remove(entrada.getKey());
+                it.remove();
+            }
+        }
+    }
+
+    private static void responder(int idPartida, int espectadores, long biscoito, InetSocketAddress endereco) {
+        ByteBuffer quadro = ByteBuffer.allocate(ProtocoloBinario.TAMANHO_CABECALHO + 12);
+        ProtocoloBinario.escreverCabecalho(quadro, ProtocoloBinario.OP_ASSISTINDO, idPartida, 0);
+        quadro.putInt(espectadores).putLong(biscoito).flip();
+        try {
+            motor.enviar(quadro, endereco);
+        } catch (IOException e) {
+            Registro.erro("Erro ao responder ao espectador: {T}", e.getMessage(), null);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package src;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Pool de ByteBuffers reutilizáveis (diretos ou no heap). Quando o pool esvazia, um buffer novo é
+// alocado (e contado); buffers devolvidos com o pool cheio são descartados.
+class PoolDeBuffers {
+
+    private final ArrayBlockingQueue<ByteBuffer> livres;
+    private final int tamanhoBuffer;
+    private final boolean diretos;
+    private final AtomicLong alocacoesExtras = new AtomicLong();
+
+    PoolDeBuffers(int capacidade, int tamanhoBuffer, boolean diretos) {
+        this.livres = new ArrayBlockingQueue<>(capacidade);
+        this.tamanhoBuffer = tamanhoBuffer;
+        this.diretos = diretos;
+        for (int i = 0; i < capacidade; i++) {
+            livres.offer(alocar());
+        }
+    }
+
+    private ByteBuffer alocar() {
+        return diretos ? ByteBuffer.allocateDirect(tamanhoBuffer) : ByteBuffer.allocate(tamanhoBuffer);
+    }
+
+    ByteBuffer obter() {
+        ByteBuffer buffer = livres.poll();
+        if (buffer == null) {
+            alocacoesExtras.incrementAndGet();
+            return alocar();
+        }
+        return buffer;
+    }
+
+    void devolver(ByteBuffer buffer) {
+        buffer.clear();
+        livres.offer(buffer);
+    }
+
+    int tamanhoBuffer() {
+        return tamanhoBuffer;
+    }
+
+    long alocacoesExtras() {
+        return alocacoesExtras.get();
+    }
+}
@@ -0,0 +1,323 @@
+package src;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+// Protocolo binário do jogo, usado junto com o protocolo de texto. Cada datagrama começa
+// com um cabeçalho fixo de 10 bytes:
+//
+//   0      1       2       3      4..7        8..9
+//   MAGICO VERSAO  opcode  flags  idPartida   rodada
+//
+// seguido da carga útil do opcode: zero ou mais inteiros de 32 bits (big-endian), ou texto
+// UTF-8 nos opcodes de texto. O byte MAGICO (0xB5) nunca inicia um texto UTF-8 válido, então
+// o servidor distingue os dois protocolos olhando só o primeiro byte.
+// Codificação e decodificação trabalham direto no ByteBuffer, sem alocar.
+//
+// Entrega confiável (opcional, ver SessaoConfiavel): um cliente que manda o cadastro dentro
+// de um OP_CONFIAVEL passa a receber tudo nesse envelope, com número de sequência e os acks
+// do que ele enviou:
+//
+//   cabeçalho (OP_CONFIAVEL)  sequencia (int)  ack (int)  mascara (int)  quadro original
+//
+// No cabeçalho do envelope e do OP_ACK, o campo do id da partida leva o id da sessão. ack é
+// a última sequência recebida em ordem; o bit i da máscara indica que a sequência ack + 2 + i
+// também chegou (ack seletivo). OP_ACK leva só ack e máscara.
+//
+// Sessão: no cadastro, o cliente binário recebe um token de 64 bits (OP_SESSAO_TOKEN) e
+// passa a mandar todo datagrama dentro de um OP_SESSAO, que leva os 32 bits altos do token no
+// campo do id da partida e os 32 baixos na carga, antes do datagrama original (quadro solto,
+// envelope ou ack). O servidor acha o jogador pelo token e não pelo endereço, então ele
+// continua o mesmo se a porta mudar (NAT) ou se o cliente reiniciar e pedir OP_RETOMAR.
+//
+// Mensagens maiores que um datagrama seguro (ver Fragmentos) vão em OP_FRAGMENTO, com o id
+// da mensagem no campo do id da partida; a mensagem remontada é o datagrama original:
+//
+//   cabeçalho (OP_FRAGMENTO)  indice (short)  total (short)  deslocamento (int)  pedaço
+//
+// Entre o roteador e os juízes (ver RoteadorUDP), cada datagrama de ou para um jogador vai
+// num OP_ROTA com o endereço do jogador na frente; o byte de flags leva o tamanho do IP:
+//
+//   cabeçalho (OP_ROTA, flags = 4 ou 16)  porta (short)  IP  datagrama original
+final class ProtocoloBinario {
+
+    static final byte MAGICO = (byte) 0xB5;
+    static final byte VERSAO = 1;
+    static final int TAMANHO_CABECALHO = 10;
+
+    // Opcodes do cliente para o servidor
+    static final byte OP_CADASTRO = 0x01;       // texto: nickname
+    static final byte OP_OPCAO_MENU = 0x02;     // int: opção do menu
+    static final byte OP_JOGADA = 0x03;         // int: número escolhido (rodada no cabeçalho)
+    static final byte OP_RETOMAR = 0x04;        // Retoma a sessão do token (depois de reiniciar o cliente)
+    static final byte OP_ASSISTIR = 0x05;       // int: última rodada recebida, long: biscoito (partida no cabeçalho; 0: qualquer uma)
+
+    // Opcodes do servidor para o cliente
+    static final byte OP_MENU = 0x10;
+    static final byte OP_ERRO_CADASTRO = 0x11;
+    static final byte OP_ENTRADA_INVALIDA = 0x12;
+    static final byte OP_REGRAS = 0x13;         // texto: regras do jogo
+    static final byte OP_JA_EM_JOGO = 0x14;
+    static final byte OP_SAIDA = 0x15;
+    static final byte OP_OPCAO_INVALIDA = 0x16;
+    static final byte OP_AGUARDANDO = 0x17;     // int: prontos, int: capacidade
+    static final byte OP_CONTAGEM = 0x18;       // int: cadastrados, int: prontos, int: capacidade
+    static final byte OP_INICIO_PARTIDA = 0x19;
+    static final byte OP_PEDIR_JOGADA = 0x1A;
+    static final byte OP_JOGADA_CONFIRMADA = 0x1B; // int: número escolhido
+    static final byte OP_VENCEDOR = 0x1C;
+    static final byte OP_FALTA_JOGADORES = 0x1D;
+    static final byte OP_RODADA_SEM_JOGADAS = 0x1E;
+    static final byte OP_PLACAR = 0x1F;         // int: placar (rodada sem jogadas)
+    static final byte OP_PERDEU_PONTOS = 0x20;  // int: pontos perdidos
+    static final byte OP_NAO_PERDEU = 0x21;
+    static final byte OP_PLACAR_ATUAL = 0x22;   // int: placar
+    static final byte OP_ELIMINADO = 0x23;
+    static final byte OP_FIM_RODADA = 0x24;     // int: valor alvo em centésimos
+    static final byte OP_RANKING = 0x25;        // texto: ranking e estatísticas do jogador
+    static final byte OP_SESSAO_TOKEN = 0x26;   // int: 32 bits altos do token, int: 32 bits baixos
+    static final byte OP_SESSAO_INVALIDA = 0x27; // Token desconhecido: o cliente se cadastra de novo
+    static final byte OP_SESSAO_RETOMADA = 0x28;
+
+    // Plateia (ver Plateia): resultado de cada rodada e fim da partida para os espectadores.
+    // Resultado: int alvo em centésimos (-1: rodada sem jogadas), short n e, para cada jogador
+    // ativo na rodada, byte escolha (-1: não jogou), int placar, byte eliminado, byte tamanho
+    // e o nickname em UTF-8. A rodada do cabeçalho é a que acabou de fechar.
+    static final byte OP_PLATEIA_RODADA = 0x29;
+    static final byte OP_PLATEIA_FIM = 0x2A;    // texto: nickname do vencedor (vazio: sem vencedor)
+    static final byte OP_ASSISTINDO = 0x2B;     // int: espectadores (-1: só o biscoito), long: biscoito (id 0 no cabeçalho: nenhuma partida)
+
+    // Envelope com várias mensagens no mesmo datagrama: sequência de [tamanho (short)][quadro]
+    static final byte OP_LOTE = 0x30;
+
+    // Entrega confiável, nos dois sentidos
+    static final byte OP_CONFIAVEL = 0x31;      // int: sequência, int: ack, int: máscara, quadro
+    static final byte OP_ACK = 0x32;            // int: ack, int: máscara
+    static final int TAMANHO_ENVELOPE = TAMANHO_CABECALHO + 12;
+
+    // Token de sessão, na frente de qualquer datagrama do cliente
+    static final byte OP_SESSAO = 0x33;         // int: 32 bits baixos do token, datagrama
+    static final int TAMANHO_SESSAO = TAMANHO_CABECALHO + 4;
+
+    // Pedaço de uma mensagem grande, nos dois sentidos
+    static final byte OP_FRAGMENTO = 0x34;      // short: índice, short: total, int: deslocamento, pedaço
+    static final int TAMANHO_CABECALHO_FRAGMENTO = TAMANHO_CABECALHO + 8;
+
+    // Roteador e juízes
+    static final byte OP_ROTA = 0x40;           // porta, IP e o datagrama do jogador
+    static final byte OP_PING = 0x41;           // int: carimbo (roteador para juiz)
+    static final byte OP_PONG = 0x42;           // int: carimbo do ping (0: anúncio), int: jogadores cadastrados
+    static final int TAMANHO_ROTA_MAXIMO = TAMANHO_CABECALHO + 2 + 16;
+
+    private static final int MAIOR_OPCODE = 0x42;
+
+    // Quantidade de inteiros na carga útil de cada opcode (-1 = carga de texto UTF-8)
+    private static final byte[] ARGUMENTOS = new byte[MAIOR_OPCODE + 1];
+    static {
+        ARGUMENTOS[OP_CADASTRO] = -1;
+        ARGUMENTOS[OP_OPCAO_MENU] = 1;
+        ARGUMENTOS[OP_ASSISTIR] = 3;
+        ARGUMENTOS[OP_JOGADA] = 1;
+        ARGUMENTOS[OP_REGRAS] = -1;
+        ARGUMENTOS[OP_AGUARDANDO] = 2;
+        ARGUMENTOS[OP_CONTAGEM] = 3;
+        ARGUMENTOS[OP_JOGADA_CONFIRMADA] = 1;
+        ARGUMENTOS[OP_PLACAR] = 1;
+        ARGUMENTOS[OP_PERDEU_PONTOS] = 1;
+        ARGUMENTOS[OP_PLACAR_ATUAL] = 1;
+        ARGUMENTOS[OP_FIM_RODADA] = 1;
+        ARGUMENTOS[OP_RANKING] = -1;
+        ARGUMENTOS[OP_LOTE] = -1;
+        ARGUMENTOS[OP_CONFIAVEL] = -1;
+        ARGUMENTOS[OP_ACK] = 2;
+        ARGUMENTOS[OP_SESSAO_TOKEN] = 2;
+        ARGUMENTOS[OP_PLATEIA_RODADA] = -1;
+        ARGUMENTOS[OP_PLATEIA_FIM] = -1;
+        ARGUMENTOS[OP_ASSISTINDO] = 3;
+        ARGUMENTOS[OP_SESSAO] = -1;
+        ARGUMENTOS[OP_FRAGMENTO] = -1;
+        ARGUMENTOS[OP_ROTA] = -1;
+        ARGUMENTOS[OP_PING] = 1;
+        ARGUMENTOS[OP_PONG] = 2;
+    }
+
+    private ProtocoloBinario() {}
+
+    // Indica se os bytes restantes do buffer são um datagrama binário desta versão
+    static boolean ehBinario(ByteBuffer dados) {
+        int p = dados.position();
+        return dados.remaining() >= TAMANHO_CABECALHO && dados.get(p) == MAGICO && dados.get(p + 1) == VERSAO;
+    }
+
+    // Indica se o datagrama tem a carga útil esperada para o opcode
+    static boolean cargaValida(ByteBuffer dados) {
+        int opcode = opcode(dados);
+        if (opcode < 0 || opcode > MAIOR_OPCODE) {
+            return false;
+        }
+        int argumentos = ARGUMENTOS[opcode];
+        int carga = dados.remaining() - TAMANHO_CABECALHO;
+        if (opcode == OP_CONFIAVEL) {
+            return carga >= 12 + TAMANHO_CABECALHO; // Campos do envelope e um quadro dentro
+        }
+        if (opcode == OP_SESSAO) {
+            return carga >= 4 + TAMANHO_CABECALHO; // Token e um datagrama dentro
+        }
+        if (opcode == OP_FRAGMENTO) {
+            return carga > 8; // Campos do fragmento e ao menos um byte da mensagem
+        }
+        if (opcode == OP_ROTA) {
+            int tamanhoIp = tamanhoIpRota(dados);
+            return (tamanhoIp == 4 || tamanhoIp == 16) && carga > 2 + tamanhoIp; // Endereço e um datagrama dentro
+        }
+        if (opcode == OP_PLATEIA_FIM) {
+            return carga >= 0; // Partida sem vencedor: texto vazio
+        }
+        return argumentos < 0 ? carga > 0 : carga == argumentos * 4;
+    }
+
+    static int quantidadeArgumentos(byte opcode) {
+        return opcode >= 0 && opcode <= MAIOR_OPCODE ? ARGUMENTOS[opcode] : 0;
+    }
+
+    static void escreverCabecalho(ByteBuffer destino, byte opcode, int idPartida, int rodada) {
+        destino.put(MAGICO).put(VERSAO).put(opcode).put((byte) 0).putInt(idPartida).putShort((short) rodada);
+    }
+
+    // Escreve o cabeçalho a partir do índice dado, sem mexer na posição do buffer
+    static void escreverCabecalho(ByteBuffer destino, int indice, byte opcode, int idPartida, int rodada) {
+        destino.put(indice, MAGICO).put(indice + 1, VERSAO).put(indice + 2, opcode).put(indice + 3, (byte) 0)
+               .putInt(indice + 4, idPartida).putShort(indice + 8, (short) rodada);
+    }
+
+    static byte opcode(ByteBuffer dados) {
+        return dados.get(dados.position() + 2);
+    }
+
+    static int idPartida(ByteBuffer dados) {
+        return dados.getInt(dados.position() + 4);
+    }
+
+    static int rodada(ByteBuffer dados) {
+        return dados.getShort(dados.position() + 8) & 0xFFFF;
+    }
+
+    // Lê o i-ésimo inteiro da carga útil
+    static int argumento(ByteBuffer dados, int i) {
+        return dados.getInt(dados.position() + TAMANHO_CABECALHO + i * 4);
+    }
+
+    // Dois argumentos seguidos, a partir do i-ésimo, lidos como um long
+    static long argumentoLongo(ByteBuffer dados, int i) {
+        return dados.getLong(dados.position() + TAMANHO_CABECALHO + i * 4);
+    }
+
+    // Campos do envelope OP_CONFIAVEL e do OP_ACK (no OP_ACK, ack e máscara são os argumentos)
+    static int idSessao(ByteBuffer dados) {
+        return idPartida(dados);
+    }
+
+    static int sequencia(ByteBuffer dados) {
+        return argumento(dados, 0);
+    }
+
+    static int ack(ByteBuffer dados) {
+        return argumento(dados, opcode(dados) == OP_ACK ? 0 : 1);
+    }
+
+    static int mascara(ByteBuffer dados) {
+        return argumento(dados, opcode(dados) == OP_ACK ? 1 : 2);
+    }
+
+    // Token de sessão: no OP_SESSAO, metade no cabeçalho e metade na carga; no OP_SESSAO_TOKEN,
+    // nos dois argumentos
+    static long token(ByteBuffer dados) {
+        int alto = opcode(dados) == OP_SESSAO ? idPartida(dados) : argumento(dados, 0);
+        int baixo = opcode(dados) == OP_SESSAO ? argumento(dados, 0) : argumento(dados, 1);
+        return ((long) alto << 32) | (baixo & 0xFFFFFFFFL);
+    }
+
+    // Escreve o OP_SESSAO (cabeçalho e token) a partir da posição; o datagrama vem em seguida
+    static void escreverSessao(ByteBuffer destino, long token) {
+        escreverCabecalho(destino, OP_SESSAO, (int) (token >>> 32), 0);
+        destino.putInt((int) token);
+    }
+
+    // Campos do OP_FRAGMENTO (o id da mensagem é o campo do id da partida)
+    static int indiceFragmento(ByteBuffer dados) {
+        return dados.getShort(dados.position() + TAMANHO_CABECALHO) & 0xFFFF;
+    }
+
+    static int totalFragmentos(ByteBuffer dados) {
+        return dados.getShort(dados.position() + TAMANHO_CABECALHO + 2) & 0xFFFF;
+    }
+
+    static int deslocamentoFragmento(ByteBuffer dados) {
+        return dados.getInt(dados.position() + TAMANHO_CABECALHO + 4);
+    }
+
+    // Escreve o cabeçalho de um fragmento a partir da posição; o pedaço vem em seguida
+    static void escreverFragmento(ByteBuffer destino, int idMensagem, int indice, int total, int deslocamento) {
+        escreverCabecalho(destino, OP_FRAGMENTO, idMensagem, 0);
+        destino.putShort((short) indice).putShort((short) total).putInt(deslocamento);
+    }
+
+    // Devolve uma visão da carga útil de texto (sem copiar os bytes)
+    static ByteBuffer cargaTexto(ByteBuffer dados) {
+        ByteBuffer carga = dados.duplicate();
+        carga.position(dados.position() + TAMANHO_CABECALHO);
+        return carga;
+    }
+
+    // Cabeçalho de rota: tamanho total para o IP dado, escrita a partir do índice (sem mexer
+    // na posição do buffer) e leitura dos campos
+    static int tamanhoRota(InetAddress ip) {
+        return TAMANHO_CABECALHO + 2 + (ip instanceof Inet4Address ? 4 : 16);
+    }
+
+    static void escreverRota(ByteBuffer destino, int indice, InetAddress ip, int porta) {
+        escreverCabecalho(destino, indice, OP_ROTA, 0, 0);
+        destino.putShort(indice + TAMANHO_CABECALHO, (short) porta);
+        if (ip instanceof Inet4Address) {
+            destino.put(indice + 3, (byte) 4);
+            destino.putInt(indice + TAMANHO_CABECALHO + 2, ip.hashCode()); // O próprio endereço, sem copiar o array
+        } else {
+            destino.put(indice + 3, (byte) 16);
+            byte[] bytes = ip.getAddress();
+            for (int i = 0; i < bytes.length; i++) {
+                destino.put(indice + TAMANHO_CABECALHO + 2 + i, bytes[i]);
+            }
+        }
+    }
+
+    static int tamanhoIpRota(ByteBuffer dados) {
+        return dados.get(dados.position() + 3);
+    }
+
+    static int tamanhoRota(ByteBuffer dados) {
+        return TAMANHO_CABECALHO + 2 + tamanhoIpRota(dados);
+    }
+
+    static int portaRota(ByteBuffer dados) {
+        return dados.getShort(dados.position() + TAMANHO_CABECALHO) & 0xFFFF;
+    }
+
+    // IPv4 do cabeçalho de rota como int (só quando tamanhoIpRota é 4)
+    static int ipv4Rota(ByteBuffer dados) {
+        return dados.getInt(dados.position() + TAMANHO_CABECALHO + 2);
+    }
+
+    static InetAddress ipRota(ByteBuffer dados) {
+        byte[] bytes = new byte[tamanhoIpRota(dados)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = dados.get(dados.position() + TAMANHO_CABECALHO + 2 + i);
+        }
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Endereço de rota inválido", e); // Só com tamanho diferente de 4 e 16
+        }
+    }
+}
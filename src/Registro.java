@@ -0,0 +1,229 @@
+package src;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Registro (log) assíncrono do servidor. Quem registra não formata nem escreve nada: só
+// reserva uma posição num anel de tamanho fixo (sem lock), copia o modelo da mensagem e os
+// argumentos e publica a posição. Uma thread de fundo formata e escreve os eventos em ordem.
+// Se o anel estiver cheio o evento é descartado e contado, em vez de segurar a thread que
+// está tratando pacotes ou rodadas.
+//
+// Os modelos usam lacunas como os textos do jogo: {T} e {U} para os textos, {A}, {B} e {C}
+// para os inteiros e {X} e {Y} para os reais. Os modelos devem ser constantes: a String
+// é guardada, não copiada.
+final class Registro implements Runnable {
+
+    // Níveis, do mais detalhado ao mais grave
+    static final byte DEPURACAO = 0;
+    static final byte INFO = 1;
+    static final byte AVISO = 2;
+    static final byte ERRO = 3;
+
+    private static final int CAPACIDADE = 8192; // Potência de 2
+    private static final int MASCARA = CAPACIDADE - 1;
+
+    // Posição do anel. A sequência publicada é escrita por último (volatile): só quando ela
+    // bate com a sequência esperada o escritor lê os demais campos.
+    private static final class Evento {
+        volatile long sequencia = -1;
+        byte nivel;
+        String modelo;
+        String t;
+        String u;
+        long a;
+        long b;
+        long c;
+        double x;
+        double y;
+    }
+
+    private static final Evento[] ANEL = new Evento[CAPACIDADE];
+    static {
+        for (int i = 0; i < CAPACIDADE; i++) {
+            ANEL[i] = new Evento();
+        }
+    }
+
+    private static final AtomicLong reservado = new AtomicLong(); // Próxima sequência a reservar
+    private static volatile long consumido;                        // Próxima sequência a escrever
+    private static final LongAdder descartados = new LongAdder();
+
+    private static volatile byte nivelMinimo = DEPURACAO;
+    // Amostragem dos registros por pacote: 1 a cada N pacotes (0 desliga). O contador não é
+    // atômico de propósito: uma contagem imprecisa só muda quais pacotes entram na amostra.
+    private static volatile int amostraPacotes = 1;
+    private static long pacotesVistos;
+
+    private static final Thread ESCRITOR = new Thread(new Registro(), "registro");
+    static {
+        ESCRITOR.setDaemon(true);
+        ESCRITOR.start();
+    }
+
+    private Registro() {}
+
+    // Modo de produção: só INFO para cima e registro por pacote desligado (ou amostrado)
+    static void configurar(byte nivel, int umACadaNPacotes) {
+        nivelMinimo = nivel;
+        amostraPacotes = umACadaNPacotes;
+    }
+
+    static boolean ativo(byte nivel) {
+        return nivel >= nivelMinimo;
+    }
+
+    // Indica se este pacote entra na amostra de registros por pacote
+    static boolean amostrarPacote() {
+        int amostra = amostraPacotes;
+        return amostra > 0 && (pacotesVistos++ % amostra) == 0;
+    }
+
+    static long descartados() {
+        return descartados.sum();
+    }
+
+    static void info(String modelo) {
+        registrar(INFO, modelo, null, null, 0, 0, 0, 0, 0);
+    }
+
+    static void info(String modelo, long a) {
+        registrar(INFO, modelo, null, null, a, 0, 0, 0, 0);
+    }
+
+    static void info(String modelo, long a, long b) {
+        registrar(INFO, modelo, null, null, a, b, 0, 0, 0);
+    }
+
+    static void info(String modelo, String t) {
+        registrar(INFO, modelo, t, null, 0, 0, 0, 0, 0);
+    }
+
+    static void info(String modelo, String t, long a) {
+        registrar(INFO, modelo, t, null, a, 0, 0, 0, 0);
+    }
+
+    static void info(String modelo, String t, String u, long a) {
+        registrar(INFO, modelo, t, u, a, 0, 0, 0, 0);
+    }
+
+    static void erro(String modelo, String t, String u) {
+        registrar(ERRO, modelo, t, u, 0, 0, 0, 0, 0);
+    }
+
+    static void registrar(byte nivel, String modelo, String t, String u, long a, long b, long c, double x, double y) {
+        if (nivel < nivelMinimo) {
+            return;
+        }
+        long sequencia;
+        do {
+            sequencia = reservado.get();
+            if (sequencia - consumido >= CAPACIDADE) {
+                descartados.increment(); // Anel cheio: o escritor não está dando conta
+                return;
+            }
+        } while (!reservado.compareAndSet(sequencia, sequencia + 1));
+
+        Evento evento = ANEL[(int) sequencia & MASCARA];
+        evento.nivel = nivel;
+        evento.modelo = modelo;
+        evento.t = t;
+        evento.u = u;
+        evento.a = a;
+        evento.b = b;
+        evento.c = c;
+        evento.x = x;
+        evento.y = y;
+        evento.sequencia = sequencia; // Publica
+    }
+
+    // Espera o escritor esvaziar o anel (até o limite dado), no encerramento do servidor
+    static void esvaziar(long limiteMillis) {
+        long fim = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(limiteMillis);
+        while (consumido < reservado.get() && System.nanoTime() < fim) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    // Thread escritora: formata cada evento num StringBuilder reutilizado e escreve em buffer,
+    // descarregando a saída quando o anel fica vazio. Sempre em UTF-8, como o resto do texto
+    // do jogo, qualquer que seja a codificação padrão da plataforma.
+    @Override
+    public void run() {
+        Writer saida = new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8);
+        Writer saidaErro = new OutputStreamWriter(new FileOutputStream(FileDescriptor.err), StandardCharsets.UTF_8);
+        StringBuilder linha = new StringBuilder(256);
+        char[] caracteres = new char[256];
+        long proximo = consumido;
+        long descartadosInformados = 0;
+        while (true) {
+            Evento evento = ANEL[(int) proximo & MASCARA];
+            if (evento.sequencia != proximo) {
+                try {
+                    saida.flush();
+                    saidaErro.flush();
+                } catch (IOException e) {
+                    // Sem onde registrar a falha do próprio registro
+                }
+                long total = descartados.sum();
+                if (total != descartadosInformados) {
+                    descartadosInformados = total;
+                    System.err.println("Registro: " + total + " evento(s) descartado(s) por falta de espaço no anel.");
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+
+            linha.setLength(0);
+            formatar(linha, evento);
+            linha.append('\n');
+            byte nivel = evento.nivel;
+            evento.modelo = null;
+            evento.t = null;
+            evento.u = null;
+            proximo++;
+            consumido = proximo; // Libera a posição para os produtores
+
+            if (caracteres.length < linha.length()) {
+                caracteres = new char[linha.length() * 2];
+            }
+            linha.getChars(0, linha.length(), caracteres, 0);
+            try {
+                (nivel >= AVISO ? saidaErro : saida).write(caracteres, 0, linha.length());
+            } catch (IOException e) {
+                // Sem onde registrar a falha do próprio registro
+            }
+        }
+    }
+
+    private static void formatar(StringBuilder linha, Evento evento) {
+        String modelo = evento.modelo;
+        int inicio = 0;
+        for (int i = modelo.indexOf('{'); i >= 0 && i + 2 < modelo.length(); i = modelo.indexOf('{', i + 1)) {
+            if (modelo.charAt(i + 2) != '}') {
+                continue;
+            }
+            linha.append(modelo, inicio, i);
+            switch (modelo.charAt(i + 1)) {
+                case 'T': linha.append(evento.t); break;
+                case 'U': linha.append(evento.u); break;
+                case 'A': linha.append(evento.a); break;
+                case 'B': linha.append(evento.b); break;
+                case 'C': linha.append(evento.c); break;
+                case 'X': linha.append(evento.x); break;
+                case 'Y': linha.append(evento.y); break;
+                default: linha.append(modelo, i, i + 3); break;
+            }
+            inicio = i + 3;
+        }
+        linha.append(modelo, inicio, modelo.length());
+    }
+}
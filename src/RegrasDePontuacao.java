@@ -0,0 +1,199 @@
+package src;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Regras de pontuação de uma rodada, separadas do código de rede: recebem as escolhas em
+// um array de inteiros e devolvem a perda de cada jogador em outro, para qualquer número de
+// jogadores. Uma instância só guarda as penalidades configuradas, então pode ser usada por
+// todas as partidas ao mesmo tempo; pontuar() não aloca nada.
+//
+// Valor alvo = 0,8 x média das escolhas. O mais próximo do alvo não perde pontos, o mais
+// distante perde a penalidade de "mais distante" e os demais perdem a intermediária. Com só
+// 2 jogadores não há meio: o mais distante perde a intermediária (regra original: 0/1 com
+// 2 jogadores, 0/1/2 com 3).
+//
+// Empates: jogadores à mesma distância do alvo ficam sempre com a mesma penalidade, a menor
+// delas. Empatados com o mais próximo não perdem pontos (se todos empatam, ninguém perde);
+// dois ou mais empatados na maior distância perdem a intermediária, então a penalidade de
+// mais distante só vale para quem fica sozinho na maior distância.
+// As distâncias são comparadas em inteiros, sem arredondamento: |c - 0,8 x soma / n| vezes
+// 5n é |5n x c - 4 x soma|.
+//
+// O multiplicador (0,8 = 4/5) e o placar de eliminação (-6) do servidor são os padrões; o
+// SimuladorDePartidas usa outros valores para testar variações das regras. O multiplicador é
+// uma fração numerador/denominador, para as distâncias continuarem exatas.
+final class RegrasDePontuacao {
+
+    static final int LIMITE_ELIMINACAO_PADRAO = -6;
+    static final RegrasDePontuacao PADRAO = new RegrasDePontuacao(0, 1, 2);
+
+    private final int numerador;
+    private final int denominador;
+    private final int limiteEliminacao;
+    private final int penalidadeMaisProximo;
+    private final int penalidadeIntermediaria;
+    private final int penalidadeMaisDistante;
+
+    RegrasDePontuacao(int penalidadeMaisProximo, int penalidadeIntermediaria, int penalidadeMaisDistante) {
+        this(4, 5, LIMITE_ELIMINACAO_PADRAO, penalidadeMaisProximo, penalidadeIntermediaria, penalidadeMaisDistante);
+    }
+
+    // Multiplicador numerador/denominador; quem chega a limiteEliminacao pontos (ou menos) é eliminado
+    RegrasDePontuacao(int numerador, int denominador, int limiteEliminacao,
+                      int penalidadeMaisProximo, int penalidadeIntermediaria, int penalidadeMaisDistante) {
+        if (numerador <= 0 || denominador <= 0 || numerador > 1000 || denominador > 1000) {
+            throw new IllegalArgumentException("Multiplicador deve ser uma fração positiva com termos até 1000: " + numerador + "/" + denominador);
+        }
+        if (limiteEliminacao >= 0) {
+            throw new IllegalArgumentException("O placar de eliminação deve ser negativo: " + limiteEliminacao);
+        }
+        if (penalidadeMaisProximo < 0 || penalidadeIntermediaria < penalidadeMaisProximo || penalidadeMaisDistante < penalidadeIntermediaria) {
+            throw new IllegalArgumentException("Penalidades devem ser >= 0 e crescer com a distância: "
+                                               + penalidadeMaisProximo + "," + penalidadeIntermediaria + "," + penalidadeMaisDistante);
+        }
+        int divisor = mdc(numerador, denominador);
+        this.numerador = numerador / divisor;
+        this.denominador = denominador / divisor;
+        this.limiteEliminacao = limiteEliminacao;
+        this.penalidadeMaisProximo = penalidadeMaisProximo;
+        this.penalidadeIntermediaria = penalidadeIntermediaria;
+        this.penalidadeMaisDistante = penalidadeMaisDistante;
+    }
+
+    // Lê as penalidades no formato "mais próximo,intermediária,mais distante" (ex.: "0,1,2")
+    static RegrasDePontuacao ler(String texto) {
+        String[] partes = texto.split(",");
+        if (partes.length != 3) {
+            throw new IllegalArgumentException("Use três penalidades separadas por vírgula (ex.: 0,1,2): " + texto);
+        }
+        return new RegrasDePontuacao(Integer.parseInt(partes[0].trim()), Integer.parseInt(partes[1].trim()),
+                                     Integer.parseInt(partes[2].trim()));
+    }
+
+    // As mesmas penalidades com outro multiplicador e outro placar de eliminação
+    RegrasDePontuacao com(int numerador, int denominador, int limiteEliminacao) {
+        return new RegrasDePontuacao(numerador, denominador, limiteEliminacao,
+                                     penalidadeMaisProximo, penalidadeIntermediaria, penalidadeMaisDistante);
+    }
+
+    // Lê o multiplicador em decimal (ex.: "0.8" ou "0,8") e devolve {numerador, denominador}
+    static int[] lerMultiplicador(String texto) {
+        BigDecimal valor = new BigDecimal(texto.trim().replace(',', '.')).stripTrailingZeros();
+        int casas = Math.max(valor.scale(), 0);
+        if (valor.signum() <= 0 || casas > 3) {
+            throw new IllegalArgumentException("Use um multiplicador positivo com até 3 casas decimais (ex.: 0.8): " + texto);
+        }
+        return new int[] {valor.movePointRight(casas).intValueExact(), BigDecimal.TEN.pow(casas).intValueExact()};
+    }
+
+    // Valor em centésimos vezes o multiplicador, arredondado para o inteiro mais próximo
+    int multiplicar(int centesimos) {
+        return (int) ((2L * numerador * centesimos + 100L * denominador) / (200L * denominador));
+    }
+
+    boolean eliminado(int pontuacao) {
+        return pontuacao <= limiteEliminacao;
+    }
+
+    // Pontua uma rodada com as escolhas escolhas[0..n) (n >= 1, valores de 0 a 100) e escreve
+    // em perdas[0..n) quantos pontos cada jogador perde. Devolve o valor alvo em centésimos,
+    // arredondado para cima no meio.
+    int pontuar(int[] escolhas, int n, int[] perdas) {
+        long soma = 0;
+        for (int i = 0; i < n; i++) {
+            soma += escolhas[i];
+        }
+        long escala = (long) denominador * n;
+        long alvo = numerador * soma;
+
+        // Uma passada acha a menor e a maior distância e quantos estão na maior...
+        long menor = Long.MAX_VALUE;
+        long maior = -1;
+        int naMaior = 0;
+        for (int i = 0; i < n; i++) {
+            long distancia = Math.abs(escala * escolhas[i] - alvo);
+            if (distancia < menor) {
+                menor = distancia;
+            }
+            if (distancia > maior) {
+                maior = distancia;
+                naMaior = 1;
+            } else if (distancia == maior) {
+                naMaior++;
+            }
+        }
+
+        // ...e a segunda distribui as penalidades (empatados na maior distância: a intermediária)
+        int penalidadeDistante = n >= 3 && naMaior == 1 ? penalidadeMaisDistante : penalidadeIntermediaria;
+        for (int i = 0; i < n; i++) {
+            long distancia = Math.abs(escala * escolhas[i] - alvo);
+            if (distancia == menor) {
+                perdas[i] = penalidadeMaisProximo;
+            } else if (distancia == maior) {
+                perdas[i] = penalidadeDistante;
+            } else {
+                perdas[i] = penalidadeIntermediaria;
+            }
+        }
+        return (int) ((200L * numerador * soma + escala) / (2 * escala)); // round(100 x multiplicador x soma / n)
+    }
+
+    private static int mdc(int a, int b) {
+        return b == 0 ? a : mdc(b, a % b);
+    }
+
+    // Só as penalidades, no formato de ler() (juiz.penalidades)
+    @Override
+    public String toString() {
+        return penalidadeMaisProximo + "," + penalidadeIntermediaria + "," + penalidadeMaisDistante;
+    }
+
+    // As regras em frases, uma por linha, para o texto das regras do jogo (ver TextosDoJogo.regras)
+    String explicar(int jogadoresIniciais) {
+        StringBuilder texto = new StringBuilder()
+                .append("No início ").append(jogadoresIniciais).append(" jogadores jogam, escolhendo um número entre 0 e 100.\n")
+                .append("O Servidor do jogo receberá os números escolhidos e calculará a média dos valores recebidos.\n")
+                .append("O resultado da média é então multiplicado por ").append(multiplicadorDecimal()).append(".\n")
+                .append("Este novo valor resultante será o valor alvo.\n")
+                .append("O valor alvo é comparado com os valores que cada jogador escolheu.\n");
+        if (jogadoresIniciais >= 3) {
+            texto.append("O jogador que mais se distanciou do valor alvo ").append(perda(penalidadeMaisDistante, false)).append(".\n")
+                 .append("O jogador que mais se aproximou do valor alvo ").append(perda(penalidadeMaisProximo, false)).append(".\n")
+                 .append("Os outros jogadores ").append(perda(penalidadeIntermediaria, true)).append(".\n");
+        }
+        texto.append(jogadoresIniciais >= 3 ? "Quando só dois jogadores escolherem um número na rodada (por exemplo, quando restarem apenas dois),"
+                                            : "Na rodada,")
+             .append(" o que mais se distanciar do valor alvo ").append(perda(penalidadeIntermediaria, false))
+             .append(" e o outro ").append(perda(penalidadeMaisProximo, false)).append(".\n")
+             .append("Jogadores à mesma distância do valor alvo perdem o mesmo, a menor das penalidades deles");
+        if (jogadoresIniciais >= 3) {
+            texto.append(": se dois ou mais empatarem como os mais distantes, todos ")
+                 .append(perda(penalidadeIntermediaria, true)).append(", como os outros jogadores");
+        }
+        texto.append(".\n")
+             .append("Quem não escolhe um número na rodada não perde pontos.\n")
+             .append("O jogador que chegar a ").append(limiteEliminacao).append(" pontos, ou menos, será eliminado definitivamente do jogo.\n")
+             .append("O último jogador é declarado vencedor do Jogo da Sobrevivência Numérica.");
+        return texto.toString();
+    }
+
+    private static String perda(int pontos, boolean plural) {
+        String verbo = plural ? "perdem" : "perde";
+        if (pontos == 0) {
+            return "não " + verbo + " pontos";
+        }
+        return verbo + " " + pontos + (pontos == 1 ? " ponto" : " pontos");
+    }
+
+    // O multiplicador em decimal, com vírgula (ex.: "0,8")
+    private String multiplicadorDecimal() {
+        return BigDecimal.valueOf(numerador).divide(BigDecimal.valueOf(denominador), 3, RoundingMode.HALF_UP)
+                         .stripTrailingZeros().toPlainString().replace('.', ',');
+    }
+
+    // Todas as regras, para relatórios
+    String descrever() {
+        return "alvo " + numerador + "/" + denominador + " x média, penalidades " + this + ", eliminação em " + limiteEliminacao;
+    }
+}
@@ -0,0 +1,174 @@
+package src;
+
+import java.nio.ByteBuffer;
+
+// Remontagem das mensagens fragmentadas (ver Fragmentos). Cada mensagem em andamento ocupa
+// uma posição com um buffer do pool; os fragmentos são copiados direto para o deslocamento
+// deles, em qualquer ordem, e uma máscara de bits marca os que já chegaram (repetidos são
+// ignorados). A memória é limitada: há no máximo memoriaMaxima / tamanhoMaximo mensagens em
+// andamento, e cada origem tem no máximo maximoPorOrigem delas: uma mensagem nova de uma
+// origem que já está no limite descarta a mais antiga dessa mesma origem, então quem manda
+// ids de mensagem sem parar só despeja as próprias. Com todas as posições ocupadas, a mais
+// antiga de todas é descartada para dar lugar à nova. Uma mensagem incompleta depois do
+// prazo também é descartada, na chegada do próximo fragmento.
+//
+// A origem é o remetente, escolhido por quem chama e comparado com equals (o Jogador no
+// juiz, o canal ou o endereço no espectador, o servidor no cliente). Usada por uma thread só.
+final class Remontagem {
+
+    private final PoolDeBuffers pool;
+    private final int tamanhoMaximo;
+    private final long prazoNanos;
+    private final int maximoPorOrigem;
+
+    // Mensagens em andamento, uma por posição (buffer null: posição livre)
+    private final Object[] origens;
+    private final int[] ids;
+    private final int[] totais;
+    private final long[] recebidos; // Bit i: fragmento i já chegou
+    private final int[] tamanhos;   // Tamanho da mensagem, conhecido quando chega o último fragmento
+    private final long[] inicios;
+    private final ByteBuffer[] buffers;
+
+    private long remontadas;
+    private long descartadas; // Vencidas, despejadas por falta de memória ou com fragmento inválido
+
+    Remontagem(int tamanhoMaximo, int memoriaMaxima, long prazoNanos, int maximoPorOrigem) {
+        int posicoes = Math.max(1, memoriaMaxima / tamanhoMaximo);
+        this.pool = new PoolDeBuffers(posicoes, tamanhoMaximo, false);
+        this.tamanhoMaximo = tamanhoMaximo;
+        this.prazoNanos = prazoNanos;
+        this.maximoPorOrigem = Math.max(1, maximoPorOrigem);
+        origens = new Object[posicoes];
+        ids = new int[posicoes];
+        totais = new int[posicoes];
+        recebidos = new long[posicoes];
+        tamanhos = new int[posicoes];
+        inicios = new long[posicoes];
+        buffers = new ByteBuffer[posicoes];
+    }
+
+    // Junta um OP_FRAGMENTO (da posição ao limite). Quando é o último que faltava, devolve a
+    // mensagem inteira num buffer do pool (posição 0, limite no tamanho), que quem chamou
+    // devolve com devolver() depois de tratá-la; senão, null.
+    ByteBuffer receber(Object origem, ByteBuffer fragmento, long agora) {
+        int id = ProtocoloBinario.idPartida(fragmento);
+        int indice = ProtocoloBinario.indiceFragmento(fragmento);
+        int total = ProtocoloBinario.totalFragmentos(fragmento);
+        int deslocamento = ProtocoloBinario.deslocamentoFragmento(fragmento);
+        int pedaco = fragmento.remaining() - ProtocoloBinario.TAMANHO_CABECALHO_FRAGMENTO;
+        if (total < 2 || total > Fragmentos.MAXIMO_FRAGMENTOS || indice >= total || deslocamento < 0
+                || pedaco <= 0 || deslocamento > tamanhoMaximo - pedaco) {
+            descartadas++;
+            return null;
+        }
+
+        int i = procurar(origem, id, total, agora);
+        if (i < 0) {
+            i = ocupar(origem, id, total, agora);
+        }
+        long bit = 1L << indice;
+        if ((recebidos[i] & bit) != 0) {
+            return null; // Repetido
+        }
+        recebidos[i] |= bit;
+        ByteBuffer buffer = buffers[i];
+        ByteBuffer dados = fragmento.duplicate();
+        dados.position(fragmento.position() + ProtocoloBinario.TAMANHO_CABECALHO_FRAGMENTO);
+        buffer.limit(tamanhoMaximo).position(deslocamento);
+        buffer.put(dados);
+        if (indice == total - 1) {
+            tamanhos[i] = deslocamento + pedaco;
+        }
+        if (Long.bitCount(recebidos[i]) < total) {
+            return null;
+        }
+        buffer.limit(tamanhos[i]).position(0);
+        buffers[i] = null;
+        remontadas++;
+        return buffer;
+    }
+
+    void devolver(ByteBuffer mensagem) {
+        pool.devolver(mensagem);
+    }
+
+    // Posição da mensagem, liberando no caminho as que passaram do prazo; -1 se não está em andamento
+    private int procurar(Object origem, int id, int total, long agora) {
+        int achada = -1;
+        for (int i = 0; i < buffers.length; i++) {
+            if (buffers[i] == null) {
+                continue;
+            }
+            if (ids[i] == id && totais[i] == total && origens[i].equals(origem)) {
+                achada = i;
+            } else if (agora - inicios[i] > prazoNanos) {
+                liberar(i);
+            }
+        }
+        return achada;
+    }
+
+    // Posição para uma mensagem nova: a mais antiga da origem se ela está no limite; senão uma
+    // livre; sem nenhuma livre, a mais antiga de todas
+    private int ocupar(Object origem, int id, int total, long agora) {
+        int livre = -1;
+        int maisAntiga = -1;
+        int daOrigem = 0;
+        int maisAntigaDaOrigem = -1;
+        for (int i = 0; i < buffers.length; i++) {
+            if (buffers[i] == null) {
+                if (livre < 0) {
+                    livre = i;
+                }
+                continue;
+            }
+            if (maisAntiga < 0 || inicios[i] - inicios[maisAntiga] < 0) {
+                maisAntiga = i;
+            }
+            if (origens[i].equals(origem)) {
+                daOrigem++;
+                if (maisAntigaDaOrigem < 0 || inicios[i] - inicios[maisAntigaDaOrigem] < 0) {
+                    maisAntigaDaOrigem = i;
+                }
+            }
+        }
+        int escolhida = daOrigem >= maximoPorOrigem ? maisAntigaDaOrigem : livre >= 0 ? livre : maisAntiga;
+        if (buffers[escolhida] != null) {
+            liberar(escolhida);
+        }
+        origens[escolhida] = origem;
+        ids[escolhida] = id;
+        totais[escolhida] = total;
+        recebidos[escolhida] = 0;
+        tamanhos[escolhida] = 0;
+        inicios[escolhida] = agora;
+        buffers[escolhida] = pool.obter();
+        return escolhida;
+    }
+
+    private void liberar(int i) {
+        pool.devolver(buffers[i]);
+        buffers[i] = null;
+        origens[i] = null;
+        descartadas++;
+    }
+
+    int pendentes() {
+        int n = 0;
+        for (ByteBuffer buffer : buffers) {
+            if (buffer != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    long remontadas() {
+        return remontadas;
+    }
+
+    long descartadas() {
+        return descartadas;
+    }
+}
@@ -0,0 +1,53 @@
+package src;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Ferramenta offline: lê o diário das partidas (sem servidor no ar), mostra os registros em
+// ordem e o estado que o servidor restauraria a partir deles.
+//
+// Uso: java src.ReproduzirDiario <diretório do diário> [--resumo]
+//      --resumo mostra só o estado final, sem os registros
+public class ReproduzirDiario {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Uso: java src.ReproduzirDiario <diretório do diário> [--resumo]");
+            return;
+        }
+        Path diretorio = Paths.get(args[0]);
+        boolean resumo = args.length > 1 && args[1].equals("--resumo");
+
+        EstadoDoDiario estado = new EstadoDoDiario();
+        long lidos = Diario.ler(diretorio, (tipo, carga) -> {
+            if (!resumo) {
+                System.out.println(String.format("%8d  ", estado.registros + 1) + Diario.descrever(tipo, carga));
+            }
+            estado.registro(tipo, carga);
+        });
+        Registro.esvaziar(500); // Erros de leitura (registro corrompido) saem pelo registro
+
+        System.out.println("==== " + lidos + " registros ====");
+        System.out.println("Jogadores cadastrados: " + estado.jogadores.size());
+        for (EstadoDoDiario.JogadorRestaurado jogador : estado.jogadores.values()) {
+            String situacao = jogador.naFila ? "na fila"
+                              : estado.partidas.containsKey(jogador.idPartida) ? "na partida #" + jogador.idPartida : "no menu";
+            System.out.println("  " + jogador.nickname + " (" + jogador.ip.getHostAddress() + ":" + jogador.porta + ", "
+                               + (jogador.binario ? "binário" : "texto") + ") " + situacao);
+        }
+        System.out.println("Partidas em andamento: " + estado.partidas.size());
+        for (EstadoDoDiario.PartidaRestaurada partida : estado.partidas.values()) {
+            StringBuilder linha = new StringBuilder("  #").append(partida.id).append(" rodada ").append(partida.rodada).append(':');
+            for (int i = 0; i < partida.elenco.length; i++) {
+                linha.append(' ').append(partida.elenco[i]).append('=').append(partida.pontuacoes[i]);
+                if (!partida.ativos[i]) {
+                    linha.append(" (fora)");
+                } else if (partida.escolhas[i] >= 0) {
+                    linha.append(" (jogou ").append(partida.escolhas[i]).append(')');
+                }
+            }
+            System.out.println(linha);
+        }
+    }
+}
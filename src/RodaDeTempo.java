@@ -0,0 +1,181 @@
+package src;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+// Roda de tempo (hashed timing wheel) com uma única thread para todos os temporizadores do
+// servidor: prazos de rodada e inatividade dos jogadores. Agendar e cancelar custam O(1) e
+// não dependem de quantos temporizadores existem, então dezenas de milhares de sessões não
+// precisam de uma thread (nem de uma fila ordenada) por jogador.
+//
+// A roda tem um número fixo de posições (fatias), cada uma com uma lista de temporizadores; a thread avança uma
+// posição por tique. Um temporizador com prazo além de uma volta completa guarda quantas
+// voltas ainda faltam. Novos temporizadores chegam por uma fila concorrente e só a thread da
+// roda mexe nas listas. Cancelar só marca o temporizador; ele é descartado quando a roda
+// passa pela posição dele.
+//
+// As ações rodam na thread da roda e devem ser curtas: em geral só entregam um evento ao
+// laço dono do estado.
+//
+// A roda manual (testes) não tem thread nem relógio de verdade: o tempo começa em 0 e só anda
+// com avancar, que roda os tiques vencidos na thread de quem chama.
+final class RodaDeTempo implements Runnable {
+
+    // Temporizador agendado na roda
+    static final class Temporizador {
+        private final Runnable acao;
+        private final long prazo; // Instante (agora()) em que a ação deve rodar
+        private long voltas;
+        private Temporizador proximo;
+        private volatile boolean cancelado;
+
+        private Temporizador(Runnable acao, long prazo) {
+            this.acao = acao;
+            this.prazo = prazo;
+        }
+
+        void cancelar() {
+            cancelado = true;
+        }
+    }
+
+    private final String nome;
+    private final long nanosPorTique;
+    private final Temporizador[] fatias;
+    private final int mascara;
+    private final Queue<Temporizador> novos = new ConcurrentLinkedQueue<>();
+    private final boolean manual;
+    private long agoraManual; // Só na roda manual
+    private long inicio;
+    private long tique; // Próximo tique a processar (só a thread da roda usa)
+    private volatile boolean ativa;
+    private Thread thread;
+
+    // quantidadeFatias é arredondada para a próxima potência de 2
+    RodaDeTempo(String nome, long milisPorTique, int quantidadeFatias) {
+        this(nome, milisPorTique, quantidadeFatias, false);
+    }
+
+    private RodaDeTempo(String nome, long milisPorTique, int quantidadeFatias, boolean manual) {
+        this.nome = nome;
+        this.manual = manual;
+        this.nanosPorTique = TimeUnit.MILLISECONDS.toNanos(milisPorTique);
+        int tamanho = Integer.highestOneBit(Math.max(1, quantidadeFatias - 1)) << 1;
+        this.fatias = new Temporizador[tamanho];
+        this.mascara = tamanho - 1;
+    }
+
+    static RodaDeTempo manual(long milisPorTique, int quantidadeFatias) {
+        return new RodaDeTempo("roda-manual", milisPorTique, quantidadeFatias, true);
+    }
+
+    synchronized void iniciar() {
+        if (thread != null) {
+            return;
+        }
+        inicio = System.nanoTime();
+        ativa = true;
+        thread = new Thread(this, nome);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void parar() {
+        ativa = false;
+        Thread t = thread;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    // Agenda a ação para daqui a atrasoMillis (com a precisão de um tique). Pode ser chamado de qualquer thread.
+    Temporizador agendar(long atrasoMillis, Runnable acao) {
+        Temporizador temporizador = new Temporizador(acao, agora() + TimeUnit.MILLISECONDS.toNanos(atrasoMillis));
+        novos.offer(temporizador);
+        return temporizador;
+    }
+
+    // Instante atual na escala de System.nanoTime() (na roda manual, o tempo já avançado)
+    long agora() {
+        return manual ? agoraManual : System.nanoTime();
+    }
+
+    // Roda manual: avança o tempo e executa, em ordem, os tiques que vencem no caminho
+    void avancar(long millis) {
+        if (!manual) {
+            throw new IllegalStateException("Só a roda manual avança à mão");
+        }
+        long fim = agoraManual + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (inicio + (tique + 1) * nanosPorTique <= fim) {
+            agoraManual = inicio + (tique + 1) * nanosPorTique;
+            transferirNovos();
+            expirar((int) (tique & mascara));
+            tique++;
+        }
+        agoraManual = fim;
+    }
+
+    @Override
+    public void run() {
+        while (ativa) {
+            long espera = inicio + (tique + 1) * nanosPorTique - System.nanoTime();
+            if (espera > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(espera);
+                } catch (InterruptedException e) {
+                    if (!ativa) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            transferirNovos();
+            expirar((int) (tique & mascara));
+            tique++;
+        }
+    }
+
+    // Coloca os temporizadores recém-agendados na posição do prazo deles
+    private void transferirNovos() {
+        Temporizador t;
+        while ((t = novos.poll()) != null) {
+            if (t.cancelado) {
+                continue;
+            }
+            long alvo = Math.max(tique, (t.prazo - inicio) / nanosPorTique);
+            t.voltas = (alvo - tique) / fatias.length;
+            int posicao = (int) (alvo & mascara);
+            t.proximo = fatias[posicao];
+            fatias[posicao] = t;
+        }
+    }
+
+    // Executa os temporizadores da posição que venceram nesta volta e descarta os cancelados
+    private void expirar(int posicao) {
+        Temporizador anterior = null;
+        Temporizador t = fatias[posicao];
+        while (t != null) {
+            Temporizador seguinte = t.proximo;
+            if (!t.cancelado && t.voltas > 0) {
+                t.voltas--;
+                anterior = t;
+            } else {
+                if (anterior == null) {
+                    fatias[posicao] = seguinte;
+                } else {
+                    anterior.proximo = seguinte;
+                }
+                t.proximo = null;
+                if (!t.cancelado) {
+                    try {
+                        t.acao.run();
+                    } catch (RuntimeException e) {
+                        Registro.erro("Erro ao executar temporizador da roda {T}: {U}", nome, e.toString());
+                    }
+                }
+            }
+            t = seguinte;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package src;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+// Roteador: nó da frente quando um juiz só não dá conta. Os jogadores falam com o roteador
+// (porta 3000, como antes) e ele repassa cada datagrama a um dos juízes, que rodam
+// "JuizUDP --roteador=<endereço>" em outras portas ou máquinas. A carga do datagrama não é
+// decodificada: o roteador só escreve o endereço do jogador na frente (OP_ROTA, ver
+// ProtocoloBinario) e, na volta, tira esse cabeçalho e manda o resto ao jogador.
+//
+// - Roteamento: hash consistente do endereço do jogador (ver AnelConsistente). O juiz do
+//   primeiro datagrama (o cadastro) fica fixado para aquele endereço na TabelaDeAfinidade,
+//   então a entrada de um juiz novo só muda o destino das sessões novas; as que estão em
+//   andamento continuam no juiz que tem o estado delas. Datagramas com o token da sessão
+//   (OP_SESSAO) fixam também o token, e seguem para o mesmo juiz quando o endereço do
+//   jogador muda (NAT, cliente reiniciado).
+// - Saúde: a cada intervalo o roteador manda OP_PING a cada juiz conhecido. Um juiz que não
+//   responde por PINGS_PERDIDOS intervalos sai do anel, e as sessões fixadas nele passam ao
+//   próximo juiz do anel no datagrama seguinte (lá o jogador se cadastra de novo). Um juiz
+//   entra, ou volta, quando responde a um ping ou se anuncia com um OP_PONG espontâneo.
+// - Os juízes falam com o roteador por uma porta separada, ligada só ao loopback a não ser
+//   que --interfaceJuizes= diga outra. Nela, OP_PONG e OP_ROTA só são aceitos dos juízes de
+//   --juizes= e de quem se anuncia de um IP de --hostsJuizes= (padrão: só o loopback); o
+//   resto é descartado sem resposta. Quem alcança essa porta de um IP permitido ainda pode
+//   se passar por juiz: juízes em outras máquinas devem usar uma rede só deles.
+// - Um juiz que se anunciou sozinho e fica ESQUECER_NANOS fora do anel é esquecido: para de
+//   receber pings e o lugar dele na lista é reaproveitado pelo próximo que se anunciar.
+//
+// Tudo roda numa única thread, com um Selector para os dois canais: o anel, a tabela e a
+// lista de juízes não precisam de locks.
+//
+// Uso: java src.RoteadorUDP [--porta=3000] [--portaJuizes=3002] [--interfaceJuizes=127.0.0.1]
+//                           [--juizes=host:porta,...] [--hostsJuizes=ip,...]
+public class RoteadorUDP {
+
+    private static final long INTERVALO_PING_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("roteador.intervaloPing", 500));
+    private static final int PINGS_PERDIDOS = Integer.getInteger("roteador.pingsPerdidos", 3);
+    // Juízes anunciados (fora de --juizes) calados por esse tempo são esquecidos
+    private static final long ESQUECER_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("roteador.esquecerJuiz", 60));
+    private static final int MAXIMO_JUIZES = Integer.getInteger("roteador.juizesMaximos", 256);
+    // Uma sessão sem datagramas por esse tempo solta o juiz fixado (o padrão é a inatividade do juiz)
+    private static final long AFINIDADE_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("roteador.afinidade", 600));
+    // Espaço na frente do datagrama recebido de um jogador para escrever o cabeçalho de rota no lugar
+    private static final int RESERVA = ProtocoloBinario.TAMANHO_ROTA_MAXIMO;
+    // Buffers de socket dos dois canais: o roteador concentra o tráfego de todos os juízes, e
+    // com os padrões do sistema as rajadas de fim de rodada transbordam
+    private static final int BUFFER_SOCKET = Integer.getInteger("roteador.bufferSocket", 4 << 20);
+
+    // Juiz conhecido pelo roteador. O índice na lista é o dono no anel e na tabela de afinidade.
+    private static final class NoJuiz {
+        final InetSocketAddress endereco;
+        final long identidade;
+        final boolean configurado; // Veio de --juizes: nunca é esquecido
+        boolean vivo;
+        long ultimaResposta; // System.nanoTime do último OP_PONG
+        int jogadores;       // Jogadores cadastrados, segundo o último OP_PONG
+
+        NoJuiz(InetSocketAddress endereco, boolean configurado, long agora) {
+            this.endereco = endereco;
+            this.identidade = IndiceEnderecos.chave(endereco.getAddress(), endereco.getPort());
+            this.configurado = configurado;
+            this.ultimaResposta = agora;
+        }
+    }
+
+    // Muda raramente; a cópia na escrita deixa a porta de estatísticas percorrê-la. O lugar de
+    // um juiz esquecido fica null até outro juiz ocupá-lo, para os índices não mudarem.
+    private static final List<NoJuiz> juizes = new CopyOnWriteArrayList<>();
+    private static final Set<InetAddress> hostsPermitidos = new HashSet<>();
+    private static final AnelConsistente anel = new AnelConsistente();
+    private static final TabelaDeAfinidade afinidade = new TabelaDeAfinidade(Integer.getInteger("roteador.sessoes", 1 << 18), AFINIDADE_NANOS);
+    private static final CacheDeEnderecos enderecos = new CacheDeEnderecos(1 << 14);
+    private static final ByteBuffer doJogador = ByteBuffer.allocateDirect(RESERVA + JuizUDP.TAMANHO_BUFFER);
+    private static final ByteBuffer doJuiz = ByteBuffer.allocateDirect(64 * 1024);
+    private static final ByteBuffer ping = ByteBuffer.allocateDirect(ProtocoloBinario.TAMANHO_CABECALHO + 4);
+    private static DatagramChannel canalJogadores;
+    private static DatagramChannel canalJuizes;
+    private static long inicio;
+
+    // Contadores da thread do roteador (lidos pela porta de estatísticas: aproximados)
+    private static long repassadosAosJuizes;
+    private static long repassadosAosJogadores;
+    private static long semJuiz;        // Datagramas descartados por não haver juiz vivo
+    private static long sessoesMovidas; // Sessões fixadas num juiz que caiu, levadas a outro
+    private static long recusados;      // Datagramas na porta dos juízes de quem não é juiz
+
+    public static void main(String[] args) {
+        int porta = Integer.getInteger("roteador.porta", 3000);
+        int portaJuizes = Integer.getInteger("roteador.portaJuizes", 3002);
+        String interfaceJuizes = System.getProperty("roteador.interfaceJuizes", "");
+        String listaJuizes = System.getProperty("roteador.juizes", "");
+        String listaHosts = System.getProperty("roteador.hostsJuizes", "");
+        for (String arg : args) {
+            String valor = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--porta=")) {
+                porta = Integer.parseInt(valor);
+            } else if (arg.startsWith("--portaJuizes=")) {
+                portaJuizes = Integer.parseInt(valor);
+            } else if (arg.startsWith("--interfaceJuizes=")) {
+                interfaceJuizes = valor;
+            } else if (arg.startsWith("--juizes=")) {
+                listaJuizes = valor;
+            } else if (arg.startsWith("--hostsJuizes=")) {
+                listaHosts = valor;
+            } else if (arg.equals("--producao")) {
+                Registro.configurar(Registro.INFO, 0);
+            }
+        }
+
+        try (Selector seletor = Selector.open();
+             DatagramChannel jogadores = DatagramChannel.open();
+             DatagramChannel deJuizes = DatagramChannel.open()) {
+            canalJogadores = jogadores;
+            canalJuizes = deJuizes;
+            for (DatagramChannel canal : new DatagramChannel[] {jogadores, deJuizes}) {
+                canal.setOption(StandardSocketOptions.SO_RCVBUF, BUFFER_SOCKET).setOption(StandardSocketOptions.SO_SNDBUF, BUFFER_SOCKET);
+            }
+            InetAddress ipJuizes = interfaceJuizes.isBlank() ? InetAddress.getLoopbackAddress() : InetAddress.getByName(interfaceJuizes);
+            jogadores.bind(new InetSocketAddress(porta)).configureBlocking(false).register(seletor, SelectionKey.OP_READ);
+            deJuizes.bind(new InetSocketAddress(ipJuizes, portaJuizes)).configureBlocking(false).register(seletor, SelectionKey.OP_READ);
+            inicio = System.nanoTime();
+            for (String juiz : listaJuizes.split(",")) {
+                if (!juiz.isBlank()) {
+                    juizes.add(new NoJuiz(lerEndereco(juiz.trim()), true, inicio)); // Entra no anel quando responder ao primeiro ping
+                }
+            }
+            hostsPermitidos.add(InetAddress.getLoopbackAddress());
+            for (String host : listaHosts.split(",")) {
+                if (!host.isBlank()) {
+                    hostsPermitidos.add(InetAddress.getByName(host.trim()));
+                }
+            }
+            registrarMetricas();
+            Metricas.iniciarPortaDeEstatisticas(Integer.getInteger("roteador.portaEstatisticas", porta + 1));
+            Registro.info("Roteador iniciado: jogadores na porta {A}, juízes em {T}", ipJuizes.getHostAddress() + ":" + portaJuizes, porta);
+
+            long proximoPing = inicio;
+            while (jogadores.isOpen()) {
+                long agora = System.nanoTime();
+                if (agora - proximoPing >= 0) {
+                    pingar(agora);
+                    proximoPing = agora + INTERVALO_PING_NANOS;
+                }
+                seletor.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(proximoPing - agora)));
+                for (SelectionKey chave : seletor.selectedKeys()) {
+                    if (chave.channel() == jogadores) {
+                        receberDosJogadores();
+                    } else {
+                        receberDosJuizes();
+                    }
+                }
+                seletor.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            Registro.erro("Erro no roteador: {T}", e.getMessage(), null);
+        } finally {
+            Registro.info("Roteador encerrado.");
+            Registro.esvaziar(1000);
+        }
+    }
+
+    // "host:porta" (o host pode ser omitido: ":3100" é o loopback)
+    static InetSocketAddress lerEndereco(String texto) throws IOException {
+        int separador = texto.lastIndexOf(':');
+        if (separador < 0) {
+            throw new IOException("Endereço sem porta: " + texto);
+        }
+        String host = texto.substring(0, separador);
+        InetAddress ip = host.isEmpty() ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host);
+        return new InetSocketAddress(ip, Integer.parseInt(texto.substring(separador + 1)));
+    }
+
+    // Repassa ao juiz da sessão tudo o que está na fila do canal dos jogadores. O cabeçalho de
+    // rota é escrito nos bytes reservados antes do datagrama, então a carga não é copiada.
+    private static void receberDosJogadores() throws IOException {
+        while (true) {
+            doJogador.clear().position(RESERVA);
+            InetSocketAddress origem = (InetSocketAddress) canalJogadores.receive(doJogador);
+            if (origem == null) {
+                return;
+            }
+            Metricas.DATAGRAMAS_RECEBIDOS.increment();
+            NoJuiz juiz = juizDaSessao(origem, tokenDaSessao(), System.nanoTime());
+            if (juiz == null) {
+                semJuiz++;
+                continue;
+            }
+            int inicioRota = RESERVA - ProtocoloBinario.tamanhoRota(origem.getAddress());
+            ProtocoloBinario.escreverRota(doJogador, inicioRota, origem.getAddress(), origem.getPort());
+            doJogador.limit(doJogador.position()).position(inicioRota);
+            if (canalJuizes.send(doJogador, juiz.endereco) > 0) {
+                repassadosAosJuizes++;
+            }
+        }
+    }
+
+    // Juiz fixado para o token ou para o endereço ou, se não há um vivo, o dono do endereço
+    // no anel (que passa a ser o fixado dos dois). A chave do token divide a tabela com as dos
+    // endereços; uma colisão entre as duas só manda um datagrama ao juiz errado.
+    private static NoJuiz juizDaSessao(InetSocketAddress origem, long token, long agora) {
+        if (token != 0) {
+            int fixado = afinidade.buscar(token, agora);
+            if (vivo(fixado)) {
+                return juizes.get(fixado);
+            }
+        }
+        long chave = IndiceEnderecos.chave(origem.getAddress(), origem.getPort());
+        int juiz = afinidade.buscar(chave, agora);
+        if (!vivo(juiz)) {
+            int dono = anel.dono(chave);
+            if (dono < 0) {
+                return null;
+            }
+            if (juiz >= 0) {
+                sessoesMovidas++;
+            }
+            juiz = dono;
+            afinidade.fixar(chave, juiz, agora);
+        }
+        if (token != 0) {
+            afinidade.fixar(token, juiz, agora);
+        }
+        return juizes.get(juiz);
+    }
+
+    // Token de sessão do datagrama recebido em doJogador, se ele é um OP_SESSAO (0 nos demais)
+    private static long tokenDaSessao() {
+        int fim = doJogador.position();
+        doJogador.limit(fim).position(RESERVA);
+        long token = 0;
+        if (ProtocoloBinario.ehBinario(doJogador) && ProtocoloBinario.opcode(doJogador) == ProtocoloBinario.OP_SESSAO
+                && ProtocoloBinario.cargaValida(doJogador)) {
+            token = ProtocoloBinario.token(doJogador);
+        }
+        doJogador.position(fim);
+        return token;
+    }
+
+    // Respostas dos juízes: OP_ROTA vai ao jogador sem o cabeçalho; OP_PONG atualiza a saúde
+    private static void receberDosJuizes() throws IOException {
+        while (true) {
+            doJuiz.clear();
+            InetSocketAddress origem = (InetSocketAddress) canalJuizes.receive(doJuiz);
+            if (origem == null) {
+                return;
+            }
+            doJuiz.flip();
+            if (!ProtocoloBinario.ehBinario(doJuiz) || !ProtocoloBinario.cargaValida(doJuiz)) {
+                continue;
+            }
+            byte opcode = ProtocoloBinario.opcode(doJuiz);
+            if (opcode == ProtocoloBinario.OP_ROTA) {
+                if (indiceDoJuiz(origem) < 0) {
+                    recusados++;
+                    continue;
+                }
+                InetSocketAddress jogador = enderecos.daRota(doJuiz);
+                doJuiz.position(doJuiz.position() + ProtocoloBinario.tamanhoRota(doJuiz));
+                // Canal não bloqueante: com o buffer do sistema cheio, o datagrama se perde como na rede
+                if (canalJogadores.send(doJuiz, jogador) > 0) {
+                    repassadosAosJogadores++;
+                    Metricas.DATAGRAMAS_ENVIADOS.increment();
+                }
+            } else if (opcode == ProtocoloBinario.OP_PONG) {
+                receberPong(origem, ProtocoloBinario.argumento(doJuiz, 1), System.nanoTime());
+            }
+        }
+    }
+
+    private static int indiceDoJuiz(InetSocketAddress endereco) {
+        for (int i = 0; i < juizes.size(); i++) {
+            NoJuiz juiz = juizes.get(i);
+            if (juiz != null && juiz.endereco.equals(endereco)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean vivo(int indice) {
+        if (indice < 0) {
+            return false;
+        }
+        NoJuiz juiz = juizes.get(indice);
+        return juiz != null && juiz.vivo;
+    }
+
+    // Resposta a um ping ou anúncio: um juiz novo ou que tinha caído volta ao anel. Um juiz
+    // novo só é aceito de um IP permitido, no primeiro lugar livre da lista.
+    private static void receberPong(InetSocketAddress origem, int jogadores, long agora) {
+        int i = indiceDoJuiz(origem);
+        if (i < 0) {
+            i = juizes.indexOf(null);
+            if (!hostsPermitidos.contains(origem.getAddress()) || (i < 0 && juizes.size() >= MAXIMO_JUIZES)) {
+                recusados++;
+                return;
+            }
+            if (i < 0) {
+                i = juizes.size();
+                juizes.add(new NoJuiz(origem, false, agora));
+            } else {
+                juizes.set(i, new NoJuiz(origem, false, agora));
+            }
+        }
+        NoJuiz juiz = juizes.get(i);
+        juiz.ultimaResposta = agora;
+        juiz.jogadores = jogadores;
+        if (!juiz.vivo) {
+            juiz.vivo = true;
+            reconstruirAnel();
+            Registro.info("Juiz {T} entrou no anel ({A} jogadores).", origem.toString(), jogadores);
+        }
+    }
+
+    // Tira do anel os juízes calados há PINGS_PERDIDOS intervalos, esquece os anunciados calados
+    // há ESQUECER_NANOS e pinga os demais, inclusive os caídos, para perceber quando voltam
+    private static void pingar(long agora) throws IOException {
+        boolean mudou = false;
+        for (int i = 0; i < juizes.size(); i++) {
+            NoJuiz juiz = juizes.get(i);
+            if (juiz == null) {
+                continue;
+            }
+            if (juiz.vivo && agora - juiz.ultimaResposta > PINGS_PERDIDOS * INTERVALO_PING_NANOS) {
+                juiz.vivo = false;
+                mudou = true;
+                Registro.info("Juiz {T} saiu do anel: sem resposta aos pings.", juiz.endereco.toString());
+            } else if (!juiz.vivo && !juiz.configurado && agora - juiz.ultimaResposta > ESQUECER_NANOS) {
+                juizes.set(i, null);
+                Registro.info("Juiz {T} esquecido: calado desde que saiu do anel.", juiz.endereco.toString());
+            }
+        }
+        if (mudou) {
+            reconstruirAnel();
+        }
+        int carimbo = (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(agora - inicio)); // 0 é reservado ao anúncio
+        for (NoJuiz juiz : juizes) {
+            if (juiz == null) {
+                continue;
+            }
+            ping.clear();
+            ProtocoloBinario.escreverCabecalho(ping, ProtocoloBinario.OP_PING, 0, 0);
+            ping.putInt(carimbo).flip();
+            canalJuizes.send(ping, juiz.endereco);
+        }
+    }
+
+    private static void reconstruirAnel() {
+        long[] identidades = new long[juizes.size()];
+        boolean[] vivos = new boolean[juizes.size()];
+        for (int i = 0; i < identidades.length; i++) {
+            NoJuiz juiz = juizes.get(i);
+            identidades[i] = juiz == null ? 0 : juiz.identidade;
+            vivos[i] = juiz != null && juiz.vivo;
+        }
+        anel.reconstruir(identidades, vivos);
+    }
+
+    private static void registrarMetricas() {
+        Metricas.medidor("roteador_para_juizes", () -> repassadosAosJuizes);
+        Metricas.medidor("roteador_para_jogadores", () -> repassadosAosJogadores);
+        Metricas.medidor("roteador_sem_juiz", () -> semJuiz);
+        Metricas.medidor("roteador_sessoes_movidas", () -> sessoesMovidas);
+        Metricas.medidor("roteador_recusados", () -> recusados);
+        Metricas.medidor("roteador_sessoes_fixadas", afinidade::ocupadas);
+        Metricas.medidor("roteador_sessoes_despejadas", afinidade::despejos);
+        Metricas.medidor("roteador_juizes_vivos", () -> juizes.stream().filter(j -> j != null && j.vivo).count());
+        Metricas.medidor("roteador_jogadores_nos_juizes", () -> juizes.stream().filter(j -> j != null && j.vivo).mapToLong(j -> j.jogadores).sum());
+    }
+}
@@ -0,0 +1,316 @@
+package src;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+// Entrega confiável e em ordem sobre UDP para um par cliente/servidor (os dois lados usam
+// esta classe). Cada quadro enviado vai num envelope OP_CONFIAVEL com um número de sequência
+// e fica guardado até o outro lado confirmar; os envelopes levam de carona os acks do que
+// chegou do outro lado (ack cumulativo + máscara de acks seletivos, ver ProtocoloBinario).
+//
+// - Envio: no máximo JANELA quadros sem confirmação; os seguintes esperam numa fila limitada
+//   (LIMITE_PENDENTES) e, com ela cheia, são descartados e contados. Os buffers guardados vêm
+//   de um pool e voltam a ele na confirmação.
+// - Retransmissão: um temporizador por sessão na roda de tempo compartilhada (nenhuma thread
+//   por mensagem). Quando ele vence, só o que não foi confirmado (nem seletivamente) e já
+//   passou do prazo é reenviado; o prazo dobra a cada retransmissão até RTO_MAXIMO_MILLIS e
+//   volta ao inicial quando chega uma confirmação nova.
+// - Recepção: quadros repetidos são descartados; os que chegam adiantados (dentro da janela)
+//   ficam guardados até os anteriores chegarem, e são entregues em ordem.
+// - Sessão: cada sessão tem um id (escolhido pelo cliente no cadastro) que vai no cabeçalho
+//   de todos os envelopes e acks dela, no lugar do id da partida; o que chega com outro id é
+//   de uma sessão anterior no mesmo endereço (retransmissões atrasadas) e é ignorado.
+// - Ack: se nada for enviado ao outro lado logo depois de uma recepção, um OP_ACK avulso sai
+//   no próximo tique da roda.
+//
+// Os métodos são sincronizados: a recepção, os envios (de vários laços) e a roda de tempo
+// usam a mesma sessão, mas raramente ao mesmo tempo.
+final class SessaoConfiavel {
+
+    // Destino dos datagramas da sessão (o motor do servidor ou o socket do cliente)
+    interface Saida {
+        void enviar(ByteBuffer datagrama) throws IOException;
+    }
+
+    // Resultado de receber
+    static final int ENTREGAR = 0;  // Próximo da sequência: o quadro deve ser tratado agora
+    static final int REPETIDO = 1;  // Já recebido antes: descartar
+    static final int GUARDADO = 2;  // Adiantado: guardado até os anteriores chegarem
+    static final int FORA_DA_JANELA = 3;
+
+    static final int JANELA = 32; // Potência de 2; a máscara de acks cobre JANELA - 1 sequências
+    static final int LIMITE_PENDENTES = 64;
+    static final int TAMANHO_BUFFER = 2048; // Envelope + o maior quadro que o servidor monta
+    private static final PoolDeBuffers POOL = new PoolDeBuffers(512, TAMANHO_BUFFER, false);
+    static final long RTO_MAXIMO_MILLIS = 4000;
+
+    final int id;
+    private final Saida saida;
+    private final RodaDeTempo relogio;
+    private final long rtoInicialMillis;
+    private long rtoMillis;
+
+    // Envio
+    private final ByteBuffer[] enviados = new ByteBuffer[JANELA]; // Por sequência % JANELA; null = confirmado
+    private final long[] enviadosEm = new long[JANELA]; // No tempo do relógio (RodaDeTempo.agora)
+    private final ArrayDeque<ByteBuffer> pendentes = new ArrayDeque<>();
+    private int proximaSequencia = 1;
+    private int base = 1; // Mais antiga ainda não confirmada (== proximaSequencia: nada em trânsito)
+    private RodaDeTempo.Temporizador retransmissao;
+
+    // Recepção
+    private final ByteBuffer[] adiantados = new ByteBuffer[JANELA];
+    private int esperada;
+    private boolean ackPendente;
+    private boolean ackAgendado;
+    private final ByteBuffer ackAvulso = ByteBuffer.allocate(ProtocoloBinario.TAMANHO_CABECALHO + 8);
+
+    private boolean fechada;
+
+    // primeiraEsperada: sequência do primeiro quadro que o outro lado vai mandar
+    SessaoConfiavel(int id, Saida saida, RodaDeTempo relogio, long rtoInicialMillis, int primeiraEsperada) {
+        this.id = id;
+        this.saida = saida;
+        this.relogio = relogio;
+        this.rtoInicialMillis = rtoInicialMillis;
+        this.rtoMillis = rtoInicialMillis;
+        this.esperada = primeiraEsperada;
+    }
+
+    // Indica se o envelope ou ack recebido é desta sessão
+    boolean pertence(ByteBuffer dados) {
+        return ProtocoloBinario.idSessao(dados) == id;
+    }
+
+    // Envio
+
+    // Envia o quadro (da posição ao limite, que é consumido) dentro de um envelope com a próxima sequência
+    synchronized void enviar(ByteBuffer quadro) throws IOException {
+        if (fechada) {
+            return;
+        }
+        int tamanho = ProtocoloBinario.TAMANHO_ENVELOPE + quadro.remaining();
+        ByteBuffer envelope = tamanho <= TAMANHO_BUFFER ? POOL.obter() : ByteBuffer.allocate(tamanho);
+        ProtocoloBinario.escreverCabecalho(envelope, ProtocoloBinario.OP_CONFIAVEL, id, 0);
+        envelope.putInt(0).putInt(0).putInt(0).put(quadro).flip();
+        if (proximaSequencia - base < JANELA) {
+            transmitirNovo(envelope);
+        } else if (pendentes.size() < LIMITE_PENDENTES) {
+            pendentes.addLast(envelope);
+        } else {
+            devolver(envelope);
+            Metricas.CONFIAVEL_DESCARTADOS.increment();
+        }
+    }
+
+    private void transmitirNovo(ByteBuffer envelope) throws IOException {
+        int sequencia = proximaSequencia++;
+        envelope.putInt(ProtocoloBinario.TAMANHO_CABECALHO, sequencia);
+        enviados[sequencia & (JANELA - 1)] = envelope;
+        enviadosEm[sequencia & (JANELA - 1)] = relogio.agora();
+        transmitir(envelope);
+        if (retransmissao == null) {
+            agendarRetransmissao();
+        }
+    }
+
+    // (Re)envia o envelope com os acks atualizados; o buffer fica pronto para outro reenvio
+    private void transmitir(ByteBuffer envelope) throws IOException {
+        envelope.putInt(ProtocoloBinario.TAMANHO_CABECALHO + 4, esperada - 1)
+                .putInt(ProtocoloBinario.TAMANHO_CABECALHO + 8, mascaraRecebidos());
+        ackPendente = false;
+        try {
+            saida.enviar(envelope);
+        } finally {
+            envelope.position(0);
+        }
+    }
+
+    private void agendarRetransmissao() {
+        retransmissao = relogio.agendar(rtoMillis, this::retransmitirVencidos);
+    }
+
+    private synchronized void retransmitirVencidos() {
+        retransmissao = null;
+        if (fechada || base == proximaSequencia) {
+            return;
+        }
+        long agora = relogio.agora();
+        long rtoNanos = rtoMillis * 1_000_000;
+        boolean retransmitiu = false;
+        for (int s = base; s != proximaSequencia; s++) {
+            int i = s & (JANELA - 1);
+            if (enviados[i] != null && agora - enviadosEm[i] >= rtoNanos - 1_000_000) { // Tolera o atraso do tique
+                try {
+                    transmitir(enviados[i]);
+                } catch (IOException e) {
+                    Registro.erro("Erro ao retransmitir: {T}", e.getMessage(), null);
+                }
+                enviadosEm[i] = agora;
+                retransmitiu = true;
+                Metricas.RETRANSMISSOES.increment();
+            }
+        }
+        if (retransmitiu) {
+            rtoMillis = Math.min(rtoMillis * 2, RTO_MAXIMO_MILLIS);
+        }
+        agendarRetransmissao();
+    }
+
+    // Confirmações do outro lado: tudo até ack, e ack + 2 + i para cada bit i da máscara
+    synchronized void receberAck(int ack, int mascara) throws IOException {
+        if (fechada || ack - proximaSequencia >= 0) {
+            return; // Confirma algo que não foi enviado: datagrama velho ou inválido
+        }
+        int baseAntes = base;
+        while (base != proximaSequencia && ack - base >= 0) {
+            liberar(base++);
+        }
+        for (int i = 0; i < JANELA - 1; i++) {
+            int s = ack + 2 + i;
+            if ((mascara >>> i & 1) != 0 && s - base >= 0 && s - proximaSequencia < 0) {
+                liberar(s);
+            }
+        }
+        while (base != proximaSequencia && enviados[base & (JANELA - 1)] == null) {
+            base++;
+        }
+        if (base != baseAntes) {
+            rtoMillis = rtoInicialMillis;
+        }
+        while (!pendentes.isEmpty() && proximaSequencia - base < JANELA) {
+            transmitirNovo(pendentes.pollFirst());
+        }
+    }
+
+    private void liberar(int sequencia) {
+        int i = sequencia & (JANELA - 1);
+        if (enviados[i] != null) {
+            devolver(enviados[i]);
+            enviados[i] = null;
+        }
+    }
+
+    // Quadros enviados e ainda não confirmados (mais os que esperam lugar na janela)
+    synchronized int emTransito() {
+        return proximaSequencia - base + pendentes.size();
+    }
+
+    // Recepção
+
+    // Registra a chegada do envelope com a sequência dada; o quadro de dentro vai da posição ao
+    // limite. Se o resultado for GUARDADO, uma cópia fica na sessão (ver proximoAdiantado).
+    synchronized int receber(int sequencia, ByteBuffer quadro) {
+        if (fechada) {
+            return REPETIDO;
+        }
+        agendarAck();
+        int distancia = sequencia - esperada;
+        if (distancia < 0) {
+            Metricas.CONFIAVEL_REPETIDOS.increment();
+            return REPETIDO;
+        }
+        if (distancia == 0) {
+            esperada++;
+            return ENTREGAR;
+        }
+        if (distancia >= JANELA || quadro.remaining() > TAMANHO_BUFFER) {
+            return FORA_DA_JANELA;
+        }
+        int i = sequencia & (JANELA - 1);
+        if (adiantados[i] != null) {
+            Metricas.CONFIAVEL_REPETIDOS.increment();
+            return REPETIDO;
+        }
+        ByteBuffer copia = POOL.obter();
+        copia.put(quadro.duplicate()).flip();
+        adiantados[i] = copia;
+        return GUARDADO;
+    }
+
+    // Quadro guardado que agora é o próximo da sequência (null se não houver). Depois de
+    // tratá-lo, quem chamou devolve o buffer com devolver.
+    synchronized ByteBuffer proximoAdiantado() {
+        int i = esperada & (JANELA - 1);
+        ByteBuffer quadro = adiantados[i];
+        if (quadro == null) {
+            return null;
+        }
+        adiantados[i] = null;
+        esperada++;
+        return quadro;
+    }
+
+    static void devolver(ByteBuffer buffer) {
+        if (buffer.capacity() == TAMANHO_BUFFER) {
+            POOL.devolver(buffer);
+        }
+    }
+
+    // Bit i: a sequência esperada + 1 + i já chegou (adiantada)
+    private int mascaraRecebidos() {
+        int mascara = 0;
+        for (int i = 0; i < JANELA - 1; i++) {
+            if (adiantados[(esperada + 1 + i) & (JANELA - 1)] != null) {
+                mascara |= 1 << i;
+            }
+        }
+        return mascara;
+    }
+
+    private void agendarAck() {
+        ackPendente = true;
+        if (!ackAgendado) {
+            ackAgendado = true;
+            relogio.agendar(0, this::ackVencido);
+        }
+    }
+
+    private synchronized void ackVencido() {
+        ackAgendado = false;
+        confirmar();
+    }
+
+    // Envia já um ack avulso, se nenhum envelope levou o ack de carona desde a última recepção
+    // (o cliente chama antes de sair, para o servidor não retransmitir a última mensagem)
+    synchronized void confirmar() {
+        if (!ackPendente || fechada) {
+            return;
+        }
+        ackPendente = false;
+        ackAvulso.clear();
+        ProtocoloBinario.escreverCabecalho(ackAvulso, ProtocoloBinario.OP_ACK, id, 0);
+        ackAvulso.putInt(esperada - 1).putInt(mascaraRecebidos()).flip();
+        try {
+            saida.enviar(ackAvulso);
+        } catch (IOException e) {
+            Registro.erro("Erro ao enviar ack: {T}", e.getMessage(), null);
+        }
+    }
+
+    // Encerra a sessão (o jogador saiu): para as retransmissões e devolve os buffers ao pool
+    synchronized void fechar() {
+        if (fechada) {
+            return;
+        }
+        fechada = true;
+        if (retransmissao != null) {
+            retransmissao.cancelar();
+            retransmissao = null;
+        }
+        for (int i = 0; i < JANELA; i++) {
+            if (enviados[i] != null) {
+                devolver(enviados[i]);
+                enviados[i] = null;
+            }
+            if (adiantados[i] != null) {
+                devolver(adiantados[i]);
+                adiantados[i] = null;
+            }
+        }
+        while (!pendentes.isEmpty()) {
+            devolver(pendentes.pollFirst());
+        }
+    }
+}
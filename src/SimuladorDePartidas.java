@@ -0,0 +1,312 @@
+package src;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Ferramenta offline: joga partidas inteiras entre jogadores simulados (EstrategiaDeJogada),
+// sem rede e sem servidor, com as mesmas regras de pontuação das partidas de verdade
+// (RegrasDePontuacao), para testar variações do multiplicador, do placar de eliminação e das
+// penalidades antes de mudar o servidor.
+//
+// As partidas são divididas em blocos de TAMANHO_BLOCO num ForkJoinPool. Cada divisão da
+// tarefa dá à metade da esquerda um SplittableRandom.split() do gerador da tarefa, então cada
+// bloco tem o seu gerador, sem disputa entre threads, e a árvore de divisões depende só do
+// número de partidas: a mesma --semente dá os mesmos resultados com qualquer --threads. Cada
+// bloco resume as suas partidas (vitórias por estratégia, contagem por duração) e soma o
+// resumo ao total quando termina; nenhuma partida fica guardada. O total parcial é mostrado
+// a cada segundo.
+//
+// Uso: java src.SimuladorDePartidas [--partidas=1000000] [--jogadores=4 | --jogadores=2-8]
+//                                   [--estrategias=aleatoria,iterada,fixa:N] [--semente=1] [--threads=N]
+//                                   [--multiplicador=0.8] [--eliminacao=-6] [--penalidades=0,1,2]
+//                                   [--rodadasMaximas=200]
+//
+// Os lugares de cada partida recebem as estratégias em rodízio, começando por uma diferente a
+// cada partida. Todos os jogadores jogam em todas as rodadas. Partidas que chegam a
+// --rodadasMaximas sem terminar (por exemplo, todos com fixa:N empatam sempre) são
+// interrompidas e contadas à parte.
+public class SimuladorDePartidas {
+
+    private static final int TAMANHO_BLOCO = 4096;
+
+    // Resumo de um conjunto de partidas: o de cada bloco e o total
+    private static final class Resumo {
+        long partidas;
+        long rodadas;
+        long semVencedor; // Todos os restantes eliminados na mesma rodada
+        long interrompidas;
+        final long[] participacoes;
+        final long[] vitorias;
+        final long[] porDuracao; // porDuracao[r]: partidas que terminaram na rodada r
+
+        Resumo(int estrategias, int rodadasMaximas) {
+            participacoes = new long[estrategias];
+            vitorias = new long[estrategias];
+            porDuracao = new long[rodadasMaximas + 1];
+        }
+
+        void somar(Resumo outro) {
+            partidas += outro.partidas;
+            rodadas += outro.rodadas;
+            semVencedor += outro.semVencedor;
+            interrompidas += outro.interrompidas;
+            for (int i = 0; i < vitorias.length; i++) {
+                participacoes[i] += outro.participacoes[i];
+                vitorias[i] += outro.vitorias[i];
+            }
+            for (int i = 0; i < porDuracao.length; i++) {
+                porDuracao[i] += outro.porDuracao[i];
+            }
+        }
+
+        // Menor duração d com pelo menos p% das partidas terminadas até d
+        int percentil(double p) {
+            long terminadas = partidas - interrompidas;
+            long alvo = Math.max(1, (long) Math.ceil(terminadas * p / 100.0));
+            long acumulado = 0;
+            for (int d = 0; d < porDuracao.length; d++) {
+                acumulado += porDuracao[d];
+                if (acumulado >= alvo) {
+                    return d;
+                }
+            }
+            return porDuracao.length - 1;
+        }
+    }
+
+    private static RegrasDePontuacao regras;
+    private static EstrategiaDeJogada[] estrategias;
+    private static int minimoJogadores;
+    private static int maximoJogadores;
+    private static int rodadasMaximas;
+    private static Resumo total;
+
+    public static void main(String[] args) throws Exception {
+        long partidas = 1_000_000;
+        String jogadores = "4";
+        String nomes = "aleatoria,iterada";
+        long semente = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String multiplicador = "0.8";
+        int eliminacao = RegrasDePontuacao.LIMITE_ELIMINACAO_PADRAO;
+        String penalidades = RegrasDePontuacao.PADRAO.toString();
+        rodadasMaximas = 200;
+        for (String arg : args) {
+            String valor = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--partidas=")) {
+                partidas = Long.parseLong(valor);
+            } else if (arg.startsWith("--jogadores=")) {
+                jogadores = valor;
+            } else if (arg.startsWith("--estrategias=")) {
+                nomes = valor;
+            } else if (arg.startsWith("--semente=")) {
+                semente = Long.parseLong(valor);
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(valor);
+            } else if (arg.startsWith("--multiplicador=")) {
+                multiplicador = valor;
+            } else if (arg.startsWith("--eliminacao=")) {
+                eliminacao = Integer.parseInt(valor);
+            } else if (arg.startsWith("--penalidades=")) {
+                penalidades = valor;
+            } else if (arg.startsWith("--rodadasMaximas=")) {
+                rodadasMaximas = Integer.parseInt(valor);
+            }
+        }
+        int[] fracao = RegrasDePontuacao.lerMultiplicador(multiplicador);
+        regras = RegrasDePontuacao.ler(penalidades).com(fracao[0], fracao[1], eliminacao);
+        String[] faixa = jogadores.split("-");
+        minimoJogadores = Integer.parseInt(faixa[0]);
+        maximoJogadores = Integer.parseInt(faixa[faixa.length - 1]);
+        if (minimoJogadores < 2 || maximoJogadores < minimoJogadores) {
+            throw new IllegalArgumentException("Use --jogadores=N ou --jogadores=MIN-MAX, com pelo menos 2: " + jogadores);
+        }
+        String[] nomesDasEstrategias = nomes.split(",");
+        estrategias = new EstrategiaDeJogada[nomesDasEstrategias.length];
+        for (int i = 0; i < estrategias.length; i++) {
+            estrategias[i] = EstrategiaDeJogada.criar(nomesDasEstrategias[i].trim(), regras);
+        }
+        total = new Resumo(estrategias.length, rodadasMaximas);
+
+        System.out.println("Simulação: " + partidas + " partidas de " + jogadores + " jogadores (" + nomes + "), "
+                           + regras.descrever() + ", semente " + semente + ", " + threads + " thread(s)");
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long inicio = System.nanoTime();
+        ForkJoinTask<Void> tarefa = pool.submit(new Bloco(0, partidas, new SplittableRandom(semente)));
+        long anteriores = 0;
+        long instanteAnterior = inicio;
+        while (true) {
+            try {
+                tarefa.get(1, TimeUnit.SECONDS);
+                break;
+            } catch (TimeoutException e) {
+                Resumo parcial = copiarTotal();
+                long agora = System.nanoTime();
+                System.out.println(String.format("  %,d partidas (%,.0f partidas/s), %.1f%% interrompidas, vitórias: %s",
+                                                 parcial.partidas, (parcial.partidas - anteriores) * 1e9 / (agora - instanteAnterior),
+                                                 100.0 * media(parcial.interrompidas, parcial.partidas), taxas(parcial, nomesDasEstrategias)));
+                anteriores = parcial.partidas;
+                instanteAnterior = agora;
+            }
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        pool.shutdown();
+
+        Resumo r = total;
+        System.out.println(String.format("==== %,d partidas em %.2f s (%,.0f partidas/s, %,.0f rodadas/s) ====",
+                                         r.partidas, segundos, r.partidas / segundos, r.rodadas / segundos));
+        System.out.println("Vitórias por estratégia (participações, vitórias, vitórias por participação):");
+        for (int i = 0; i < estrategias.length; i++) {
+            System.out.println(String.format("  %-12s %,14d %,14d %7.2f%%", nomesDasEstrategias[i], r.participacoes[i],
+                                             r.vitorias[i], 100.0 * media(r.vitorias[i], r.participacoes[i])));
+        }
+        System.out.println(String.format("Sem vencedor: %,d (%.2f%%); interrompidas em %d rodadas: %,d (%.2f%%)",
+                                         r.semVencedor, 100.0 * media(r.semVencedor, r.partidas), rodadasMaximas,
+                                         r.interrompidas, 100.0 * media(r.interrompidas, r.partidas)));
+        if (r.partidas > r.interrompidas) {
+            mostrarDuracoes(r);
+        }
+    }
+
+    // Partidas [inicio, fim): divide ao meio até o tamanho de um bloco
+    private static final class Bloco extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long inicio;
+        private final long fim;
+        private final SplittableRandom aleatorio;
+
+        Bloco(long inicio, long fim, SplittableRandom aleatorio) {
+            this.inicio = inicio;
+            this.fim = fim;
+            this.aleatorio = aleatorio;
+        }
+
+        @Override
+        protected void compute() {
+            if (fim - inicio <= TAMANHO_BLOCO) {
+                Resumo resumo = new Resumo(estrategias.length, rodadasMaximas);
+                Mesa mesa = new Mesa(maximoJogadores);
+                for (long p = inicio; p < fim; p++) {
+                    mesa.jogar(p, aleatorio, resumo);
+                }
+                synchronized (total) {
+                    total.somar(resumo);
+                }
+                return;
+            }
+            long meio = inicio + (fim - inicio) / 2;
+            invokeAll(new Bloco(inicio, meio, aleatorio.split()), new Bloco(meio, fim, aleatorio));
+        }
+    }
+
+    // Arrays de trabalho de um bloco, reaproveitados em todas as partidas dele
+    private static final class Mesa {
+        final int[] estrategiaDoLugar;
+        final int[] pontuacoes;
+        final int[] vivos; // Lugares ainda em jogo
+        final int[] escolhas;
+        final int[] perdas;
+
+        Mesa(int lugares) {
+            estrategiaDoLugar = new int[lugares];
+            pontuacoes = new int[lugares];
+            vivos = new int[lugares];
+            escolhas = new int[lugares];
+            perdas = new int[lugares];
+        }
+
+        // Uma partida inteira, como Partida.processarRodada com todos jogando em todas as rodadas
+        void jogar(long indice, SplittableRandom aleatorio, Resumo resumo) {
+            int n = minimoJogadores == maximoJogadores ? minimoJogadores : aleatorio.nextInt(minimoJogadores, maximoJogadores + 1);
+            int primeira = (int) (indice % estrategias.length);
+            for (int i = 0; i < n; i++) {
+                estrategiaDoLugar[i] = (primeira + i) % estrategias.length;
+                resumo.participacoes[estrategiaDoLugar[i]]++;
+                pontuacoes[i] = 0;
+                vivos[i] = i;
+            }
+            int numVivos = n;
+            int alvo = -1;
+            int rodada = 0;
+            while (numVivos >= 2 && rodada < rodadasMaximas) {
+                for (int i = 0; i < numVivos; i++) {
+                    int escolha = estrategias[estrategiaDoLugar[vivos[i]]].escolher(alvo, aleatorio);
+                    escolhas[i] = Math.max(0, Math.min(100, escolha)); // O servidor só aceita de 0 a 100
+                }
+                alvo = regras.pontuar(escolhas, numVivos, perdas);
+                rodada++;
+                int restantes = 0;
+                for (int i = 0; i < numVivos; i++) {
+                    int lugar = vivos[i];
+                    pontuacoes[lugar] -= perdas[i];
+                    if (!regras.eliminado(pontuacoes[lugar])) {
+                        vivos[restantes++] = lugar;
+                    }
+                }
+                numVivos = restantes;
+            }
+
+            resumo.partidas++;
+            resumo.rodadas += rodada;
+            if (numVivos >= 2) {
+                resumo.interrompidas++;
+                return;
+            }
+            resumo.porDuracao[rodada]++;
+            if (numVivos == 1) {
+                resumo.vitorias[estrategiaDoLugar[vivos[0]]]++;
+            } else {
+                resumo.semVencedor++;
+            }
+        }
+    }
+
+    private static Resumo copiarTotal() {
+        Resumo copia = new Resumo(estrategias.length, rodadasMaximas);
+        synchronized (total) {
+            copia.somar(total);
+        }
+        return copia;
+    }
+
+    private static double media(long parte, long todo) {
+        return todo == 0 ? 0 : (double) parte / todo;
+    }
+
+    private static String taxas(Resumo r, String[] nomes) {
+        StringBuilder texto = new StringBuilder();
+        for (int i = 0; i < nomes.length; i++) {
+            texto.append(i == 0 ? "" : ", ").append(nomes[i]).append(' ')
+                 .append(String.format("%.1f%%", 100.0 * media(r.vitorias[i], r.participacoes[i])));
+        }
+        return texto.toString();
+    }
+
+    // Percentis e um histograma em até 20 faixas iguais, do mínimo ao percentil 99,9
+    private static void mostrarDuracoes(Resumo r) {
+        System.out.println(String.format("Duração das partidas terminadas (rodadas): média %.2f, p50 %d, p90 %d, p99 %d, p99,9 %d",
+                                         media(r.rodadas - (long) rodadasMaximas * r.interrompidas, r.partidas - r.interrompidas),
+                                         r.percentil(50), r.percentil(90), r.percentil(99), r.percentil(99.9)));
+        int menor = r.percentil(0);
+        int maior = r.percentil(99.9);
+        int largura = Math.max(1, (maior - menor + 20) / 20);
+        long terminadas = r.partidas - r.interrompidas;
+        for (int de = menor; de <= maior; de += largura) {
+            int ate = Math.min(de + largura - 1, maior);
+            long contagem = 0;
+            for (int d = de; d <= ate; d++) {
+                contagem += r.porDuracao[d];
+            }
+            char[] barra = new char[(int) Math.round(50.0 * contagem / terminadas)];
+            Arrays.fill(barra, '#');
+            System.out.println(String.format("  %9s %6.2f%% %s", de == ate ? String.valueOf(de) : de + "-" + ate,
+                                             100.0 * contagem / terminadas, new String(barra)));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package src;
+
+// Juiz fixado para cada endereço de jogador no roteador (ver RoteadorUDP): a sessão continua
+// no juiz em que se cadastrou mesmo que o anel mude com a entrada de outro juiz. Uma entrada
+// sem datagramas por mais de `validade` nanos deixa de valer, e a sessão volta a seguir o anel.
+//
+// Mesma organização do LimitadorDeTaxa: arrays primitivos de tamanho fixo, associativos por
+// conjuntos de VIAS posições; com o conjunto cheio, a entrada vista há mais tempo é despejada.
+// Uma enxurrada de endereços novos nunca faz a tabela crescer. Usada só pela thread do roteador.
+final class TabelaDeAfinidade {
+
+    private static final int VIAS = 4;
+    private static final long VAZIA = 0; // Nenhum endereço real tem a chave 0 (IP 0.0.0.0, porta 0)
+
+    private final long[] chaves;
+    private final int[] juizes;
+    private final long[] vistaEm; // System.nanoTime do último datagrama do endereço
+    private final int mascaraConjunto;
+    private final long validade;
+    private int ocupadas;
+    private long despejos;
+
+    // capacidade é arredondada para uma potência de 2
+    TabelaDeAfinidade(int capacidade, long validade) {
+        int tamanho = Integer.highestOneBit(Math.max(VIAS, capacidade - 1) << 1);
+        chaves = new long[tamanho];
+        juizes = new int[tamanho];
+        vistaEm = new long[tamanho];
+        mascaraConjunto = (tamanho / VIAS) - 1;
+        this.validade = validade;
+    }
+
+    // Juiz fixado para o endereço (renovando a entrada), ou -1 se não há entrada válida
+    int buscar(long chave, long agora) {
+        int base = conjunto(chave) * VIAS;
+        for (int i = base; i < base + VIAS; i++) {
+            if (chaves[i] == chave) {
+                if (agora - vistaEm[i] > validade) {
+                    return -1;
+                }
+                vistaEm[i] = agora;
+                return juizes[i];
+            }
+        }
+        return -1;
+    }
+
+    // Fixa o endereço no juiz, reaproveitando a entrada dele, uma livre ou a vista há mais tempo
+    void fixar(long chave, int juiz, long agora) {
+        int base = conjunto(chave) * VIAS;
+        int posicao = -1;
+        int maisAntiga = base;
+        for (int i = base; i < base + VIAS; i++) {
+            if (chaves[i] == chave) {
+                posicao = i;
+                break;
+            }
+            if (chaves[i] == VAZIA) {
+                if (posicao < 0) {
+                    posicao = i;
+                }
+            } else if (vistaEm[i] - vistaEm[maisAntiga] < 0 || chaves[maisAntiga] == VAZIA) {
+                maisAntiga = i;
+            }
+        }
+        if (posicao < 0) {
+            posicao = maisAntiga;
+            despejos++;
+        } else if (chaves[posicao] == VAZIA) {
+            ocupadas++;
+        }
+        chaves[posicao] = chave;
+        juizes[posicao] = juiz;
+        vistaEm[posicao] = agora;
+    }
+
+    private int conjunto(long chave) {
+        long h = chave * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mascaraConjunto;
+    }
+
+    // Endereços na tabela (inclusive os vencidos, que ficam até serem despejados)
+    int ocupadas() {
+        return ocupadas;
+    }
+
+    long despejos() {
+        return despejos;
+    }
+}
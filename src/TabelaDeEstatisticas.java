@@ -0,0 +1,307 @@
+package src;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// Estatísticas de todos os jogadores que já jogaram, por nickname, fora do heap: uma tabela
+// hash de endereçamento aberto (sondagem linear) com registros de tamanho fixo num
+// ByteBuffer direto ou, se houver arquivo, num arquivo mapeado em memória (persistente).
+// Milhões de jogadores ocupam só o arquivo/memória nativa, não o heap.
+//
+// Mantém também o ranking dos K melhores (mais vitórias; empate: mais rodadas jogadas). As
+// duas chaves só crescem, então basta reposicionar o jogador atualizado no ranking, sem
+// percorrer a tabela; ela só é percorrida ao abrir o arquivo e ao crescer.
+//
+// Não é thread-safe: é usada só pelo laço de eventos de Estatisticas.
+final class TabelaDeEstatisticas {
+
+    // Registro de um jogador
+    private static final int HASH = 0;          // long: hash do nickname (0 = posição livre)
+    private static final int PARTIDAS = 8;
+    private static final int VITORIAS = 12;
+    private static final int ELIMINACOES = 16;
+    private static final int RODADAS = 20;      // Rodadas jogadas até o fim de cada partida
+    private static final int DISTANCIAS = 24;   // long: soma das distâncias ao alvo (centésimos)
+    private static final int JOGADAS = 32;      // Jogadas que entraram na soma das distâncias
+    private static final int RATING = 36;       // Para o emparelhamento (ver FormadorDePartidas)
+    private static final int TAMANHO_NICK = 40; // short: tamanho do nickname em bytes
+    private static final int NICK = 42;         // Primeiros bytes do nickname
+    static final int TAMANHO_REGISTRO = 96;
+
+    // Rating: todos começam com RATING_INICIAL; vencer soma, ser eliminado subtrai
+    static final int RATING_INICIAL = 1000;
+    static final int RATING_MAXIMO = 3000;
+    private static final int RATING_VITORIA = 30;
+    private static final int RATING_ELIMINACAO = 15;
+    private static final int MAXIMO_NICK = TAMANHO_REGISTRO - NICK;
+
+    // Cabeçalho do arquivo
+    private static final int MAGICO = 0x45535432; // "EST2"
+    private static final int CABECALHO = 64;
+
+    private final Path arquivo; // null: só em memória
+    private ByteBuffer dados;
+    private int capacidade;     // Posições (potência de 2)
+    private int usados;
+
+    private final int[] ranking; // Posições dos K melhores, do melhor para o pior
+    private int noRanking;
+
+    TabelaDeEstatisticas(Path arquivo, int capacidadeInicial, int tamanhoRanking) throws IOException {
+        this.arquivo = arquivo;
+        this.ranking = new int[tamanhoRanking];
+        int capacidadeDoArquivo = arquivo != null && Files.exists(arquivo) ? lerCapacidade(arquivo) : 0;
+        capacidade = capacidadeDoArquivo > 0 ? capacidadeDoArquivo : Integer.highestOneBit(Math.max(capacidadeInicial, 16) - 1) << 1;
+        dados = alocar(arquivo, capacidade);
+        if (capacidadeDoArquivo > 0) {
+            usados = dados.getInt(8);
+            reconstruirRanking();
+        } else {
+            dados.putInt(0, MAGICO).putInt(4, capacidade).putInt(8, 0);
+        }
+    }
+
+    int tamanho() {
+        return usados;
+    }
+
+    // Soma o resultado de uma partida às estatísticas do jogador (cria o registro na primeira)
+    void registrarPartida(byte[] nickname, boolean venceu, boolean eliminado, int rodadas, long distancias, int jogadas) throws IOException {
+        if ((usados + 1) * 10L > capacidade * 7L) { // Fator de carga até 0,7
+            crescer();
+        }
+        int p = posicao(nickname, true);
+        int base = base(p);
+        somar(base + PARTIDAS, 1);
+        somar(base + VITORIAS, venceu ? 1 : 0);
+        somar(base + ELIMINACOES, eliminado ? 1 : 0);
+        somar(base + RODADAS, rodadas);
+        dados.putLong(base + DISTANCIAS, dados.getLong(base + DISTANCIAS) + distancias);
+        somar(base + JOGADAS, jogadas);
+        int variacao = (venceu ? RATING_VITORIA : 0) - (eliminado ? RATING_ELIMINACAO : 0);
+        dados.putInt(base + RATING, Math.max(0, Math.min(RATING_MAXIMO, dados.getInt(base + RATING) + variacao)));
+        atualizarRanking(p);
+    }
+
+    // Posição do jogador na tabela; -1 se ele não existe (e criar é false)
+    int posicao(byte[] nickname, boolean criar) {
+        long hash = hash(nickname);
+        int mascara = capacidade - 1;
+        for (int p = (int) (hash ^ (hash >>> 32)) & mascara; ; p = (p + 1) & mascara) {
+            int base = base(p);
+            long atual = dados.getLong(base + HASH);
+            if (atual == 0) {
+                if (!criar) {
+                    return -1;
+                }
+                dados.putLong(base + HASH, hash);
+                int tamanho = Math.min(nickname.length, MAXIMO_NICK);
+                dados.putShort(base + TAMANHO_NICK, (short) nickname.length);
+                dados.putInt(base + RATING, RATING_INICIAL);
+                for (int i = 0; i < tamanho; i++) {
+                    dados.put(base + NICK + i, nickname[i]);
+                }
+                dados.putInt(8, ++usados);
+                return p;
+            }
+            if (atual == hash && mesmoNickname(base, nickname)) {
+                return p;
+            }
+        }
+    }
+
+    // Ranking
+
+    int tamanhoRanking() {
+        return noRanking;
+    }
+
+    // Posição na tabela do i-ésimo colocado
+    int colocado(int i) {
+        return ranking[i];
+    }
+
+    private void atualizarRanking(int p) {
+        if (ranking.length == 0) {
+            return;
+        }
+        int i = 0;
+        while (i < noRanking && ranking[i] != p) {
+            i++;
+        }
+        if (i == noRanking) {
+            // Fora do ranking: entra no fim se houver lugar ou se for melhor que o último
+            if (noRanking < ranking.length) {
+                noRanking++;
+            } else if (!melhor(p, ranking[noRanking - 1])) {
+                return;
+            } else {
+                i = noRanking - 1;
+            }
+        }
+        // Sobe enquanto for melhor que o da frente (as chaves só crescem)
+        while (i > 0 && melhor(p, ranking[i - 1])) {
+            ranking[i] = ranking[i - 1];
+            i--;
+        }
+        ranking[i] = p;
+    }
+
+    private boolean melhor(int p, int q) {
+        int vitoriasP = vitorias(p);
+        int vitoriasQ = vitorias(q);
+        if (vitoriasP != vitoriasQ) {
+            return vitoriasP > vitoriasQ;
+        }
+        return rodadas(p) > rodadas(q);
+    }
+
+    private void reconstruirRanking() {
+        noRanking = 0;
+        for (int p = 0; p < capacidade; p++) {
+            if (dados.getLong(base(p) + HASH) != 0) {
+                atualizarRanking(p);
+            }
+        }
+    }
+
+    // Leitura dos campos de um registro
+
+    int partidas(int p) {
+        return dados.getInt(base(p) + PARTIDAS);
+    }
+
+    int vitorias(int p) {
+        return dados.getInt(base(p) + VITORIAS);
+    }
+
+    int eliminacoes(int p) {
+        return dados.getInt(base(p) + ELIMINACOES);
+    }
+
+    int rodadas(int p) {
+        return dados.getInt(base(p) + RODADAS);
+    }
+
+    int rating(int p) {
+        return dados.getInt(base(p) + RATING);
+    }
+
+    // Distância média ao alvo, em centésimos (-1 se o jogador nunca jogou um número)
+    long distanciaMedia(int p) {
+        int jogadas = dados.getInt(base(p) + JOGADAS);
+        return jogadas == 0 ? -1 : dados.getLong(base(p) + DISTANCIAS) / jogadas;
+    }
+
+    // Nickname guardado (truncado em MAXIMO_NICK bytes)
+    byte[] nickname(int p) {
+        int base = base(p);
+        byte[] nickname = new byte[Math.min(dados.getShort(base + TAMANHO_NICK), MAXIMO_NICK)];
+        for (int i = 0; i < nickname.length; i++) {
+            nickname[i] = dados.get(base + NICK + i);
+        }
+        return nickname;
+    }
+
+    // Grava no disco o que está só na memória (tabela em arquivo)
+    void sincronizar() {
+        if (arquivo != null) {
+            ((MappedByteBuffer) dados).force();
+        }
+    }
+
+    private static int base(int p) {
+        return CABECALHO + p * TAMANHO_REGISTRO;
+    }
+
+    private void somar(int indice, int valor) {
+        dados.putInt(indice, dados.getInt(indice) + valor);
+    }
+
+    private boolean mesmoNickname(int base, byte[] nickname) {
+        if (dados.getShort(base + TAMANHO_NICK) != nickname.length) {
+            return false;
+        }
+        int tamanho = Math.min(nickname.length, MAXIMO_NICK);
+        for (int i = 0; i < tamanho; i++) {
+            if (dados.get(base + NICK + i) != nickname[i]) {
+                return false;
+            }
+        }
+        return true; // Nicknames longos: o resto é garantido pelo hash de 64 bits
+    }
+
+    // FNV-1a de 64 bits; 0 é reservado para posição livre
+    private static long hash(byte[] nickname) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : nickname) {
+            h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    // Dobra a capacidade, reinserindo todos os registros. Com arquivo, a tabela nova é montada
+    // num arquivo ao lado e só então substitui a antiga.
+    private void crescer() throws IOException {
+        int novaCapacidade = capacidade * 2;
+        Path novoArquivo = arquivo == null ? null : arquivo.resolveSibling(arquivo.getFileName() + ".novo");
+        ByteBuffer novos = alocar(novoArquivo, novaCapacidade);
+        int mascara = novaCapacidade - 1;
+        for (int p = 0; p < capacidade; p++) {
+            int base = base(p);
+            long hash = dados.getLong(base + HASH);
+            if (hash == 0) {
+                continue;
+            }
+            int q = (int) (hash ^ (hash >>> 32)) & mascara;
+            while (novos.getLong(base(q) + HASH) != 0) {
+                q = (q + 1) & mascara;
+            }
+            for (int i = 0; i < TAMANHO_REGISTRO; i += 8) {
+                novos.putLong(base(q) + i, dados.getLong(base + i));
+            }
+        }
+        novos.putInt(0, MAGICO).putInt(4, novaCapacidade).putInt(8, usados);
+        if (novoArquivo != null) {
+            ((MappedByteBuffer) novos).force();
+            Files.move(novoArquivo, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        dados = novos;
+        capacidade = novaCapacidade;
+        reconstruirRanking();
+        Registro.info("Estatísticas: tabela ampliada para {A} posições ({B} jogadores).", capacidade, usados);
+    }
+
+    private static ByteBuffer alocar(Path arquivo, int capacidade) throws IOException {
+        long tamanho = CABECALHO + (long) capacidade * TAMANHO_REGISTRO;
+        if (tamanho > Integer.MAX_VALUE) {
+            throw new IOException("Tabela de estatísticas cheia: " + capacidade + " posições");
+        }
+        if (arquivo == null) {
+            return ByteBuffer.allocateDirect((int) tamanho);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(arquivo.toFile(), "rw")) {
+            raf.setLength(tamanho);
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, tamanho);
+        }
+    }
+
+    private static int lerCapacidade(Path arquivo) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(arquivo.toFile(), "r")) {
+            if (raf.length() < CABECALHO || raf.readInt() != MAGICO) {
+                throw new IOException("Arquivo de estatísticas inválido: " + arquivo);
+            }
+            int capacidade = raf.readInt();
+            if (raf.length() != CABECALHO + (long) capacidade * TAMANHO_REGISTRO) {
+                throw new IOException("Arquivo de estatísticas truncado: " + arquivo);
+            }
+            return capacidade;
+        }
+    }
+}
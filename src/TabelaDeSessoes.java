@@ -0,0 +1,131 @@
+package src;
+
+import java.net.InetAddress;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Tokens de sessão dos jogadores do protocolo binário (ver ProtocoloBinario.OP_SESSAO). O
+// token são 64 bits aleatórios, sem parte sequencial: quem tenta adivinhar o de outro
+// jogador, mesmo trocando de porta a cada tentativa, não tem por onde começar. A tabela é
+// de endereçamento aberto com sondagem linear e indexada pelo próprio token, que já é
+// aleatório: a busca é um acesso ao array e uma comparação com o token de cada jogador na
+// sequência, quase sempre o primeiro. Um token velho ou inventado não confere com ninguém.
+//
+// Buscas sem trava, na thread de recepção; emissão e liberação com trava (cadastro e saída).
+// A posição de quem sai vira uma lápide, que a sondagem atravessa, até a próxima
+// reconstrução (quando ocupadas e lápides passam da metade da tabela).
+final class TabelaDeSessoes {
+
+    private static final Jogador LAPIDE = new Jogador("", InetAddress.getLoopbackAddress(), 0, false); // Token 0: não confere
+
+    private final SecureRandom aleatorio = new SecureRandom();
+    private volatile AtomicReferenceArray<Jogador> posicoes; // Tamanho potência de 2
+    private int ocupadas;
+    private int lapides;
+
+    TabelaDeSessoes(int capacidadeInicial) {
+        posicoes = new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(capacidadeInicial, 16) * 2 - 1));
+    }
+
+    // Dá ao jogador um token novo e o registra na tabela
+    synchronized long emitir(Jogador jogador) {
+        long token;
+        do {
+            token = aleatorio.nextLong();
+        } while (token == 0 || buscar(token) != null); // Token 0 quer dizer "sem sessão"
+        ocupar(jogador, token);
+        return token;
+    }
+
+    // Recoloca um jogador restaurado do diário no token que ele já tinha. Retorna false se o
+    // token está com outro jogador (não acontece com um diário íntegro).
+    synchronized boolean restaurar(Jogador jogador, long token) {
+        if (token == 0 || buscar(token) != null) {
+            return false;
+        }
+        ocupar(jogador, token);
+        return true;
+    }
+
+    // Jogador dono do token (null se nenhum confere)
+    Jogador buscar(long token) {
+        if (token == 0) {
+            return null;
+        }
+        AtomicReferenceArray<Jogador> atual = posicoes;
+        int mascara = atual.length() - 1;
+        for (int i = posicao(token, mascara); ; i = (i + 1) & mascara) {
+            Jogador jogador = atual.get(i);
+            if (jogador == null) {
+                return null;
+            }
+            if (jogador.token == token) {
+                return jogador;
+            }
+        }
+    }
+
+    // Tira o jogador da tabela; o token dele deixa de valer
+    synchronized void liberar(Jogador jogador) {
+        long token = jogador.token;
+        if (token == 0) {
+            return;
+        }
+        AtomicReferenceArray<Jogador> atual = posicoes;
+        int mascara = atual.length() - 1;
+        for (int i = posicao(token, mascara); ; i = (i + 1) & mascara) {
+            Jogador ocupante = atual.get(i);
+            if (ocupante == null) {
+                return;
+            }
+            if (ocupante == jogador) {
+                atual.set(i, LAPIDE);
+                ocupadas--;
+                lapides++;
+                return;
+            }
+        }
+    }
+
+    synchronized int tamanho() {
+        return ocupadas;
+    }
+
+    private void ocupar(Jogador jogador, long token) {
+        if ((ocupadas + lapides + 1) * 2 > posicoes.length()) {
+            reconstruir((ocupadas + 1) * 4 > posicoes.length() ? posicoes.length() * 2 : posicoes.length());
+        }
+        jogador.token = token; // Antes da publicação: quem achar o jogador no array vê o token
+        inserir(posicoes, jogador);
+        ocupadas++;
+    }
+
+    // Copia os jogadores para uma tabela nova, sem as lápides. Buscas concorrentes ainda na
+    // tabela antiga só não veem as emissões e liberações seguintes.
+    private void reconstruir(int tamanho) {
+        AtomicReferenceArray<Jogador> atual = posicoes;
+        AtomicReferenceArray<Jogador> nova = new AtomicReferenceArray<>(tamanho);
+        for (int i = 0; i < atual.length(); i++) {
+            Jogador jogador = atual.get(i);
+            if (jogador != null && jogador != LAPIDE) {
+                inserir(nova, jogador);
+            }
+        }
+        lapides = 0;
+        posicoes = nova;
+    }
+
+    // Primeira posição livre ou lápide da sondagem do token do jogador
+    private static void inserir(AtomicReferenceArray<Jogador> tabela, Jogador jogador) {
+        int mascara = tabela.length() - 1;
+        int i = posicao(jogador.token, mascara);
+        while (tabela.get(i) != null && tabela.get(i) != LAPIDE) {
+            i = (i + 1) & mascara;
+        }
+        tabela.set(i, jogador);
+    }
+
+    private static int posicao(long token, int mascara) {
+        return (int) (token ^ (token >>> 32)) & mascara;
+    }
+}
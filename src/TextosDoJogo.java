@@ -0,0 +1,98 @@
+package src;
+
+import static src.ProtocoloBinario.*;
+
+// Textos das mensagens do servidor, por opcode. O servidor usa estes textos para os
+// jogadores do protocolo de texto e o cliente binário os usa para mostrar as mensagens
+// recebidas, então os dois lados exibem exatamente as mesmas frases.
+final class TextosDoJogo {
+
+    // Texto das regras (opção 1 do menu), montado das regras de pontuação e do tamanho das
+    // partidas em uso no servidor, que o envia como carga de texto do OP_REGRAS
+    static String regras(RegrasDePontuacao regras, int jogadoresIniciais) {
+        return "==\nRegras do Jogo da Sobrevivência Numérica:\n" +
+               "==\n" +
+               regras.explicar(jogadoresIniciais) + "\n" +
+               "(Resumo: " + jogadoresIniciais + " jogadores por partida, " + regras.descrever() + ".)\n" +
+               "================================================================================";
+    }
+
+    // Lacunas dos modelos: o nickname do destinatário e os argumentos inteiros da mensagem
+    static final String LACUNA_NICKNAME = "{N}";
+    static final String LACUNA_A = "{A}";
+    static final String LACUNA_B = "{B}";
+    static final String LACUNA_C = "{C}";
+
+    private TextosDoJogo() {}
+
+    // Modelo da mensagem com o opcode dado, com as lacunas a preencher. O servidor pré-codifica
+    // os modelos uma vez (ver CatalogoDeMensagens); "" para opcodes sem texto.
+    static String modelo(byte opcode) {
+        switch (opcode) {
+            case OP_MENU:
+                return "Bem-vindo(a), {N}.\n" +
+                       "Digite 1 - para ver as regras do jogo.\n" +
+                       "Digite 2 - para iniciar o jogo.\n" +
+                       "Digite 3 - para sair do jogo.\n" +
+                       "Digite 4 - para ver o ranking.\n" +
+                       "O que deseja:";
+            case OP_ERRO_CADASTRO:
+                return "Desculpe, a entrada para cadastro é inválida (vazia, nickname já usado ou é um número).";
+            case OP_ENTRADA_INVALIDA:
+                return "Entrada inválida. Digite um número para a opção do menu ou para sua jogada.";
+            case OP_JA_EM_JOGO:
+                return "Você já está no jogo! Por favor, escolha um número.";
+            case OP_SAIDA:
+                return "Você escolheu sair do jogo. Até mais!";
+            case OP_OPCAO_INVALIDA:
+                return "Opção de menu inválida. Digite 1, 2, 3 ou 4.";
+            case OP_AGUARDANDO:
+                return "Aguardando mais jogadores para iniciar o jogo... ({A}/{B} prontos)";
+            case OP_CONTAGEM:
+                return "Total de jogadores cadastrados: {A}. {B}/{C} prontos para a partida.";
+            case OP_INICIO_PARTIDA:
+                return "Jogadores oponentes encontrados. Que comecem os jogos...";
+            case OP_PEDIR_JOGADA:
+                return "Escolha um número entre 0 e 100:";
+            case OP_JOGADA_CONFIRMADA:
+                return "Você escolheu o número: {A}.\nEnviando o número escolhido para o servidor do jogo...\nAguardando os outros jogadores...";
+            case OP_VENCEDOR:
+                return "Parabéns! Você foi o(a) vencedor(a)!";
+            case OP_FALTA_JOGADORES:
+                return "Jogo encerrado devido a falta de jogadores.";
+            case OP_RODADA_SEM_JOGADAS:
+                return "Nenhum número válido escolhido na rodada. Placar permanece o mesmo.";
+            case OP_PLACAR:
+                return "Seu placar é: {A}";
+            case OP_PERDEU_PONTOS:
+                return "Você perdeu {A} ponto(s) nesta rodada.";
+            case OP_NAO_PERDEU:
+                return "Você não perdeu pontos nesta rodada.";
+            case OP_PLACAR_ATUAL:
+                return "Seu placar atual é: {A}";
+            case OP_ELIMINADO:
+                return "Você foi eliminado(a)!";
+            case OP_SESSAO_INVALIDA:
+                return "Sua sessão anterior não existe mais. Fazendo um novo cadastro...";
+            case OP_SESSAO_RETOMADA:
+                return "Sessão retomada. Bem-vindo(a) de volta, {N}.";
+            case OP_FIM_RODADA:
+                return "------------------------------------\nFim da Rodada. Aguardando próxima jogada...";
+            default:
+                return "";
+        }
+    }
+
+    // Texto da mensagem com o opcode dado, com as lacunas preenchidas. Os argumentos não usados
+    // pelo opcode são ignorados. Usado pelo cliente para exibir as mensagens binárias.
+    static String texto(byte opcode, String nickname, int a, int b, int c) {
+        String modelo = modelo(opcode);
+        if (modelo.indexOf('{') < 0) {
+            return modelo;
+        }
+        return modelo.replace(LACUNA_NICKNAME, String.valueOf(nickname))
+                     .replace(LACUNA_A, Integer.toString(a))
+                     .replace(LACUNA_B, Integer.toString(b))
+                     .replace(LACUNA_C, Integer.toString(c));
+    }
+}